@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import lucee.runtime.type.Array;
+import lucee.runtime.type.ArrayImpl;
+
+/**
+ * appending to and iterating over arrays
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class ArrayImplBenchmark {
+
+	@Param({ "16", "10000" })
+	public int size;
+
+	private Array arr;
+
+	@Setup
+	public void setup() {
+		arr = new ArrayImpl();
+		for (int i = 0; i < size; i++) {
+			arr.appendEL(Integer.valueOf(i));
+		}
+	}
+
+	@Benchmark
+	public Array append() {
+		Array a = new ArrayImpl();
+		for (int i = 0; i < size; i++) {
+			a.appendEL("value");
+		}
+		return a;
+	}
+
+	@Benchmark
+	public void iterateValues(Blackhole bh) {
+		Iterator<Object> it = arr.valueIterator();
+		while (it.hasNext()) {
+			bh.consume(it.next());
+		}
+	}
+
+	@Benchmark
+	public void getByIndex(Blackhole bh) {
+		int len = arr.size();
+		for (int i = 1; i <= len; i++) {
+			bh.consume(arr.get(i, null));
+		}
+	}
+}
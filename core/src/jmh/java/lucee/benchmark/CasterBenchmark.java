@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.exp.PageException;
+import lucee.runtime.op.Caster;
+
+/**
+ * the most common casts between strings and numbers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class CasterBenchmark {
+
+	private double integral;
+	private double fraction;
+	private Object boxed;
+	private String strIntegral;
+	private String strFraction;
+	private String strExponent;
+
+	@Setup
+	public void setup() {
+		integral = 123456;
+		fraction = 1234.5678;
+		boxed = Double.valueOf(fraction);
+		strIntegral = "123456";
+		strFraction = "1234.5678";
+		strExponent = "1.5E10";
+	}
+
+	@Benchmark
+	public String toStringIntegral() {
+		return Caster.toString(integral);
+	}
+
+	@Benchmark
+	public String toStringFraction() {
+		return Caster.toString(fraction);
+	}
+
+	@Benchmark
+	public String toStringObject() throws PageException {
+		return Caster.toString(boxed);
+	}
+
+	@Benchmark
+	public double toDoubleValueIntegral() throws PageException {
+		return Caster.toDoubleValue(strIntegral);
+	}
+
+	@Benchmark
+	public double toDoubleValueFraction() throws PageException {
+		return Caster.toDoubleValue(strFraction);
+	}
+
+	@Benchmark
+	public double toDoubleValueExponent() throws PageException {
+		return Caster.toDoubleValue(strExponent);
+	}
+
+	@Benchmark
+	public double toDoubleValueObject() throws PageException {
+		return Caster.toDoubleValue(boxed);
+	}
+}
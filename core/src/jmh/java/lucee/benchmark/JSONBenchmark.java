@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.converter.ConverterException;
+import lucee.runtime.converter.JSONConverter;
+import lucee.runtime.converter.JSONParser;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.listener.SerializationSettings;
+import lucee.runtime.type.Array;
+import lucee.runtime.type.ArrayImpl;
+import lucee.runtime.type.Query;
+import lucee.runtime.type.QueryImpl;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+
+/**
+ * serializing (serializeJSON) and parsing (deserializeJSON) of a typical payload: an array of
+ * records with strings, numbers, booleans and nested structs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class JSONBenchmark {
+
+	@Param({ "10", "1000" })
+	public int records;
+
+	private Array data;
+	private Query qry;
+	private String json;
+	private JSONConverter converter;
+	private JSONParser parser;
+
+	@Setup
+	public void setup() throws PageException {
+		converter = new JSONConverter(true, Charset.forName("UTF-8"));
+		parser = new JSONParser(false);
+
+		data = new ArrayImpl();
+		qry = new QueryImpl(new String[] { "id", "name", "amount", "active" }, records, "query");
+		Struct rec, address;
+		for (int i = 0; i < records; i++) {
+			rec = new StructImpl(Struct.TYPE_LINKED);
+			rec.setEL("id", Integer.valueOf(i));
+			rec.setEL("name", "Susi Sorglos " + i);
+			rec.setEL("amount", Double.valueOf(i * 1.25));
+			rec.setEL("active", Boolean.valueOf(i % 2 == 0));
+			address = new StructImpl(Struct.TYPE_LINKED);
+			address.setEL("street", "Bahnhofstrasse " + i);
+			address.setEL("city", "Basel");
+			rec.setEL("address", address);
+			data.appendEL(rec);
+
+			qry.setAtEL("id", i + 1, Integer.valueOf(i));
+			qry.setAtEL("name", i + 1, "Susi Sorglos " + i);
+			qry.setAtEL("amount", i + 1, Double.valueOf(i * 1.25));
+			qry.setAtEL("active", i + 1, Boolean.valueOf(i % 2 == 0));
+		}
+		json = converter.serialize(null, data, SerializationSettings.SERIALIZE_AS_ROW);
+	}
+
+	@Benchmark
+	public String serializeArray() throws ConverterException {
+		return converter.serialize(null, data, SerializationSettings.SERIALIZE_AS_ROW);
+	}
+
+	@Benchmark
+	public String serializeQueryRow() throws ConverterException {
+		return converter.serialize(null, qry, SerializationSettings.SERIALIZE_AS_ROW);
+	}
+
+	@Benchmark
+	public String serializeQueryStruct() throws ConverterException {
+		return converter.serialize(null, qry, SerializationSettings.SERIALIZE_AS_STRUCT);
+	}
+
+	@Benchmark
+	public Object deserialize() throws PageException {
+		return parser.parse(json);
+	}
+}
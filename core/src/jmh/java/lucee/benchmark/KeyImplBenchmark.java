@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+
+/**
+ * creation, hashing and comparison of keys
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class KeyImplBenchmark {
+
+	private String str;
+	private String upper;
+	private Collection.Key key;
+	private Collection.Key other;
+
+	@Setup
+	public void setup() {
+		str = "lastModifiedDate";
+		upper = "LASTMODIFIEDDATE";
+		key = KeyImpl.init(str);
+		other = KeyImpl.init(upper);
+	}
+
+	@Benchmark
+	public Collection.Key init() {
+		return KeyImpl.init(str);
+	}
+
+	@Benchmark
+	public Collection.Key intern() {
+		return KeyImpl.intern(str);
+	}
+
+	@Benchmark
+	public int initAndHash() {
+		return KeyImpl.init(str).hashCode();
+	}
+
+	@Benchmark
+	public long hash() {
+		return key.hash();
+	}
+
+	@Benchmark
+	public boolean equalsIgnoreCase() {
+		return key.equalsIgnoreCase(other);
+	}
+
+	@Benchmark
+	public boolean equalsString() {
+		return key.equals(upper);
+	}
+}
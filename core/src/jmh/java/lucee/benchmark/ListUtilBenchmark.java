@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.annotations.Param;
+
+import lucee.runtime.exp.PageException;
+import lucee.runtime.type.Array;
+import lucee.runtime.type.util.ListUtil;
+
+/**
+ * the list functions used the most
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class ListUtilBenchmark {
+
+	@Param({ "10", "1000" })
+	public int size;
+
+	private String list;
+	private String last;
+	private String[] items;
+	private Array arr;
+
+	@Setup
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		items = new String[size];
+		for (int i = 0; i < size; i++) {
+			items[i] = "item" + i;
+			if (i > 0) sb.append(',');
+			sb.append(items[i]);
+		}
+		list = sb.toString();
+		last = "ITEM" + (size - 1);
+		arr = ListUtil.listToArray(list, ',');
+	}
+
+	@Benchmark
+	public Array listToArray() {
+		return ListUtil.listToArray(list, ",");
+	}
+
+	@Benchmark
+	public Array listToArrayChar() {
+		return ListUtil.listToArray(list, ',');
+	}
+
+	@Benchmark
+	public String[] listToStringArray() {
+		return ListUtil.listToStringArray(list, ',');
+	}
+
+	@Benchmark
+	public int listFindNoCase() {
+		return ListUtil.listFindNoCase(list, last, ",");
+	}
+
+	@Benchmark
+	public int len() {
+		return ListUtil.len(list, ',', true);
+	}
+
+	@Benchmark
+	public String arrayToList() throws PageException {
+		return ListUtil.arrayToList(arr, ",");
+	}
+
+	@Benchmark
+	public String stringArrayToList() {
+		return ListUtil.arrayToList(items, ",");
+	}
+}
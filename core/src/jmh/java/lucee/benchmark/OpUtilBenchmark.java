@@ -0,0 +1,85 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.exp.PageException;
+import lucee.runtime.op.OpUtil;
+
+/**
+ * comparison of values of the same and of different types, as done by the CFML operators (EQ, LT
+ * ...)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class OpUtilBenchmark {
+
+	private Object num1;
+	private Object num2;
+	private Object str1;
+	private Object str2;
+	private Object strNum;
+	private Object bool;
+
+	@Setup
+	public void setup() {
+		num1 = Double.valueOf(12.5);
+		num2 = Integer.valueOf(13);
+		str1 = "Susi Sorglos";
+		str2 = "susi sorglos";
+		strNum = "12.5";
+		bool = Boolean.TRUE;
+	}
+
+	@Benchmark
+	public int compareNumbers() throws PageException {
+		return OpUtil.compare(null, num1, num2);
+	}
+
+	@Benchmark
+	public int compareStrings() throws PageException {
+		return OpUtil.compare(null, str1, str2);
+	}
+
+	@Benchmark
+	public int compareNumericStringToNumber() throws PageException {
+		return OpUtil.compare(null, strNum, num1);
+	}
+
+	@Benchmark
+	public int compareBooleanToNumber() throws PageException {
+		return OpUtil.compare(null, bool, num2);
+	}
+}
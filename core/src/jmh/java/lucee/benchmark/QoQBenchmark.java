@@ -0,0 +1,99 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.PageContext;
+import lucee.runtime.db.QoQ;
+import lucee.runtime.db.SQL;
+import lucee.runtime.db.SQLImpl;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.Query;
+import lucee.runtime.type.QueryImpl;
+
+/**
+ * query of queries on a query with the given number of rows, the query is resolved by name from the
+ * PageContext, which is a mock that only knows that query
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class QoQBenchmark {
+
+	@Param({ "100", "10000" })
+	public int rows;
+
+	private PageContext pc;
+	private QoQ qoq;
+	private SQL filter;
+	private SQL groupBy;
+
+	@Setup
+	public void setup() throws PageException {
+		Collection.Key id = KeyImpl.init("id");
+		Collection.Key category = KeyImpl.init("category");
+		Collection.Key amount = KeyImpl.init("amount");
+		Query src = new QueryImpl(new Collection.Key[] { id, category, amount }, 0, "src");
+		Random random = new Random(4711);
+		int row;
+		for (int i = 0; i < rows; i++) {
+			row = src.addRow();
+			src.setAt(id, row, Integer.valueOf(i));
+			src.setAt(category, row, "category" + random.nextInt(20));
+			src.setAt(amount, row, Double.valueOf(random.nextInt(100000) / 100d));
+		}
+
+		pc = Mockito.mock(PageContext.class);
+		Mockito.when(pc.getVariable("src")).thenReturn(src);
+
+		qoq = new QoQ();
+		filter = new SQLImpl("select id, category, amount from src where amount > 500 order by category, amount desc");
+		groupBy = new SQLImpl("select category, count(*) as cnt, sum(amount) as total from src group by category order by total desc");
+	}
+
+	@Benchmark
+	public Query filterAndSort() throws PageException {
+		return qoq.execute(pc, filter, -1);
+	}
+
+	@Benchmark
+	public Query groupBy() throws PageException {
+		return qoq.execute(pc, groupBy, -1);
+	}
+}
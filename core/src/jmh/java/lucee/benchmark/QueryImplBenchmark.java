@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lucee.runtime.exp.PageException;
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.Query;
+import lucee.runtime.type.QueryImpl;
+
+/**
+ * filling and sorting queries
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class QueryImplBenchmark {
+
+	private static final Collection.Key ID = KeyImpl.init("id");
+	private static final Collection.Key NAME = KeyImpl.init("name");
+	private static final Collection.Key AMOUNT = KeyImpl.init("amount");
+
+	@Param({ "100", "10000" })
+	public int rows;
+
+	private String[] names;
+	private Double[] amounts;
+
+	@Setup
+	public void setup() {
+		// fixed seed, so every run sorts the same data
+		Random random = new Random(4711);
+		names = new String[rows];
+		amounts = new Double[rows];
+		for (int i = 0; i < rows; i++) {
+			names[i] = "name" + random.nextInt(rows);
+			amounts[i] = Double.valueOf(random.nextInt(100000) / 100d);
+		}
+	}
+
+	@Benchmark
+	public Query fill() throws PageException {
+		Query q = new QueryImpl(new Collection.Key[] { ID, NAME, AMOUNT }, 0, "query");
+		int row;
+		for (int i = 0; i < rows; i++) {
+			row = q.addRow();
+			q.setAt(ID, row, Integer.valueOf(i));
+			q.setAt(NAME, row, names[i]);
+			q.setAt(AMOUNT, row, amounts[i]);
+		}
+		return q;
+	}
+
+	@Benchmark
+	public Query sortString(Unsorted state) throws PageException {
+		state.qry.sort(NAME, Query.ORDER_ASC);
+		return state.qry;
+	}
+
+	@Benchmark
+	public Query sortNumber(Unsorted state) throws PageException {
+		state.qry.sort(AMOUNT, Query.ORDER_DESC);
+		return state.qry;
+	}
+
+	/**
+	 * sort changes the query, so every invocation gets a freshly filled one
+	 */
+	@State(Scope.Thread)
+	public static class Unsorted {
+		private Query qry;
+
+		@Setup(Level.Invocation)
+		public void setup(QueryImplBenchmark benchmark) throws PageException {
+			qry = benchmark.fill();
+		}
+	}
+}
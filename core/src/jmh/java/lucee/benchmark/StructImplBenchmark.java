@@ -0,0 +1,117 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.benchmark;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+
+/**
+ * get and set of structs of different size and type
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+@State(Scope.Thread)
+public class StructImplBenchmark {
+
+	@Param({ "8", "1024" })
+	public int size;
+
+	@Param({ "regular", "linked", "sync" })
+	public String type;
+
+	private Collection.Key[] keys;
+	private Struct sct;
+	private int index;
+
+	@Setup
+	public void setup() {
+		keys = new Collection.Key[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = KeyImpl.init("key" + i);
+		}
+		sct = create();
+		for (int i = 0; i < size; i++) {
+			sct.setEL(keys[i], Integer.valueOf(i));
+		}
+	}
+
+	private Struct create() {
+		if ("linked".equals(type)) return new StructImpl(Struct.TYPE_LINKED);
+		if ("sync".equals(type)) return new StructImpl(Struct.TYPE_SYNC);
+		return new StructImpl(Struct.TYPE_REGULAR);
+	}
+
+	private Collection.Key next() {
+		if (++index == size) index = 0;
+		return keys[index];
+	}
+
+	@Benchmark
+	public Object get() {
+		return sct.get(next(), null);
+	}
+
+	@Benchmark
+	public Object getMissing() {
+		return sct.get(KeyImpl.init("missing"), null);
+	}
+
+	@Benchmark
+	public Object set() {
+		return sct.setEL(next(), "value");
+	}
+
+	@Benchmark
+	public Struct fill() {
+		Struct s = create();
+		for (int i = 0; i < size; i++) {
+			s.setEL(keys[i], "value");
+		}
+		return s;
+	}
+
+	@Benchmark
+	public void iterate(Blackhole bh) {
+		Iterator<Object> it = sct.valueIterator();
+		while (it.hasNext()) {
+			bh.consume(it.next());
+		}
+	}
+}
@@ -20,6 +20,7 @@ package lucee.commons.collection;
 
 import java.util.Map;
 
+import lucee.commons.collection.concurrent.CompactConcurrentMap;
 import lucee.commons.collection.concurrent.ConcurrentHashMapNullSupport;
 
 public class MapFactory {
@@ -31,6 +32,17 @@ public class MapFactory {
 		return new ConcurrentHashMapNullSupport<K, V>(initialCapacity);
 	}
 
+	/**
+	 * concurrent map optimized for a small number of entries, switches to a regular concurrent map when
+	 * it grows
+	 * 
+	 * @param initialCapacity initial capacity of the regular concurrent map
+	 * @return map
+	 */
+	public static <K, V> Map<K, V> getCompactConcurrentMap(int initialCapacity) {
+		return new CompactConcurrentMap<K, V>(initialCapacity);
+	}
+
 	public static <K, V> Map<K, V> getConcurrentMap(Map<K, V> map) {
 		return new ConcurrentHashMapNullSupport<K, V>(map);
 	}
@@ -0,0 +1,490 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.commons.collection.concurrent;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import lucee.commons.collection.AbstractCollection;
+import lucee.commons.collection.AbstractSet;
+
+/**
+ * Thread safe map with null support for a small number of entries. As long as the map contains no
+ * more than {@link #MAX_COMPACT_SIZE} entries, keys and values are stored in a single flat array,
+ * looked up by a linear scan. Reads are lock free, writes take the lock of the map. The value of an
+ * existing key is replaced and a new key is appended in place, the array is only copied when it has
+ * to grow (2, 4 and 8 entries) or an entry is removed, so a map with a few entries costs only a few
+ * bytes. When the map grows beyond that size, it switches once and for all to a
+ * {@link ConcurrentHashMapNullSupport}.
+ *
+ * Like the iterators of the concurrent map, the iterators are weakly consistent and never throw a
+ * ConcurrentModificationException. The compact map iterates in insertion order, after the switch the
+ * order is the one of the concurrent map. The map is used for the regular struct, that never
+ * guaranteed an order (the order of the concurrent map also changes when it is resized), the linked
+ * struct is the one keeping the insertion order.
+ */
+public class CompactConcurrentMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+	private static final long serialVersionUID = -3806325766574522637L;
+
+	public static final int MAX_COMPACT_SIZE = 8;
+	private static final int MIN_COMPACT_SIZE = 2;
+
+	private static final Table EMPTY = new Table(new Object[0], 0);
+	private static final Object NOT_FOUND = new Object();
+
+	/*
+	 * either a Table or the ConcurrentHashMapNullSupport the map was promoted to
+	 */
+	private volatile Object state = EMPTY;
+	private final int initialCapacity;
+
+	/**
+	 * @param initialCapacity initial capacity used for the concurrent map, once the map gets promoted
+	 */
+	public CompactConcurrentMap(int initialCapacity) {
+		this.initialCapacity = initialCapacity;
+	}
+
+	public CompactConcurrentMap() {
+		this(ConcurrentHashMapNullSupport.DEFAULT_INITIAL_CAPACITY);
+	}
+
+	/**
+	 * @return true if the map has switched to the concurrent map
+	 */
+	public boolean isPromoted() {
+		return state instanceof Map;
+	}
+
+	@Override
+	public int size() {
+		Object s = state;
+		if (s instanceof Map) return ((Map) s).size();
+		return ((Table) s).size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	@Override
+	public V get(Object key) {
+		Object s = state;
+		if (s instanceof Map) return ((Map<K, V>) s).get(key);
+		Object v = ((Table) s).get(key);
+		return v == NOT_FOUND ? null : (V) v;
+	}
+
+	@Override
+	public V getOrDefault(Object key, V defaultValue) {
+		Object s = state;
+		if (s instanceof Map) return ((Map<K, V>) s).getOrDefault(key, defaultValue);
+		Object v = ((Table) s).get(key);
+		return v == NOT_FOUND ? defaultValue : (V) v;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		Object s = state;
+		if (s instanceof Map) return ((Map) s).containsKey(key);
+		return ((Table) s).get(key) != NOT_FOUND;
+	}
+
+	@Override
+	public boolean containsValue(Object value) {
+		Object s = state;
+		if (s instanceof Map) return ((Map) s).containsValue(value);
+		Table t = (Table) s;
+		int len = t.size << 1;
+		Object[] arr = t.arr;
+		Object v;
+		for (int i = 1; i < len; i += 2) {
+			v = arr[i];
+			if (value == null ? v == null : value.equals(v)) return true;
+		}
+		return false;
+	}
+
+	@Override
+	public V put(K key, V value) {
+		Object s = state;
+		if (s instanceof Map) return ((Map<K, V>) s).put(key, value);
+		synchronized (this) {
+			s = state;
+			if (s instanceof Map) return ((Map<K, V>) s).put(key, value);
+			Table t = (Table) s;
+			Object[] arr = t.arr;
+			int size = t.size;
+			int index = t.indexOf(key);
+			// existing key
+			if (index != -1) {
+				Object old = arr[index + 1];
+				arr[index + 1] = value;
+				t.publish(size);
+				return (V) old;
+			}
+			// promote
+			if (size >= MAX_COMPACT_SIZE) {
+				Map<K, V> map = new ConcurrentHashMapNullSupport<K, V>(Math.max(initialCapacity, MAX_COMPACT_SIZE * 2));
+				for (int i = 0; i < size << 1; i += 2) {
+					map.put((K) arr[i], (V) arr[i + 1]);
+				}
+				map.put(key, value);
+				state = map;
+				return null;
+			}
+			// new key, grow if necessary
+			if ((size << 1) == arr.length) {
+				Object[] tmp = new Object[Math.min(MAX_COMPACT_SIZE, Math.max(MIN_COMPACT_SIZE, size << 1)) << 1];
+				System.arraycopy(arr, 0, tmp, 0, size << 1);
+				tmp[size << 1] = key;
+				tmp[(size << 1) + 1] = value;
+				state = new Table(tmp, size + 1);
+				return null;
+			}
+			arr[size << 1] = key;
+			arr[(size << 1) + 1] = value;
+			t.publish(size + 1);
+			return null;
+		}
+	}
+
+	@Override
+	public V putIfAbsent(K key, V value) {
+		Object s = state;
+		if (s instanceof Map) return ((Map<K, V>) s).putIfAbsent(key, value);
+		synchronized (this) {
+			s = state;
+			// promoted in the meantime, writers of the map do not take this lock
+			if (s instanceof Map) return ((Map<K, V>) s).putIfAbsent(key, value);
+			Object v = ((Table) s).get(key);
+			if (v != NOT_FOUND) return (V) v;
+			return put(key, value);
+		}
+	}
+
+	@Override
+	public V remove(Object key) {
+		Object s = state;
+		if (s instanceof Map) return ((Map<K, V>) s).remove(key);
+		synchronized (this) {
+			s = state;
+			if (s instanceof Map) return ((Map<K, V>) s).remove(key);
+			Table t = (Table) s;
+			int index = t.indexOf(key);
+			if (index == -1) return null;
+			// copy, so readers and iterators of the current table do not miss an other entry
+			int len = t.size << 1;
+			Object[] tmp = new Object[t.arr.length];
+			System.arraycopy(t.arr, 0, tmp, 0, index);
+			System.arraycopy(t.arr, index + 2, tmp, index, len - index - 2);
+			state = len == 2 ? EMPTY : new Table(tmp, t.size - 1);
+			return (V) t.arr[index + 1];
+		}
+	}
+
+	@Override
+	public void clear() {
+		Object s = state;
+		if (s instanceof Map) {
+			((Map) s).clear();
+			return;
+		}
+		synchronized (this) {
+			s = state;
+			if (s instanceof Map) ((Map) s).clear();
+			else state = EMPTY;
+		}
+	}
+
+	@Override
+	public Set<K> keySet() {
+		return new KeySet();
+	}
+
+	@Override
+	public java.util.Collection<V> values() {
+		return new Values();
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new EntrySet();
+	}
+
+	private Object _get(Object key) {
+		Object s = state;
+		if (s instanceof Map) {
+			Map<K, V> map = (Map<K, V>) s;
+			Object v = map.getOrDefault(key, (V) NOT_FOUND);
+			return v;
+		}
+		return ((Table) s).get(key);
+	}
+
+	/**
+	 * keys and values of the compact map [key0,value0,key1,value1,...]. The array is written in place
+	 * while holding the lock of the map, every write is followed by writing the volatile size, readers
+	 * read the size first.
+	 */
+	private static final class Table implements Serializable {
+
+		private static final long serialVersionUID = 4471925404364306853L;
+
+		private final Object[] arr;
+		private volatile int size;
+
+		private Table(Object[] arr, int size) {
+			this.arr = arr;
+			this.size = size;
+		}
+
+		private void publish(int size) {
+			this.size = size;
+		}
+
+		private Object get(Object key) {
+			int len = size << 1;
+			Object[] arr = this.arr;
+			Object k;
+			for (int i = 0; i < len; i += 2) {
+				k = arr[i];
+				if (k == key || (key != null && key.equals(k))) return arr[i + 1];
+			}
+			return NOT_FOUND;
+		}
+
+		// only called while holding the lock
+		private int indexOf(Object key) {
+			int len = size << 1;
+			Object k;
+			for (int i = 0; i < len; i += 2) {
+				k = arr[i];
+				if (k == key || (key != null && key.equals(k))) return i;
+			}
+			return -1;
+		}
+	}
+
+	/**
+	 * iterates the entries a table had when the iterator was created (entries appended later are not
+	 * seen, updated values can be), modifications done with the iterator are written through to the
+	 * map.
+	 */
+	abstract class TableIterator {
+		private final Object[] arr;
+		private final int len;
+		private int index = 0;
+		private int last = -1;
+
+		TableIterator(Table t) {
+			this.len = t.size << 1;
+			this.arr = t.arr;
+		}
+
+		public boolean hasNext() {
+			return index < len;
+		}
+
+		final int nextIndex() {
+			if (index >= len) throw new NoSuchElementException();
+			last = index;
+			index += 2;
+			return last;
+		}
+
+		final K key(int i) {
+			return (K) arr[i];
+		}
+
+		final V value(int i) {
+			return (V) arr[i + 1];
+		}
+
+		public void remove() {
+			if (last == -1) throw new IllegalStateException();
+			CompactConcurrentMap.this.remove(arr[last]);
+			last = -1;
+		}
+	}
+
+	final class KeyIterator extends TableIterator implements Iterator<K> {
+		KeyIterator(Table t) {
+			super(t);
+		}
+
+		@Override
+		public K next() {
+			return key(nextIndex());
+		}
+	}
+
+	final class ValueIterator extends TableIterator implements Iterator<V> {
+		ValueIterator(Table t) {
+			super(t);
+		}
+
+		@Override
+		public V next() {
+			return value(nextIndex());
+		}
+	}
+
+	final class EntryIterator extends TableIterator implements Iterator<Map.Entry<K, V>> {
+		EntryIterator(Table t) {
+			super(t);
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			int i = nextIndex();
+			return new WriteThroughEntry(key(i), value(i));
+		}
+	}
+
+	/**
+	 * Entry that relays setValue changes to the underlying map.
+	 */
+	final class WriteThroughEntry extends AbstractMap.SimpleEntry<K, V> {
+
+		private static final long serialVersionUID = -2373950520155046573L;
+
+		WriteThroughEntry(K k, V v) {
+			super(k, v);
+		}
+
+		@Override
+		public V setValue(V value) {
+			V v = super.setValue(value);
+			CompactConcurrentMap.this.put(getKey(), value);
+			return v;
+		}
+	}
+
+	final class KeySet extends AbstractSet<K> {
+		@Override
+		public Iterator<K> iterator() {
+			Object s = state;
+			if (s instanceof Map) return ((Map<K, V>) s).keySet().iterator();
+			return new KeyIterator((Table) s);
+		}
+
+		@Override
+		public int size() {
+			return CompactConcurrentMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return CompactConcurrentMap.this.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return CompactConcurrentMap.this.containsKey(o);
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!CompactConcurrentMap.this.containsKey(o)) return false;
+			CompactConcurrentMap.this.remove(o);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			CompactConcurrentMap.this.clear();
+		}
+	}
+
+	final class Values extends AbstractCollection<V> {
+		@Override
+		public Iterator<V> iterator() {
+			Object s = state;
+			if (s instanceof Map) return ((Map<K, V>) s).values().iterator();
+			return new ValueIterator((Table) s);
+		}
+
+		@Override
+		public int size() {
+			return CompactConcurrentMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return CompactConcurrentMap.this.isEmpty();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return CompactConcurrentMap.this.containsValue(o);
+		}
+
+		@Override
+		public void clear() {
+			CompactConcurrentMap.this.clear();
+		}
+	}
+
+	final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+		@Override
+		public Iterator<Map.Entry<K, V>> iterator() {
+			Object s = state;
+			if (s instanceof Map) return ((Map<K, V>) s).entrySet().iterator();
+			return new EntryIterator((Table) s);
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			if (!(o instanceof Map.Entry)) return false;
+			Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+			Object v = _get(e.getKey());
+			if (v == NOT_FOUND) return false;
+			return v == null ? e.getValue() == null : v.equals(e.getValue());
+		}
+
+		@Override
+		public boolean remove(Object o) {
+			if (!contains(o)) return false;
+			CompactConcurrentMap.this.remove(((Map.Entry<?, ?>) o).getKey());
+			return true;
+		}
+
+		@Override
+		public int size() {
+			return CompactConcurrentMap.this.size();
+		}
+
+		@Override
+		public boolean isEmpty() {
+			return CompactConcurrentMap.this.isEmpty();
+		}
+
+		@Override
+		public void clear() {
+			CompactConcurrentMap.this.clear();
+		}
+	}
+}
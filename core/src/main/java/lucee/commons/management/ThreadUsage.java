@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.commons.management;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import lucee.commons.io.SystemUtil;
+import lucee.runtime.op.Caster;
+
+/**
+ * measures the cpu time and the bytes allocated by a thread between {@link #start()} and
+ * {@link #end()}. A thread is only measured once at a time, when a thread that is already measured
+ * starts a new measurement (for example a parallel closure executed by the calling thread),
+ * {@link #start()} returns null, so nothing gets counted twice.
+ *
+ * The measuring can be disabled with the system property/environment variable
+ * "lucee.request.accounting".
+ */
+public final class ThreadUsage {
+
+	private static final ThreadMXBean BEAN;
+	private static final com.sun.management.ThreadMXBean SUN_BEAN;
+	private static final boolean CPU;
+	private static final boolean ALLOCATION;
+	private static final ThreadLocal<ThreadUsage> current = new ThreadLocal<ThreadUsage>();
+
+	static {
+		boolean enabled = Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.request.accounting", null), true);
+		ThreadMXBean bean = null;
+		com.sun.management.ThreadMXBean sunBean = null;
+		boolean cpu = false, allocation = false;
+		if (enabled) {
+			try {
+				bean = ManagementFactory.getThreadMXBean();
+				cpu = bean.isCurrentThreadCpuTimeSupported() && bean.isThreadCpuTimeEnabled();
+				// only supported by HotSpot based JVMs
+				if (bean instanceof com.sun.management.ThreadMXBean) {
+					sunBean = (com.sun.management.ThreadMXBean) bean;
+					allocation = sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled();
+				}
+			}
+			catch (Throwable t) {
+				cpu = false;
+				allocation = false;
+			}
+		}
+		BEAN = bean;
+		SUN_BEAN = sunBean;
+		CPU = cpu;
+		ALLOCATION = allocation;
+	}
+
+	private final long threadId;
+	private final long cpuStart;
+	private final long allocationStart;
+	private long cpuTime;
+	private long allocatedBytes;
+	private volatile boolean ended;
+
+	private ThreadUsage(Thread thread) {
+		this.threadId = thread.getId();
+		this.cpuStart = CPU ? BEAN.getThreadCpuTime(threadId) : 0;
+		this.allocationStart = ALLOCATION ? SUN_BEAN.getThreadAllocatedBytes(threadId) : 0;
+	}
+
+	/**
+	 * @return true if the cpu time of a thread can be measured
+	 */
+	public static boolean isCpuTimeSupported() {
+		return CPU;
+	}
+
+	/**
+	 * @return true if the bytes allocated by a thread can be measured
+	 */
+	public static boolean isAllocationSupported() {
+		return ALLOCATION;
+	}
+
+	/**
+	 * starts a measurement for the current thread
+	 * 
+	 * @return the measurement or null if measuring is not supported or the current thread is already
+	 *         measured
+	 */
+	public static ThreadUsage start() {
+		if (!CPU && !ALLOCATION) return null;
+		ThreadUsage running = current.get();
+		// a measurement ended by an other thread is still bound to this thread
+		if (running != null && !running.ended) return null;
+		ThreadUsage usage = new ThreadUsage(Thread.currentThread());
+		current.set(usage);
+		return usage;
+	}
+
+	/**
+	 * ends the measurement, the thread that started the measurement is free to start a new one
+	 * afterwards. can be called from any thread and more than once, only the first call counts.
+	 */
+	public void end() {
+		synchronized (this) {
+			if (ended) return;
+			cpuTime = cpu();
+			allocatedBytes = allocated();
+			ended = true;
+		}
+		if (Thread.currentThread().getId() == threadId && current.get() == this) current.remove();
+	}
+
+	/**
+	 * @return the cpu time in nanoseconds used so far or used until the measurement ended
+	 */
+	public long getCpuTime() {
+		synchronized (this) {
+			return ended ? cpuTime : cpu();
+		}
+	}
+
+	/**
+	 * @return the bytes allocated so far or allocated until the measurement ended
+	 */
+	public long getAllocatedBytes() {
+		synchronized (this) {
+			return ended ? allocatedBytes : allocated();
+		}
+	}
+
+	private long cpu() {
+		if (!CPU) return 0;
+		long t = BEAN.getThreadCpuTime(threadId);
+		return t < cpuStart ? 0 : t - cpuStart; // -1 when the thread is no longer alive
+	}
+
+	private long allocated() {
+		if (!ALLOCATION) return 0;
+		long b = SUN_BEAN.getThreadAllocatedBytes(threadId);
+		return b < allocationStart ? 0 : b - allocationStart;
+	}
+}
@@ -541,6 +541,8 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 			data.setEL("startTime", new DateTimeImpl(pc.getStartTime(), false));
 			data.setEL("endTime", new DateTimeImpl(pc.getStartTime() + pc.getRequestTimeout(), false));
 			data.setEL(KeyConstants._timeout, Double.valueOf(pc.getRequestTimeout()));
+			data.setEL("cpuTime", Caster.toDouble(pc.getCpuTime()));
+			data.setEL("allocatedBytes", Caster.toDouble(pc.getAllocatedBytes()));
 
 			// thread
 			sctThread.setEL(KeyConstants._name, thread.getName());
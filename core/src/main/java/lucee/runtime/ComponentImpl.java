@@ -61,6 +61,7 @@ import lucee.runtime.component.ImportDefintion;
 import lucee.runtime.component.Member;
 import lucee.runtime.component.Property;
 import lucee.runtime.component.StaticStruct;
+import lucee.runtime.component.UDFTable;
 import lucee.runtime.config.Config;
 import lucee.runtime.config.ConfigPro;
 import lucee.runtime.config.ConfigWeb;
@@ -238,14 +239,14 @@ public final class ComponentImpl extends StructSupport implements Externalizable
 				trg.base = base._duplicate(deepCopy, false);
 
 				trg._data = trg.base._data;
-				trg._udfs = duplicateUTFMap(this, trg, _udfs, new HashMap<Key, UDF>(trg.base._udfs));
+				trg._udfs = duplicateUTFMap(this, trg, _udfs, new UDFTable(trg.base._udfs));
 
 				if (useShadow) trg.scope = new ComponentScopeShadow(trg, (ComponentScopeShadow) trg.base.scope, false);
 			}
 			else {
 				// clone data member, ignore udfs for the moment
 				trg._data = duplicateDataMember(trg, _data, new HashMap<Key, Member>(), deepCopy);
-				trg._udfs = duplicateUTFMap(this, trg, _udfs, new HashMap<Key, UDF>());
+				trg._udfs = duplicateUTFMap(this, trg, _udfs, new UDFTable());
 
 				if (useShadow) {
 					ComponentScopeShadow css = (ComponentScopeShadow) scope;
@@ -379,7 +380,8 @@ public final class ComponentImpl extends StructSupport implements Externalizable
 			// this._triggerDataMember=base._triggerDataMember;
 			this.absFin = base.absFin;
 			_data = base._data;
-			_udfs = new HashMap<Key, UDF>(base._udfs);
+			// shares the functions of the base instead of copying them
+			_udfs = new UDFTable(base._udfs);
 			setTop(this, base);
 		}
 		else {
@@ -388,7 +390,7 @@ public final class ComponentImpl extends StructSupport implements Externalizable
 			this._static = new StaticScope(null, this, componentPage, dataMemberDefaultAccess);
 			// TODO get per CFC setting
 			// this._triggerDataMember=pageContext.getConfig().getTriggerComponentDataMember();
-			_udfs = new HashMap<Key, UDF>();
+			_udfs = new UDFTable();
 			_data = MapFactory.getConcurrentMap();
 		}
 		// implements
@@ -32,6 +32,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import lucee.commons.io.CharsetUtil;
 import lucee.commons.io.IOUtil;
+import lucee.commons.io.log.Log;
+import lucee.commons.io.log.LogUtil;
 import lucee.commons.io.res.Resource;
 import lucee.commons.io.res.util.ResourceUtil;
 import lucee.commons.lang.CFTypes;
@@ -790,7 +792,16 @@ public abstract class ComponentPageImpl extends ComponentPage implements PagePro
 				prefix = pc.getApplicationContext().getSecureJsonPrefix();
 				if (prefix == null) prefix = "";
 			}
-			pc.forceWrite(prefix + converter.serialize(pc, rtn, qf));
+			// write directly to the output, so the result is never held as a whole in memory
+			try {
+				if (prefix.length() > 0) pc.forceWrite(prefix);
+				converter.serialize(pc, rtn, qf, pc.getOut());
+			}
+			catch (ConverterException | IOException | RuntimeException e) {
+				// the error is written instead, not after half a document
+				resetOutput(pc);
+				throw e;
+			}
 		}
 		// CFML
 		else if (UDF.RETURN_FORMAT_SERIALIZE == props.format) {
@@ -815,6 +826,17 @@ public abstract class ComponentPageImpl extends ComponentPage implements PagePro
 		else throw new IOException("invalid return format defintion:" + props.format);
 	}
 
+	private static void resetOutput(PageContext pc) {
+		try {
+			pc.getOut().clear();
+		}
+		catch (IOException ioe) {
+			// the buffer was already flushed to the client (response larger than the buffer), the data
+			// written cannot be withdrawn anymore
+			LogUtil.log(pc, Log.LEVEL_WARN, ComponentPageImpl.class.getName(), "the result could not be serialized as JSON, the part already sent to the client cannot be withdrawn");
+		}
+	}
+
 	public static Struct translate(Component c, String strMethodName, Struct params) {
 		Collection.Key methodName = KeyImpl.init(strMethodName);
 		Key[] keys = CollectionUtil.keys(params);
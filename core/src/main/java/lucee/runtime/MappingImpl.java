@@ -104,6 +104,8 @@ public final class MappingImpl implements Mapping {
 	private boolean checkPhysicalFromWebroot;
 	private boolean checkArchiveFromWebroot;
 
+	private volatile boolean watched;
+
 	public MappingImpl(Config config, String virtual, String strPhysical, String strArchive, short inspect, boolean physicalFirst, boolean hidden, boolean readonly,
 			boolean topLevel, boolean appMapping, boolean ignoreVirtual, ApplicationListener appListener, int listenerMode, int listenerType) {
 		this(config, virtual, strPhysical, strArchive, inspect, physicalFirst, hidden, readonly, topLevel, appMapping, ignoreVirtual, appListener, listenerMode, listenerType, true,
@@ -494,7 +496,9 @@ public final class MappingImpl implements Mapping {
 	@Override
 	@Deprecated
 	public boolean isTrusted() {
-		return getInspectTemplate() == Config.INSPECT_NEVER;
+		// same as PageContextImpl.isTrusted, with "watch" changes are reported by the file watcher
+		short it = getInspectTemplate();
+		return it == Config.INSPECT_NEVER || it == ConfigPro.INSPECT_WATCH;
 	}
 
 	@Override
@@ -600,6 +604,32 @@ public final class MappingImpl implements Mapping {
 		}
 	}
 
+	/**
+	 * registers the physical directory of this mapping with the TemplateWatcher (only done once)
+	 */
+	public void watch() {
+		if (watched) return;
+		watched = true;
+		TemplateWatcher.getInstance().register(this);
+	}
+
+	/**
+	 * unloads the page of the given template (if loaded), so it is checked for changes with the next
+	 * request.
+	 * 
+	 * @param realPath path of the template relative to the physical directory of the mapping
+	 * @return true if the template was loaded
+	 */
+	public boolean invalidate(String realPath) {
+		PageSourceImpl ps;
+		synchronized (pageSourcePool) {
+			ps = (PageSourceImpl) pageSourcePool.getPageSource(realPath, false);
+		}
+		if (ps == null || !ps.isLoad()) return false;
+		ps.clear();
+		return true;
+	}
+
 	public SerMapping toSerMapping() {
 		return new SerMapping("application", getVirtualLowerCase(), getStrPhysical(), getStrArchive(), isPhysicalFirst(), ignoreVirtual());
 	}
@@ -37,6 +37,8 @@ import java.util.Set;
 import java.util.Stack;
 import java.util.TimeZone;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.el.ELContext;
 import javax.servlet.Servlet;
@@ -79,6 +81,7 @@ import lucee.commons.lang.types.RefBoolean;
 import lucee.commons.lang.types.RefBooleanImpl;
 import lucee.commons.lock.KeyLock;
 import lucee.commons.lock.Lock;
+import lucee.commons.management.ThreadUsage;
 import lucee.commons.net.HTTPUtil;
 import lucee.intergral.fusiondebug.server.FDSignal;
 import lucee.loader.engine.CFMLEngine;
@@ -90,6 +93,7 @@ import lucee.runtime.cache.tag.CacheHandlerPro;
 import lucee.runtime.cache.tag.CacheItem;
 import lucee.runtime.cache.tag.include.IncludeCacheItem;
 import lucee.runtime.component.ComponentLoader;
+import lucee.runtime.concurrency.ParallelExecutor;
 import lucee.runtime.config.Config;
 import lucee.runtime.config.ConfigPro;
 import lucee.runtime.config.ConfigWeb;
@@ -320,6 +324,11 @@ public final class PageContextImpl extends PageContext {
 	private long startTimeNS;
 	private long endTimeNS;
 
+	// cpu time and allocated bytes of the request, including the child threads
+	private ThreadUsage usage;
+	private final AtomicLong cpuTime = new AtomicLong();
+	private final AtomicLong allocatedBytes = new AtomicLong();
+
 	private DatasourceManagerImpl manager;
 	private CFThread threads;
 	private Map<Key, Threads> allThreads;
@@ -328,6 +337,7 @@ public final class PageContextImpl extends PageContext {
 	private PageSource caller = null;
 	private PageSource callerTemplate = null;
 	private PageContextImpl root = null;
+	private volatile ExecutorService parallelExecutor;
 
 	private List<String> parentTags;
 	private Queue<PageContext> children = null;
@@ -455,6 +465,9 @@ public final class PageContextImpl extends PageContext {
 		startTimeNS = System.nanoTime();
 		endTimeNS = 0;
 		thread = Thread.currentThread();
+		usage = null;
+		cpuTime.set(0);
+		allocatedBytes.set(0);
 
 		if (req instanceof HTTPServletRequestWrap) this.req = (HTTPServletRequestWrap) req;
 		else this.req = new HTTPServletRequestWrap(req);
@@ -592,6 +605,7 @@ public final class PageContextImpl extends PageContext {
 
 	@Override
 	public void release() {
+		endUsage();
 		config.releaseCacheHandlers(this);
 
 		if (config.getExecutionLogEnabled() && execLog != null) {
@@ -614,6 +628,7 @@ public final class PageContextImpl extends PageContext {
 		caller = null;
 		callerTemplate = null;
 		root = null;
+		parallelExecutor = null;
 		// Attention have to be before close
 		if (client != null) {
 			client.touchAfterRequest(this);
@@ -2352,6 +2367,7 @@ public final class PageContextImpl extends PageContext {
 			if (throwExcpetion) throw pe;
 		}
 		finally {
+			endUsage();
 			if (enablecfoutputonly > 0) {
 				setCFOutputOnly((short) 0);
 			}
@@ -2452,6 +2468,7 @@ public final class PageContextImpl extends PageContext {
 		}
 		finally {
 			endTimeNS = System.nanoTime();
+			endUsage();
 			if (enablecfoutputonly > 0) {
 				setCFOutputOnly((short) 0);
 			}
@@ -2471,6 +2488,7 @@ public final class PageContextImpl extends PageContext {
 	}
 
 	private void initallog() {
+		startUsage();
 		if (!isGatewayContext() && config.isMonitoringEnabled()) {
 			RequestMonitor[] monitors = config.getRequestMonitors();
 			if (monitors != null) for (int i = 0; i < monitors.length; i++) {
@@ -3154,6 +3172,51 @@ public final class PageContextImpl extends PageContext {
 		this.endTimeNS = endTimeNS;
 	}
 
+	private void startUsage() {
+		if (usage == null) usage = ThreadUsage.start();
+	}
+
+	private void endUsage() {
+		ThreadUsage u = usage;
+		if (u != null) {
+			usage = null;
+			u.end();
+			addUsage(u.getCpuTime(), u.getAllocatedBytes());
+		}
+	}
+
+	/**
+	 * adds cpu time and allocated bytes used for this request outside the thread executing the
+	 * request, for example by a child thread
+	 * 
+	 * @param cpuTime cpu time in nanoseconds
+	 * @param allocatedBytes allocated bytes
+	 */
+	public void addUsage(long cpuTime, long allocatedBytes) {
+		if (cpuTime > 0) this.cpuTime.addAndGet(cpuTime);
+		if (allocatedBytes > 0) this.allocatedBytes.addAndGet(allocatedBytes);
+	}
+
+	/**
+	 * @return cpu time in nanoseconds used by the request so far, including the child threads, or -1 if
+	 *         the JVM does not support measuring the cpu time
+	 */
+	public long getCpuTime() {
+		if (!ThreadUsage.isCpuTimeSupported()) return -1;
+		ThreadUsage u = usage;
+		return cpuTime.get() + (u == null ? 0 : u.getCpuTime());
+	}
+
+	/**
+	 * @return bytes allocated by the request so far, including the child threads, or -1 if the JVM
+	 *         does not support measuring allocations
+	 */
+	public long getAllocatedBytes() {
+		if (!ThreadUsage.isAllocationSupported()) return -1;
+		ThreadUsage u = usage;
+		return allocatedBytes.get() + (u == null ? 0 : u.getAllocatedBytes());
+	}
+
 	@Override
 	public Thread getThread() {
 		return thread;
@@ -3270,6 +3333,24 @@ public final class PageContextImpl extends PageContext {
 		return root;
 	}
 
+	/**
+	 * executor limiting the threads used by all parallel closure functions of this request, shared
+	 * with the child page contexts
+	 * 
+	 * @return executor
+	 */
+	public ExecutorService getParallelExecutor() {
+		if (root != null && root != this) return root.getParallelExecutor();
+		ExecutorService es = parallelExecutor;
+		if (es == null) {
+			synchronized (this) {
+				if (parallelExecutor == null) parallelExecutor = ParallelExecutor.newRequestExecutor();
+				es = parallelExecutor;
+			}
+		}
+		return es;
+	}
+
 	public Queue<PageContext> getChildPageContexts() {
 		return children;
 	}
@@ -3392,7 +3473,7 @@ public final class PageContextImpl extends PageContext {
 		if (page == null) return false;
 
 		short it = ((MappingImpl) page.getPageSource().getMapping()).getInspectTemplate();
-		if (it == ConfigPro.INSPECT_NEVER) return true;
+		if (it == ConfigPro.INSPECT_NEVER || it == ConfigPro.INSPECT_WATCH) return true;
 		if (it == ConfigPro.INSPECT_ALWAYS) return false;
 
 		return pagesUsed.contains("" + page.hashCode());
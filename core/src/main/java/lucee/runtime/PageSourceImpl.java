@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import lucee.commons.io.IOUtil;
 import lucee.commons.io.log.Log;
@@ -87,13 +88,19 @@ public final class PageSourceImpl implements PageSource {
 	private RefIntegerSync accessCount = new RefIntegerSync();
 	private boolean flush = false;
 
+	// serializes the loading/compilation of the page, a page already loaded is returned without locking
+	private final ReentrantLock lock = new ReentrantLock();
+	private volatile long lockedLoads;
+	private volatile long contendedLoads;
+	private volatile long contendedWaitNanos;
+
 	private PageSourceImpl() {
 		mapping = null;
 		relPath = null;
 	}
 
 	private static class PageAndClassName {
-		private Page page;
+		private volatile Page page;
 		private String className;
 
 		public void reset() {
@@ -206,8 +213,48 @@ public final class PageSourceImpl implements PageSource {
 		return new PageSourceImpl(mapping, GetDirectoryFromPath.invoke(relPath));
 	}
 
+	/**
+	 * returns the loaded page without locking, if the page does not need any further check (the
+	 * template is trusted or the page comes from an archive), otherwise null.
+	 */
+	private Page getLoadedPage(PageContext pc, boolean forceReload) {
+		if (forceReload) return null;
+		Page page = pcn.page;
+		if (page == null) return null;
+		byte loadType = page.getLoadType();
+		if (mapping.isPhysicalFirst() || !mapping.hasArchive()) {
+			if (loadType == LOAD_PHYSICAL && mapping.hasPhysical()
+					&& (mapping.getInspectTemplate() == Config.INSPECT_NEVER || ((PageContextImpl) pc).isTrusted(page)))
+				return page;
+		}
+		else if (loadType == LOAD_ARCHIVE) return page;
+		return null;
+	}
+
+	private void lock() {
+		if (!lock.tryLock()) {
+			long start = System.nanoTime();
+			lock.lock();
+			contendedLoads++;
+			contendedWaitNanos += System.nanoTime() - start;
+		}
+		lockedLoads++;
+	}
+
 	@Override
-	public synchronized Page loadPage(PageContext pc, boolean forceReload) throws PageException {
+	public Page loadPage(PageContext pc, boolean forceReload) throws PageException {
+		Page page = getLoadedPage(pc, forceReload);
+		if (page != null) return page;
+		lock();
+		try {
+			return _loadPage(pc, forceReload);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private Page _loadPage(PageContext pc, boolean forceReload) throws PageException {
 		if (forceReload) pcn.reset();
 
 		Page page = pcn.page;
@@ -226,7 +273,19 @@ public final class PageSourceImpl implements PageSource {
 	}
 
 	@Override
-	public synchronized Page loadPageThrowTemplateException(PageContext pc, boolean forceReload, Page defaultValue) throws TemplateException {
+	public Page loadPageThrowTemplateException(PageContext pc, boolean forceReload, Page defaultValue) throws TemplateException {
+		Page page = getLoadedPage(pc, forceReload);
+		if (page != null) return page;
+		lock();
+		try {
+			return _loadPageThrowTemplateException(pc, forceReload, defaultValue);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private Page _loadPageThrowTemplateException(PageContext pc, boolean forceReload, Page defaultValue) throws TemplateException {
 		if (forceReload) pcn.reset();
 
 		Page page = pcn.page;
@@ -244,7 +303,19 @@ public final class PageSourceImpl implements PageSource {
 	}
 
 	@Override
-	public synchronized Page loadPage(PageContext pc, boolean forceReload, Page defaultValue) {
+	public Page loadPage(PageContext pc, boolean forceReload, Page defaultValue) {
+		Page page = getLoadedPage(pc, forceReload);
+		if (page != null) return page;
+		lock();
+		try {
+			return _loadPage(pc, forceReload, defaultValue);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private Page _loadPage(PageContext pc, boolean forceReload, Page defaultValue) {
 		if (forceReload) pcn.reset();
 
 		Page page = pcn.page;
@@ -302,6 +373,7 @@ public final class PageSourceImpl implements PageSource {
 		ConfigWeb config = pc.getConfig();
 		PageContextImpl pci = (PageContextImpl) pc;
 		if ((mapping.getInspectTemplate() == Config.INSPECT_NEVER || pci.isTrusted(page)) && isLoad(LOAD_PHYSICAL)) return page;
+		if (mapping.getInspectTemplate() == ConfigPro.INSPECT_WATCH) mapping.watch();
 		Resource srcFile = getPhyscalFile();
 
 		long srcLastModified = srcFile.lastModified();
@@ -927,6 +999,28 @@ public final class PageSourceImpl implements PageSource {
 		return accessCount.toInt();
 	}
 
+	/**
+	 * @return number of loads that had to acquire the lock of this template (the page was not loaded
+	 *         yet, needed to be checked for changes or was compiled)
+	 */
+	public long getLockedLoadCount() {
+		return lockedLoads;
+	}
+
+	/**
+	 * @return number of loads that had to wait for an other thread holding the lock of this template
+	 */
+	public long getContendedLoadCount() {
+		return contendedLoads;
+	}
+
+	/**
+	 * @return time in milliseconds threads have waited for the lock of this template
+	 */
+	public long getContendedWaitTime() {
+		return contendedWaitNanos / 1000000L;
+	}
+
 	@Override
 	public Resource getResource() {
 		Resource p = getPhyscalFile();
@@ -1065,7 +1159,8 @@ public final class PageSourceImpl implements PageSource {
 
 	@Override
 	public boolean executable() {
-		return (getMapping().getInspectTemplate() == Config.INSPECT_NEVER && isLoad()) || exists();
+		short it = getMapping().getInspectTemplate();
+		return ((it == Config.INSPECT_NEVER || it == ConfigPro.INSPECT_WATCH) && isLoad()) || exists();
 	}
 
 	public void resetLoaded() {
@@ -175,6 +175,12 @@ public final class PageSourcePool implements Dumpable {
 			inner.appendRow(1, new SimpleDumpData("source"), new SimpleDumpData(ps.getDisplayPath()));
 			inner.appendRow(1, new SimpleDumpData("last access"), DumpUtil.toDumpData(new DateTimeImpl(pageContext, ps.getLastAccessTime(), false), pageContext, maxlevel, dp));
 			inner.appendRow(1, new SimpleDumpData("access count"), new SimpleDumpData(ps.getAccessCount()));
+			if (ps instanceof PageSourceImpl) {
+				PageSourceImpl psi = (PageSourceImpl) ps;
+				inner.appendRow(1, new SimpleDumpData("locked loads"), new SimpleDumpData(psi.getLockedLoadCount()));
+				inner.appendRow(1, new SimpleDumpData("contended loads"), new SimpleDumpData(psi.getContendedLoadCount()));
+				inner.appendRow(1, new SimpleDumpData("contention wait time (ms)"), new SimpleDumpData(psi.getContendedWaitTime()));
+			}
 			table.appendRow(1, new SimpleDumpData("Sources"), inner);
 		}
 		return table;
@@ -0,0 +1,346 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import lucee.commons.io.SystemUtil;
+import lucee.commons.io.log.Log;
+import lucee.commons.io.log.LogUtil;
+import lucee.commons.io.res.Resource;
+import lucee.commons.io.res.util.ResourceUtil;
+import lucee.commons.lang.ExceptionUtil;
+import lucee.runtime.config.Config;
+import lucee.runtime.config.ConfigPro;
+import lucee.runtime.op.Caster;
+
+/**
+ * background thread used by mappings with the inspect template mode "watch". Templates of such
+ * mappings are trusted (the request never checks the file system), the watcher invalidates the
+ * loaded pages when the templates change.
+ *
+ * Changes are detected with a {@link WatchService} for local directories, directories that cannot
+ * be watched (not local or the WatchService fails) are checked by polling in the background, the
+ * loaded templates of the mapping are compared with the files and the directory listing of the
+ * mapping is compared with the last one, to detect new and deleted templates. File systems like NFS do not report changes made by other hosts,
+ * for them polling can be forced.
+ *
+ * The watcher can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.inspect.watch.interval: max delay in milliseconds until a change is picked up (polling
+ * interval), default 2000</li>
+ * <li>lucee.inspect.watch.poll: always use polling instead of the WatchService</li>
+ * </ul>
+ */
+public final class TemplateWatcher implements Runnable {
+
+	private static volatile TemplateWatcher instance;
+
+	private final long interval;
+	private final boolean forcePoll;
+	private WatchService service;
+
+	private final Queue<MappingImpl> pending = new ConcurrentLinkedQueue<MappingImpl>();
+	private final List<Root> roots = new CopyOnWriteArrayList<Root>();
+	private final Map<WatchKey, Path> keys = new ConcurrentHashMap<WatchKey, Path>();
+	private final Set<Path> dirs = ConcurrentHashMap.<Path>newKeySet();
+
+	private TemplateWatcher() {
+		long i = Caster.toLongValue(SystemUtil.getSystemPropOrEnvVar("lucee.inspect.watch.interval", null), 0L);
+		interval = i < 100 ? 2000L : i;
+		forcePoll = Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.inspect.watch.poll", null), false);
+		if (!forcePoll) {
+			try {
+				service = FileSystems.getDefault().newWatchService();
+			}
+			catch (Exception e) {
+				LogUtil.log("application", "template-watcher", e);
+			}
+		}
+	}
+
+	public static TemplateWatcher getInstance() {
+		if (instance == null) {
+			synchronized (TemplateWatcher.class) {
+				if (instance == null) {
+					instance = new TemplateWatcher();
+					Thread t = new Thread(instance, "lucee-template-watcher");
+					t.setDaemon(true);
+					t.start();
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * registers the physical directory of the mapping, the registration is done asynchronously by the
+	 * watcher thread.
+	 * 
+	 * @param mapping mapping to watch
+	 */
+	public void register(MappingImpl mapping) {
+		if (mapping.getPhysical() == null) return;
+		pending.offer(mapping);
+	}
+
+	@Override
+	public void run() {
+		long lastPoll = System.currentTimeMillis();
+		while (true) {
+			try {
+				MappingImpl m;
+				while ((m = pending.poll()) != null) {
+					_register(m);
+				}
+
+				WatchKey key = null;
+				if (service != null) key = service.poll(interval, TimeUnit.MILLISECONDS);
+				else Thread.sleep(interval);
+
+				// handle all events available in one batch
+				while (key != null) {
+					handle(key);
+					key = service.poll();
+				}
+
+				long now = System.currentTimeMillis();
+				if (now - lastPoll >= interval) {
+					lastPoll = now;
+					poll();
+				}
+			}
+			catch (InterruptedException ie) {
+				return;
+			}
+			catch (Throwable t) {
+				ExceptionUtil.rethrowIfNecessary(t);
+				LogUtil.log("application", "template-watcher", t);
+			}
+		}
+	}
+
+	private void _register(MappingImpl mapping) {
+		Resource physical = mapping.getPhysical();
+		if (physical == null) return;
+		Path dir = null;
+		boolean polled = true;
+		if (service != null) {
+			try {
+				File file = ResourceUtil.toFile(physical);
+				dir = file.toPath().toAbsolutePath().normalize();
+				registerAll(dir);
+				polled = false;
+			}
+			catch (IOException ioe) {
+				// not a local directory or not watchable, fallback to polling
+				LogUtil.log(mapping.getConfig(), Log.LEVEL_INFO, "template-watcher",
+						"cannot watch [" + physical + "] for changes, polling every [" + interval + "ms] instead: " + ioe.getMessage());
+			}
+		}
+		Root root = new Root(mapping, dir, polled);
+		roots.add(root);
+		// changes done before the directory was registered
+		check(root, mapping, false);
+	}
+
+	private void registerAll(Path start) throws IOException {
+		Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+				if (dirs.add(dir)) keys.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	private void handle(WatchKey key) {
+		Path dir = keys.get(key);
+		if (dir != null) {
+			for (WatchEvent<?> event: key.pollEvents()) {
+				WatchEvent.Kind<?> kind = event.kind();
+				// events got lost, check everything below this directory
+				if (kind == OVERFLOW) {
+					for (Root root: roots) {
+						if (!root.polled && (root.dir.startsWith(dir) || dir.startsWith(root.dir))) {
+							MappingImpl mapping = root.mapping.get();
+							// we do not know if templates were added or deleted
+							if (mapping != null) check(root, mapping, true);
+						}
+					}
+					continue;
+				}
+
+				Path path = dir.resolve((Path) event.context());
+				if (kind == ENTRY_CREATE && Files.isDirectory(path)) {
+					try {
+						registerAll(path);
+					}
+					catch (IOException ioe) {
+						LogUtil.log("application", "template-watcher", ioe);
+					}
+				}
+				changed(path, kind != ENTRY_MODIFY);
+			}
+		}
+		if (!key.reset()) {
+			keys.remove(key);
+			if (dir != null) dirs.remove(dir);
+		}
+	}
+
+	private void changed(Path path, boolean structural) {
+		Iterator<Root> it = roots.iterator();
+		Root root;
+		MappingImpl mapping;
+		while (it.hasNext()) {
+			root = it.next();
+			if (root.polled || !path.startsWith(root.dir)) continue;
+			mapping = root.mapping.get();
+			if (mapping == null) {
+				roots.remove(root);
+				continue;
+			}
+			String realPath = "/" + root.dir.relativize(path).toString().replace('\\', '/');
+			mapping.invalidate(realPath);
+			// a new or deleted template can change how a name is resolved
+			if (structural) clearPathCaches(mapping.getConfig());
+		}
+	}
+
+	private void poll() {
+		Iterator<Root> it = roots.iterator();
+		Root root;
+		MappingImpl mapping;
+		while (it.hasNext()) {
+			root = it.next();
+			mapping = root.mapping.get();
+			if (mapping == null) {
+				roots.remove(root);
+				continue;
+			}
+			if (root.polled) check(root, mapping, false);
+		}
+	}
+
+	/**
+	 * compares the loaded pages of the mapping with the templates on the file system, for polled
+	 * mappings also the directory listing with the last one
+	 */
+	private void check(Root root, MappingImpl mapping, boolean structural) {
+		PageSourceImpl ps;
+		Page page;
+		long lastModified;
+		for (PageSource tmp: mapping.getPageSources(true)) {
+			ps = (PageSourceImpl) tmp;
+			page = ps.getPage();
+			if (page == null) continue;
+			lastModified = ps.getPhyscalFile().lastModified();
+			if (lastModified != page.getSourceLastModified()) {
+				ps.clear();
+				if (lastModified == 0L) structural = true;
+			}
+		}
+		// new templates are not loaded yet, so only the listing shows them
+		if (root.polled) {
+			long listing = listing(mapping.getPhysical());
+			if (root.listed && listing != root.listing) structural = true;
+			root.listing = listing;
+			root.listed = true;
+		}
+		if (structural) clearPathCaches(mapping.getConfig());
+	}
+
+	/**
+	 * fingerprint of the names of all files and directories below the given directory, changes when
+	 * a file or directory is created, deleted or renamed, but not when a file is modified
+	 */
+	static long listing(Resource dir) {
+		long[] sum = new long[2];
+		listing(dir, "", sum);
+		// the number of entries makes collisions less likely
+		return sum[0] * 31L + sum[1];
+	}
+
+	private static void listing(Resource dir, String path, long[] sum) {
+		Resource[] children = dir.listResources();
+		if (children == null) return;
+		String p;
+		for (Resource child: children) {
+			p = path + "/" + child.getName();
+			// the order of the listing is not defined, so the hashes are summed up
+			sum[0] += mix(p.hashCode());
+			sum[1]++;
+			if (child.isDirectory()) listing(child, p, sum);
+		}
+	}
+
+	private static long mix(long h) {
+		h *= 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
+	private static void clearPathCaches(Config config) {
+		if (!(config instanceof ConfigPro)) return;
+		ConfigPro cp = (ConfigPro) config;
+		cp.clearComponentCache();
+		cp.clearCTCache();
+		cp.clearApplicationCache();
+	}
+
+	private static final class Root {
+		private final WeakReference<MappingImpl> mapping;
+		private final Path dir; // null when polled
+		private final boolean polled;
+		// last directory listing of a polled mapping
+		private long listing;
+		private boolean listed;
+
+		private Root(MappingImpl mapping, Path dir, boolean polled) {
+			this.mapping = new WeakReference<MappingImpl>(mapping);
+			this.dir = dir;
+			this.polled = polled;
+		}
+	}
+}
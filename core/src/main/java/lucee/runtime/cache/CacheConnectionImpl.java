@@ -78,6 +78,7 @@ public class CacheConnectionImpl implements CacheConnectionPlus {
 			}
 			try {
 				cache.init(config, getName(), getCustom());
+				cache = NearCache.wrap(getName(), cache, getCustom());
 			}
 			catch (IOException ioe) {
 				cache = null;
@@ -0,0 +1,38 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.cache;
+
+/**
+ * is informed by a cache driver about entries changed by others, so local copies of them can be
+ * dropped
+ */
+public interface CacheInvalidationListener {
+
+	/**
+	 * the entry with the given key was changed or removed
+	 * 
+	 * @param key key of the entry
+	 */
+	public void invalidate(String key);
+
+	/**
+	 * all entries may have changed
+	 */
+	public void invalidateAll();
+}
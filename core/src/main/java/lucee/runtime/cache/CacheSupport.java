@@ -193,10 +193,7 @@ public abstract class CacheSupport implements CachePro {
 		String key;
 		while (it.hasNext()) {
 			key = it.next();
-			if (filter == null || filter.accept(key)) {
-				remove(key);
-				count++;
-			}
+			if ((filter == null || filter.accept(key)) && remove(key)) count++;
 		}
 		return count;
 	}
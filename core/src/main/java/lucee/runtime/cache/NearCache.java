@@ -0,0 +1,423 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.cache;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.servlet.http.HttpServletRequest;
+
+import lucee.commons.io.cache.Cache;
+import lucee.commons.io.cache.CacheEntry;
+import lucee.commons.io.cache.CacheEntryFilter;
+import lucee.commons.io.cache.CacheKeyFilter;
+import lucee.commons.io.cache.CachePro;
+import lucee.commons.io.cache.exp.CacheException;
+import lucee.commons.lang.ExceptionUtil;
+import lucee.runtime.PageContext;
+import lucee.runtime.cache.ram.RamCache;
+import lucee.runtime.config.Config;
+import lucee.runtime.engine.ThreadLocalPageContext;
+import lucee.runtime.op.Caster;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+
+/**
+ * local tier in front of a (remote) cache like Redis or Memcached. Lookups are answered from a small
+ * bounded {@link RamCache} with a short time to live, only misses go to the remote cache. Optionally
+ * repeated lookups within the same request are answered from a request scoped map, without even
+ * copying the value.
+ * 
+ * The near cache is enabled with the following settings in the custom struct of the cache
+ * connection:
+ * <ul>
+ * <li>nearCache: enables the near cache (default false)</li>
+ * <li>nearCacheMaxEntries: max number of entries held locally (default 10000)</li>
+ * <li>nearCacheTimeToLiveSeconds: time a entry is held locally (default 10), changes done by other
+ * servers are visible after this time at the latest</li>
+ * <li>nearCacheRequestScope: remember the result of a lookup for the rest of the request (default
+ * false), the same value instance is returned for every lookup within the request</li>
+ * </ul>
+ * 
+ * Changes done with this cache invalidate the local entries immediately. A cache driver can
+ * invalidate entries changed by others by implementing {@link CacheInvalidationSource}.
+ */
+public final class NearCache implements CachePro, CacheInvalidationListener {
+
+	private static final int DEFAULT_MAX_ENTRIES = 10000;
+	private static final int DEFAULT_TIME_TO_LIVE = 10;
+	private static final Object MISS = new Object();
+	private static final int STRIPES = 64;
+
+	private final Cache remote;
+	private final RamCache local;
+	private final long timeToLive;
+	private final boolean requestScope;
+	private final String attrName;
+	// generation per key stripe, raised by every invalidation, guarded by the lock of the stripe
+	private final long[] generations = new long[STRIPES];
+	private final Object[] locks = new Object[STRIPES];
+
+	private final LongAdder requestHits = new LongAdder();
+	private final LongAdder remoteHits = new LongAdder();
+	private final LongAdder remoteMisses = new LongAdder();
+
+	private NearCache(String name, Cache remote, int maxEntries, long timeToLive, boolean requestScope) {
+		this.remote = remote;
+		this.timeToLive = timeToLive;
+		this.requestScope = requestScope;
+		this.attrName = "lucee.cache.near:" + name.toLowerCase() + ":" + Integer.toHexString(System.identityHashCode(this));
+		local = new RamCache().init(timeToLive, 0, RamCache.DEFAULT_CONTROL_INTERVAL).bounded(maxEntries, 0);
+		local.decouple();
+		for (int i = 0; i < STRIPES; i++) {
+			locks[i] = new Object();
+		}
+		if (remote instanceof CacheInvalidationSource) ((CacheInvalidationSource) remote).addInvalidationListener(this);
+	}
+
+	/**
+	 * wraps the cache with a near cache if enabled in the given settings
+	 * 
+	 * @param name name of the cache connection
+	 * @param cache cache to wrap
+	 * @param custom settings of the cache connection
+	 * @return the near cache or the given cache if no near cache is configured
+	 */
+	public static Cache wrap(String name, Cache cache, Struct custom) {
+		if (cache instanceof NearCache || custom == null || !Caster.toBooleanValue(custom.get("nearCache", null), false)) return cache;
+		int maxEntries = Caster.toIntValue(custom.get("nearCacheMaxEntries", null), DEFAULT_MAX_ENTRIES);
+		long timeToLive = Caster.toLongValue(custom.get("nearCacheTimeToLiveSeconds", null), DEFAULT_TIME_TO_LIVE) * 1000L;
+		boolean requestScope = Caster.toBooleanValue(custom.get("nearCacheRequestScope", null), false);
+		return new NearCache(name, cache, maxEntries < 1 ? DEFAULT_MAX_ENTRIES : maxEntries, timeToLive < 1 ? DEFAULT_TIME_TO_LIVE * 1000L : timeToLive, requestScope);
+	}
+
+	/**
+	 * @return the wrapped cache
+	 */
+	public Cache getRemote() {
+		return remote;
+	}
+
+	@Override
+	public void init(Config config, String cacheName, Struct arguments) throws IOException {
+		remote.init(config, cacheName, arguments);
+	}
+
+	@Override
+	public CacheEntry getCacheEntry(String key, CacheEntry defaultValue) {
+		Map<String, Object> memo = memo(true);
+		if (memo != null) {
+			Object o = memo.get(key);
+			if (o != null) {
+				requestHits.increment();
+				return o == MISS ? defaultValue : (CacheEntry) o;
+			}
+		}
+		CacheEntry entry = local.getCacheEntry(key, null);
+		if (entry == null) {
+			int stripe = stripe(key);
+			long generation = generation(stripe);
+			entry = remote.getCacheEntry(key, null);
+			if (entry == null) remoteMisses.increment();
+			else {
+				remoteHits.increment();
+				long live = entry.liveTimeSpan() > 0 ? Math.min(timeToLive, entry.liveTimeSpan()) : timeToLive;
+				boolean filled = false;
+				synchronized (locks[stripe]) {
+					// the key was invalidated while we were reading the remote cache, the value we got may be stale
+					if (generations[stripe] == generation) {
+						local.put(key, entry.getValue(), null, Long.valueOf(live));
+						filled = true;
+					}
+				}
+				if (filled) {
+					// return the decoupled copy held by the local tier, not the instance of the remote cache
+					CacheEntry le = local.getQuiet(key, null);
+					if (le != null) entry = le;
+				}
+			}
+		}
+		if (memo != null) memo.put(key, entry == null ? MISS : entry);
+		return entry == null ? defaultValue : entry;
+	}
+
+	@Override
+	public CacheEntry getCacheEntry(String key) throws IOException {
+		CacheEntry entry = getCacheEntry(key, null);
+		if (entry == null) throw new CacheException("there is no valid cache entry with key [" + key + "]");
+		return entry;
+	}
+
+	@Override
+	public Object getValue(String key) throws IOException {
+		return getCacheEntry(key).getValue();
+	}
+
+	@Override
+	public Object getValue(String key, Object defaultValue) {
+		CacheEntry entry = getCacheEntry(key, null);
+		if (entry == null) return defaultValue;
+		return entry.getValue();
+	}
+
+	@Override
+	public boolean contains(String key) throws IOException {
+		Map<String, Object> memo = memo(false);
+		if (memo != null) {
+			Object o = memo.get(key);
+			if (o != null) return o != MISS;
+		}
+		return local.contains(key) || remote.contains(key);
+	}
+
+	@Override
+	public void put(String key, Object value, Long idleTime, Long until) throws IOException {
+		try {
+			remote.put(key, value, idleTime, until);
+		}
+		finally {
+			invalidate(key);
+		}
+	}
+
+	@Override
+	public boolean remove(String key) throws IOException {
+		try {
+			return remote.remove(key);
+		}
+		finally {
+			invalidate(key);
+		}
+	}
+
+	@Override
+	public int remove(CacheKeyFilter filter) throws IOException {
+		try {
+			return remote.remove(filter);
+		}
+		finally {
+			invalidateAll();
+		}
+	}
+
+	@Override
+	public int remove(CacheEntryFilter filter) throws IOException {
+		try {
+			return remote.remove(filter);
+		}
+		finally {
+			invalidateAll();
+		}
+	}
+
+	@Override
+	public int clear() throws IOException {
+		try {
+			if (remote instanceof CachePro) return ((CachePro) remote).clear();
+			return remote.remove((CacheEntryFilter) null);
+		}
+		finally {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * removes the entry from the local tier, the remote cache is not touched
+	 * 
+	 * @param key key of the entry
+	 */
+	@Override
+	public void invalidate(String key) {
+		int stripe = stripe(key);
+		synchronized (locks[stripe]) {
+			generations[stripe]++;
+		}
+		local.remove(key);
+		Map<String, Object> memo = memo(false);
+		if (memo != null) memo.remove(key);
+	}
+
+	/**
+	 * removes all entries from the local tier, the remote cache is not touched
+	 */
+	@Override
+	public void invalidateAll() {
+		for (int i = 0; i < STRIPES; i++) {
+			synchronized (locks[i]) {
+				generations[i]++;
+			}
+		}
+		try {
+			local.clear();
+		}
+		catch (IOException e) {
+			// a ram cache does not throw
+		}
+		Map<String, Object> memo = memo(false);
+		if (memo != null) memo.clear();
+	}
+
+	@Override
+	public List<String> keys() throws IOException {
+		return remote.keys();
+	}
+
+	@Override
+	public List<String> keys(CacheKeyFilter filter) throws IOException {
+		return remote.keys(filter);
+	}
+
+	@Override
+	public List<String> keys(CacheEntryFilter filter) throws IOException {
+		return remote.keys(filter);
+	}
+
+	@Override
+	public List<Object> values() throws IOException {
+		return remote.values();
+	}
+
+	@Override
+	public List<Object> values(CacheKeyFilter filter) throws IOException {
+		return remote.values(filter);
+	}
+
+	@Override
+	public List<Object> values(CacheEntryFilter filter) throws IOException {
+		return remote.values(filter);
+	}
+
+	@Override
+	public List<CacheEntry> entries() throws IOException {
+		return remote.entries();
+	}
+
+	@Override
+	public List<CacheEntry> entries(CacheKeyFilter filter) throws IOException {
+		return remote.entries(filter);
+	}
+
+	@Override
+	public List<CacheEntry> entries(CacheEntryFilter filter) throws IOException {
+		return remote.entries(filter);
+	}
+
+	@Override
+	public long hitCount() throws IOException {
+		return remote.hitCount();
+	}
+
+	@Override
+	public long missCount() throws IOException {
+		return remote.missCount();
+	}
+
+	@Override
+	public Struct getCustomInfo() throws IOException {
+		Struct info = remote.getCustomInfo();
+		Struct near = new StructImpl();
+		long localHits = local.hitCount();
+		long localMisses = local.missCount();
+		long requests = requestHits.sum();
+		long rHits = remoteHits.sum();
+		long rMisses = remoteMisses.sum();
+		near.setEL("requestHits", Caster.toDouble(requests));
+		near.setEL("localHits", Caster.toDouble(localHits));
+		near.setEL("localMisses", Caster.toDouble(localMisses));
+		near.setEL("localHitRatio", Caster.toDouble(ratio(localHits, localMisses)));
+		near.setEL("remoteHits", Caster.toDouble(rHits));
+		near.setEL("remoteMisses", Caster.toDouble(rMisses));
+		near.setEL("remoteHitRatio", Caster.toDouble(ratio(rHits, rMisses)));
+		// share of all lookups that did not need the remote cache
+		near.setEL("hitRatio", Caster.toDouble(ratio(requests + localHits, localMisses)));
+		near.setEL("size", Caster.toDouble(local.keys().size()));
+		near.setEL("timeToLive", Caster.toDouble(timeToLive / 1000L));
+		near.setEL("requestScope", requestScope);
+		info.setEL("nearCache", near);
+		return info;
+	}
+
+	@Override
+	public void verify() throws CacheException {
+		if (remote instanceof CachePro) ((CachePro) remote).verify();
+	}
+
+	@Override
+	public CachePro decouple() {
+		// the local tier always stores and returns copies
+		if (remote instanceof CachePro) ((CachePro) remote).decouple();
+		return this;
+	}
+
+	/**
+	 * releases the local tier and the remote cache (when the remote cache supports it), called by
+	 * {@link CacheUtil#release(CacheConnection)} by reflection
+	 */
+	public void release() throws IOException {
+		local.release();
+		// FUTURE no reflection needed
+		Method release;
+		try {
+			release = remote.getClass().getMethod("release", new Class[] {});
+		}
+		catch (Exception e) {
+			return;
+		}
+		try {
+			release.invoke(remote, new Object[] {});
+		}
+		catch (Exception e) {
+			throw ExceptionUtil.toIOException(e);
+		}
+	}
+
+	private Map<String, Object> memo(boolean create) {
+		if (!requestScope) return null;
+		PageContext pc = ThreadLocalPageContext.get();
+		if (pc == null) return null;
+		HttpServletRequest req = pc.getHttpServletRequest();
+		if (req == null) return null;
+		Map<String, Object> memo = (Map<String, Object>) req.getAttribute(attrName);
+		if (memo == null && create) {
+			memo = new ConcurrentHashMap<String, Object>();
+			req.setAttribute(attrName, memo);
+		}
+		return memo;
+	}
+
+	private static int stripe(String key) {
+		int h = key.hashCode();
+		return (h ^ (h >>> 16)) & (STRIPES - 1);
+	}
+
+	private long generation(int stripe) {
+		synchronized (locks[stripe]) {
+			return generations[stripe];
+		}
+	}
+
+	private static double ratio(long hits, long misses) {
+		long total = hits + misses;
+		return total == 0 ? 0 : ((double) hits) / total;
+	}
+}
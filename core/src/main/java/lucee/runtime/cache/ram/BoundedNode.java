@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+import lucee.runtime.cache.ram.ref.Ref;
+
+/**
+ * holds a entry of a bounded {@link RamCache}, besides the entry itself it contains the links used
+ * by the {@link BoundedPolicy} for the access order and the timer wheel. All fields except
+ * "retired" are only accessed while holding the lock of the policy.
+ */
+final class BoundedNode implements Ref<RamCacheEntry> {
+
+	static final byte NONE = 0;
+	static final byte WINDOW = 1;
+	static final byte PROBATION = 2;
+	static final byte PROTECTED = 3;
+
+	final RamCacheEntry entry;
+	final int hash;
+	long weight;
+	// weight of a value kept on the heap by a cache storing the values off heap
+	long heapWeight;
+
+	// set as soon the node is no longer in the map
+	volatile boolean retired;
+
+	// access order
+	byte queue = NONE;
+	BoundedNode prev;
+	BoundedNode next;
+
+	// timer wheel
+	long deadline;
+	int timerLevel = -1;
+	int timerBucket;
+	BoundedNode timerPrev;
+	BoundedNode timerNext;
+
+	BoundedNode(RamCacheEntry entry, long weight) {
+		this.entry = entry;
+		this.hash = entry.getKey().hashCode();
+		this.weight = weight;
+	}
+
+	@Override
+	public RamCacheEntry get() {
+		return entry;
+	}
+
+	String getKey() {
+		return entry.getKey();
+	}
+}
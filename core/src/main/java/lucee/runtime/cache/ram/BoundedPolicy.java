@@ -0,0 +1,559 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lucee.commons.lang.SizeAndCount;
+import lucee.runtime.cache.ram.ref.Ref;
+
+/**
+ * size and weight bounded eviction for the {@link RamCache} (Window TinyLFU). New entries enter a
+ * small LRU window (1% of the capacity), entries leaving the window only replace the least recently
+ * used entry of the main space, if they were accessed more often recently, based on a
+ * {@link FrequencySketch}. The main space is a segmented LRU with a probation and a protected (80%)
+ * segment. This way a scan over many entries that are used once does not flush the frequently used
+ * entries out of the cache.
+ * 
+ * Reads are recorded in a lossy buffer and applied when the lock is free, so readers never wait for
+ * the lock. Expiration (time to live/idle) is handled with a {@link TimerWheel}.
+ * 
+ * With an off heap store, the weight of a node is the space used off heap and the values the store
+ * keeps on the heap are limited by a separate budget (heap weight).
+ */
+final class BoundedPolicy implements TimerWheel.Expirer {
+
+	private static final int READ_BUFFER_SIZE = 128;
+	private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+	private static final int DRAIN_THRESHOLD = 32;
+	private static final double WINDOW_PERCENTAGE = 0.01d;
+	private static final double PROTECTED_PERCENTAGE = 0.80d;
+
+	private static final int ANY = 0;
+	private static final int WEIGHT = 1;
+	private static final int HEAP = 2;
+
+	private final Map<String, Ref<RamCacheEntry>> map;
+	private final long maxEntries;
+	private final long maxWeight;
+	private final long maxHeapWeight;
+	private final Listener listener;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final AtomicReferenceArray<BoundedNode> readBuffer = new AtomicReferenceArray<BoundedNode>(READ_BUFFER_SIZE);
+	private final AtomicLong readCounter = new AtomicLong();
+
+	private final FrequencySketch sketch = new FrequencySketch();
+	private final TimerWheel wheel = new TimerWheel(System.currentTimeMillis());
+	private final Deque window = new Deque();
+	private final Deque probation = new Deque();
+	private final Deque protectedDeque = new Deque();
+
+	private final long windowMax;
+	private final long protectedMax;
+	private long count;
+	private long heapWeight;
+
+	private final LongAdder evictionCount = new LongAdder();
+	private final LongAdder expiredCount = new LongAdder();
+
+	/**
+	 * @param map map of the cache, evicted entries are removed from it
+	 * @param maxEntries max number of entries, 0 for no limit
+	 * @param maxWeight max weight in bytes of all entries together, 0 for no limit
+	 */
+	BoundedPolicy(Map<String, Ref<RamCacheEntry>> map, long maxEntries, long maxWeight) {
+		this(map, maxEntries, maxWeight, 0, null);
+	}
+
+	/**
+	 * @param map map of the cache, evicted entries are removed from it
+	 * @param maxEntries max number of entries, 0 for no limit
+	 * @param maxWeight max weight in bytes of all entries together, 0 for no limit
+	 * @param maxHeapWeight max heap weight in bytes of all entries together, 0 for no limit
+	 * @param listener is informed about every node leaving the cache, can be null
+	 */
+	BoundedPolicy(Map<String, Ref<RamCacheEntry>> map, long maxEntries, long maxWeight, long maxHeapWeight, Listener listener) {
+		this.map = map;
+		this.maxEntries = maxEntries;
+		this.maxWeight = maxWeight;
+		this.maxHeapWeight = maxHeapWeight;
+		this.listener = listener;
+		long capacity = capacity();
+		windowMax = Math.max(1, (long) (capacity * WINDOW_PERCENTAGE));
+		protectedMax = (long) ((capacity - windowMax) * PROTECTED_PERCENTAGE);
+		sketch.ensureCapacity(maxEntries > 0 ? maxEntries : 1024);
+	}
+
+	long getMaxEntries() {
+		return maxEntries;
+	}
+
+	long getMaxWeight() {
+		return maxWeight;
+	}
+
+	long getMaxHeapWeight() {
+		return maxHeapWeight;
+	}
+
+	boolean isWeighted() {
+		return maxWeight > 0;
+	}
+
+	/**
+	 * @param value value to weigh
+	 * @return weight of the value, 1 if the cache is only bounded by the number of entries
+	 */
+	long weigh(Object value) {
+		if (!isWeighted()) return 1;
+		return sizeOf(value);
+	}
+
+	/**
+	 * @param value value kept on the heap by a cache storing the values off heap
+	 * @return heap weight of the value, 0 if the heap weight is not limited
+	 */
+	long weighHeap(Object value) {
+		if (maxHeapWeight <= 0) return 0;
+		return sizeOf(value);
+	}
+
+	private static long sizeOf(Object value) {
+		try {
+			return Math.max(1, SizeAndCount.sizeOf(value).size);
+		}
+		catch (Exception e) {
+			return 1;
+		}
+	}
+
+	/**
+	 * records a read access to the node, never blocks
+	 * 
+	 * @param node node read
+	 */
+	void onRead(BoundedNode node) {
+		long index = readCounter.getAndIncrement();
+		readBuffer.lazySet((int) (index & READ_BUFFER_MASK), node);
+		if ((index & (DRAIN_THRESHOLD - 1)) == 0 && lock.tryLock()) {
+			try {
+				drainReadBuffer();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * a node was added to the map
+	 * 
+	 * @param node added node
+	 * @param prior node replaced in the map or null
+	 */
+	void onAdd(BoundedNode node, Ref<RamCacheEntry> prior) {
+		if (prior instanceof BoundedNode) ((BoundedNode) prior).retired = true;
+		lock.lock();
+		try {
+			if (prior instanceof BoundedNode) unlink((BoundedNode) prior);
+			// the node was already replaced or removed by an other thread
+			if (node.retired) return;
+			// the map was cleared after the node was put
+			if (map.get(node.getKey()) != node) {
+				node.retired = true;
+				if (listener != null) listener.removed(node);
+				return;
+			}
+			sketch.increment(node.hash);
+			count++;
+			heapWeight += node.heapWeight;
+			if (maxEntries == 0 && count > 0) sketch.ensureCapacity(count);
+			window.addLast(node);
+			node.queue = BoundedNode.WINDOW;
+			node.deadline = node.entry.deadline();
+			wheel.schedule(node);
+			evict();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * the value of a node was updated
+	 * 
+	 * @param node updated node
+	 * @param weight new weight of the node
+	 */
+	void onUpdate(BoundedNode node, long weight) {
+		onUpdate(node, weight, 0);
+	}
+
+	/**
+	 * the value of a node was updated
+	 * 
+	 * @param node updated node
+	 * @param weight new weight of the node
+	 * @param heapWeight new heap weight of the node
+	 */
+	void onUpdate(BoundedNode node, long weight, long heapWeight) {
+		lock.lock();
+		try {
+			if (node.retired || node.queue == BoundedNode.NONE) return;
+			deque(node).changeWeight(node, weight);
+			this.heapWeight += heapWeight - node.heapWeight;
+			node.heapWeight = heapWeight;
+			onAccess(node);
+			evict();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * a node was removed from the map
+	 * 
+	 * @param ref removed node
+	 */
+	void onRemove(Ref<RamCacheEntry> ref) {
+		if (!(ref instanceof BoundedNode)) return;
+		BoundedNode node = (BoundedNode) ref;
+		node.retired = true;
+		lock.lock();
+		try {
+			unlink(node);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * applies the pending reads and expires the entries that are due
+	 * 
+	 * @param now current time
+	 */
+	void cleanUp(long now) {
+		lock.lock();
+		try {
+			drainReadBuffer();
+			wheel.advance(now, this);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * evicts entries until an additional entry with the given weight fits in the cache
+	 * 
+	 * @param weight weight of the entry to add
+	 * @return false if there was nothing left to evict
+	 */
+	boolean makeRoom(long weight) {
+		if (!isWeighted()) return false;
+		lock.lock();
+		try {
+			drainReadBuffer();
+			BoundedNode victim;
+			while (weightedSize() + weight > maxWeight) {
+				if ((victim = victim(WEIGHT)) == null) return false;
+				evict(victim);
+			}
+			return true;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * removes all entries from the map and the policy, the map is cleared while holding the lock, so
+	 * every node put in the meantime is either cleared with the map or added to the policy afterwards
+	 */
+	void clear() {
+		lock.lock();
+		try {
+			map.clear();
+			for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+				readBuffer.lazySet(i, null);
+			}
+			removed(window);
+			removed(probation);
+			removed(protectedDeque);
+			window.clear();
+			probation.clear();
+			protectedDeque.clear();
+			wheel.clear();
+			sketch.clear();
+			count = 0;
+			heapWeight = 0;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	long size() {
+		return count;
+	}
+
+	long weightedSize() {
+		return window.weight + probation.weight + protectedDeque.weight;
+	}
+
+	long heapWeightedSize() {
+		return heapWeight;
+	}
+
+	long evictionCount() {
+		return evictionCount.sum();
+	}
+
+	long expiredCount() {
+		return expiredCount.sum();
+	}
+
+	@Override
+	public void expire(BoundedNode node, long now) {
+		if (node.retired) return;
+		// the entry could have been read without the read being recorded (lossy buffer)
+		long deadline = node.entry.deadline();
+		if (deadline == 0 || deadline >= now) {
+			node.deadline = deadline;
+			wheel.schedule(node);
+			return;
+		}
+		if (map.remove(node.getKey(), node)) expiredCount.increment();
+		node.retired = true;
+		unlink(node);
+	}
+
+	private void drainReadBuffer() {
+		BoundedNode node;
+		for (int i = 0; i < READ_BUFFER_SIZE; i++) {
+			node = readBuffer.getAndSet(i, null);
+			if (node != null) onAccess(node);
+		}
+	}
+
+	// has to be called while holding the lock
+	private void onAccess(BoundedNode node) {
+		if (node.retired || node.queue == BoundedNode.NONE) return;
+		sketch.increment(node.hash);
+		if (node.queue == BoundedNode.WINDOW) {
+			window.moveToLast(node);
+		}
+		else if (node.queue == BoundedNode.PROBATION) {
+			// promote
+			probation.remove(node);
+			protectedDeque.addLast(node);
+			node.queue = BoundedNode.PROTECTED;
+			// demote the least recently used protected entries
+			while (protectedDeque.weight > protectedMax && protectedDeque.first != node) {
+				BoundedNode demoted = protectedDeque.pollFirst();
+				probation.addLast(demoted);
+				demoted.queue = BoundedNode.PROBATION;
+			}
+		}
+		else {
+			protectedDeque.moveToLast(node);
+		}
+		long deadline = node.entry.deadline();
+		if (deadline != node.deadline) {
+			node.deadline = deadline;
+			wheel.schedule(node);
+		}
+	}
+
+	// has to be called while holding the lock
+	private void evict() {
+		// entries leaving the window are candidates for the main space
+		BoundedNode candidate;
+		while (window.weight > windowMax && window.first != null) {
+			candidate = window.pollFirst();
+			probation.addLast(candidate);
+			candidate.queue = BoundedNode.PROBATION;
+			admit(candidate);
+		}
+		// still to large (a single entry can be heavier than the window)
+		BoundedNode victim;
+		while (maxEntries > 0 && count > maxEntries) {
+			if ((victim = victim(ANY)) == null) break;
+			evict(victim);
+		}
+		while (maxWeight > 0 && weightedSize() > maxWeight) {
+			if ((victim = victim(WEIGHT)) == null) break;
+			evict(victim);
+		}
+		// only evicting entries kept on the heap reduces the heap weight
+		while (maxHeapWeight > 0 && heapWeight > maxHeapWeight) {
+			if ((victim = victim(HEAP)) == null) break;
+			evict(victim);
+		}
+	}
+
+	/**
+	 * @param type ANY, WEIGHT (only nodes with a weight) or HEAP (only nodes with a heap weight)
+	 * @return the least recently used node of the given type, nodes of the probation segment first
+	 */
+	private BoundedNode victim(int type) {
+		BoundedNode victim = victim(probation, type);
+		if (victim == null) victim = victim(protectedDeque, type);
+		if (victim == null) victim = victim(window, type);
+		return victim;
+	}
+
+	private static BoundedNode victim(Deque deque, int type) {
+		for (BoundedNode node = deque.first; node != null; node = node.next) {
+			if (type == ANY || (type == WEIGHT ? node.weight > 0 : node.heapWeight > 0)) return node;
+		}
+		return null;
+	}
+
+	// the candidate competes with the least recently used entries of the probation segment
+	private void admit(BoundedNode candidate) {
+		while (isOverCapacity()) {
+			BoundedNode victim = probation.first;
+			if (victim == candidate || victim == null) victim = protectedDeque.first;
+			if (victim == null || victim == candidate) {
+				evict(candidate);
+				return;
+			}
+			if (sketch.frequency(candidate.hash) > sketch.frequency(victim.hash)) evict(victim);
+			else {
+				evict(candidate);
+				return;
+			}
+		}
+	}
+
+	private boolean isOverCapacity() {
+		if (maxEntries > 0 && count > maxEntries) return true;
+		if (maxWeight > 0 && weightedSize() > maxWeight) return true;
+		return false;
+	}
+
+	private void evict(BoundedNode node) {
+		node.retired = true;
+		unlink(node);
+		if (map.remove(node.getKey(), node)) evictionCount.increment();
+	}
+
+	private void unlink(BoundedNode node) {
+		if (node.queue != BoundedNode.NONE) {
+			deque(node).remove(node);
+			node.queue = BoundedNode.NONE;
+			count--;
+			heapWeight -= node.heapWeight;
+		}
+		wheel.deschedule(node);
+		if (listener != null) listener.removed(node);
+	}
+
+	private void removed(Deque deque) {
+		for (BoundedNode node = deque.first; node != null; node = node.next) {
+			node.retired = true;
+			if (listener != null) listener.removed(node);
+		}
+	}
+
+	private Deque deque(BoundedNode node) {
+		if (node.queue == BoundedNode.WINDOW) return window;
+		if (node.queue == BoundedNode.PROBATION) return probation;
+		return protectedDeque;
+	}
+
+	private long capacity() {
+		if (maxWeight > 0) return maxWeight;
+		return maxEntries;
+	}
+
+	/**
+	 * is informed when a node leaves the cache (removed, replaced, evicted or expired), this can happen
+	 * more than once for the same node. Is called while holding the lock of the policy.
+	 */
+	interface Listener {
+		void removed(BoundedNode node);
+	}
+
+	/**
+	 * access ordered list, the least recently used node is the first
+	 */
+	private static final class Deque {
+		private BoundedNode first;
+		private BoundedNode last;
+		private long weight;
+
+		void addLast(BoundedNode node) {
+			node.prev = last;
+			node.next = null;
+			if (last == null) first = node;
+			else last.next = node;
+			last = node;
+			weight += node.weight;
+		}
+
+		BoundedNode pollFirst() {
+			BoundedNode node = first;
+			if (node != null) remove(node);
+			return node;
+		}
+
+		void remove(BoundedNode node) {
+			if (node.prev == null) first = node.next;
+			else node.prev.next = node.next;
+			if (node.next == null) last = node.prev;
+			else node.next.prev = node.prev;
+			node.prev = null;
+			node.next = null;
+			weight -= node.weight;
+		}
+
+		void moveToLast(BoundedNode node) {
+			if (last == node) return;
+			remove(node);
+			addLast(node);
+		}
+
+		void changeWeight(BoundedNode node, long newWeight) {
+			weight += newWeight - node.weight;
+			node.weight = newWeight;
+		}
+
+		void clear() {
+			BoundedNode node = first, next;
+			while (node != null) {
+				next = node.next;
+				node.prev = null;
+				node.next = null;
+				node.queue = BoundedNode.NONE;
+				node = next;
+			}
+			first = last = null;
+			weight = 0;
+		}
+	}
+}
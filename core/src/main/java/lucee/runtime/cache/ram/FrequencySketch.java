@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+/**
+ * count-min sketch with 4 bit counters used to estimate how often a key was accessed recently
+ * (TinyLFU). Every long holds 16 counters, a key uses 4 counters of the same long. After a sample
+ * of 10 times the capacity all counters are halved, so the frequency ages and old popular keys
+ * do not stay in the cache forever.
+ * 
+ * not thread safe, the caller has to synchronize the access.
+ */
+final class FrequencySketch {
+
+	private static final long[] SEED = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+	private static final long RESET_MASK = 0x7777777777777777L;
+	private static final long ONE_MASK = 0x1111111111111111L;
+	private static final int MAX_CAPACITY = 1 << 24;
+
+	private long[] table = new long[0];
+	private int tableMask;
+	private int sampleSize;
+	private int size;
+
+	/**
+	 * makes sure the sketch is large enough for the given number of entries, a resized sketch loses
+	 * its counts.
+	 * 
+	 * @param maximum expected number of entries
+	 */
+	void ensureCapacity(long maximum) {
+		int capacity = (int) Math.min(Math.max(maximum, 16), MAX_CAPACITY);
+		if (table.length >= capacity) return;
+		table = new long[ceilingPowerOfTwo(capacity)];
+		tableMask = table.length - 1;
+		sampleSize = 10 * capacity;
+		size = 0;
+	}
+
+	/**
+	 * @param hash hash of the key
+	 * @return estimated number of recent accesses (0 - 15)
+	 */
+	int frequency(int hash) {
+		if (table.length == 0) return 0;
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		int frequency = Integer.MAX_VALUE;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * counts an access to the key
+	 * 
+	 * @param hash hash of the key
+	 */
+	void increment(int hash) {
+		if (table.length == 0) return;
+		hash = spread(hash);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			added |= incrementAt(indexOf(hash, i), start + i);
+		}
+		if (added && ++size == sampleSize) reset();
+	}
+
+	void clear() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = 0;
+		}
+		size = 0;
+	}
+
+	private boolean incrementAt(int i, int j) {
+		int offset = j << 2;
+		long mask = (0xfL << offset);
+		if ((table[i] & mask) != mask) {
+			table[i] += (1L << offset);
+			return true;
+		}
+		return false;
+	}
+
+	// halves all counters
+	private void reset() {
+		int count = 0;
+		for (int i = 0; i < table.length; i++) {
+			count += Long.bitCount(table[i] & ONE_MASK);
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		size = (size >>> 1) - (count >>> 2);
+	}
+
+	private int indexOf(int item, int i) {
+		long hash = (item + SEED[i]) * SEED[i];
+		hash += (hash >>> 32);
+		return ((int) hash) & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		return (x >>> 16) ^ x;
+	}
+
+	private static int ceilingPowerOfTwo(int x) {
+		return 1 << -Integer.numberOfLeadingZeros(x - 1);
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiFunction;
+
+import lucee.runtime.cache.ram.ref.Ref;
+
+/**
+ * map of the {@link RamCache} that also keeps the keys in a sorted index, so all keys starting with a
+ * certain prefix can be found without looking at the other keys. The index ignores the case, like
+ * the wildcard filters used by cacheClear and cacheGetAllIds.
+ * 
+ * Changes of a key and its index entry are done while holding the lock of the map for that key, so
+ * the index never misses a key of the map. It can contain keys already removed from the map (clear
+ * while putting), these are dropped when found by {@link #keysWithPrefix(String)}. Only the methods
+ * used by the cache (put, putIfAbsent, remove and clear) keep the index in sync.
+ */
+final class KeyIndexMap extends ConcurrentHashMap<String, Ref<RamCacheEntry>> {
+
+	private static final long serialVersionUID = 4398618006052867573L;
+
+	// lower case key -> original key (String) or keys that only differ in case (String[])
+	private final ConcurrentSkipListMap<String, Object> index = new ConcurrentSkipListMap<String, Object>();
+
+	@Override
+	public Ref<RamCacheEntry> put(String key, final Ref<RamCacheEntry> value) {
+		final Object[] prior = new Object[1];
+		compute(key, new BiFunction<String, Ref<RamCacheEntry>, Ref<RamCacheEntry>>() {
+			@Override
+			public Ref<RamCacheEntry> apply(String k, Ref<RamCacheEntry> old) {
+				if (old == null) addToIndex(k);
+				prior[0] = old;
+				return value;
+			}
+		});
+		return (Ref<RamCacheEntry>) prior[0];
+	}
+
+	@Override
+	public Ref<RamCacheEntry> putIfAbsent(String key, final Ref<RamCacheEntry> value) {
+		final Object[] prior = new Object[1];
+		compute(key, new BiFunction<String, Ref<RamCacheEntry>, Ref<RamCacheEntry>>() {
+			@Override
+			public Ref<RamCacheEntry> apply(String k, Ref<RamCacheEntry> old) {
+				if (old != null) {
+					prior[0] = old;
+					return old;
+				}
+				addToIndex(k);
+				return value;
+			}
+		});
+		return (Ref<RamCacheEntry>) prior[0];
+	}
+
+	@Override
+	public Ref<RamCacheEntry> remove(Object key) {
+		final Object[] prior = new Object[1];
+		computeIfPresent((String) key, new BiFunction<String, Ref<RamCacheEntry>, Ref<RamCacheEntry>>() {
+			@Override
+			public Ref<RamCacheEntry> apply(String k, Ref<RamCacheEntry> old) {
+				removeFromIndex(k);
+				prior[0] = old;
+				return null;
+			}
+		});
+		return (Ref<RamCacheEntry>) prior[0];
+	}
+
+	@Override
+	public boolean remove(Object key, final Object value) {
+		if (value == null) return false;
+		final boolean[] removed = new boolean[1];
+		computeIfPresent((String) key, new BiFunction<String, Ref<RamCacheEntry>, Ref<RamCacheEntry>>() {
+			@Override
+			public Ref<RamCacheEntry> apply(String k, Ref<RamCacheEntry> old) {
+				if (!value.equals(old)) return old;
+				removeFromIndex(k);
+				removed[0] = true;
+				return null;
+			}
+		});
+		return removed[0];
+	}
+
+	@Override
+	public void clear() {
+		// index first, so a key put in the meantime is either in both or only in the index
+		index.clear();
+		super.clear();
+	}
+
+	/**
+	 * @param prefix lower case prefix
+	 * @return all keys in the map starting with the given prefix (ignoring the case)
+	 */
+	List<String> keysWithPrefix(String prefix) {
+		List<String> keys = new ArrayList<String>();
+		Iterator<Map.Entry<String, Object>> it = index.tailMap(prefix, true).entrySet().iterator();
+		Map.Entry<String, Object> e;
+		Object v;
+		while (it.hasNext()) {
+			e = it.next();
+			if (!e.getKey().startsWith(prefix)) break;
+			v = e.getValue();
+			if (v instanceof String) addIfPresent(keys, (String) v);
+			else {
+				for (String k: (String[]) v) {
+					addIfPresent(keys, k);
+				}
+			}
+		}
+		return keys;
+	}
+
+	private void addIfPresent(List<String> keys, String key) {
+		if (containsKey(key)) {
+			keys.add(key);
+			return;
+		}
+		// removed by clear while it was put, drop it while holding the lock for the key
+		compute(key, new BiFunction<String, Ref<RamCacheEntry>, Ref<RamCacheEntry>>() {
+			@Override
+			public Ref<RamCacheEntry> apply(String k, Ref<RamCacheEntry> old) {
+				if (old == null) removeFromIndex(k);
+				return old;
+			}
+		});
+	}
+
+	private void addToIndex(String key) {
+		String lower = key.toLowerCase();
+		Object cur;
+		while (true) {
+			cur = index.get(lower);
+			if (cur == null) {
+				if (index.putIfAbsent(lower, key) == null) return;
+			}
+			else if (cur instanceof String) {
+				if (cur.equals(key)) return;
+				if (index.replace(lower, cur, new String[] { (String) cur, key })) return;
+			}
+			else {
+				String[] arr = (String[]) cur;
+				for (String k: arr) {
+					if (k.equals(key)) return;
+				}
+				String[] tmp = new String[arr.length + 1];
+				System.arraycopy(arr, 0, tmp, 0, arr.length);
+				tmp[arr.length] = key;
+				if (index.replace(lower, cur, tmp)) return;
+			}
+		}
+	}
+
+	private void removeFromIndex(String key) {
+		String lower = key.toLowerCase();
+		Object cur;
+		while (true) {
+			cur = index.get(lower);
+			if (cur == null) return;
+			if (cur instanceof String) {
+				if (!cur.equals(key) || index.remove(lower, cur)) return;
+			}
+			else {
+				String[] arr = (String[]) cur;
+				List<String> rest = new ArrayList<String>(arr.length);
+				for (String k: arr) {
+					if (!k.equals(key)) rest.add(k);
+				}
+				if (rest.size() == arr.length) return;
+				Object tmp = rest.size() == 1 ? rest.get(0) : rest.toArray(new String[rest.size()]);
+				if (index.replace(lower, cur, tmp)) return;
+			}
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import lucee.runtime.converter.JavaConverter;
+
+/**
+ * stores serialized values outside the java heap in direct byte buffers (slabs). The slabs are
+ * split in blocks of a fixed size, a value occupies as many blocks as needed, so freed space can
+ * always be reused without compacting. Slabs are only allocated when needed, but never released
+ * before the store itself.
+ * 
+ * A value can be freed while an other thread reads it, the reader detects this after reading and
+ * handles the value as missing.
+ */
+final class OffHeapStore {
+
+	static final int DEFAULT_BLOCK_SIZE = 1024;
+	// smaller values are kept on the heap, storing them off heap would waste most of the block
+	static final int MIN_SIZE = DEFAULT_BLOCK_SIZE / 2;
+	private static final long MAX_SLAB_SIZE = 64L * 1024L * 1024L;
+
+	private final int blockSize;
+	private final int blocksPerSlab;
+	private final int maxBlocks;
+	// slabs are created under the lock but read without it
+	private final AtomicReferenceArray<ByteBuffer> slabs;
+
+	private int[] freeBlocks = new int[64];
+	private int freeCount;
+	private int nextBlock;
+	private long usedBlocks;
+	private long values;
+
+	/**
+	 * @param capacity max number of bytes stored
+	 * @param blockSize size of a block in bytes
+	 */
+	OffHeapStore(long capacity, int blockSize) {
+		this.blockSize = blockSize;
+		this.blocksPerSlab = (int) (Math.min(capacity, MAX_SLAB_SIZE) / blockSize);
+		this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, capacity / blockSize);
+		this.slabs = new AtomicReferenceArray<ByteBuffer>((maxBlocks + blocksPerSlab - 1) / blocksPerSlab);
+	}
+
+	/**
+	 * @param length length of a serialized value
+	 * @return bytes needed to store a value with the given length
+	 */
+	long weight(int length) {
+		return (long) blocks(length) * blockSize;
+	}
+
+	long capacity() {
+		return (long) maxBlocks * blockSize;
+	}
+
+	synchronized long used() {
+		return usedBlocks * blockSize;
+	}
+
+	synchronized long size() {
+		return values;
+	}
+
+	/**
+	 * serializes the given value
+	 * 
+	 * @param value value to serialize
+	 * @return the serialized value or null if the value cannot be serialized
+	 */
+	static byte[] serialize(Object value) {
+		if (!(value instanceof Serializable)) return null;
+		try {
+			return JavaConverter.serializeAsBinary((Serializable) value);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * stores the data
+	 * 
+	 * @param data data to store
+	 * @return reference to the stored data or null if there is not enough space left
+	 */
+	Value store(byte[] data) {
+		int count = blocks(data.length);
+		int[] blocks = new int[count];
+		synchronized (this) {
+			if (count > (freeCount + (maxBlocks - nextBlock))) return null;
+			for (int i = 0; i < count; i++) {
+				if (freeCount > 0) blocks[i] = freeBlocks[--freeCount];
+				else {
+					int block = nextBlock;
+					if (slab(block) == null) {
+						// rollback
+						for (int y = 0; y < i; y++) {
+							pushFree(blocks[y]);
+						}
+						return null;
+					}
+					nextBlock++;
+					blocks[i] = block;
+				}
+			}
+			usedBlocks += count;
+			values++;
+		}
+		// the blocks belong to this value now, they can be written without lock
+		int offset = 0, len;
+		for (int block: blocks) {
+			len = Math.min(blockSize, data.length - offset);
+			ByteBuffer bb = slabs.get(block / blocksPerSlab).duplicate();
+			bb.position((block % blocksPerSlab) * blockSize);
+			bb.put(data, offset, len);
+			offset += len;
+		}
+		return new Value(blocks, data.length);
+	}
+
+	/**
+	 * reads and deserializes a stored value
+	 * 
+	 * @param value reference to the value
+	 * @return the value or null if the value was freed in the meantime
+	 * @throws IOException
+	 */
+	Object read(Value value) throws IOException {
+		if (value.freed) return null;
+		byte[] data = new byte[value.length];
+		int offset = 0, len;
+		for (int block: value.blocks) {
+			len = Math.min(blockSize, data.length - offset);
+			ByteBuffer bb = slabs.get(block / blocksPerSlab).duplicate();
+			bb.position((block % blocksPerSlab) * blockSize);
+			bb.get(data, offset, len);
+			offset += len;
+		}
+		// the blocks may have been reused while reading
+		if (value.freed) return null;
+		try {
+			return JavaConverter.deserialize(new ByteArrayInputStream(data));
+		}
+		catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * frees the space used by the value, does nothing if the value is already freed
+	 * 
+	 * @param value value to free
+	 */
+	synchronized void free(Value value) {
+		if (value.freed) return;
+		value.freed = true;
+		for (int block: value.blocks) {
+			pushFree(block);
+		}
+		usedBlocks -= value.blocks.length;
+		values--;
+	}
+
+	private void pushFree(int block) {
+		if (freeCount == freeBlocks.length) {
+			int[] tmp = new int[freeBlocks.length << 1];
+			System.arraycopy(freeBlocks, 0, tmp, 0, freeCount);
+			freeBlocks = tmp;
+		}
+		freeBlocks[freeCount++] = block;
+	}
+
+	// has to be called while holding the lock
+	private ByteBuffer slab(int block) {
+		int index = block / blocksPerSlab;
+		ByteBuffer slab = slabs.get(index);
+		if (slab == null) {
+			try {
+				slab = ByteBuffer.allocateDirect(blocksPerSlab * blockSize);
+			}
+			catch (OutOfMemoryError oome) {
+				// limited by -XX:MaxDirectMemorySize
+				return null;
+			}
+			slabs.set(index, slab);
+		}
+		return slab;
+	}
+
+	private int blocks(int length) {
+		return Math.max(1, (length + blockSize - 1) / blockSize);
+	}
+
+	/**
+	 * reference to a value in the store, this is what the cache entry holds instead of the value
+	 */
+	static final class Value {
+		private final int[] blocks;
+		private final int length;
+		private volatile boolean freed;
+
+		private Value(int[] blocks, int length) {
+			this.blocks = blocks;
+			this.length = length;
+		}
+
+		int length() {
+			return length;
+		}
+	}
+}
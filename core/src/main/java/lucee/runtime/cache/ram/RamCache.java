@@ -20,25 +20,28 @@ package lucee.runtime.cache.ram;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.commons.collections4.map.ReferenceMap;
 
 import lucee.commons.io.SystemUtil;
 import lucee.commons.io.cache.CacheEntry;
+import lucee.commons.io.cache.CacheKeyFilter;
 import lucee.commons.io.cache.CachePro;
 import lucee.commons.io.cache.exp.CacheException;
 import lucee.commons.io.log.LogUtil;
 import lucee.commons.lang.ParentThreasRefThread;
 import lucee.runtime.cache.CacheSupport;
+import lucee.runtime.cache.CacheUtil;
 import lucee.runtime.cache.ram.ref.HardRef;
 import lucee.runtime.cache.ram.ref.Ref;
 import lucee.runtime.cache.ram.ref.SoftRef;
+import lucee.runtime.cache.util.WildCardFilter;
 import lucee.runtime.config.Config;
 import lucee.runtime.config.ConfigWebUtil;
 import lucee.runtime.engine.CFMLEngineImpl;
@@ -51,9 +54,16 @@ import lucee.runtime.type.Struct;
 public class RamCache extends CacheSupport {
 
 	public static final int DEFAULT_CONTROL_INTERVAL = 60;
+	// interval of the controller for a bounded cache, expiring entries with the timer wheel is cheap
+	private static final int BOUNDED_CONTROL_INTERVAL = 1000;
+	private static final long DEFAULT_OFF_HEAP_CAPACITY = 256L * 1024L * 1024L;
+
 	private Map<String, Ref<RamCacheEntry>> entries = new ConcurrentHashMap<String, Ref<RamCacheEntry>>();
-	private long missCount;
-	private int hitCount;
+	private final LongAdder missCount = new LongAdder();
+	private final LongAdder hitCount = new LongAdder();
+	// read by request threads and the controller without a lock
+	private volatile BoundedPolicy policy;
+	private volatile OffHeapStore offHeap;
 
 	private long idleTime;
 	private long until;
@@ -100,6 +110,17 @@ public class RamCache extends CacheSupport {
 		if (ci == null) ci = arguments.get("controlInterval", null);
 		int intervalInSeconds = Caster.toIntValue(ci, DEFAULT_CONTROL_INTERVAL);
 		init(until, idleTime, intervalInSeconds);
+
+		if (Caster.toBooleanValue(arguments.get("keyIndex", false), false)) indexKeys();
+
+		// bounded
+		long maxEntries = Caster.toLongValue(arguments.get("maxEntries", Constants.LONG_ZERO), Constants.LONG_ZERO);
+		long maxWeight = Caster.toLongValue(arguments.get("maxMemory", Constants.LONG_ZERO), Constants.LONG_ZERO) * 1024L * 1024L;
+		bounded(maxEntries, maxWeight);
+		if (Caster.toBooleanValue(arguments.get("offHeap", false), false)) {
+			long maxHeapWeight = Caster.toLongValue(arguments.get("maxHeapMemory", Constants.LONG_ZERO), Constants.LONG_ZERO) * 1024L * 1024L;
+			offHeap(maxWeight, maxHeapWeight);
+		}
 	}
 
 	public RamCache init(long until, long idleTime, int intervalInSeconds) {
@@ -109,10 +130,71 @@ public class RamCache extends CacheSupport {
 		return this;
 	}
 
+	/**
+	 * keeps the keys in a sorted index, so wildcard filters starting with a literal prefix (for example
+	 * "user_123_*") only have to look at the keys with that prefix and not at all keys of the cache.
+	 * Costs some memory and time for every new key. Has to be called before the cache is used and
+	 * before {@link #bounded(long, long)}.
+	 * 
+	 * @return this cache
+	 */
+	public RamCache indexKeys() {
+		if (!(entries instanceof KeyIndexMap)) entries = new KeyIndexMap();
+		return this;
+	}
+
+	/**
+	 * limits the size of the cache, when the limit is reached, entries are evicted based on how often
+	 * and how recently they were used (Window TinyLFU). A bounded cache holds the entries with hard
+	 * references, the "outOfMemory" setting is ignored. Has to be called before the cache is used.
+	 * 
+	 * @param maxEntries max number of entries, 0 for no limit
+	 * @param maxWeight max size in bytes of all values together (see SizeOf), 0 for no limit
+	 * @return this cache
+	 */
+	public RamCache bounded(long maxEntries, long maxWeight) {
+		if (maxEntries > 0 || maxWeight > 0) policy = new BoundedPolicy(entries, Math.max(0, maxEntries), Math.max(0, maxWeight));
+		else policy = null;
+		offHeap = null;
+		return this;
+	}
+
+	/**
+	 * stores the values serialized outside the java heap, the cache only keeps a small reference to
+	 * them. Values that cannot be serialized or are very small are kept on the heap. The off heap
+	 * memory is limited to the given capacity, when exceeded entries are evicted like with
+	 * {@link #bounded(long, long)}, a limit on the number of entries set before is kept. The values
+	 * kept on the heap do not count against the capacity, they have their own limit. Has to be called
+	 * before the cache is used.
+	 * 
+	 * @param capacity max size in bytes of all values stored off heap, 0 for the default (256 MB)
+	 * @param maxHeapWeight max size in bytes of all values kept on the heap (see SizeOf), 0 for no limit
+	 * @return this cache
+	 */
+	public RamCache offHeap(long capacity, long maxHeapWeight) {
+		if (capacity <= 0) capacity = DEFAULT_OFF_HEAP_CAPACITY;
+		long maxEntries = policy == null ? 0 : policy.getMaxEntries();
+		final OffHeapStore store = new OffHeapStore(capacity, OffHeapStore.DEFAULT_BLOCK_SIZE);
+		policy = new BoundedPolicy(entries, maxEntries, capacity, Math.max(0, maxHeapWeight), new BoundedPolicy.Listener() {
+			@Override
+			public void removed(BoundedNode node) {
+				Object value;
+				synchronized (node.entry) {
+					value = node.entry.getValue();
+				}
+				if (value instanceof OffHeapStore.Value) store.free((OffHeapStore.Value) value);
+			}
+		});
+		offHeap = store;
+		return this;
+	}
+
 	public void release() {
 		entries.clear();
-		missCount = 0;
-		hitCount = 0;
+		missCount.reset();
+		hitCount.reset();
+		policy = null;
+		offHeap = null;
 		idleTime = 0;
 		until = 0;
 		controlInterval = DEFAULT_CONTROL_INTERVAL * 1000;
@@ -133,10 +215,18 @@ public class RamCache extends CacheSupport {
 			return defaultValue;
 		}
 		if (!valid(entry)) {
-			entries.remove(key);
+			remove(key, tmp);
 			return defaultValue;
 		}
-		if (decouple) entry = new RamCacheEntry(entry.getKey(), decouple(entry.getValue()), entry.idleTimeSpan(), entry.liveTimeSpan());
+		// the value can be replaced at any time, read it only once
+		Object value = entry.getValue();
+		if (value instanceof OffHeapStore.Value) {
+			entry = load(entry, (OffHeapStore.Value) value);
+			return entry == null ? defaultValue : entry;
+		}
+		if (decouple) entry = new RamCacheEntry(entry.getKey(), decouple(value), entry.idleTimeSpan(), entry.liveTimeSpan());
+		// an update can move the value of the entry off heap
+		else if (offHeap != null) entry = entry.copy(value);
 		return entry;
 	}
 
@@ -147,32 +237,97 @@ public class RamCache extends CacheSupport {
 			return defaultValue;
 		}
 		if (!valid(entry)) {
-			entries.remove(key);
+			remove(key, tmp);
 			return defaultValue;
 		}
+		BoundedPolicy p = policy;
+		if (p != null && tmp instanceof BoundedNode) p.onRead((BoundedNode) tmp);
 		return entry;
 	}
 
+	private void remove(String key, Ref<RamCacheEntry> ref) {
+		if (entries.remove(key, ref)) {
+			BoundedPolicy p = policy;
+			if (p != null) p.onRemove(ref);
+		}
+	}
+
 	@Override
 	public CacheEntry getCacheEntry(String key, CacheEntry defaultValue) {
 		RamCacheEntry ce = (RamCacheEntry) _getQuiet(key, null);
+		Object value = ce == null ? null : ce.getValue();
+		if (value instanceof OffHeapStore.Value) {
+			ce = load(ce.read(), (OffHeapStore.Value) value);
+		}
+		else if (ce != null) {
+			if (decouple) ce = new RamCacheEntry(ce.getKey(), decouple(value), ce.idleTimeSpan(), ce.liveTimeSpan()).read();
+			// an update can move the value of the entry off heap
+			else if (offHeap != null) ce = ce.read().copy(value);
+			else ce = ce.read();
+		}
 		if (ce != null) {
-			if (decouple) ce = new RamCacheEntry(ce.getKey(), decouple(ce.getValue()), ce.idleTimeSpan(), ce.liveTimeSpan());
-			hitCount++;
-			return ce.read();
+			hitCount.increment();
+			return ce;
 		}
-		missCount++;
+		missCount.increment();
 		return defaultValue;
 	}
 
+	/**
+	 * reads the value of a entry stored off heap
+	 * 
+	 * @param entry entry holding a reference to the value
+	 * @param ref reference to the value read from the entry
+	 * @return copy of the entry with the value or null if the value was removed in the meantime
+	 */
+	private RamCacheEntry load(RamCacheEntry entry, OffHeapStore.Value ref) {
+		OffHeapStore store = offHeap;
+		if (store == null) return null;
+		try {
+			Object value = store.read(ref);
+			return value == null ? null : entry.copy(value);
+		}
+		catch (IOException e) {
+			LogUtil.log("application", e);
+			return null;
+		}
+	}
+
+	/**
+	 * moves the value off heap if possible, when the store is full, entries get evicted to make room
+	 * 
+	 * @param store off heap store
+	 * @param p policy of the cache
+	 * @param value value to store
+	 * @return reference to the stored value or the (decoupled) value itself, if it is kept on the heap
+	 */
+	private Object toOffHeap(OffHeapStore store, BoundedPolicy p, Object value) {
+		byte[] data = OffHeapStore.serialize(value);
+		if (data == null || data.length < OffHeapStore.MIN_SIZE) return decouple(value);
+		OffHeapStore.Value v = store.store(data);
+		if (v == null && p.makeRoom(store.weight(data.length))) v = store.store(data);
+		return v == null ? decouple(value) : v;
+	}
+
+	// space used off heap, values kept on the heap are weighed separately (see weighHeap)
+	private static long weigh(OffHeapStore store, Object value) {
+		if (value instanceof OffHeapStore.Value) return store.weight(((OffHeapStore.Value) value).length());
+		return 0;
+	}
+
+	private static long weighHeap(BoundedPolicy p, Object value) {
+		if (value instanceof OffHeapStore.Value) return 0;
+		return p.weighHeap(value);
+	}
+
 	@Override
 	public long hitCount() {
-		return hitCount;
+		return hitCount.sum();
 	}
 
 	@Override
 	public long missCount() {
-		return missCount;
+		return missCount.sum();
 	}
 
 	@Override
@@ -188,21 +343,113 @@ public class RamCache extends CacheSupport {
 		return list;
 	}
 
+	@Override
+	public List<String> keys(CacheKeyFilter filter) throws IOException {
+		List<String> candidates = candidates(filter);
+		if (candidates == null) return super.keys(filter);
+		List<String> list = new ArrayList<String>();
+		for (String key: candidates) {
+			if (filter.accept(key) && _getQuiet(key, null) != null) list.add(key);
+		}
+		return list;
+	}
+
+	@Override
+	public List<CacheEntry> entries(CacheKeyFilter filter) throws IOException {
+		List<String> candidates = candidates(filter);
+		if (candidates == null) return super.entries(filter);
+		List<CacheEntry> list = new ArrayList<CacheEntry>();
+		CacheEntry entry;
+		for (String key: candidates) {
+			if (filter.accept(key) && (entry = getQuiet(key, null)) != null) list.add(entry);
+		}
+		return list;
+	}
+
+	@Override
+	public List values(CacheKeyFilter filter) throws IOException {
+		List<String> candidates = candidates(filter);
+		if (candidates == null) return super.values(filter);
+		List<Object> list = new ArrayList<Object>();
+		CacheEntry entry;
+		for (String key: candidates) {
+			if (filter.accept(key) && (entry = getQuiet(key, null)) != null) list.add(entry.getValue());
+		}
+		return list;
+	}
+
+	@Override
+	public int remove(CacheKeyFilter filter) throws IOException {
+		List<String> candidates = candidates(filter);
+		if (candidates == null) return super.remove(filter);
+		int count = 0;
+		for (String key: candidates) {
+			if (filter.accept(key) && remove(key)) count++;
+		}
+		return count;
+	}
+
+	/**
+	 * uses the key index to find the keys that can match the filter
+	 * 
+	 * @param filter filter
+	 * @return keys starting with the literal prefix of the filter (ignoring the case) or null if the
+	 *         index cannot be used
+	 */
+	private List<String> candidates(CacheKeyFilter filter) {
+		if (!(entries instanceof KeyIndexMap) || !(filter instanceof WildCardFilter) || CacheUtil.allowAll(filter)) return null;
+		String pattern = filter.toPattern();
+		int len = 0;
+		char c;
+		// only ascii, the lower case of other characters can depend on the following characters
+		while (len < pattern.length() && (c = pattern.charAt(len)) != '*' && c != '?' && c < 128) {
+			len++;
+		}
+		if (len == 0) return null;
+		return ((KeyIndexMap) entries).keysWithPrefix(pattern.substring(0, len).toLowerCase());
+	}
+
 	@Override
 	public void put(String key, Object value, Long idleTime, Long until) {
 
 		Ref<RamCacheEntry> tmp = entries.get(key);
 		RamCacheEntry entry = tmp == null ? null : tmp.get();
+		BoundedPolicy p = policy;
+		OffHeapStore store = offHeap;
 		if (entry == null) {
-			RamCacheEntry e = new RamCacheEntry(key, decouple(value), idleTime == null ? this.idleTime : idleTime.longValue(), until == null ? this.until : until.longValue());
-			entries.put(key, outOfMemory ? new HardRef<RamCacheEntry>(e) : new SoftRef<RamCacheEntry>(e));
+			// a serialized value is already decoupled, toOffHeap decouples the values kept on the heap
+			Object v = store != null ? toOffHeap(store, p, value) : decouple(value);
+			RamCacheEntry e = new RamCacheEntry(key, v, idleTime == null ? this.idleTime : idleTime.longValue(), until == null ? this.until : until.longValue());
+			if (p != null) {
+				BoundedNode node = new BoundedNode(e, store != null ? weigh(store, v) : p.weigh(v));
+				if (store != null) node.heapWeight = weighHeap(p, v);
+				p.onAdd(node, entries.put(key, node));
+			}
+			else entries.put(key, outOfMemory ? new HardRef<RamCacheEntry>(e) : new SoftRef<RamCacheEntry>(e));
+		}
+		else if (store != null && tmp instanceof BoundedNode) {
+			BoundedNode node = (BoundedNode) tmp;
+			Object v = toOffHeap(store, p, value), old;
+			synchronized (entry) {
+				old = entry.getValue();
+				// the node was removed in the meantime, nobody else frees the new value
+				if (node.retired) old = v;
+				else entry.update(v);
+			}
+			if (old instanceof OffHeapStore.Value) store.free((OffHeapStore.Value) old);
+			p.onUpdate(node, weigh(store, v), weighHeap(p, v));
+		}
+		else {
+			entry.update(value);
+			if (p != null && tmp instanceof BoundedNode) p.onUpdate((BoundedNode) tmp, p.weigh(value));
 		}
-		else entry.update(value);
 	}
 
 	@Override
 	public boolean remove(String key) {
 		Ref<RamCacheEntry> tmp = entries.remove(key);
+		BoundedPolicy p = policy;
+		if (p != null && tmp != null) p.onRemove(tmp);
 		RamCacheEntry entry = tmp == null ? null : tmp.get();
 		if (entry == null) {
 			return false;
@@ -214,7 +461,10 @@ public class RamCache extends CacheSupport {
 	@Override
 	public int clear() throws IOException {
 		int size = entries.size();
-		entries.clear();
+		BoundedPolicy p = policy;
+		// the policy clears the map as well, so no node is left in the map without being tracked
+		if (p != null) p.clear();
+		else entries.clear();
 		return size;
 	}
 
@@ -232,8 +482,15 @@ public class RamCache extends CacheSupport {
 		public void run() {
 			while (engine.isRunning()) {
 				try {
-					SystemUtil.sleep(ramCache.controlInterval);
-					_run();
+					BoundedPolicy p = ramCache.policy;
+					if (p != null) {
+						SystemUtil.sleep(Math.min(ramCache.controlInterval, BOUNDED_CONTROL_INTERVAL));
+						p.cleanUp(System.currentTimeMillis());
+					}
+					else {
+						SystemUtil.sleep(ramCache.controlInterval);
+						_run();
+					}
 				}
 				catch (Exception e) {
 					addParentStacktrace(e);
@@ -246,18 +503,18 @@ public class RamCache extends CacheSupport {
 			if (ramCache == null) return;
 			Map<String, Ref<RamCacheEntry>> e = ramCache.entries;
 			if (e == null) return;
-			Collection<Ref<RamCacheEntry>> v = e.values();
-			if (v == null) return;
 
-			Iterator<Ref<RamCacheEntry>> it = v.iterator();
+			Iterator<Entry<String, Ref<RamCacheEntry>>> it = e.entrySet().iterator();
+			Entry<String, Ref<RamCacheEntry>> entry;
 			Ref<RamCacheEntry> sr;
 			RamCacheEntry rce;
 			while (it.hasNext()) {
-				sr = it.next();
-				if (sr != null && (rce = sr.get()) != null) {
-					if (!CacheSupport.valid(rce)) {
-						e.remove(rce.getKey());
-					}
+				entry = it.next();
+				sr = entry.getValue();
+				// removed through the cache and only if not replaced in the meantime, so the key index is kept in
+				// sync, entries collected by the garbage collector are removed as well
+				if (sr != null && ((rce = sr.get()) == null || !CacheSupport.valid(rce))) {
+					ramCache.remove(entry.getKey(), sr);
 				}
 			}
 		}
@@ -283,6 +540,25 @@ public class RamCache extends CacheSupport {
 	public Struct getCustomInfo() {
 		Struct info = super.getCustomInfo();
 		info.setEL("outOfMemoryHandling", entries instanceof ReferenceMap);
+		info.setEL("keyIndex", entries instanceof KeyIndexMap);
+		BoundedPolicy p = policy;
+		if (p != null) {
+			info.setEL("maxEntries", Caster.toDouble(p.getMaxEntries()));
+			info.setEL("maxMemory", Caster.toDouble(p.getMaxWeight()));
+			info.setEL("weightedSize", Caster.toDouble(p.weightedSize()));
+			info.setEL("evictionCount", Caster.toDouble(p.evictionCount()));
+			info.setEL("expiredCount", Caster.toDouble(p.expiredCount()));
+		}
+		OffHeapStore store = offHeap;
+		if (store != null) {
+			info.setEL("offHeapCapacity", Caster.toDouble(store.capacity()));
+			info.setEL("offHeapUsed", Caster.toDouble(store.used()));
+			info.setEL("offHeapEntries", Caster.toDouble(store.size()));
+			if (p != null) {
+				info.setEL("maxHeapMemory", Caster.toDouble(p.getMaxHeapWeight()));
+				info.setEL("heapWeightedSize", Caster.toDouble(p.heapWeightedSize()));
+			}
+		}
 		return info;
 	}
 
@@ -31,7 +31,8 @@ import lucee.runtime.type.Struct;
 public class RamCacheEntry implements CacheEntry {
 
 	private String key;
-	private Object value;
+	// updated under the lock of the entry, but read without
+	private volatile Object value;
 	private long idleTime;
 	private long until;
 	private long created;
@@ -104,6 +105,32 @@ public class RamCacheEntry implements CacheEntry {
 		hitCount++;
 	}
 
+	/**
+	 * @return point in time the entry expires (time to live or time to idle, whatever comes first), 0
+	 *         if the entry never expires
+	 */
+	long deadline() {
+		long deadline = until > 0 ? modifed + until : 0;
+		if (idleTime > 0) {
+			long idle = accessed + idleTime;
+			deadline = deadline == 0 ? idle : Math.min(deadline, idle);
+		}
+		return deadline;
+	}
+
+	/**
+	 * @param value value of the copy
+	 * @return copy of this entry with a different value
+	 */
+	RamCacheEntry copy(Object value) {
+		RamCacheEntry copy = new RamCacheEntry(key, value, idleTime, until);
+		copy.created = created;
+		copy.modifed = modifed;
+		copy.accessed = accessed;
+		copy.hitCount = hitCount;
+		return copy;
+	}
+
 	public RamCacheEntry read() {
 		accessed = System.currentTimeMillis();
 		hitCount++;
@@ -0,0 +1,166 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.cache.ram;
+
+/**
+ * hierarchical timer wheel used to expire the entries of a bounded {@link RamCache}. Instead of
+ * checking all entries periodically, a entry is placed in a bucket depending on when it expires,
+ * advancing the wheel only touches the buckets that became due. The levels cover about a second, a
+ * minute, a hour, a day and everything above.
+ * 
+ * not thread safe, the caller has to synchronize the access.
+ */
+final class TimerWheel {
+
+	interface Expirer {
+		/**
+		 * called for every node that is due
+		 * 
+		 * @param node due node, already removed from the wheel
+		 * @param now current time
+		 */
+		void expire(BoundedNode node, long now);
+	}
+
+	private static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+	// span of a bucket in milliseconds for every level
+	private static final long[] SPANS = { 1L << 10, 1L << 16, 1L << 22, 1L << 26, 1L << 28, 1L << 28 };
+	private static final int[] SHIFT = { 10, 16, 22, 26, 28 };
+
+	private final BoundedNode[][] wheel;
+	private long time;
+
+	TimerWheel(long now) {
+		wheel = new BoundedNode[BUCKETS.length][];
+		for (int i = 0; i < BUCKETS.length; i++) {
+			wheel[i] = new BoundedNode[BUCKETS[i]];
+		}
+		time = now;
+	}
+
+	/**
+	 * adds the node to the wheel or moves it to the bucket matching its deadline, a node without
+	 * deadline (0) is removed from the wheel
+	 * 
+	 * @param node node to schedule
+	 */
+	void schedule(BoundedNode node) {
+		if (node.timerLevel != -1) unlink(node);
+		if (node.deadline == 0) return;
+		// a node that is already due goes to the current bucket, so it is expired with the next advance
+		long deadline = Math.max(node.deadline, time);
+		long duration = deadline - time;
+		for (int i = 0; i < BUCKETS.length - 1; i++) {
+			if (duration < SPANS[i + 1]) {
+				long ticks = deadline >>> SHIFT[i];
+				link(node, i, (int) (ticks & (BUCKETS[i] - 1)));
+				return;
+			}
+		}
+		link(node, BUCKETS.length - 1, 0);
+	}
+
+	/**
+	 * removes the node from the wheel
+	 * 
+	 * @param node node to remove
+	 */
+	void deschedule(BoundedNode node) {
+		if (node.timerLevel != -1) unlink(node);
+	}
+
+	/**
+	 * advances the wheel to the given time, all nodes that are due are passed to the expirer, nodes
+	 * that are not due yet are moved to a lower level.
+	 * 
+	 * @param now current time
+	 * @param expirer handles the due nodes
+	 */
+	void advance(long now, Expirer expirer) {
+		long previous = time;
+		if (now <= previous) return;
+		time = now;
+		for (int i = 0; i < SHIFT.length; i++) {
+			long previousTicks = previous >>> SHIFT[i];
+			long currentTicks = now >>> SHIFT[i];
+			if (currentTicks - previousTicks <= 0) break;
+			expire(i, previousTicks, currentTicks - previousTicks, now, expirer);
+		}
+	}
+
+	private void expire(int level, long previousTicks, long delta, long now, Expirer expirer) {
+		BoundedNode[] buckets = wheel[level];
+		int mask = buckets.length - 1;
+		int steps = (int) Math.min(delta + 1, buckets.length);
+		int start = (int) (previousTicks & mask);
+		BoundedNode node, next;
+		for (int i = 0; i < steps; i++) {
+			int index = (start + i) & mask;
+			node = buckets[index];
+			buckets[index] = null;
+			while (node != null) {
+				next = node.timerNext;
+				node.timerPrev = null;
+				node.timerNext = null;
+				node.timerLevel = -1;
+				if (node.deadline <= now) expirer.expire(node, now);
+				else schedule(node);
+				node = next;
+			}
+		}
+	}
+
+	/**
+	 * removes all nodes
+	 */
+	void clear() {
+		for (int i = 0; i < wheel.length; i++) {
+			for (int j = 0; j < wheel[i].length; j++) {
+				BoundedNode node = wheel[i][j], next;
+				wheel[i][j] = null;
+				while (node != null) {
+					next = node.timerNext;
+					node.timerPrev = null;
+					node.timerNext = null;
+					node.timerLevel = -1;
+					node = next;
+				}
+			}
+		}
+	}
+
+	private void link(BoundedNode node, int level, int bucket) {
+		BoundedNode head = wheel[level][bucket];
+		node.timerPrev = null;
+		node.timerNext = head;
+		if (head != null) head.timerPrev = node;
+		wheel[level][bucket] = node;
+		node.timerLevel = level;
+		node.timerBucket = bucket;
+	}
+
+	private void unlink(BoundedNode node) {
+		if (node.timerPrev != null) node.timerPrev.timerNext = node.timerNext;
+		else wheel[node.timerLevel][node.timerBucket] = node.timerNext;
+		if (node.timerNext != null) node.timerNext.timerPrev = node.timerPrev;
+		node.timerPrev = null;
+		node.timerNext = null;
+		node.timerLevel = -1;
+	}
+}
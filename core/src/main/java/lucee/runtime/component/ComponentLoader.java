@@ -651,7 +651,10 @@ public class ComponentLoader {
 				+ "] as a component (" + page.getClass().getName() + "" + (page instanceof InterfacePageImpl) + ")");
 
 		ComponentPageImpl cp = (ComponentPageImpl) page;
+		long start = System.nanoTime();
 		ComponentImpl c = cp.newInstance(pc, callPath, isRealPath, isExtendedComponent, executeConstr);
+		if (isExtendedComponent) ComponentStats.extended();
+		else ComponentStats.created(System.nanoTime() - start);
 		// abstract/final check
 		if (validate) {
 			if (!isExtendedComponent) {
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * engine wide counters about the creation of component instances
+ */
+public final class ComponentStats {
+
+	private static final LongAdder created = new LongAdder();
+	private static final LongAdder createdTime = new LongAdder();
+	private static final LongAdder extended = new LongAdder();
+	private static final LongAdder udfsShared = new LongAdder();
+	private static final LongAdder udfsCopied = new LongAdder();
+
+	private ComponentStats() {
+	}
+
+	/**
+	 * a component was instantiated
+	 * 
+	 * @param nanos time used to create the instance including its base components and the pseudo
+	 *            constructor
+	 */
+	public static void created(long nanos) {
+		created.increment();
+		createdTime.add(nanos);
+	}
+
+	/**
+	 * a base component was instantiated as part of a component instance
+	 */
+	public static void extended() {
+		extended.increment();
+	}
+
+	static void udfsShared(int count) {
+		udfsShared.add(count);
+	}
+
+	static void udfsCopied(int count) {
+		udfsCopied.add(count);
+	}
+
+	/**
+	 * @return number of component instances created since the start of the engine (without base
+	 *         components)
+	 */
+	public static long getCreatedCount() {
+		return created.sum();
+	}
+
+	/**
+	 * @return time in nanoseconds used to create the component instances
+	 */
+	public static long getCreatedTime() {
+		return createdTime.sum();
+	}
+
+	/**
+	 * @return number of base component instances created for the component instances
+	 */
+	public static long getExtendedCount() {
+		return extended.sum();
+	}
+
+	/**
+	 * @return number of inherited functions taken over from a base component without copying them
+	 */
+	public static long getUDFsShared() {
+		return udfsShared.sum();
+	}
+
+	/**
+	 * @return number of inherited functions copied from a base component
+	 */
+	public static long getUDFsCopied() {
+		return udfsCopied.sum();
+	}
+}
@@ -0,0 +1,223 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.component;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import lucee.runtime.type.Collection.Key;
+import lucee.runtime.type.UDF;
+
+/**
+ * functions of a component instance. The functions inherited from the base component are not copied,
+ * the table shares the (immutable) table of the base component and only holds the functions defined
+ * or overwritten by the component itself (copy on write).
+ * 
+ * Like the HashMap used before, this map is not thread safe for writing. Creating a table from it
+ * (which moves the own functions to the shared ones) is a read and can happen while other threads
+ * read the table, so both layers are volatile and every reader looks at them only once.
+ */
+public final class UDFTable extends AbstractMap<Key, UDF> {
+
+	// never changed, can be shared with other tables
+	private volatile Map<Key, UDF> shared;
+	// functions set on this table, null until the first write
+	private volatile Map<Key, UDF> own;
+
+	public UDFTable() {
+	}
+
+	/**
+	 * creates a table that inherits all functions from the given table, later changes of the given
+	 * table are not visible in the new table.
+	 * 
+	 * @param parent table of the base component
+	 */
+	public UDFTable(Map<Key, UDF> parent) {
+		if (parent instanceof UDFTable) {
+			Map<Key, UDF> snapshot = ((UDFTable) parent).snapshot();
+			if (!snapshot.isEmpty()) {
+				shared = snapshot;
+				ComponentStats.udfsShared(snapshot.size());
+			}
+		}
+		else if (!parent.isEmpty()) {
+			own = new HashMap<Key, UDF>(parent);
+			ComponentStats.udfsCopied(parent.size());
+		}
+	}
+
+	/**
+	 * @return the current content of this table as map that is never changed again
+	 */
+	private Map<Key, UDF> snapshot() {
+		Map<Key, UDF> o = own, s = shared;
+		if (o == null) return s == null ? Collections.<Key, UDF>emptyMap() : s;
+		// the own functions become the shared ones, shared is set before own is dropped, so a reader
+		// looking at own first and shared second always finds the function
+		if (s == null) {
+			shared = o;
+			own = null;
+			return o;
+		}
+		Map<Key, UDF> merged = new HashMap<Key, UDF>(s);
+		merged.putAll(o);
+		ComponentStats.udfsCopied(merged.size());
+		shared = merged;
+		own = null;
+		return merged;
+	}
+
+	@Override
+	public UDF get(Object key) {
+		Map<Key, UDF> o = own;
+		if (o != null) {
+			UDF udf = o.get(key);
+			if (udf != null) return udf;
+		}
+		Map<Key, UDF> s = shared;
+		return s == null ? null : s.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		Map<Key, UDF> o = own;
+		if (o != null && o.containsKey(key)) return true;
+		Map<Key, UDF> s = shared;
+		return s != null && s.containsKey(key);
+	}
+
+	@Override
+	public UDF put(Key key, UDF value) {
+		UDF old = get(key);
+		if (own == null) own = new HashMap<Key, UDF>();
+		own.put(key, value);
+		return old;
+	}
+
+	@Override
+	public UDF remove(Object key) {
+		if (shared != null && shared.containsKey(key)) materialize();
+		return own == null ? null : own.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		shared = null;
+		own = null;
+	}
+
+	@Override
+	public int size() {
+		Map<Key, UDF> o = own, s = shared;
+		if (o == null) return s == null ? 0 : s.size();
+		if (s == null) return o.size();
+		int size = s.size();
+		for (Key k: o.keySet()) {
+			if (!s.containsKey(k)) size++;
+		}
+		return size;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		Map<Key, UDF> o = own, s = shared;
+		return (o == null || o.isEmpty()) && (s == null || s.isEmpty());
+	}
+
+	@Override
+	public Set<Entry<Key, UDF>> entrySet() {
+		Map<Key, UDF> o = own, s = shared;
+		if (o == null) return s == null ? Collections.<Entry<Key, UDF>>emptySet() : Collections.unmodifiableMap(s).entrySet();
+		if (s == null) return Collections.unmodifiableMap(o).entrySet();
+		return new EntrySet(o, s);
+	}
+
+	// the shared functions become own functions of this table
+	private void materialize() {
+		Map<Key, UDF> tmp = new HashMap<Key, UDF>(shared);
+		if (own != null) tmp.putAll(own);
+		ComponentStats.udfsCopied(tmp.size());
+		own = tmp;
+		shared = null;
+	}
+
+	/**
+	 * read only view of both layers, the own functions first, followed by the shared functions not
+	 * overwritten
+	 */
+	private static final class EntrySet extends AbstractSet<Entry<Key, UDF>> {
+		private final Map<Key, UDF> own;
+		private final Map<Key, UDF> shared;
+
+		EntrySet(Map<Key, UDF> own, Map<Key, UDF> shared) {
+			this.own = own;
+			this.shared = shared;
+		}
+
+		@Override
+		public Iterator<Entry<Key, UDF>> iterator() {
+			return new Iterator<Entry<Key, UDF>>() {
+				private final Iterator<Entry<Key, UDF>> ownIt = own.entrySet().iterator();
+				private final Iterator<Entry<Key, UDF>> sharedIt = shared.entrySet().iterator();
+				private Entry<Key, UDF> next;
+
+				@Override
+				public boolean hasNext() {
+					if (next != null) return true;
+					if (ownIt.hasNext()) {
+						next = new SimpleImmutableEntry<Key, UDF>(ownIt.next());
+						return true;
+					}
+					Entry<Key, UDF> e;
+					while (sharedIt.hasNext()) {
+						e = sharedIt.next();
+						if (!own.containsKey(e.getKey())) {
+							next = new SimpleImmutableEntry<Key, UDF>(e);
+							return true;
+						}
+					}
+					return false;
+				}
+
+				@Override
+				public Entry<Key, UDF> next() {
+					if (!hasNext()) throw new NoSuchElementException();
+					Entry<Key, UDF> e = next;
+					next = null;
+					return e;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			int size = shared.size();
+			for (Key k: own.keySet()) {
+				if (!shared.containsKey(k)) size++;
+			}
+			return size;
+		}
+	}
+}
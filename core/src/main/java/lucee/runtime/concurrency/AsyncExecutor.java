@@ -0,0 +1,205 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.concurrency;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucee.commons.io.SystemUtil;
+import lucee.runtime.exp.ApplicationException;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.op.Caster;
+
+/**
+ * engine wide executor used by runAsync and the stages (then, error) of the returned Future.
+ *
+ * The executor can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.async.maxthreads: max number of threads executing tasks at the same time</li>
+ * <li>lucee.async.queuesize: max number of tasks waiting for a thread, when exceeded tasks are
+ * rejected</li>
+ * <li>lucee.async.virtualthreads: use virtual threads when the JVM supports them</li>
+ * <li>lucee.async.maxnestedthreads: max number of threads executing tasks submitted by other tasks
+ * (see below)</li>
+ * </ul>
+ *
+ * Tasks submitted by a task of this executor (nested runAsync) are executed by a separate overflow
+ * executor when the pool is limited. A task waiting for a nested task holds a pool thread, with
+ * enough of them the nested tasks would never get a thread and the pool starves. The overflow
+ * executor creates threads as needed (up to its max), only when it is exhausted the nested task is
+ * executed by the submitting thread.
+ */
+public final class AsyncExecutor {
+
+	private static final long KEEP_ALIVE = 60000L;
+
+	private static volatile AsyncExecutor instance;
+
+	private final ExecutorService executor;
+	private final ThreadPoolExecutor pool; // null when virtual threads are used
+	private final ThreadPoolExecutor overflow; // null when virtual threads are used
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicInteger queued = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong nested = new AtomicLong();
+	// set while a thread executes a task of this executor
+	private final ThreadLocal<Boolean> inside = new ThreadLocal<Boolean>();
+
+	private AsyncExecutor() {
+		ExecutorService es = null;
+		if (Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.virtualthreads", null), false)) {
+			es = ParallelExecutor.createVirtualThreadExecutor();
+		}
+		if (es != null) {
+			pool = null;
+			overflow = null;
+			executor = es;
+		}
+		else {
+			int max = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.maxthreads", null), 0);
+			if (max < 1) max = Math.max(16, Runtime.getRuntime().availableProcessors() * 4);
+			int queueSize = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.queuesize", null), 0);
+			if (queueSize < 1) queueSize = 10000;
+
+			pool = new ThreadPoolExecutor(max, max, KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueSize),
+					new ParallelExecutor.NamedThreadFactory("lucee-async"), new RejectedExecutionHandler() {
+						@Override
+						public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+							throw new RejectedExecutionException("async executor is exhausted, [" + executor.getQueue().size() + "] tasks are waiting for a thread");
+						}
+					});
+			pool.allowCoreThreadTimeOut(true);
+			executor = pool;
+
+			int maxNested = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.maxnestedthreads", null), 0);
+			if (maxNested < 1) maxNested = max * 4;
+			overflow = new ThreadPoolExecutor(0, maxNested, KEEP_ALIVE, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+					new ParallelExecutor.NamedThreadFactory("lucee-async-nested"), new ThreadPoolExecutor.CallerRunsPolicy());
+		}
+	}
+
+	public static AsyncExecutor getInstance() {
+		if (instance == null) {
+			synchronized (AsyncExecutor.class) {
+				if (instance == null) instance = new AsyncExecutor();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * submit a task to the executor
+	 *
+	 * @param task task to execute
+	 * @return future of the task
+	 * @throws PageException in case the executor cannot take more tasks
+	 */
+	public <T> Future<T> submit(final Callable<T> task) throws PageException {
+		queued.incrementAndGet();
+		Callable<T> c = new Callable<T>() {
+			@Override
+			public T call() throws Exception {
+				queued.decrementAndGet();
+				active.incrementAndGet();
+				Boolean outer = inside.get();
+				inside.set(Boolean.TRUE);
+				try {
+					return task.call();
+				}
+				finally {
+					if (outer == null) inside.remove();
+					active.decrementAndGet();
+					completed.incrementAndGet();
+				}
+			}
+		};
+		// nested submission from a pooled thread, see class comment
+		if (overflow != null && inside.get() != null) {
+			nested.incrementAndGet();
+			return overflow.submit(c);
+		}
+		try {
+			return executor.submit(c);
+		}
+		catch (RejectedExecutionException ree) {
+			queued.decrementAndGet();
+			rejected.incrementAndGet();
+			throw new ApplicationException(ree.getMessage());
+		}
+	}
+
+	/**
+	 * @return number of tasks currently executed
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * @return number of tasks waiting for a thread
+	 */
+	public int getQueueSize() {
+		return pool == null ? queued.get() : pool.getQueue().size();
+	}
+
+	/**
+	 * @return number of tasks executed since the start of the engine
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	/**
+	 * @return number of tasks rejected since the start of the engine
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return number of nested tasks passed to the overflow executor since the start of the engine
+	 */
+	public long getNestedCount() {
+		return nested.get();
+	}
+
+	/**
+	 * @return max number of threads or -1 if the executor is not limited (virtual threads)
+	 */
+	public int getMaxThreads() {
+		return pool == null ? -1 : pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * @return number of threads currently in the pool or -1 if virtual threads are used
+	 */
+	public int getPoolSize() {
+		return pool == null ? -1 : pool.getPoolSize();
+	}
+}
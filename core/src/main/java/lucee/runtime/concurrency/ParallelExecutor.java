@@ -0,0 +1,288 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.concurrency;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import lucee.commons.io.SystemUtil;
+import lucee.runtime.PageContext;
+import lucee.runtime.PageContextImpl;
+import lucee.runtime.engine.ThreadLocalPageContext;
+import lucee.runtime.op.Caster;
+
+/**
+ * engine wide executor used by the closure functions (arrayEach, structMap ...) when called with
+ * "parallel=true". Instead of creating a new thread pool for every call, every call gets a light
+ * weight view ({@link #newExecutor(PageContext, int)}) of a shared pool that limits the concurrency
+ * of that call to the given number of threads. All calls of the same request together are limited
+ * as well, a parallel call nested in a task of the same request is executed by the calling thread,
+ * so the tasks of a request cannot block each other.
+ *
+ * The shared pool can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.parallel.maxthreads: max number of threads used by all parallel calls together</li>
+ * <li>lucee.parallel.maxthreadsperrequest: max number of threads used by all parallel calls of a
+ * request together, default 20</li>
+ * <li>lucee.parallel.virtualthreads: use virtual threads when the JVM supports them</li>
+ * </ul>
+ */
+public final class ParallelExecutor {
+
+	private static final long KEEP_ALIVE = 60000L;
+
+	private static final int MAX_PER_REQUEST;
+	static {
+		int max = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.parallel.maxthreadsperrequest", null), 0);
+		MAX_PER_REQUEST = max < 1 ? 20 : max;
+	}
+
+	private static volatile ExecutorService shared;
+
+	private ParallelExecutor() {}
+
+	/**
+	 * returns a executor that runs the submitted tasks with the shared pool, but never with more than
+	 * "maxThreads" threads at the same time and within the limit of the request. calling shutdown on
+	 * the returned executor does not affect the shared pool.
+	 *
+	 * @param pc PageContext of the request
+	 * @param maxThreads max number of concurrent threads for this executor
+	 * @return executor
+	 */
+	public static ExecutorService newExecutor(PageContext pc, int maxThreads) {
+		pc = ThreadLocalPageContext.get(pc);
+		Executor parent = pc instanceof PageContextImpl ? ((PageContextImpl) pc).getParallelExecutor() : getSharedExecutor();
+		return new BoundedExecutor(parent, maxThreads < 1 ? 1 : maxThreads, false);
+	}
+
+	/**
+	 * returns a executor limiting all parallel calls of a request, see
+	 * {@link PageContextImpl#getParallelExecutor()}
+	 *
+	 * @return executor
+	 */
+	public static ExecutorService newRequestExecutor() {
+		return new BoundedExecutor(getSharedExecutor(), MAX_PER_REQUEST, true);
+	}
+
+	/**
+	 * returns the pool shared by all parallel calls
+	 *
+	 * @return shared pool
+	 */
+	public static ExecutorService getSharedExecutor() {
+		if (shared == null) {
+			synchronized (ParallelExecutor.class) {
+				if (shared == null) shared = createSharedExecutor();
+			}
+		}
+		return shared;
+	}
+
+	private static ExecutorService createSharedExecutor() {
+		if (Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.parallel.virtualthreads", null), false)) {
+			ExecutorService es = createVirtualThreadExecutor();
+			if (es != null) return es;
+		}
+		int max = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.parallel.maxthreads", null), 0);
+		if (max < 1) max = Math.max(32, Runtime.getRuntime().availableProcessors() * 8);
+
+		// no core threads, idle threads are reused and die after the keep alive time.
+		// when all threads are busy, the task is executed by the caller, so nested parallel calls cannot
+		// deadlock the pool
+		ThreadPoolExecutor tpe = new ThreadPoolExecutor(0, max, KEEP_ALIVE, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(), new NamedThreadFactory("lucee-parallel"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+		return tpe;
+	}
+
+	static ExecutorService createVirtualThreadExecutor() {
+		try {
+			// only available with Java 21 and above
+			Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor", new Class[0]);
+			return (ExecutorService) m.invoke(null, new Object[0]);
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+
+	static final class NamedThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger counter = new AtomicInteger();
+		private final String prefix;
+
+		NamedThreadFactory(String prefix) {
+			this.prefix = prefix;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, prefix + "-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+
+	/**
+	 * executor that queues the tasks locally and never runs more than "max" of them at the same time
+	 * with the underlying executor.
+	 */
+	static final class BoundedExecutor extends AbstractExecutorService {
+
+		// executor of the task running in the current thread
+		private static final ThreadLocal<BoundedExecutor> RUNNING = new ThreadLocal<BoundedExecutor>();
+
+		private final Executor executor;
+		private final int max;
+		private final boolean runNested;
+		private final AtomicInteger active = new AtomicInteger();
+		private final Queue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+		private volatile boolean shutdown;
+
+		/**
+		 * @param runNested tasks submitted by a task of this executor are executed by the calling
+		 *            thread, otherwise the submitting task can wait for a task that never gets a thread
+		 */
+		BoundedExecutor(Executor executor, int max, boolean runNested) {
+			this.executor = executor;
+			this.max = max;
+			this.runNested = runNested;
+		}
+
+		@Override
+		public void execute(Runnable command) {
+			if (shutdown) throw new RejectedExecutionException("executor is already shutdown");
+			if (runNested && RUNNING.get() == this) {
+				command.run();
+				return;
+			}
+			queue.offer(command);
+			schedule();
+		}
+
+		private void schedule() {
+			int a;
+			while ((a = active.get()) < max) {
+				if (active.compareAndSet(a, a + 1)) {
+					try {
+						executor.execute(new Drainer());
+					}
+					catch (RejectedExecutionException ree) {
+						done();
+						throw ree;
+					}
+					return;
+				}
+			}
+		}
+
+		private void done() {
+			if (active.decrementAndGet() == 0) {
+				synchronized (this) {
+					notifyAll();
+				}
+			}
+		}
+
+		@Override
+		public void shutdown() {
+			shutdown = true;
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+			shutdown = true;
+			List<Runnable> list = new ArrayList<Runnable>();
+			Runnable r;
+			while ((r = queue.poll()) != null) {
+				list.add(r);
+			}
+			return list;
+		}
+
+		@Override
+		public boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public boolean isTerminated() {
+			return shutdown && active.get() == 0 && queue.isEmpty();
+		}
+
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long end = System.currentTimeMillis() + unit.toMillis(timeout);
+			synchronized (this) {
+				long left;
+				while (!isTerminated()) {
+					left = end - System.currentTimeMillis();
+					if (left <= 0) return false;
+					wait(left);
+				}
+			}
+			return true;
+		}
+
+		private final class Drainer implements Runnable {
+
+			@Override
+			public void run() {
+				// when the shared pool is exhausted this is executed by the calling thread, so we have to restore
+				// the PageContext of that thread
+				PageContext prev = ThreadLocalPageContext.get();
+				BoundedExecutor prevRunning = RUNNING.get();
+				if (runNested) RUNNING.set(BoundedExecutor.this);
+				try {
+					Runnable r;
+					while ((r = queue.poll()) != null) {
+						try {
+							r.run();
+						}
+						finally {
+							if (prev == null) ThreadLocalPageContext.release();
+							else ThreadLocalPageContext.register(prev);
+						}
+					}
+				}
+				finally {
+					if (runNested) {
+						if (prevRunning == null) RUNNING.remove();
+						else RUNNING.set(prevRunning);
+					}
+					done();
+					if (!queue.isEmpty()) schedule();
+				}
+			}
+		}
+	}
+}
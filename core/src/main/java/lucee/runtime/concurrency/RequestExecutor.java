@@ -0,0 +1,146 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.concurrency;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucee.commons.io.SystemUtil;
+import lucee.runtime.op.Caster;
+
+/**
+ * engine wide executor used to execute the requests coming from the servlet engine when
+ * "lucee.async.request.handle" is enabled. By default the executor is not limited, the number of
+ * concurrent requests is limited by the servlet engine like without "lucee.async.request.handle",
+ * idle threads are reused. When "lucee.async.request.maxthreads" is set, the number of requests
+ * executed at the same time and the number of requests waiting for a thread are limited, so a slow
+ * upstream cannot exhaust the threads of the servlet engine, requests exceeding the limit are
+ * rejected with status code 503.
+ *
+ * The executor can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.async.request.maxthreads: max number of requests executed at the same time, not
+ * limited by default</li>
+ * <li>lucee.async.request.queuesize: max number of requests waiting for a thread when the number of
+ * threads is limited, default 1000</li>
+ * <li>lucee.async.request.virtualthreads: use virtual threads when the JVM supports them</li>
+ * </ul>
+ */
+public final class RequestExecutor {
+
+	private static final long KEEP_ALIVE = 60000L;
+
+	private static volatile RequestExecutor instance;
+
+	private final ExecutorService executor;
+	private final ThreadPoolExecutor pool; // null when virtual threads are used
+	private final boolean limited;
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * @param max max number of requests executed at the same time, not limited when smaller than 1
+	 * @param queueSize max number of requests waiting for a thread, only used when limited
+	 * @param virtual use virtual threads when the JVM supports them
+	 */
+	RequestExecutor(int max, int queueSize, boolean virtual) {
+		ExecutorService es = virtual ? ParallelExecutor.createVirtualThreadExecutor() : null;
+		if (es != null) {
+			pool = null;
+			limited = false;
+			executor = es;
+		}
+		else if (max < 1) {
+			// not limited, idle threads are reused
+			pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>(),
+					new ParallelExecutor.NamedThreadFactory("lucee-request"), new ThreadPoolExecutor.AbortPolicy());
+			limited = false;
+			executor = pool;
+		}
+		else {
+			pool = new ThreadPoolExecutor(max, max, KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(queueSize < 1 ? 1000 : queueSize),
+					new ParallelExecutor.NamedThreadFactory("lucee-request"), new ThreadPoolExecutor.AbortPolicy());
+			pool.allowCoreThreadTimeOut(true);
+			limited = true;
+			executor = pool;
+		}
+	}
+
+	public static RequestExecutor getInstance() {
+		if (instance == null) {
+			synchronized (RequestExecutor.class) {
+				if (instance == null) {
+					instance = new RequestExecutor(Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.request.maxthreads", null), 0),
+							Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.request.queuesize", null), 0),
+							Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.async.request.virtualthreads", null), false));
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * executes the request
+	 *
+	 * @param request request to execute
+	 * @return false if the executor cannot take more requests
+	 */
+	public boolean execute(Runnable request) {
+		try {
+			executor.execute(request);
+			return true;
+		}
+		catch (RejectedExecutionException ree) {
+			rejected.incrementAndGet();
+			return false;
+		}
+	}
+
+	/**
+	 * @return number of requests currently executed or -1 if virtual threads are used
+	 */
+	public int getActiveCount() {
+		return pool == null ? -1 : pool.getActiveCount();
+	}
+
+	/**
+	 * @return number of requests waiting for a thread
+	 */
+	public int getQueueSize() {
+		return pool == null ? 0 : pool.getQueue().size();
+	}
+
+	/**
+	 * @return number of requests rejected since the start of the engine
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return max number of threads or -1 if the executor is not limited
+	 */
+	public int getMaxThreads() {
+		return limited ? pool.getMaximumPoolSize() : -1;
+	}
+}
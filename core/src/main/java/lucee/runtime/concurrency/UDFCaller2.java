@@ -25,6 +25,7 @@ import java.util.concurrent.Callable;
 
 import lucee.commons.io.IOUtil;
 import lucee.commons.io.log.LogUtil;
+import lucee.commons.management.ThreadUsage;
 import lucee.runtime.PageContext;
 import lucee.runtime.PageContextImpl;
 import lucee.runtime.engine.ThreadLocalPageContext;
@@ -75,6 +76,10 @@ public class UDFCaller2<P> implements Callable<Data<P>> {
 			ThreadLocalPageContext.register(parent);
 			this.pc = ThreadUtil.clonePageContext(parent, baos, false, false, false);
 		}
+		// null when executed by the thread of the caller, that thread is already measured
+		ThreadUsage usage = ThreadUsage.start();
+		PageContextImpl root = (PageContextImpl) pc.getRootPageContext();
+		int rootRequestId = root == null ? -1 : root.getRequestId();
 		ThreadLocalPageContext.register(pc);
 		pc.getRootOut().setAllowCompression(false); // make sure content is not compressed
 		String str = null;
@@ -99,6 +104,10 @@ public class UDFCaller2<P> implements Callable<Data<P>> {
 			catch (Exception e) {
 				LogUtil.log(pc, "loading", e);
 			}
+			if (usage != null) {
+				usage.end();
+				if (root != null && root.getRequestId() == rootRequestId) root.addUsage(usage.getCpuTime(), usage.getAllocatedBytes());
+			}
 		}
 		return new Data<P>(str, result, passed);
 	}
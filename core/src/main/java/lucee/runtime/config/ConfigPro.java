@@ -55,6 +55,12 @@ public interface ConfigPro extends Config {
 	public static final int SERVER_BOOLEAN_TRUE = 2;
 	public static final int SERVER_BOOLEAN_FALSE = 3;
 
+	/**
+	 * templates are trusted like with "never", changes are detected in the background by the
+	 * TemplateWatcher (file system events or polling) and invalidate the loaded pages
+	 */
+	public static final short INSPECT_WATCH = 3;
+
 	public static final int DEBUG_DATABASE = 1;
 	public static final int DEBUG_EXCEPTION = 2;
 	public static final int DEBUG_TRACING = 4;
@@ -602,6 +602,7 @@ public final class ConfigWebUtil {
 		if (str.equals("always")) return Config.INSPECT_ALWAYS;
 		else if (str.equals("never")) return Config.INSPECT_NEVER;
 		else if (str.equals("once")) return Config.INSPECT_ONCE;
+		else if (str.equals("watch")) return ConfigPro.INSPECT_WATCH;
 		return defaultValue;
 	}
 
@@ -613,6 +614,8 @@ public final class ConfigWebUtil {
 			return "never";
 		case Config.INSPECT_ONCE:
 			return "once";
+		case ConfigPro.INSPECT_WATCH:
+			return "watch";
 		default:
 			return defaultValue;
 		}
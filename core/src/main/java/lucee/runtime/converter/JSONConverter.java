@@ -39,7 +39,9 @@ import java.util.TimeZone;
 
 import org.w3c.dom.Node;
 
+import lucee.commons.io.IOUtil;
 import lucee.commons.io.log.LogUtil;
+import lucee.commons.io.res.Resource;
 import lucee.commons.lang.CFTypes;
 import lucee.commons.lang.ExceptionUtil;
 import lucee.commons.lang.StringUtil;
@@ -92,6 +94,10 @@ public final class JSONConverter extends ConverterSupport {
 
 	private static final String NL = "\n";
 
+	// max number of characters buffered before they are written to the writer (when serializing to a
+	// writer)
+	private static final int FLUSH_SIZE = 8192;
+
 	private boolean ignoreRemotingFetch;
 
 	private CharsetEncoder charsetEncoder;
@@ -101,6 +107,10 @@ public final class JSONConverter extends ConverterSupport {
 	private final boolean multiline;
 	private int indent = 0;
 
+	private Writer writer;
+	private long written;
+	private IOException writerException;
+
 	private Key commentName;
 
 	/**
@@ -295,7 +305,7 @@ public final class JSONConverter extends ConverterSupport {
 		if (commentName != null) {
 			String comment = Caster.toString(struct.get(commentName, null), null);
 			if (!StringUtil.isEmpty(comment, true)) {
-				if (sb.length() > 0) nl(sb);
+				if (sb.length() > 0 || written > 0) nl(sb);
 				sb.append("/*");
 				nl(sb);
 				sb.append(comment.trim());
@@ -632,6 +642,7 @@ public final class JSONConverter extends ConverterSupport {
 	 * @throws ConverterException
 	 */
 	private void _serialize(PageContext pc, Set test, Object object, StringBuilder sb, int queryFormat, ObjectIdentityHashSet done) throws ConverterException {
+		flush(sb, false);
 
 		// NULL
 		if (object == null || object == CollectionUtil.NULL) {
@@ -812,9 +823,61 @@ public final class JSONConverter extends ConverterSupport {
 		return sb.toString();
 	}
 
+	/**
+	 * serialize an Object to his literal Format and writes it to the given writer. The serialized data is
+	 * only buffered in small chunks, so also large objects (for example a query with a lot of rows) are
+	 * never held in memory as a whole. The writer is not flushed or closed.
+	 * 
+	 * @param object Object to serialize
+	 * @param queryFormat
+	 * @param writer writer to write the serialized data to
+	 * @throws ConverterException
+	 * @throws IOException
+	 */
+	public void serialize(PageContext pc, Object object, int queryFormat, Writer writer) throws ConverterException, IOException {
+		StringBuilder sb = new StringBuilder(FLUSH_SIZE + 256);
+		this.writer = writer;
+		this.written = 0;
+		try {
+			_serialize(pc, null, object, sb, queryFormat, new ObjectIdentityHashSet());
+			flush(sb, true);
+		}
+		catch (ConverterException ce) {
+			// the writer failed, not the serialization
+			if (writerException != null) throw writerException;
+			throw ce;
+		}
+		finally {
+			this.writer = null;
+			this.written = 0;
+			this.writerException = null;
+		}
+	}
+
+	/**
+	 * serialize an Object to his literal Format and writes it to the given resource
+	 * 
+	 * @param object Object to serialize
+	 * @param queryFormat
+	 * @param res resource to write to
+	 * @param charset charset used to write the resource
+	 * @throws ConverterException
+	 * @throws IOException
+	 */
+	public void serialize(PageContext pc, Object object, int queryFormat, Resource res, Charset charset) throws ConverterException, IOException {
+		Writer w = null;
+		try {
+			w = IOUtil.getWriter(res, charset);
+			serialize(pc, object, queryFormat, w);
+		}
+		finally {
+			IOUtil.close(w);
+		}
+	}
+
 	@Override
 	public void writeOut(PageContext pc, Object source, Writer writer) throws ConverterException, IOException {
-		writer.write(serialize(pc, source, SerializationSettings.SERIALIZE_AS_ROW));
+		serialize(pc, source, SerializationSettings.SERIALIZE_AS_ROW, writer);
 		writer.flush();
 	}
 
@@ -837,6 +900,19 @@ public final class JSONConverter extends ConverterSupport {
 		return defaultValue;
 	}
 
+	private void flush(StringBuilder sb, boolean force) throws ConverterException {
+		if (writer == null || (!force && sb.length() < FLUSH_SIZE)) return;
+		try {
+			writer.append(sb);
+		}
+		catch (IOException ioe) {
+			writerException = ioe;
+			throw new ConverterException(ioe.getMessage());
+		}
+		written += sb.length();
+		sb.setLength(0);
+	}
+
 	private void indentPlus(StringBuilder sb) {
 		if (!multiline) return;
 		indent++;
@@ -856,4 +932,4 @@ public final class JSONConverter extends ConverterSupport {
 			sb.append('	');
 		}
 	}
-}
\ No newline at end of file
+}
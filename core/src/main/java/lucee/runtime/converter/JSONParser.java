@@ -0,0 +1,589 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.converter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+
+import lucee.commons.io.IOUtil;
+import lucee.commons.io.res.Resource;
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.ExpressionException;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.interpreter.JSONExpressionInterpreter;
+import lucee.runtime.listener.AppListenerUtil;
+import lucee.runtime.op.Caster;
+import lucee.runtime.type.Array;
+import lucee.runtime.type.ArrayImpl;
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+
+/**
+ * Single pass JSON parser, reads a JSON string or stream and creates the CFML objects (structs,
+ * arrays, strings, numbers, booleans and null) directly, or reports the content to a
+ * {@link Handler} (event mode) without creating the objects at all.
+ *
+ * The parser only reads standard JSON, the lenient syntax the JSONExpressionInterpreter supports
+ * (single quotes, unquoted keys ...) is not supported, {@link #parse(PageContext, String)} falls
+ * back to the interpreter for that.
+ *
+ * A instance is not thread safe, but can be reused for multiple parse calls.
+ */
+public final class JSONParser {
+
+	private static final int BUFFER_SIZE = 8192;
+	private static final int KEY_CACHE_SIZE = 512; // must be a power of two
+
+	private final boolean preciseMath;
+
+	private Reader reader;
+	private char[] buf;
+	private int pos;
+	private int limit;
+	private int offset; // number of characters read before the current buffer
+
+	// stack used to collect the values of the structs and arrays before they are created with the
+	// right size
+	private final ArrayList<Object> stack = new ArrayList<Object>();
+	// keys used by the structs, json data mostly repeats the same keys over and over
+	private final Collection.Key[] keyCache = new Collection.Key[KEY_CACHE_SIZE];
+
+	/**
+	 * @param preciseMath if true numbers are returned as BigDecimal, otherwise as Double
+	 */
+	public JSONParser(boolean preciseMath) {
+		this.preciseMath = preciseMath;
+	}
+
+	/**
+	 * parses the given JSON with this parser and falls back to the JSONExpressionInterpreter in case
+	 * the JSON uses syntax only supported by the interpreter.
+	 *
+	 * @param pc Page Context of the Request
+	 * @param json JSON String
+	 * @return parsed object
+	 * @throws PageException
+	 */
+	public static Object parse(PageContext pc, String json) throws PageException {
+		try {
+			return new JSONParser(AppListenerUtil.getPreciseMath(pc, null)).parse(json);
+		}
+		catch (PageException pe) {
+			return new JSONExpressionInterpreter().interpret(pc, json);
+		}
+	}
+
+	/**
+	 * parses the given JSON (for example a request body) without converting it to a string first and
+	 * falls back to the JSONExpressionInterpreter in case the JSON uses syntax only supported by the
+	 * interpreter.
+	 *
+	 * @param pc Page Context of the Request
+	 * @param data JSON
+	 * @param charset charset of the data, null for the default charset
+	 * @return parsed object
+	 * @throws PageException
+	 */
+	public static Object parse(PageContext pc, byte[] data, Charset charset) throws PageException {
+		Reader r = charset == null ? new InputStreamReader(new ByteArrayInputStream(data)) : new InputStreamReader(new ByteArrayInputStream(data), charset);
+		try {
+			return new JSONParser(AppListenerUtil.getPreciseMath(pc, null)).parse(r);
+		}
+		catch (PageException pe) {
+			String json = charset == null ? new String(data) : new String(data, charset);
+			return new JSONExpressionInterpreter().interpret(pc, json.trim());
+		}
+	}
+
+	/**
+	 * parses a JSON string
+	 *
+	 * @param json JSON String
+	 * @return parsed object
+	 * @throws PageException in case the JSON is invalid
+	 */
+	public Object parse(String json) throws PageException {
+		init(null, json.toCharArray(), json.length());
+		return parse();
+	}
+
+	/**
+	 * parses JSON read from the given reader, the reader is read in chunks, so the JSON is never loaded
+	 * as a whole. The reader is not closed.
+	 *
+	 * @param reader reader to read from
+	 * @return parsed object
+	 * @throws PageException in case the JSON is invalid or the reader fails
+	 */
+	public Object parse(Reader reader) throws PageException {
+		init(reader, new char[BUFFER_SIZE], 0);
+		return parse();
+	}
+
+	/**
+	 * parses the JSON content of a resource
+	 *
+	 * @param res resource to read
+	 * @param charset charset of the resource
+	 * @return parsed object
+	 * @throws PageException in case the JSON is invalid or the resource cannot be read
+	 */
+	public Object parse(Resource res, Charset charset) throws PageException {
+		Reader r = null;
+		try {
+			r = new InputStreamReader(res.getInputStream(), charset);
+			return parse(r);
+		}
+		catch (IOException ioe) {
+			throw Caster.toPageException(ioe);
+		}
+		finally {
+			IOUtil.closeEL(r);
+		}
+	}
+
+	/**
+	 * reads the JSON from the given reader and reports its content to the handler, no structs or
+	 * arrays are created. The reader is not closed.
+	 *
+	 * @param reader reader to read from
+	 * @param handler handler getting the events
+	 * @throws PageException in case the JSON is invalid, the reader fails or the handler throws a
+	 *             exception
+	 */
+	public void parse(Reader reader, Handler handler) throws PageException {
+		init(reader, new char[BUFFER_SIZE], 0);
+		try {
+			skipSpace();
+			event(handler);
+			skipSpace();
+			if (peek() != -1) throw error("unexpected content after the end of the JSON");
+		}
+		finally {
+			release();
+		}
+	}
+
+	private void init(Reader reader, char[] buf, int limit) {
+		this.reader = reader;
+		this.buf = buf;
+		this.pos = 0;
+		this.limit = limit;
+		this.offset = 0;
+		this.stack.clear();
+	}
+
+	private void release() {
+		this.reader = null;
+		this.buf = null;
+		this.stack.clear();
+	}
+
+	private Object parse() throws PageException {
+		try {
+			skipSpace();
+			Object value = value();
+			skipSpace();
+			if (peek() != -1) throw error("unexpected content after the end of the JSON");
+			return value;
+		}
+		finally {
+			release();
+		}
+	}
+
+	private Object value() throws PageException {
+		int c = peek();
+		switch (c) {
+		case '{':
+			return struct();
+		case '[':
+			return array();
+		case '"':
+			pos++;
+			return string();
+		case 't':
+			literal("true");
+			return Boolean.TRUE;
+		case 'f':
+			literal("false");
+			return Boolean.FALSE;
+		case 'n':
+			literal("null");
+			return null;
+		default:
+			if (c == '-' || (c >= '0' && c <= '9')) return number();
+			throw c == -1 ? error("unexpected end of the JSON") : error("unexpected character [" + (char) c + "]");
+		}
+	}
+
+	private Struct struct() throws PageException {
+		pos++; // {
+		int start = stack.size();
+		skipSpace();
+		if (peek() == '}') {
+			pos++;
+			return new StructImpl(Struct.TYPE_LINKED);
+		}
+		while (true) {
+			if (read() != '"') throw error("struct key must be a string");
+			stack.add(key());
+			skipSpace();
+			if (read() != ':') throw error("missing [:] after struct key");
+			skipSpace();
+			stack.add(value());
+			skipSpace();
+			int c = read();
+			if (c == '}') break;
+			if (c != ',') throw error("missing [,] or [}] in struct");
+			skipSpace();
+		}
+		int size = (stack.size() - start) >> 1;
+		StructImpl sct = new StructImpl(Struct.TYPE_LINKED, (int) (size / 0.75f) + 1);
+		for (int i = start; i < stack.size(); i += 2) {
+			sct.setEL((Collection.Key) stack.get(i), stack.get(i + 1));
+		}
+		truncate(start);
+		return sct;
+	}
+
+	private Array array() throws PageException {
+		pos++; // [
+		int start = stack.size();
+		skipSpace();
+		if (peek() == ']') {
+			pos++;
+			return new ArrayImpl();
+		}
+		while (true) {
+			stack.add(value());
+			skipSpace();
+			int c = read();
+			if (c == ']') break;
+			if (c != ',') throw error("missing [,] or []] in array");
+			skipSpace();
+		}
+		ArrayImpl arr = new ArrayImpl(stack.size() - start);
+		for (int i = start; i < stack.size(); i++) {
+			arr.appendEL(stack.get(i));
+		}
+		truncate(start);
+		return arr;
+	}
+
+	private void event(Handler handler) throws PageException {
+		int c = peek();
+		if (c == '{') {
+			pos++;
+			handler.startStruct();
+			skipSpace();
+			if (peek() == '}') pos++;
+			else {
+				while (true) {
+					if (read() != '"') throw error("struct key must be a string");
+					handler.key(key());
+					skipSpace();
+					if (read() != ':') throw error("missing [:] after struct key");
+					skipSpace();
+					event(handler);
+					skipSpace();
+					c = read();
+					if (c == '}') break;
+					if (c != ',') throw error("missing [,] or [}] in struct");
+					skipSpace();
+				}
+			}
+			handler.endStruct();
+		}
+		else if (c == '[') {
+			pos++;
+			handler.startArray();
+			skipSpace();
+			if (peek() == ']') pos++;
+			else {
+				while (true) {
+					event(handler);
+					skipSpace();
+					c = read();
+					if (c == ']') break;
+					if (c != ',') throw error("missing [,] or []] in array");
+					skipSpace();
+				}
+			}
+			handler.endArray();
+		}
+		else handler.value(value());
+	}
+
+	private void truncate(int size) {
+		for (int i = stack.size() - 1; i >= size; i--) {
+			stack.remove(i);
+		}
+	}
+
+	/**
+	 * reads a struct key, the opening quote is already consumed
+	 */
+	private Collection.Key key() throws PageException {
+		// fast path, the key is inside the buffer and has no escapes
+		int start = pos;
+		int hash = 0;
+		char c;
+		while (pos < limit) {
+			c = buf[pos];
+			if (c == '"') {
+				Collection.Key key = cachedKey(start, pos - start, hash);
+				pos++;
+				return key;
+			}
+			if (c == '\\') break;
+			hash = 31 * hash + c;
+			pos++;
+		}
+		pos = start;
+		return KeyImpl.init(string());
+	}
+
+	private Collection.Key cachedKey(int start, int len, int hash) {
+		int index = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+		Collection.Key key = keyCache[index];
+		if (key != null) {
+			String str = key.getString();
+			if (str.length() == len) {
+				boolean eq = true;
+				for (int i = 0; i < len; i++) {
+					if (str.charAt(i) != buf[start + i]) {
+						eq = false;
+						break;
+					}
+				}
+				if (eq) return key;
+			}
+		}
+		key = KeyImpl.init(new String(buf, start, len));
+		keyCache[index] = key;
+		return key;
+	}
+
+	/**
+	 * reads a string, the opening quote is already consumed
+	 */
+	private String string() throws PageException {
+		// fast path, the string is inside the buffer and has no escapes
+		int start = pos;
+		char c;
+		while (pos < limit) {
+			c = buf[pos];
+			if (c == '"') {
+				String str = new String(buf, start, pos - start);
+				pos++;
+				return str;
+			}
+			if (c == '\\') break;
+			pos++;
+		}
+
+		StringBuilder sb = new StringBuilder(Math.max(16, (pos - start) * 2));
+		sb.append(buf, start, pos - start);
+		int ch;
+		while (true) {
+			ch = read();
+			if (ch == -1) throw error("missing closing [\"] for string");
+			if (ch == '"') return sb.toString();
+			if (ch != '\\') {
+				sb.append((char) ch);
+				continue;
+			}
+			ch = read();
+			switch (ch) {
+			case '"':
+			case '\\':
+			case '/':
+				sb.append((char) ch);
+				break;
+			case 'b':
+				sb.append('\b');
+				break;
+			case 'f':
+				sb.append('\f');
+				break;
+			case 'n':
+				sb.append('\n');
+				break;
+			case 'r':
+				sb.append('\r');
+				break;
+			case 't':
+				sb.append('\t');
+				break;
+			case 'u':
+				int code = 0, d;
+				for (int i = 0; i < 4; i++) {
+					d = Character.digit(read(), 16);
+					if (d == -1) throw error("invalid unicode escape sequence");
+					code = (code << 4) + d;
+				}
+				sb.append((char) code);
+				break;
+			default:
+				throw error("invalid escape sequence");
+			}
+		}
+	}
+
+	private Object number() throws PageException {
+		StringBuilder sb = null;
+		int start = pos;
+		boolean simple = true; // only digits (and a leading minus), fits into a long
+		boolean integer = true; // still in the integer part
+		boolean leadingZero = false;
+		int digits = 0;
+		long l = 0;
+		boolean negative = false;
+		int c = peek();
+		if (c == '-') {
+			negative = true;
+			sb = append(sb, start, c);
+		}
+		while (true) {
+			c = peek();
+			if (c >= '0' && c <= '9') {
+				if (integer) {
+					if (leadingZero) throw error("invalid number, leading zeros are not allowed");
+					if (c == '0' && digits == 0) leadingZero = true;
+				}
+				if (++digits > 18) simple = false;
+				else l = l * 10 + (c - '0');
+			}
+			else if (c == '.' || c == 'e' || c == 'E' || c == '+' || (c == '-' && pos > start)) {
+				simple = false;
+				integer = false;
+			}
+			else break;
+			sb = append(sb, start, c);
+		}
+		if (digits == 0) throw error("invalid number");
+		// -0 is negative zero like with Double.valueOf, not 0
+		if (negative && l == 0) simple = false;
+
+		if (simple) {
+			if (preciseMath) return BigDecimal.valueOf(negative ? -l : l);
+			return Double.valueOf(negative ? -l : l);
+		}
+		String str = sb == null ? new String(buf, start, pos - start) : sb.toString();
+		try {
+			if (preciseMath) return new BigDecimal(str);
+			return Double.valueOf(str);
+		}
+		catch (NumberFormatException nfe) {
+			throw error("invalid number [" + str + "]");
+		}
+	}
+
+	/**
+	 * consumes the current character of a number, the characters are only copied to a StringBuilder
+	 * when the number is not completely inside the buffer.
+	 */
+	private StringBuilder append(StringBuilder sb, int start, int c) throws PageException {
+		if (sb == null && pos + 1 < limit) {
+			pos++;
+			return null;
+		}
+		if (sb == null) {
+			sb = new StringBuilder();
+			sb.append(buf, start, pos - start);
+		}
+		sb.append((char) c);
+		pos++;
+		return sb;
+	}
+
+	private void literal(String literal) throws PageException {
+		for (int i = 0; i < literal.length(); i++) {
+			if (read() != literal.charAt(i)) throw error("invalid literal, [" + literal + "] expected");
+		}
+	}
+
+	private void skipSpace() throws PageException {
+		int c;
+		while ((c = peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+			pos++;
+		}
+	}
+
+	private int peek() throws PageException {
+		if (pos == limit && !fill()) return -1;
+		return buf[pos];
+	}
+
+	private int read() throws PageException {
+		if (pos == limit && !fill()) return -1;
+		return buf[pos++];
+	}
+
+	private boolean fill() throws PageException {
+		if (reader == null) return false;
+		try {
+			int len = reader.read(buf, 0, buf.length);
+			if (len <= 0) return false;
+			offset += limit;
+			pos = 0;
+			limit = len;
+			return true;
+		}
+		catch (IOException ioe) {
+			throw Caster.toPageException(ioe);
+		}
+	}
+
+	private PageException error(String msg) {
+		return new ExpressionException("Invalid JSON, " + msg + " at position " + (offset + pos + 1));
+	}
+
+	/**
+	 * receives the content of a JSON in the order it is read
+	 */
+	public static interface Handler {
+
+		public void startStruct() throws PageException;
+
+		/**
+		 * called for every key in a struct, followed by the events of the value
+		 */
+		public void key(Collection.Key key) throws PageException;
+
+		public void endStruct() throws PageException;
+
+		public void startArray() throws PageException;
+
+		public void endArray() throws PageException;
+
+		/**
+		 * a simple value (string, number, boolean or null)
+		 */
+		public void value(Object value) throws PageException;
+	}
+}
@@ -75,10 +75,12 @@ public final class HSQLDBHandler {
 	private static Object lock = new SerializableObject();
 	private static boolean hsqldbDisable;
 	private static boolean hsqldbDebug;
+	private static QoQPlanCache planCache;
 
 	static {
 		hsqldbDisable = Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.qoq.hsqldb.disable", "false"), false);
 		hsqldbDebug = Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.qoq.hsqldb.debug", "false"), false);
+		planCache = new QoQPlanCache(Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.qoq.plancache.size", "1000"), 1000));
 	}
 
 	/**
@@ -251,23 +253,52 @@ public final class HSQLDBHandler {
 		stopwatch.start();
 		String prettySQL = null;
 		Selects selects = null;
+		final String key = sql.getSQLString();
+		// with the debugging options we always take the long way, so we have the original exception
+		QoQPlanCache.Plan plan = hsqldbDisable || hsqldbDebug ? null : planCache.get(key);
 
 		Exception qoqException = null;
 
 		// First Chance
-		try {
-			SelectParser parser = new SelectParser();
-			selects = parser.parse(sql.getSQLString());
-			QueryImpl q = (QueryImpl) qoq.execute(pc, sql, selects, maxrows);
-			q.setExecutionTime(stopwatch.time());
-			return q;
-		}
-		catch (SQLParserException spe) {
-			qoqException = spe;
-			if( spe.getCause() != null && spe.getCause() instanceof IllegalQoQException ) {
-				throw Caster.toPageException(spe);
+		if (plan == null || plan.isNativeSupported()) {
+			try {
+				selects = planCache.getSelects(plan);
+				if (selects == null) {
+					SelectParser parser = new SelectParser();
+					selects = parser.parse(key);
+					// the plan keeps the statement as parsed, the execution works on a copy
+					plan = new QoQPlanCache.Plan(true, QoQPlanCache.isNativeSupported(selects), null, null, false, selects);
+					planCache.put(key, plan);
+					selects = selects.copy();
+				}
+				QueryImpl q = (QueryImpl) qoq.execute(pc, sql, selects, maxrows);
+				q.setExecutionTime(stopwatch.time());
+				return q;
+			}
+			catch (SQLParserException spe) {
+				qoqException = spe;
+				if( spe.getCause() != null && spe.getCause() instanceof IllegalQoQException ) {
+					throw Caster.toPageException(spe);
+				}
+				prettySQL = SQLPrettyfier.prettyfie(key);
+				plan = new QoQPlanCache.Plan(false, false, prettySQL, null, false, null);
+				planCache.put(key, plan);
+				try {
+					QueryImpl query = executer.execute(pc, sql, prettySQL, maxrows);
+					query.setExecutionTime(stopwatch.time());
+					return query;
+				}
+				catch (PageException ex) {
+				}
+
+			}
+			catch (PageException e) {
+				qoqException = e;
 			}
-			prettySQL = SQLPrettyfier.prettyfie(sql.getSQLString());
+		}
+		// we already know the native engine cannot handle this statement
+		else if (!plan.isParsable()) {
+			prettySQL = plan.getPrettySQL();
 			try {
 				QueryImpl query = executer.execute(pc, sql, prettySQL, maxrows);
 				query.setExecutionTime(stopwatch.time());
@@ -275,10 +306,6 @@ public final class HSQLDBHandler {
 			}
 			catch (PageException ex) {
 			}
-
-		}
-		catch (PageException e) {
-			qoqException = e;
 		}
 
 		// Debugging option to completely disable HyperSQL for testing
@@ -289,26 +316,36 @@ public final class HSQLDBHandler {
 
 		// Debugging option to to log all QoQ that fall back on hsqldb in the datasource log
 		if (qoqException != null && hsqldbDebug) {
-			ThreadLocalPageContext.getLog(pc, "datasource").error("QoQ [" + sql.getSQLString() + "] errored and is falling back to HyperSQL.", qoqException);
+			ThreadLocalPageContext.getLog(pc, "datasource").error("QoQ [" + key + "] errored and is falling back to HyperSQL.", qoqException);
 		}
 
 		// SECOND Chance with hsqldb
 		try {
 			boolean isUnion = false;
 			Set<String> tables = null;
-			if (selects != null) {
-				HSQLUtil2 hsql2 = new HSQLUtil2(selects);
-				isUnion = hsql2.isUnion();
-				tables = hsql2.getInvokedTables();
+			if (plan != null && plan.getTables() != null) {
+				tables = plan.getTables();
+				isUnion = plan.isUnion();
 			}
 			else {
-				if (prettySQL == null) prettySQL = SQLPrettyfier.prettyfie(sql.getSQLString());
-				HSQLUtil hsql = new HSQLUtil(prettySQL);
-				tables = hsql.getInvokedTables();
-				isUnion = hsql.isUnion();
+				if (selects != null) {
+					HSQLUtil2 hsql2 = new HSQLUtil2(selects);
+					isUnion = hsql2.isUnion();
+					tables = hsql2.getInvokedTables();
+				}
+				else {
+					if (prettySQL == null) prettySQL = SQLPrettyfier.prettyfie(key);
+					HSQLUtil hsql = new HSQLUtil(prettySQL);
+					tables = hsql.getInvokedTables();
+					isUnion = hsql.isUnion();
+				}
+				if (plan != null) {
+					plan = plan.withTables(tables, isUnion);
+					planCache.put(key, plan);
+				}
 			}
 
-			String strSQL = StringUtil.replace(sql.getSQLString(), "[", "", false);
+			String strSQL = StringUtil.replace(key, "[", "", false);
 			strSQL = StringUtil.replace(strSQL, "]", "", false);
 			sql.setSQLString(strSQL);
 			return _execute(pc, sql, maxrows, fetchsize, timeout, stopwatch, tables, isUnion);
@@ -320,6 +357,13 @@ public final class HSQLDBHandler {
 
 	}
 
+	/**
+	 * @return the cache holding the execution plans of the Query of Queries statements
+	 */
+	public static QoQPlanCache getPlanCache() {
+		return planCache;
+	}
+
 	private QueryImpl _execute(PageContext pc, SQL sql, int maxrows, int fetchsize, TimeSpan timeout, Stopwatch stopwatch, Set<String> tables, boolean isUnion)
 			throws PageException {
 		try {
@@ -124,18 +124,23 @@ public final class QoQ {
 			arrSelects[i].getFroms();
 			Column[] froms = arrSelects[i].getFroms();
 
-			if (froms.length > 1) throw new DatabaseException("QoQ can only select from a single tables at a time.", null, sql, null);
-
-			// Lookup actual Query variable on page
-			QueryImpl source = getSingleTable(pc, froms[0]);
-			arrSelects[i].expandAsterisks(source);
+			QueryImpl source;
+			// Join the tables into a single query the select is executed on
+			if (froms.length > 1) {
+				source = QoQJoin.join(pc, sql, arrSelects[i], isUnion ? null : selects);
+			}
+			else {
+				// Lookup actual Query variable on page
+				source = getSingleTable(pc, froms[0]);
+				arrSelects[i].expandAsterisks(source);
+			}
 
 			// Unions don't allow operations in the order by
 			if (!isUnion) {
 				selects.calcOrderByExpressions();
 			}
 			// Run a select statement. If we have a union, we run this once per select being unioned
-			target = executeSingle(pc, arrSelects[i], getSingleTable(pc, froms[0]), target, isUnion ? -1 : maxrows, sql, selects.getOrderbys().length > 0, isUnion);
+			target = executeSingle(pc, arrSelects[i], source, target, isUnion ? -1 : maxrows, sql, selects.getOrderbys().length > 0, isUnion);
 		}
 
 		// DON'T GET THIS SOONER! We recalculate the order bys above based on the columns in the
@@ -453,6 +458,14 @@ public final class QoQ {
 		}
 	}
 
+	public static IntStream getStream( int count ) {
+		IntStream stream = IntStream.range(0, count);
+		if( count >= qoqParallelism ) {
+			return stream.parallel();
+		}
+		return stream;
+	}
+
 	public static Stream<Map.Entry<String, QueryImpl>> getStream( QueryPartitions queryPartitions ) {
 		if( queryPartitions.getPartitions().size() > 0 ) {
 			Stream<Map.Entry<String, QueryImpl>> qStream = queryPartitions.getPartitions().entrySet().stream();
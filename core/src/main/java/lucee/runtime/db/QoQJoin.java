@@ -0,0 +1,630 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.db;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lucee.runtime.PageContext;
+import lucee.runtime.exp.DatabaseException;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.op.Caster;
+import lucee.runtime.op.Decision;
+import lucee.runtime.op.OpUtil;
+import lucee.runtime.sql.Join;
+import lucee.runtime.sql.Select;
+import lucee.runtime.sql.Selects;
+import lucee.runtime.sql.exp.BracketExpression;
+import lucee.runtime.sql.exp.Column;
+import lucee.runtime.sql.exp.ColumnExpression;
+import lucee.runtime.sql.exp.Expression;
+import lucee.runtime.sql.exp.op.Operation;
+import lucee.runtime.sql.exp.op.Operation1;
+import lucee.runtime.sql.exp.op.Operation2;
+import lucee.runtime.sql.exp.op.Operation3;
+import lucee.runtime.sql.exp.op.OperationN;
+import lucee.runtime.type.Collection;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.QueryColumn;
+import lucee.runtime.type.QueryImpl;
+
+/**
+ * Executes the joins of a select (comma separated tables, "[inner] join" and "left [outer] join")
+ * natively. The tables are joined from left to right with a hash join on the equality conditions
+ * between the columns of the tables, the result is materialized into a single query and all column
+ * references of the select are bound to the columns of that query, so the select can then be
+ * executed like a select on a single table.
+ *
+ * Only the columns used by the select are materialized. Conditions of a inner join that are no
+ * column equalities are moved to the where clause, left joins only support column equalities,
+ * everything else is left to the HyperSQL fallback. Like in SQL, null never matches a other value
+ * in a join condition.
+ */
+final class QoQJoin {
+
+	// a value that cannot be used as hash key, comparing falls back to OpUtil.compare
+	private static final Object NO_KEY = new Object();
+
+	private final PageContext pc;
+	private final SQL sql;
+	private final Select select;
+	private final Table[] tables;
+	private final Map<String, Table> tablesByName = new HashMap<String, Table>();
+	// columns used by the select, key is the name of the column in the joined query
+	private final Map<String, Ref> refs = new LinkedHashMap<String, Ref>();
+
+	private QoQJoin(PageContext pc, SQL sql, Select select) throws PageException {
+		this.pc = pc;
+		this.sql = sql;
+		this.select = select;
+
+		Column[] froms = select.getFroms();
+		Join[] joins = select.getJoins();
+		tables = new Table[froms.length];
+		for (int i = 0; i < froms.length; i++) {
+			tables[i] = new Table(i, froms[i], joins[i], (QueryImpl) Caster.toQuery(pc.getVariable(froms[i].getFullName())));
+			addTableName(tables[i].name, tables[i]);
+			if (!froms[i].hasAlias()) {
+				// the table can also be referenced by the last part of the name (variables.qry -> qry)
+				String fullName = froms[i].getFullName();
+				int index = fullName.lastIndexOf('.');
+				if (index != -1) addTableName(fullName.substring(index + 1), tables[i]);
+			}
+		}
+	}
+
+	private void addTableName(String name, Table table) throws PageException {
+		Table existing = tablesByName.put(name.toLowerCase(), table);
+		if (existing != null && existing != table) {
+			throw new DatabaseException("the table [" + name + "] is used more than once in the statement, use a alias to distinguish them", null, sql, null);
+		}
+	}
+
+	/**
+	 * checks if the joins of the given select can be executed natively, only looking at the statement
+	 * itself
+	 *
+	 * @param select select to check
+	 * @return false if the select needs to be executed with HyperSQL
+	 */
+	static boolean isSupported(Select select) {
+		Join[] joins = select.getJoins();
+		for (int i = 0; i < joins.length; i++) {
+			if (joins[i] == null || joins[i].getType() != Join.TYPE_LEFT) continue;
+			List<Expression> conditions = new ArrayList<Expression>();
+			conjunctions(joins[i].getOn(), conditions);
+			for (Expression exp: conditions) {
+				if (!isColumnEquality(exp)) return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * joins the tables of the given select and binds the column references of the select to the
+	 * columns of the returned query
+	 *
+	 * @param pc Page Context of the Request
+	 * @param sql SQL object
+	 * @param select select with more than one table
+	 * @param selects the statement, null when the select is part of a union (the order by is not
+	 *            bound then)
+	 * @return the joined tables as a single query
+	 * @throws PageException
+	 */
+	static QueryImpl join(PageContext pc, SQL sql, Select select, Selects selects) throws PageException {
+		return new QoQJoin(pc, sql, select).execute(selects);
+	}
+
+	private QueryImpl execute(Selects selects) throws PageException {
+		bind(selects);
+
+		List<Expression> where = new ArrayList<Expression>();
+		conjunctions(select.getWhere(), where);
+		boolean whereChanged = false;
+
+		// start with all rows of the first table
+		int rc = tables[0].query.getRecordcount();
+		int[][] tuples = new int[rc][];
+		for (int row = 1; row <= rc; row++) {
+			tuples[row - 1] = new int[tables.length];
+			tuples[row - 1][0] = row;
+		}
+
+		// and join the others one by one
+		for (int i = 1; i < tables.length; i++) {
+			Table table = tables[i];
+			List<Ref[]> keys = new ArrayList<Ref[]>();
+			List<Expression> conditions;
+			boolean left = false;
+			if (table.join == null) {
+				// tables listed with a comma get joined with the conditions from the where clause
+				conditions = where;
+			}
+			else {
+				conditions = new ArrayList<Expression>();
+				conjunctions(table.join.getOn(), conditions);
+				left = table.join.getType() == Join.TYPE_LEFT;
+			}
+
+			Iterator<Expression> it = conditions.iterator();
+			Ref[] key;
+			while (it.hasNext()) {
+				key = toJoinKey(it.next(), table);
+				if (key != null) {
+					keys.add(key);
+					it.remove();
+					if (table.join == null) whereChanged = true;
+				}
+			}
+			if (table.join != null && !conditions.isEmpty()) {
+				if (left) throw new DatabaseException("a left join can only be done on the equality of columns", null, sql, null);
+				where.addAll(conditions);
+				whereChanged = true;
+			}
+			tuples = join(tuples, table, keys.toArray(new Ref[keys.size()][]), left);
+		}
+
+		// what is left from the where clause (and the conditions of the inner joins) is executed
+		// on the joined query
+		if (whereChanged) select.setWhereExpression(toOperation(where));
+
+		return materialize(tuples);
+	}
+
+	/**
+	 * binds all column references of the select to the columns of the joined query
+	 */
+	private void bind(Selects selects) throws PageException {
+		// select *
+		for (Expression exp: select.getSelects()) {
+			if (exp.getAlias().equals("*")) {
+				List<Expression> columns = new ArrayList<Expression>();
+				ColumnExpression ce;
+				for (Table table: tables) {
+					for (Collection.Key k: table.query.getColumnNames()) {
+						ce = new ColumnExpression(ref(table, k.getString()).name, 0);
+						ce.setAlias(k.getString());
+						columns.add(ce);
+					}
+				}
+				select.expandAsterisks(columns);
+				break;
+			}
+		}
+
+		// select list, the columns keep their name as alias
+		for (Expression exp: select.getSelects()) {
+			if (exp instanceof ColumnExpression) bind((ColumnExpression) exp, true);
+			else bind(exp);
+		}
+
+		bind(select.getWhere());
+		for (Join join: select.getJoins()) {
+			if (join != null) bind(join.getOn());
+		}
+		for (Expression exp: select.getGroupbys()) {
+			bind(exp);
+		}
+
+		bind(select.getHaving());
+		// the having clause is executed on the partitions, so the columns used by it are needed there
+		Set<String> having = new HashSet<String>();
+		columnNames(select.getHaving(), having);
+
+		if (selects != null) {
+			Expression[] selectExps = select.getSelects();
+			outer: for (Expression exp: selects.getOrderbys()) {
+				// the order by can reference the alias of a selected column
+				if (exp instanceof ColumnExpression && ((ColumnExpression) exp).getTable() == null) {
+					for (Expression se: selectExps) {
+						if (se.getAlias().equalsIgnoreCase(((ColumnExpression) exp).getColumnName())) continue outer;
+					}
+				}
+				bind(exp);
+			}
+		}
+
+		select.calcAdditionalColumns(new HashSet<String>(refs.keySet()));
+		select.getAdditionalColumns().addAll(having);
+	}
+
+	private void columnNames(Expression exp, Set<String> names) {
+		if (exp == null) return;
+		if (exp instanceof ColumnExpression) {
+			if (refs.containsKey(((ColumnExpression) exp).getColumnName())) names.add(((ColumnExpression) exp).getColumnName());
+		}
+		else if (exp instanceof Operation2) {
+			columnNames(((Operation2) exp).getLeft(), names);
+			columnNames(((Operation2) exp).getRight(), names);
+		}
+		else if (exp instanceof Operation1) columnNames(((Operation1) exp).getExp(), names);
+		else if (exp instanceof Operation3) {
+			columnNames(((Operation3) exp).getExp(), names);
+			columnNames(((Operation3) exp).getLeft(), names);
+			columnNames(((Operation3) exp).getRight(), names);
+		}
+		else if (exp instanceof OperationN) {
+			for (Expression e: ((OperationN) exp).getOperants()) {
+				columnNames(e, names);
+			}
+		}
+		else if (exp instanceof BracketExpression) columnNames(((BracketExpression) exp).getExp(), names);
+	}
+
+	private void bind(Expression exp) throws PageException {
+		if (exp == null) return;
+		if (exp instanceof ColumnExpression) bind((ColumnExpression) exp, false);
+		else if (exp instanceof Operation2) {
+			bind(((Operation2) exp).getLeft());
+			bind(((Operation2) exp).getRight());
+		}
+		else if (exp instanceof Operation1) bind(((Operation1) exp).getExp());
+		else if (exp instanceof Operation3) {
+			bind(((Operation3) exp).getExp());
+			bind(((Operation3) exp).getLeft());
+			bind(((Operation3) exp).getRight());
+		}
+		else if (exp instanceof OperationN) {
+			for (Expression e: ((OperationN) exp).getOperants()) {
+				bind(e);
+			}
+		}
+		else if (exp instanceof BracketExpression) bind(((BracketExpression) exp).getExp());
+	}
+
+	private void bind(ColumnExpression ce, boolean keepName) throws PageException {
+		if (ce.isParam() || refs.containsKey(ce.getColumnName())) return;
+
+		Table table = null;
+		String column = null;
+		if (ce.getTable() != null) {
+			// find the longest table name the column starts with (qry.col, variables.qry.col ...)
+			String fullName = ce.getFullName();
+			String lcFullName = fullName.toLowerCase();
+			for (Map.Entry<String, Table> e: tablesByName.entrySet()) {
+				if (lcFullName.startsWith(e.getKey() + ".") && (column == null || fullName.length() - e.getKey().length() - 1 < column.length())) {
+					table = e.getValue();
+					column = fullName.substring(e.getKey().length() + 1);
+				}
+			}
+			if (table != null && table.query.getColumn(KeyImpl.init(column), null) == null) {
+				throw new DatabaseException("column [" + column + "] not found in table [" + table.name + "]", null, sql, null);
+			}
+		}
+		else {
+			column = ce.getColumnName();
+			Collection.Key key = KeyImpl.init(column);
+			for (Table t: tables) {
+				if (t.query.getColumn(key, null) != null) {
+					if (table != null) throw new DatabaseException("column [" + column + "] is ambiguous, it exists in [" + table.name + "] and [" + t.name + "]", null, sql, null);
+					table = t;
+				}
+			}
+		}
+		// not a column of one of the tables (a alias of the select list for example)
+		if (table == null) return;
+
+		if (keepName && !ce.hasAlias()) ce.setAlias(column);
+		ce.setColumnName(ref(table, column).name);
+	}
+
+	private Ref ref(Table table, String column) {
+		String name = table.name + "." + column;
+		Ref ref = refs.get(name);
+		if (ref == null) {
+			Collection.Key key = KeyImpl.init(column);
+			ref = new Ref(table, table.query.getColumn(key, null), name);
+			refs.put(name, ref);
+		}
+		return ref;
+	}
+
+	/**
+	 * if the given condition compares a column of the given table with a column of a table joined
+	 * before, it returns the pair [column of the previous table, column of the table]
+	 */
+	private Ref[] toJoinKey(Expression exp, Table table) {
+		if (!isColumnEquality(exp)) return null;
+		Operation2 op = (Operation2) exp;
+		Ref left = refs.get(((ColumnExpression) op.getLeft()).getColumnName());
+		Ref right = refs.get(((ColumnExpression) op.getRight()).getColumnName());
+		if (left == null || right == null) return null;
+		if (left.table == table && right.table.index < table.index) return new Ref[] { right, left };
+		if (right.table == table && left.table.index < table.index) return new Ref[] { left, right };
+		return null;
+	}
+
+	private static boolean isColumnEquality(Expression exp) {
+		while (exp instanceof BracketExpression) {
+			exp = ((BracketExpression) exp).getExp();
+		}
+		if (!(exp instanceof Operation2)) return false;
+		Operation2 op = (Operation2) exp;
+		return op.getOperator() == Operation.OPERATION2_EQ && op.getLeft() instanceof ColumnExpression && !((ColumnExpression) op.getLeft()).isParam()
+				&& op.getRight() instanceof ColumnExpression && !((ColumnExpression) op.getRight()).isParam();
+	}
+
+	/**
+	 * splits a condition into the parts combined with "and"
+	 */
+	private static void conjunctions(Expression exp, List<Expression> list) {
+		if (exp == null) return;
+		if (exp instanceof Operation2 && ((Operation2) exp).getOperator() == Operation.OPERATION2_AND) {
+			conjunctions(((Operation2) exp).getLeft(), list);
+			conjunctions(((Operation2) exp).getRight(), list);
+		}
+		else if (exp instanceof BracketExpression && ((BracketExpression) exp).getExp() instanceof Operation2
+				&& ((Operation2) ((BracketExpression) exp).getExp()).getOperator() == Operation.OPERATION2_AND) {
+			conjunctions(((BracketExpression) exp).getExp(), list);
+		}
+		else list.add(exp);
+	}
+
+	private static Operation toOperation(List<Expression> conditions) {
+		if (conditions.isEmpty()) return null;
+		Expression exp = conditions.get(0);
+		for (int i = 1; i < conditions.size(); i++) {
+			exp = new Operation2(exp, conditions.get(i), Operation.OPERATION2_AND);
+		}
+		if (exp instanceof Operation) return (Operation) exp;
+		// a single condition that is no operation (a boolean column for example)
+		return new Operation2(exp, exp, Operation.OPERATION2_AND);
+	}
+
+	/**
+	 * joins the table to the rows joined so far
+	 *
+	 * @param tuples rows joined so far, for every table the row number, 0 stands for no row (left join)
+	 * @param table table to join
+	 * @param keys pairs of columns that need to be equal
+	 * @param left left join, keep the rows without a match
+	 * @return the new rows
+	 */
+	private int[][] join(final int[][] tuples, final Table table, final Ref[][] keys, final boolean left) throws PageException {
+		final int rc = table.query.getRecordcount();
+		final QueryColumn[] leftCols = new QueryColumn[keys.length];
+		final QueryColumn[] rightCols = new QueryColumn[keys.length];
+		final int[] leftTables = new int[keys.length];
+		for (int i = 0; i < keys.length; i++) {
+			leftCols[i] = keys[i][0].column;
+			leftTables[i] = keys[i][0].table.index;
+			rightCols[i] = keys[i][1].column;
+		}
+
+		// build the hash table for the table to join
+		Map<Object, int[]> hash = null;
+		if (keys.length > 0) {
+			hash = new HashMap<Object, int[]>();
+			Object key;
+			int[] rows;
+			for (int row = 1; row <= rc; row++) {
+				key = toKey(rightCols, row);
+				if (key == null) continue;
+				if (key == NO_KEY) {
+					hash = null;
+					break;
+				}
+				rows = hash.get(key);
+				if (rows == null) {
+					rows = new int[] { 1, row };
+					hash.put(key, rows);
+				}
+				else {
+					// first element is the number of rows
+					if (rows[0] + 1 == rows.length) {
+						rows = Arrays.copyOf(rows, rows.length * 2);
+						hash.put(key, rows);
+					}
+					rows[++rows[0]] = row;
+				}
+			}
+		}
+		final Map<Object, int[]> _hash = hash;
+
+		int[][][] result;
+		try {
+			result = QoQ.getStream(tuples.length).mapToObj(index -> {
+				try {
+					return match(tuples[index], table, leftCols, leftTables, rightCols, rc, _hash, left);
+				}
+				catch (PageException pe) {
+					throw new RuntimeException(pe);
+				}
+			}).toArray(int[][][]::new);
+		}
+		catch (RuntimeException re) {
+			if (re.getCause() instanceof PageException) throw (PageException) re.getCause();
+			throw re;
+		}
+
+		int count = 0;
+		for (int[][] r: result) {
+			count += r.length;
+		}
+		int[][] rtn = new int[count][];
+		int index = 0;
+		for (int[][] r: result) {
+			for (int[] t: r) {
+				rtn[index++] = t;
+			}
+		}
+		return rtn;
+	}
+
+	private int[][] match(int[] tuple, Table table, QueryColumn[] leftCols, int[] leftTables, QueryColumn[] rightCols, int rc, Map<Object, int[]> hash, boolean left)
+			throws PageException {
+		List<int[]> matches = new ArrayList<int[]>();
+		Object[] values = new Object[leftCols.length];
+		boolean isNull = false;
+		for (int i = 0; i < leftCols.length; i++) {
+			values[i] = tuple[leftTables[i]] == 0 ? null : leftCols[i].get(tuple[leftTables[i]], null);
+			if (values[i] == null) isNull = true;
+		}
+
+		if (!isNull) {
+			Object key = hash == null ? NO_KEY : toKey(values);
+			// hash join
+			if (key != NO_KEY) {
+				int[] rows = hash.get(key);
+				if (rows != null) {
+					for (int i = 1; i <= rows[0]; i++) {
+						if (equals(values, rightCols, rows[i])) matches.add(combine(tuple, table.index, rows[i]));
+					}
+				}
+			}
+			// nested loop
+			else {
+				for (int row = 1; row <= rc; row++) {
+					if (compare(values, rightCols, row)) matches.add(combine(tuple, table.index, row));
+				}
+			}
+		}
+		if (left && matches.isEmpty()) matches.add(combine(tuple, table.index, 0));
+		return matches.toArray(new int[matches.size()][]);
+	}
+
+	private static int[] combine(int[] tuple, int index, int row) {
+		int[] rtn = tuple.clone();
+		rtn[index] = row;
+		return rtn;
+	}
+
+	/**
+	 * checks a match found with the hash table, values of different types are compared with the
+	 * regular comparison of the QoQ engine
+	 */
+	private boolean equals(Object[] values, QueryColumn[] cols, int row) throws PageException {
+		Object right;
+		for (int i = 0; i < values.length; i++) {
+			right = cols[i].get(row, null);
+			if (right == null) return false;
+			if (values[i].getClass() != right.getClass() && OpUtil.compare(pc, values[i], right) != 0) return false;
+		}
+		return true;
+	}
+
+	private boolean compare(Object[] values, QueryColumn[] cols, int row) throws PageException {
+		Object right;
+		for (int i = 0; i < values.length; i++) {
+			right = cols[i].get(row, null);
+			if (right == null || OpUtil.compare(pc, values[i], right) != 0) return false;
+		}
+		return true;
+	}
+
+	private static Object toKey(QueryColumn[] cols, int row) {
+		if (cols.length == 1) return toKey(cols[0].get(row, null));
+		Object[] values = new Object[cols.length];
+		for (int i = 0; i < cols.length; i++) {
+			values[i] = cols[i].get(row, null);
+		}
+		return toKey(values);
+	}
+
+	private static Object toKey(Object[] values) {
+		if (values.length == 1) return toKey(values[0]);
+		Object[] keys = new Object[values.length];
+		for (int i = 0; i < values.length; i++) {
+			keys[i] = toKey(values[i]);
+			if (keys[i] == null || keys[i] == NO_KEY) return keys[i];
+		}
+		return Arrays.asList(keys);
+	}
+
+	/**
+	 * creates a hash key for the value, two values the QoQ engine considers equal (see OpUtil.compare)
+	 * get the same key. Returns null for null and NO_KEY for values we cannot create a key for.
+	 */
+	private static Object toKey(Object value) {
+		if (value == null) return null;
+		if (value instanceof String) {
+			String str = (String) value;
+			if (Decision.isNumber(str)) {
+				Double d = Caster.toDouble(str, null);
+				return d == null ? NO_KEY : toKey(d.doubleValue());
+			}
+			if (Decision.isBoolean(str)) return toKey(Caster.toBooleanValue(str, false) ? 1d : 0d);
+			// same as String.compareToIgnoreCase
+			char[] chars = str.toCharArray();
+			for (int i = 0; i < chars.length; i++) {
+				chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+			}
+			return new String(chars);
+		}
+		if (value instanceof Number) return toKey(((Number) value).doubleValue());
+		if (value instanceof Boolean) return toKey(((Boolean) value).booleanValue() ? 1d : 0d);
+		return NO_KEY;
+	}
+
+	private static Double toKey(double d) {
+		// -0 and 0 are equal
+		return Double.valueOf(d == 0d ? 0d : d);
+	}
+
+	/**
+	 * creates the query holding the joined rows, containing only the columns used by the select
+	 */
+	private QueryImpl materialize(final int[][] tuples) throws PageException {
+		QueryImpl qry = new QueryImpl(new Collection.Key[0], tuples.length, "query", sql);
+		for (final Ref ref: refs.values()) {
+			final Object[] values = new Object[tuples.length];
+			final int index = ref.table.index;
+			QoQ.getStream(tuples.length).forEach(i -> {
+				int row = tuples[i][index];
+				values[i] = row == 0 ? null : ref.column.get(row, null);
+			});
+			qry.addColumn(KeyImpl.init(ref.name), values, ref.column.getType());
+		}
+		return qry;
+	}
+
+	private static final class Table {
+		private final int index;
+		private final String name;
+		private final Join join;
+		private final QueryImpl query;
+
+		private Table(int index, Column from, Join join, QueryImpl query) {
+			this.index = index;
+			this.name = from.hasAlias() ? from.getAlias() : from.getFullName();
+			this.join = join;
+			this.query = query;
+		}
+	}
+
+	private static final class Ref {
+		private final Table table;
+		private final QueryColumn column;
+		private final String name;
+
+		private Ref(Table table, QueryColumn column, String name) {
+			this.table = table;
+			this.column = column;
+			this.name = name;
+		}
+	}
+}
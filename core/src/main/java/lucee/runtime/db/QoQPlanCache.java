@@ -0,0 +1,188 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.db;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucee.commons.collection.LinkedHashMapMaxSize;
+import lucee.runtime.sql.Select;
+import lucee.runtime.sql.Selects;
+
+/**
+ * bounded (LRU) cache of the execution plans of Query of Queries statements, keyed by the sql
+ * string.
+ *
+ * A plan only contains what can be derived from the sql string alone: the parsed statement, whether
+ * the statement can be parsed and executed by the native QoQ engine, the prettified sql for the old
+ * executer and the tables/union information needed by the HyperSQL fallback. The parsed statement
+ * is modified during execution (asterisks are expanded against the source query, columns are bound
+ * to the source query ...), so the plan keeps it untouched and every execution gets a copy.
+ */
+public final class QoQPlanCache {
+
+	private final Map<String, Plan> plans;
+	private final int maxSize;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong parseHits = new AtomicLong();
+	private final AtomicLong parseMisses = new AtomicLong();
+
+	/**
+	 * @param maxSize max number of plans kept, 0 disables the cache
+	 */
+	public QoQPlanCache(int maxSize) {
+		this.maxSize = maxSize < 0 ? 0 : maxSize;
+		this.plans = Collections.synchronizedMap(new LinkedHashMapMaxSize<String, Plan>(this.maxSize, 16, true));
+	}
+
+	/**
+	 * returns the plan for the given sql or null if there is no plan for it yet
+	 *
+	 * @param sql sql string
+	 * @return plan or null
+	 */
+	public Plan get(String sql) {
+		if (maxSize == 0) return null;
+		Plan plan = plans.get(sql);
+		if (plan == null) misses.incrementAndGet();
+		else hits.incrementAndGet();
+		return plan;
+	}
+
+	/**
+	 * returns a copy of the parsed statement of the given plan, ready to be executed, or null if the
+	 * plan has no parsed statement and the sql needs to be parsed.
+	 *
+	 * @param plan plan or null
+	 * @return parsed statement or null
+	 */
+	public Selects getSelects(Plan plan) {
+		if (plan == null || plan.selects == null) {
+			parseMisses.incrementAndGet();
+			return null;
+		}
+		parseHits.incrementAndGet();
+		return plan.selects.copy();
+	}
+
+	public void put(String sql, Plan plan) {
+		if (maxSize == 0) return;
+		plans.put(sql, plan);
+	}
+
+	public void clear() {
+		plans.clear();
+	}
+
+	public int size() {
+		return plans.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getParseHitCount() {
+		return parseHits.get();
+	}
+
+	public long getParseMissCount() {
+		return parseMisses.get();
+	}
+
+	/**
+	 * checks if the native QoQ engine is able to execute the given statement at all, independent of
+	 * the data queried
+	 *
+	 * @param selects parsed statement
+	 * @return false if the statement needs to be executed with HyperSQL
+	 */
+	public static boolean isNativeSupported(Selects selects) {
+		Select[] arr = selects.getSelects();
+		for (int i = 0; i < arr.length; i++) {
+			if (arr[i].hasJoins() && !QoQJoin.isSupported(arr[i])) return false;
+		}
+		return true;
+	}
+
+	public static final class Plan {
+
+		private final boolean parsable;
+		private final boolean nativeSupported;
+		private final String prettySQL;
+		private final Set<String> tables;
+		private final boolean isUnion;
+		private final Selects selects;
+
+		/**
+		 * @param parsable the statement can be parsed by the SelectParser
+		 * @param nativeSupported the statement can be executed by the native QoQ engine
+		 * @param prettySQL prettified sql used by the old executer and HSQLUtil, null if not needed
+		 * @param tables tables used by the statement, null if not calculated yet
+		 * @param isUnion the statement is a union
+		 * @param selects the parsed statement, not modified by an execution yet, null if not parsable
+		 */
+		public Plan(boolean parsable, boolean nativeSupported, String prettySQL, Set<String> tables, boolean isUnion, Selects selects) {
+			this.parsable = parsable;
+			this.nativeSupported = parsable && nativeSupported;
+			this.prettySQL = prettySQL;
+			this.tables = tables == null ? null : Collections.unmodifiableSet(tables);
+			this.isUnion = isUnion;
+			this.selects = parsable ? selects : null;
+		}
+
+		public boolean isParsable() {
+			return parsable;
+		}
+
+		public boolean isNativeSupported() {
+			return nativeSupported;
+		}
+
+		public String getPrettySQL() {
+			return prettySQL;
+		}
+
+		public Set<String> getTables() {
+			return tables;
+		}
+
+		public boolean isUnion() {
+			return isUnion;
+		}
+
+		/**
+		 * @return a copy of this plan with the given tables/union information
+		 */
+		public Plan withTables(Set<String> tables, boolean isUnion) {
+			return new Plan(parsable, nativeSupported, prettySQL, tables, isUnion, selects);
+		}
+	}
+}
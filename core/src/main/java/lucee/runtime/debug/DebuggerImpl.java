@@ -118,6 +118,8 @@ public final class DebuggerImpl implements Debugger {
 	final static Comparator DEBUG_ENTRY_TEMPLATE_PART_COMPARATOR = new DebugEntryTemplatePartComparator();
 
 	private static final Key CACHE_TYPE = KeyImpl.getInstance("cacheType");
+	private static final Key CPU = KeyImpl.getInstance("cpu");
+	private static final Key ALLOCATED_BYTES = KeyImpl.getInstance("allocatedBytes");
 
 	private static final Key[] PAGE_COLUMNS = new Collection.Key[] { KeyConstants._id, KeyConstants._count, KeyConstants._min, KeyConstants._max, KeyConstants._avg,
 			KeyConstants._app, KeyConstants._load, KeyConstants._query, KeyConstants._total, KeyConstants._src };
@@ -529,7 +531,11 @@ public final class DebuggerImpl implements Debugger {
 		Struct times = new StructImpl();
 		times.setEL(KeyConstants._total, Caster.toDouble(totalTime));
 		times.setEL(KeyConstants._query, Caster.toDouble(queryTime));
+		long cpuTime = pci.getCpuTime();
+		if (cpuTime != -1) times.setEL(CPU, Caster.toDouble(cpuTime));
 		debugging.setEL(KeyConstants._times, times);
+		long allocatedBytes = pci.getAllocatedBytes();
+		if (allocatedBytes != -1) debugging.setEL(ALLOCATED_BYTES, Caster.toDouble(allocatedBytes));
 
 		//////////////////////////////////////////
 		//////// PAGE PARTS ///////////////////////////
@@ -0,0 +1,344 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.debug;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import lucee.commons.io.SystemUtil;
+import lucee.commons.io.log.LogUtil;
+import lucee.commons.lang.ExceptionUtil;
+import lucee.runtime.CFMLFactory;
+import lucee.runtime.CFMLFactoryImpl;
+import lucee.runtime.PageContextImpl;
+import lucee.runtime.config.Constants;
+import lucee.runtime.engine.CFMLEngineImpl;
+import lucee.runtime.op.Caster;
+import lucee.runtime.type.Array;
+import lucee.runtime.type.ArrayImpl;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+import lucee.runtime.type.util.KeyConstants;
+
+/**
+ * engine wide sampling profiler. A background thread takes the stack traces of the threads
+ * executing a request in a fixed interval and keeps only the frames of the compiled CFML templates
+ * (template and line). The stack traces of all request threads are taken with a single call of the
+ * {@link ThreadMXBean}, so the threads are only suspended once per sample. The stacks are
+ * aggregated in a tree (flame graph) that is limited to a max number of nodes, so the memory used
+ * does not grow with the uptime of the engine. Unlike the debugging, nothing is done on the request
+ * threads themselves.
+ *
+ * The profiler can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.profiler.enabled: start the profiler with the engine (default: false)</li>
+ * <li>lucee.profiler.interval: milliseconds between two samples (default: 50)</li>
+ * <li>lucee.profiler.maxnodes: max number of nodes in the tree (default: 20000)</li>
+ * <li>lucee.profiler.wallclock: also sample threads that are waiting (default: false, only running
+ * threads are sampled)</li>
+ * </ul>
+ * The profiler can also be started and stopped at runtime with the function getProfilerData.
+ */
+public final class SamplingProfiler {
+
+	private static final String ROOT = "all";
+	private static final int MAX_DEPTH = 128;
+
+	private static volatile SamplingProfiler instance;
+
+	private final long interval;
+	private final int maxNodes;
+	private final boolean wallClock;
+
+	private Node root = new Node(ROOT);
+	private int nodes = 1;
+	private long samples;
+	private long truncated;
+	private long since = System.currentTimeMillis();
+	private Sampler sampler;
+
+	private SamplingProfiler() {
+		this(Caster.toLongValue(SystemUtil.getSystemPropOrEnvVar("lucee.profiler.interval", null), 0L),
+				Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.profiler.maxnodes", null), 0),
+				Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.profiler.wallclock", null), false));
+	}
+
+	SamplingProfiler(long interval, int maxNodes, boolean wallClock) {
+		this.interval = interval < 1 ? 50 : interval;
+		this.maxNodes = maxNodes < 1 ? 20000 : maxNodes;
+		this.wallClock = wallClock;
+	}
+
+	public static SamplingProfiler getInstance() {
+		if (instance == null) {
+			synchronized (SamplingProfiler.class) {
+				if (instance == null) instance = new SamplingProfiler();
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * @return true if the profiler should be started with the engine
+	 */
+	public static boolean isEnabled() {
+		return Caster.toBooleanValue(SystemUtil.getSystemPropOrEnvVar("lucee.profiler.enabled", null), false);
+	}
+
+	/**
+	 * starts sampling the requests of the given engine, does nothing when already started
+	 * 
+	 * @param engine engine to sample
+	 */
+	public synchronized void start(CFMLEngineImpl engine) {
+		if (sampler != null && sampler.isAlive()) return;
+		sampler = new Sampler(engine);
+		sampler.start();
+	}
+
+	/**
+	 * stops sampling, the data collected so far is kept
+	 */
+	public synchronized void stop() {
+		if (sampler != null) {
+			sampler.run = false;
+			sampler.interrupt();
+			sampler = null;
+		}
+	}
+
+	public synchronized boolean isRunning() {
+		return sampler != null && sampler.isAlive();
+	}
+
+	/**
+	 * removes all data collected so far
+	 */
+	public synchronized void reset() {
+		root = new Node(ROOT);
+		nodes = 1;
+		samples = 0;
+		truncated = 0;
+		since = System.currentTimeMillis();
+	}
+
+	/**
+	 * adds a sample
+	 * 
+	 * @param traces stack trace of the thread, the innermost frame first
+	 */
+	void add(StackTraceElement[] traces) {
+		// collect the CFML frames, outermost first
+		List<String> frames = new ArrayList<String>();
+		StackTraceElement trace;
+		String file, last = null;
+		for (int i = traces.length - 1; i >= 0 && frames.size() < MAX_DEPTH; i--) {
+			trace = traces[i];
+			file = trace.getFileName();
+			if (file == null || trace.getLineNumber() <= 0 || !isTemplate(trace.getClassName())) continue;
+			file = file + ":" + trace.getLineNumber();
+			// the same line can produce several java frames
+			if (file.equals(last)) continue;
+			frames.add(file);
+			last = file;
+		}
+
+		synchronized (this) {
+			samples++;
+			root.total++;
+			Node node = root, child;
+			for (String frame: frames) {
+				child = node.children == null ? null : node.children.get(frame);
+				if (child == null) {
+					if (nodes >= maxNodes) {
+						truncated++;
+						break;
+					}
+					child = node.add(frame);
+					nodes++;
+				}
+				child.total++;
+				node = child;
+			}
+			node.self++;
+		}
+	}
+
+	/**
+	 * samples the given threads
+	 * 
+	 * @param threads threads to sample
+	 */
+	void sample(List<Thread> threads) {
+		if (threads.isEmpty()) return;
+		long[] ids = new long[threads.size()];
+		for (int i = 0; i < ids.length; i++) {
+			ids[i] = threads.get(i).getId();
+		}
+		// one call for all threads, no locks and synchronizers are collected
+		ThreadInfo[] infos = ManagementFactory.getThreadMXBean().getThreadInfo(ids, Integer.MAX_VALUE);
+		StackTraceElement[] traces;
+		for (ThreadInfo info: infos) {
+			// thread has ended in the meantime
+			if (info == null) continue;
+			if (!wallClock && info.getThreadState() != Thread.State.RUNNABLE) continue;
+			traces = info.getStackTrace();
+			if (traces.length > 0) add(traces);
+		}
+	}
+
+	/**
+	 * @param className name of the class of a stack frame
+	 * @return true if the class was compiled from a CFML template (also a sub class of a template)
+	 */
+	static boolean isTemplate(String className) {
+		return className != null && (className.endsWith(Constants.CFML_CLASS_SUFFIX) || className.endsWith(Constants.LUCEE_CLASS_SUFFIX)
+				|| className.contains(Constants.CFML_CLASS_SUFFIX + "$") || className.contains(Constants.LUCEE_CLASS_SUFFIX + "$"));
+	}
+
+	/**
+	 * @return the collected stacks in the collapsed format (one line per stack, frames separated by
+	 *         semicolon followed by the number of samples), as used by most flame graph tools
+	 */
+	public synchronized String toCollapsed() {
+		StringBuilder sb = new StringBuilder();
+		if (root.children != null) {
+			for (Node child: root.children.values()) {
+				toCollapsed(sb, child, "");
+			}
+		}
+		return sb.toString();
+	}
+
+	private static void toCollapsed(StringBuilder sb, Node node, String prefix) {
+		String path = prefix.isEmpty() ? clean(node.name) : prefix + ";" + clean(node.name);
+		if (node.self > 0) sb.append(path).append(' ').append(node.self).append('\n');
+		if (node.children != null) {
+			for (Node child: node.children.values()) {
+				toCollapsed(sb, child, path);
+			}
+		}
+	}
+
+	private static String clean(String name) {
+		return name.replace(';', '_').replace(' ', '_');
+	}
+
+	/**
+	 * @return the collected stacks as a tree of structs with the keys name, value (number of samples
+	 *         including the children), self and children, the format used by d3-flame-graph
+	 */
+	public synchronized Struct toStruct() {
+		Struct sct = toStruct(root);
+		sct.setEL("samples", Caster.toDouble(samples));
+		sct.setEL("truncated", Caster.toDouble(truncated));
+		sct.setEL("nodes", Caster.toDouble(nodes));
+		sct.setEL("interval", Caster.toDouble(interval));
+		sct.setEL("since", Caster.toDouble(since));
+		sct.setEL("running", sampler != null && sampler.isAlive());
+		return sct;
+	}
+
+	private static Struct toStruct(Node node) {
+		Struct sct = new StructImpl(Struct.TYPE_LINKED);
+		sct.setEL(KeyConstants._name, node.name);
+		sct.setEL(KeyConstants._value, Caster.toDouble(node.total));
+		sct.setEL("self", Caster.toDouble(node.self));
+		Array children = new ArrayImpl();
+		if (node.children != null) {
+			for (Node child: node.children.values()) {
+				children.appendEL(toStruct(child));
+			}
+		}
+		sct.setEL("children", children);
+		return sct;
+	}
+
+	private static final class Node {
+		private final String name;
+		private long total;
+		private long self;
+		private Map<String, Node> children;
+
+		private Node(String name) {
+			this.name = name;
+		}
+
+		private Node add(String name) {
+			if (children == null) children = new LinkedHashMap<String, Node>();
+			Node n = new Node(name);
+			children.put(name, n);
+			return n;
+		}
+	}
+
+	private final class Sampler extends Thread {
+
+		private final CFMLEngineImpl engine;
+		private volatile boolean run = true;
+
+		private Sampler(CFMLEngineImpl engine) {
+			super("lucee-profiler");
+			this.engine = engine;
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (run) {
+				try {
+					sleep(interval);
+				}
+				catch (InterruptedException ie) {
+					if (!run) return;
+				}
+				try {
+					sample();
+				}
+				catch (Throwable t) {
+					ExceptionUtil.rethrowIfNecessary(t);
+					LogUtil.log("application", "profiler", t);
+				}
+			}
+		}
+
+		private void sample() {
+			Iterator<Entry<String, CFMLFactory>> it = engine.getCFMLFactories().entrySet().iterator();
+			List<Thread> threads = new ArrayList<Thread>();
+			CFMLFactory factory;
+			Thread thread;
+			while (it.hasNext()) {
+				factory = it.next().getValue();
+				if (!(factory instanceof CFMLFactoryImpl)) continue;
+				for (PageContextImpl pc: ((CFMLFactoryImpl) factory).getActivePageContexts().values()) {
+					thread = pc.getThread();
+					if (thread != null && thread != this) threads.add(thread);
+				}
+			}
+			SamplingProfiler.this.sample(threads);
+		}
+	}
+}
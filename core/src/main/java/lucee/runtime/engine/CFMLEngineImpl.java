@@ -47,6 +47,9 @@ import java.util.Set;
 import java.util.TimeZone;
 
 import javax.script.ScriptEngineFactory;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
@@ -102,6 +105,7 @@ import lucee.runtime.PageContextImpl;
 import lucee.runtime.PageSource;
 import lucee.runtime.PageSourceImpl;
 import lucee.runtime.cache.CacheUtil;
+import lucee.runtime.concurrency.RequestExecutor;
 import lucee.runtime.config.Config;
 import lucee.runtime.config.ConfigAdmin;
 import lucee.runtime.config.ConfigFactory;
@@ -117,6 +121,7 @@ import lucee.runtime.config.ConfigWebPro;
 import lucee.runtime.config.DeployHandler;
 import lucee.runtime.config.Identification;
 import lucee.runtime.config.Password;
+import lucee.runtime.debug.SamplingProfiler;
 import lucee.runtime.engine.listener.CFMLServletContextListener;
 import lucee.runtime.exp.Abort;
 import lucee.runtime.exp.ApplicationException;
@@ -423,6 +428,12 @@ public final class CFMLEngineImpl implements CFMLEngine {
 			controler.start();
 		}
 
+		// sampling profiler
+		if (SamplingProfiler.isEnabled()) {
+			LogUtil.log(cs, Log.LEVEL_INFO, "startup", "Start CFML Profiler");
+			SamplingProfiler.getInstance().start(this);
+		}
+
 		// remove old log4j bundles FUTURE remove
 		try {
 			OSGiUtil.removeLocalBundle("log4j", OSGiUtil.toVersion("1.2.16"), null, true, true);
@@ -1074,7 +1085,7 @@ public final class CFMLEngineImpl implements CFMLEngine {
 	}
 
 	private void _service(HttpServlet servlet, HttpServletRequest req, HttpServletResponse rsp, short type) throws ServletException, IOException {
-		CFMLFactoryImpl factory = (CFMLFactoryImpl) getCFMLFactory(servlet.getServletConfig(), req);
+		final CFMLFactoryImpl factory = (CFMLFactoryImpl) getCFMLFactory(servlet.getServletConfig(), req);
 		// is Lucee dialect enabled?
 		if (type == Request.TYPE_LUCEE) {
 			if (!((ConfigPro) factory.getConfig()).allowLuceeDialect()) {
@@ -1087,34 +1098,81 @@ public final class CFMLEngineImpl implements CFMLEngine {
 			}
 		}
 		boolean exeReqAsync = exeRequestAsync();
-		PageContextImpl pc = factory.getPageContextImpl(servlet, req, rsp, null, false, -1, false, !exeReqAsync, false, -1, true, false, false, null);
+		final PageContextImpl pc = factory.getPageContextImpl(servlet, req, rsp, null, false, -1, false, !exeReqAsync, false, -1, true, false, false, null);
+		boolean release = true;
 		try {
-			Request r = new Request(pc, type);
 			if (exeReqAsync) {
-				r.start();
-				long ended = -1;
-				do {
-					SystemUtil.wait(Thread.currentThread(), 1000);
-					// done?
-					if (r.isDone()) {
-						// print.e("mas-done:"+System.currentTimeMillis());
-						break;
-					}
-					// reach request timeout
-					else if (ended == -1 && (pc.getStartTime() + pc.getRequestTimeout()) < System.currentTimeMillis()) {
-						// print.e("req-time:"+System.currentTimeMillis());
-						CFMLFactoryImpl.terminate(pc, false);
-						ended = System.currentTimeMillis();
-						// break; we do not break here, we give the thread itself the chance to end we need the exception
-						// output
+				// the servlet engine supports async requests, so the thread of the servlet engine is released
+				// immediately and the request thread completes the response
+				if (req.isAsyncSupported()) {
+					final AsyncContext ac = req.startAsync(req, rsp);
+					// the request timeout is handled by Lucee itself, this is only the last line of defense
+					ac.setTimeout(pc.getRequestTimeout() + 10000);
+					final Request r = new Request(pc, type, new Runnable() {
+						@Override
+						public void run() {
+							try {
+								factory.releaseLuceePageContext(pc, false);
+							}
+							finally {
+								try {
+									ac.complete();
+								}
+								catch (IllegalStateException ise) {
+									// already completed by the servlet engine (timeout)
+								}
+							}
+						}
+					});
+					ac.addListener(new AsyncListener() {
+						@Override
+						public void onTimeout(AsyncEvent event) throws IOException {
+							// does nothing when the request is done, its PageContext can already be reused
+							r.terminate();
+						}
+
+						@Override
+						public void onStartAsync(AsyncEvent event) throws IOException {}
+
+						@Override
+						public void onError(AsyncEvent event) throws IOException {}
+
+						@Override
+						public void onComplete(AsyncEvent event) throws IOException {}
+					});
+					if (RequestExecutor.getInstance().execute(r)) {
+						release = false;
+						return;
 					}
-					// the thread itself seem blocked, so we release this thread
-					else if (ended > -1 && ended + 10000 <= System.currentTimeMillis()) {
-						// print.e("give-up:"+System.currentTimeMillis());
-						break;
+					rejectRequest(rsp);
+					ac.complete();
+					return;
+				}
+
+				// wait for the request thread, but do not poll
+				Request r = new Request(pc, type);
+				if (!RequestExecutor.getInstance().execute(r)) {
+					rejectRequest(rsp);
+					return;
+				}
+				long ended = -1;
+				try {
+					while (!r.await(1000)) {
+						// reach request timeout
+						if (ended == -1 && (pc.getStartTime() + pc.getRequestTimeout()) < System.currentTimeMillis()) {
+							CFMLFactoryImpl.terminate(pc, false);
+							ended = System.currentTimeMillis();
+							// we do not break here, we give the thread itself the chance to end we need the exception
+							// output
+						}
+						// the thread itself seem blocked, so we release this thread
+						else if (ended > -1 && ended + 10000 <= System.currentTimeMillis()) {
+							break;
+						}
 					}
 				}
-				while (true);
+				catch (InterruptedException ie) {
+				}
 			}
 			// run in thread coming from servlet engine
 			else {
@@ -1137,10 +1195,16 @@ public final class CFMLEngineImpl implements CFMLEngine {
 			}
 		}
 		finally {
-			factory.releaseLuceePageContext(pc, !exeReqAsync);
+			if (release) factory.releaseLuceePageContext(pc, !exeReqAsync);
 		}
 	}
 
+	private void rejectRequest(HttpServletResponse rsp) throws IOException {
+		LogUtil.log(configServer, Log.LEVEL_WARN, "application", "controller",
+				"request rejected, all [" + RequestExecutor.getInstance().getMaxThreads() + "] request threads are busy and the queue is full (lucee.async.request.maxthreads)");
+		rsp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+	}
+
 	@Override
 	public void serviceFile(HttpServlet servlet, HttpServletRequest req, HttpServletResponse rsp) throws ServletException, IOException {
 		req = new HTTPServletRequestWrap(req);
@@ -1304,6 +1368,7 @@ public final class CFMLEngineImpl implements CFMLEngine {
 		finally {
 			// Controller
 			controlerState.setActive(false);
+			SamplingProfiler.getInstance().stop();
 		}
 	}
 
@@ -1460,6 +1525,12 @@ public final class CFMLEngineImpl implements CFMLEngine {
 		String serverName = config.get("server-name");
 		if (StringUtil.isEmpty(serverName, true)) serverName = "localhost";
 
+		// benchmark
+		if (config.containsKey("benchmark")) {
+			benchmark(servlet, root, serverName, config);
+			return;
+		}
+
 		// uri
 		String strUri = config.get("uri");
 		if (StringUtil.isEmpty(strUri, true)) throw new IOException("Missing uri configuration");
@@ -1509,6 +1580,21 @@ public final class CFMLEngineImpl implements CFMLEngine {
 		// System. out.println(res);
 	}
 
+	private void benchmark(HTTPServletImpl servlet, Resource root, String serverName, Map<String, String> config) throws IOException, ServletException {
+		HttpServletRequestDummy req = new HttpServletRequestDummy(root, serverName, "/", null, null, null, null, new StructImpl(), null, null);
+		CFMLFactoryImpl factory = (CFMLFactoryImpl) getCFMLFactory(servlet.getServletConfig(), req);
+		try {
+			RequestBenchmark.Result result = new RequestBenchmark(servlet, factory, root, serverName, config).run();
+			System.out.print(result);
+		}
+		catch (PageException pe) {
+			throw new PageServletException(pe);
+		}
+		catch (InterruptedException ie) {
+			throw new IOException(ie);
+		}
+	}
+
 	@Override
 	public ServletConfig[] getServletConfigs() {
 		return servletConfigs.toArray(new ServletConfig[servletConfigs.size()]);
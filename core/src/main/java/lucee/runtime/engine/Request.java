@@ -1,37 +1,76 @@
 package lucee.runtime.engine;
 
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
-import lucee.commons.io.SystemUtil;
+import lucee.runtime.CFMLFactoryImpl;
 import lucee.runtime.PageContext;
+import lucee.runtime.PageContextImpl;
 import lucee.runtime.exp.PageException;
 
-public class Request extends Thread {
+/**
+ * a request executed outside the thread of the servlet engine (see "lucee.async.request.handle")
+ */
+public class Request implements Runnable {
 
 	public static final short TYPE_CFML = 1;
 	public static final short TYPE_LUCEE = 2;
 	public static final short TYPE_REST = 3;
 
 	private PageContext pc;
-	private Thread parent;
-	private boolean done;
 	private short type;
+	private Runnable onDone;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private boolean finished; // guarded by this
 
 	public Request(PageContext pc, short type) {
-		this.parent = Thread.currentThread();
+		this(pc, type, null);
+	}
+
+	/**
+	 * @param pc PageContext of the request
+	 * @param type type of the request (TYPE_*)
+	 * @param onDone executed by the thread executing the request after the request is done, can be
+	 *            null
+	 */
+	public Request(PageContext pc, short type, Runnable onDone) {
 		this.pc = pc;
 		this.type = type;
-
+		this.onDone = onDone;
 	}
 
+	@Override
 	public void run() {
 		try {
 			exe(pc, type, false, true);
 		}
 		catch (Throwable _t) {
 		}
-		done = true;
-		SystemUtil.notify(parent);
+		finally {
+			try {
+				// wait for a running terminate, after this the PageContext can be released and reused
+				synchronized (this) {
+					finished = true;
+				}
+			}
+			finally {
+				done.countDown();
+				if (onDone != null) onDone.run();
+			}
+		}
+	}
+
+	/**
+	 * terminates the request if it is still running. After the request is done the PageContext is
+	 * not touched anymore, it can already be used by another request.
+	 * 
+	 * @return false if the request was already done
+	 */
+	public synchronized boolean terminate() {
+		if (finished) return false;
+		CFMLFactoryImpl.terminate((PageContextImpl) pc, false);
+		return true;
 	}
 
 	public static void exe(PageContext pc, short type, boolean throwExcpetion, boolean registerWithThread) throws IOException, PageException {
@@ -53,7 +92,18 @@ public class Request extends Thread {
 	}
 
 	public boolean isDone() {
-		return done;
+		return done.getCount() == 0;
+	}
+
+	/**
+	 * waits until the request is done, but not longer than the given time
+	 * 
+	 * @param timeout max time to wait in milliseconds
+	 * @return true if the request is done
+	 * @throws InterruptedException
+	 */
+	public boolean await(long timeout) throws InterruptedException {
+		return done.await(timeout, TimeUnit.MILLISECONDS);
 	}
 
 }
@@ -0,0 +1,431 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.engine;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletResponse;
+
+import lucee.commons.io.res.Resource;
+import lucee.commons.lang.StringUtil;
+import lucee.commons.net.HTTPUtil;
+import lucee.runtime.CFMLFactoryImpl;
+import lucee.runtime.Component;
+import lucee.runtime.PageContextImpl;
+import lucee.runtime.exp.ApplicationException;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.net.http.DevNullHttpServletResponse;
+import lucee.runtime.net.http.HttpServletRequestDummy;
+import lucee.runtime.net.http.HttpServletResponseDummy;
+import lucee.runtime.op.Caster;
+import lucee.runtime.type.Collection.Key;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.Struct;
+import lucee.runtime.type.StructImpl;
+import lucee.runtime.type.util.ListUtil;
+
+/**
+ * executes CFML templates and component method calls in process, without a servlet engine, and
+ * measures throughput, latency and allocation of the requests. Every request runs through
+ * {@link CFMLFactoryImpl#getPageContextImpl} with a dummy request and a response writing to dev
+ * null, exactly like a request coming from the servlet engine does.
+ *
+ * The benchmark is started with the CLI by passing the argument "benchmark", the following
+ * arguments are supported:
+ * <ul>
+ * <li>uri: comma separated list of templates to call (path and query string)</li>
+ * <li>component: component to load (dot notation)</li>
+ * <li>method: method of the component to call</li>
+ * <li>args: named arguments passed to the method (same pattern as query string)</li>
+ * <li>concurrency: number of threads executing requests (default: number of processors)</li>
+ * <li>requests: number of measured requests (default: 10000)</li>
+ * <li>duration: measured duration in milliseconds, overrules "requests" when set</li>
+ * <li>warmup: number of requests executed before the measurement (default: 1000)</li>
+ * <li>buffer-size: buffer size of the PageContext (default: -1, buffer size of the config)</li>
+ * <li>autoflush: autoflush the PageContext buffer (default: false)</li>
+ * </ul>
+ * When more than one target is defined, the targets are called in turn.
+ */
+public final class RequestBenchmark {
+
+	private static final int DEFAULT_REQUESTS = 10000;
+	private static final int DEFAULT_WARMUP = 1000;
+
+	private final HttpServlet servlet;
+	private final CFMLFactoryImpl factory;
+	private final Resource root;
+	private final String serverName;
+	private final Target[] targets;
+	private final int concurrency;
+	private final long requests;
+	private final long duration;
+	private final long warmup;
+	private final int bufferSize;
+	private final boolean autoflush;
+
+	public RequestBenchmark(HttpServlet servlet, CFMLFactoryImpl factory, Resource root, String serverName, Map<String, String> config) throws PageException {
+		this.servlet = servlet;
+		this.factory = factory;
+		this.root = root;
+		this.serverName = serverName;
+
+		List<Target> list = new ArrayList<Target>();
+		String str = config.get("uri");
+		if (!StringUtil.isEmpty(str, true)) {
+			String[] uris = ListUtil.trimItems(ListUtil.listToStringArray(str, ','));
+			for (String uri: uris) {
+				if (!StringUtil.isEmpty(uri)) list.add(new Target(uri));
+			}
+		}
+		str = config.get("component");
+		if (!StringUtil.isEmpty(str, true)) {
+			String method = config.get("method");
+			if (StringUtil.isEmpty(method, true)) throw new ApplicationException("Missing method configuration for component [" + str + "]");
+			list.add(new Target(str.trim(), method.trim(), config.get("args")));
+		}
+		if (list.isEmpty()) throw new ApplicationException("Missing uri or component configuration");
+		targets = list.toArray(new Target[list.size()]);
+
+		int c = Caster.toIntValue(config.get("concurrency"), 0);
+		concurrency = c < 1 ? Runtime.getRuntime().availableProcessors() : c;
+		long r = Caster.toLongValue(config.get("requests"), 0L);
+		requests = r < 1 ? DEFAULT_REQUESTS : r;
+		duration = Caster.toLongValue(config.get("duration"), 0L);
+		long w = Caster.toLongValue(config.get("warmup"), -1L);
+		warmup = w < 0 ? DEFAULT_WARMUP : w;
+		bufferSize = Caster.toIntValue(config.get("buffer-size"), -1);
+		autoflush = Caster.toBooleanValue(config.get("autoflush"), false);
+	}
+
+	/**
+	 * executes the warmup and the measurement
+	 * 
+	 * @return result of the measurement
+	 * @throws InterruptedException
+	 */
+	public Result run() throws InterruptedException {
+		if (warmup > 0) execute(warmup, 0);
+
+		long gcCount = 0, gcTime = 0;
+		for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= Math.max(0, gc.getCollectionCount());
+			gcTime -= Math.max(0, gc.getCollectionTime());
+		}
+		long start = System.nanoTime();
+		Worker[] workers = execute(duration > 0 ? Long.MAX_VALUE : requests, duration);
+		long time = System.nanoTime() - start;
+		for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += Math.max(0, gc.getCollectionCount());
+			gcTime += Math.max(0, gc.getCollectionTime());
+		}
+		return new Result(workers, time, gcCount, gcTime);
+	}
+
+	private Worker[] execute(long max, long duration) throws InterruptedException {
+		AtomicLong counter = new AtomicLong();
+		long end = duration > 0 ? System.nanoTime() + (duration * 1000000L) : Long.MAX_VALUE;
+		CountDownLatch latch = new CountDownLatch(concurrency);
+		Worker[] workers = new Worker[concurrency];
+		for (int i = 0; i < concurrency; i++) {
+			workers[i] = new Worker(counter, max, end, latch);
+			Thread t = new Thread(workers[i], "lucee-benchmark-" + (i + 1));
+			t.setDaemon(true);
+			t.start();
+		}
+		latch.await();
+		return workers;
+	}
+
+	private void exe(Target target) throws Exception {
+		HttpServletRequestDummy req = new HttpServletRequestDummy(root, serverName, target.path, target.query, null, null, null, new StructImpl(), null, null);
+		req.setProtocol("CLI/1.0");
+		// the dummy keeps status and headers, the content goes to a DevNullServletOutputStream
+		HttpServletResponse rsp = new DevNullHttpServletResponse(new HttpServletResponseDummy());
+
+		PageContextImpl pc = factory.getPageContextImpl(servlet, req, rsp, null, false, bufferSize, autoflush, true, false, -1, true, false, false, null);
+		try {
+			if (target.component == null) {
+				Request.exe(pc, Request.TYPE_CFML, true, false);
+			}
+			else {
+				Component c = pc.loadComponent(target.component);
+				c.callWithNamedValues(pc, target.method, target.createArgs());
+			}
+		}
+		finally {
+			factory.releaseLuceePageContext(pc, true);
+		}
+	}
+
+	private final class Worker implements Runnable {
+
+		private final AtomicLong counter;
+		private final long max;
+		private final long end;
+		private final CountDownLatch latch;
+
+		private long[] latencies = new long[1024];
+		private int count;
+		private int errors;
+		private Throwable firstError;
+		private long allocated = -1;
+
+		Worker(AtomicLong counter, long max, long end, CountDownLatch latch) {
+			this.counter = counter;
+			this.max = max;
+			this.end = end;
+			this.latch = latch;
+		}
+
+		@Override
+		public void run() {
+			try {
+				long allocStart = allocatedBytes();
+				long n, start, now;
+				while ((n = counter.getAndIncrement()) < max) {
+					start = System.nanoTime();
+					if (start >= end) break;
+					try {
+						exe(targets[(int) (n % targets.length)]);
+					}
+					catch (Throwable t) {
+						if (t instanceof ThreadDeath) throw (ThreadDeath) t;
+						if (firstError == null) firstError = t;
+						errors++;
+					}
+					now = System.nanoTime();
+					if (count == latencies.length) latencies = Arrays.copyOf(latencies, count << 1);
+					latencies[count++] = now - start;
+				}
+				if (allocStart != -1) {
+					long allocEnd = allocatedBytes();
+					if (allocEnd != -1) allocated = allocEnd - allocStart;
+				}
+			}
+			finally {
+				latch.countDown();
+			}
+		}
+	}
+
+	private static long allocatedBytes() {
+		ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		// only supported by HotSpot based JVMs
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean b = (com.sun.management.ThreadMXBean) bean;
+			try {
+				if (b.isThreadAllocatedMemorySupported() && b.isThreadAllocatedMemoryEnabled()) return b.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+			catch (UnsupportedOperationException uoe) {
+			}
+		}
+		return -1;
+	}
+
+	private static final class Target {
+
+		private final String path;
+		private final String query;
+		private final String component;
+		private final Key method;
+		private final Map<String, String> args;
+
+		Target(String uri) {
+			int index = uri.indexOf('?');
+			this.path = index == -1 ? uri : uri.substring(0, index);
+			this.query = index == -1 ? null : uri.substring(index + 1);
+			this.component = null;
+			this.method = null;
+			this.args = null;
+		}
+
+		Target(String component, String method, String args) {
+			this.path = "/" + component.replace('.', '/') + ".cfc";
+			this.query = null;
+			this.component = component;
+			this.method = KeyImpl.init(method);
+			this.args = StringUtil.isEmpty(args, true) ? null : HTTPUtil.parseParameterList(args, true, null);
+		}
+
+		private Struct createArgs() {
+			Struct sct = new StructImpl();
+			if (args != null) {
+				Iterator<Entry<String, String>> it = args.entrySet().iterator();
+				Entry<String, String> e;
+				while (it.hasNext()) {
+					e = it.next();
+					sct.setEL(KeyImpl.init(e.getKey()), e.getValue());
+				}
+			}
+			return sct;
+		}
+
+		@Override
+		public String toString() {
+			if (component != null) return component + "." + method + "()";
+			return query == null ? path : path + "?" + query;
+		}
+	}
+
+	/**
+	 * result of a benchmark run
+	 */
+	public final class Result {
+
+		private final long count;
+		private final long errors;
+		private final Throwable firstError;
+		private final long time;
+		private final long[] latencies;
+		private final long allocated;
+		private final long gcCount;
+		private final long gcTime;
+
+		private Result(Worker[] workers, long time, long gcCount, long gcTime) {
+			int total = 0;
+			long errors = 0, allocated = 0;
+			Throwable firstError = null;
+			for (Worker w: workers) {
+				total += w.count;
+				errors += w.errors;
+				if (firstError == null) firstError = w.firstError;
+				if (allocated != -1) allocated = w.allocated == -1 ? -1 : allocated + w.allocated;
+			}
+			long[] latencies = new long[total];
+			int index = 0;
+			for (Worker w: workers) {
+				System.arraycopy(w.latencies, 0, latencies, index, w.count);
+				index += w.count;
+			}
+			Arrays.sort(latencies);
+
+			this.count = total;
+			this.errors = errors;
+			this.firstError = firstError;
+			this.time = time;
+			this.latencies = latencies;
+			this.allocated = allocated;
+			this.gcCount = gcCount;
+			this.gcTime = gcTime;
+		}
+
+		/**
+		 * @return number of measured requests
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return number of requests that failed with an exception
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * @return requests per second
+		 */
+		public double getThroughput() {
+			return time == 0 ? 0 : count * 1000000000D / time;
+		}
+
+		/**
+		 * @param percentile percentile between 0 and 100
+		 * @return latency in nanoseconds
+		 */
+		public long getLatency(double percentile) {
+			if (latencies.length == 0) return 0;
+			int index = (int) Math.ceil(percentile / 100D * latencies.length) - 1;
+			return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+		}
+
+		/**
+		 * @return average latency in nanoseconds
+		 */
+		public long getAverageLatency() {
+			if (latencies.length == 0) return 0;
+			long sum = 0;
+			for (long l: latencies) {
+				sum += l;
+			}
+			return sum / latencies.length;
+		}
+
+		/**
+		 * @return bytes allocated per request or -1 if the JVM does not support allocation measuring
+		 */
+		public long getAllocatedPerRequest() {
+			if (allocated == -1 || count == 0) return -1;
+			return allocated / count;
+		}
+
+		public Struct toStruct() {
+			Struct sct = new StructImpl(Struct.TYPE_LINKED);
+			sct.setEL("requests", Caster.toDouble(count));
+			sct.setEL("errors", Caster.toDouble(errors));
+			sct.setEL("concurrency", Caster.toDouble(concurrency));
+			sct.setEL("time", Caster.toDouble(time / 1000000L));
+			sct.setEL("throughput", Caster.toDouble(getThroughput()));
+			sct.setEL("latencyAvg", Caster.toDouble(getAverageLatency()));
+			sct.setEL("latency50", Caster.toDouble(getLatency(50)));
+			sct.setEL("latency90", Caster.toDouble(getLatency(90)));
+			sct.setEL("latency99", Caster.toDouble(getLatency(99)));
+			sct.setEL("latency999", Caster.toDouble(getLatency(99.9)));
+			sct.setEL("latencyMax", Caster.toDouble(getLatency(100)));
+			sct.setEL("allocatedPerRequest", Caster.toDouble(getAllocatedPerRequest()));
+			sct.setEL("gcCount", Caster.toDouble(gcCount));
+			sct.setEL("gcTime", Caster.toDouble(gcTime));
+			return sct;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb = new StringBuilder();
+			sb.append("targets:     ").append(Arrays.toString(targets)).append('\n');
+			sb.append("concurrency: ").append(concurrency).append('\n');
+			sb.append("requests:    ").append(count).append(" (errors: ").append(errors).append(")\n");
+			sb.append("time:        ").append(time / 1000000L).append(" ms\n");
+			sb.append("throughput:  ").append(Math.round(getThroughput() * 10) / 10D).append(" req/s\n");
+			sb.append("latency:     avg=").append(micros(getAverageLatency())).append(" p50=").append(micros(getLatency(50))).append(" p90=").append(micros(getLatency(90)))
+					.append(" p99=").append(micros(getLatency(99))).append(" p99.9=").append(micros(getLatency(99.9))).append(" max=").append(micros(getLatency(100)))
+					.append(" (us)\n");
+			long alloc = getAllocatedPerRequest();
+			sb.append("allocation:  ").append(alloc == -1 ? "n/a" : alloc + " bytes/req").append('\n');
+			sb.append("gc:          ").append(gcCount).append(" collections, ").append(gcTime).append(" ms\n");
+			if (firstError != null) sb.append("first error: ").append(firstError.getClass().getName()).append(": ").append(firstError.getMessage()).append('\n');
+			return sb.toString();
+		}
+
+		private long micros(long nanos) {
+			return nanos / 1000L;
+		}
+	}
+}
@@ -19,74 +19,283 @@
 package lucee.runtime.engine;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.http.HttpServletRequest;
 
 import lucee.commons.io.SystemUtil;
-import lucee.commons.lang.SerializableObject;
+import lucee.commons.lang.StringUtil;
 import lucee.runtime.PageContext;
 import lucee.runtime.config.ConfigPro;
+import lucee.runtime.type.util.ListUtil;
 
+/**
+ * limits the number of requests executed at the same time (queue max). Requests exceeding the limit
+ * wait in FIFO order until a running request exits, a request leaving hands its slot directly to the
+ * longest waiting request, so no request can overtake an other one.
+ *
+ * Requests can be assigned to priority classes by the path of the request:
+ * <ul>
+ * <li>lucee.queue.bypass.paths: comma separated list of path prefixes that are always admitted
+ * without waiting and without using a slot (default "/lucee/admin/")</li>
+ * <li>lucee.queue.priority.paths: comma separated list of path prefixes that wait in a separate
+ * queue, that is always served before the regular queue</li>
+ * </ul>
+ * The application of a request is not known yet when the request enters the queue, so only the path
+ * can be used to classify requests.
+ */
 public class ThreadQueueImpl implements ThreadQueue {
-	private final SerializableObject token = new SerializableObject();
 
-	public final List<PageContext> list = new ArrayList<PageContext>();
-	private int waiting = 0;
+	private static final int PRIORITY_BYPASS = 0;
+	private static final int PRIORITY_HIGH = 1;
+	private static final int PRIORITY_NORMAL = 2;
+
+	// upper bounds (inclusive) in milliseconds of the wait time histogram, the last bucket contains
+	// everything above
+	private static final long[] BUCKETS = new long[] { 0, 1, 5, 10, 50, 100, 500, 1000, 5000, 10000 };
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Deque<Waiter> high = new ArrayDeque<Waiter>();
+	private final Deque<Waiter> normal = new ArrayDeque<Waiter>();
+	private final Set<PageContext> admitted = ConcurrentHashMap.<PageContext>newKeySet();
+	private int active = 0;
+
+	private final String[] bypassPaths;
+	private final String[] priorityPaths;
+
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+	private final AtomicLong timeouts = new AtomicLong();
+	private final AtomicLong bypassed = new AtomicLong();
+
+	public ThreadQueueImpl() {
+		bypassPaths = toPaths(SystemUtil.getSystemPropOrEnvVar("lucee.queue.bypass.paths", "/lucee/admin/"));
+		priorityPaths = toPaths(SystemUtil.getSystemPropOrEnvVar("lucee.queue.priority.paths", null));
+	}
 
 	@Override
 	public void enter(PageContext pc) throws IOException {
+		int priority = getPriority(pc);
+		if (priority == PRIORITY_BYPASS) {
+			bypassed.incrementAndGet();
+			return;
+		}
+		if (admitted.contains(pc)) return;
+
+		ConfigPro ci = (ConfigPro) pc.getConfig();
+		long start = System.currentTimeMillis();
+		Waiter waiter;
+		lock.lock();
 		try {
-			synchronized (token) {
-				waiting++;
+			// nobody is waiting and there is a free slot
+			if (high.isEmpty() && normal.isEmpty() && active < ci.getQueueMax()) {
+				active++;
+				admitted.add(pc);
+				record(0);
+				return;
 			}
-			_enter(pc);
+			waiter = new Waiter(lock.newCondition());
+			(priority == PRIORITY_HIGH ? high : normal).addLast(waiter);
 		}
 		finally {
-			synchronized (token) {
-				waiting--;
-			}
+			lock.unlock();
 		}
-	}
 
-	private void _enter(PageContext pc) throws IOException {
-		ConfigPro ci = (ConfigPro) pc.getConfig();
-		// print.e("enter("+Thread.currentThread().getName()+"):"+list.size());
-		long start = System.currentTimeMillis();
 		long timeout = ci.getQueueTimeout();
 		if (timeout <= 0) timeout = pc.getRequestTimeout();
-		while (true) {
-			synchronized (token) {
-				if (list.size() < ci.getQueueMax()) {
-					// print.e("- ok("+Thread.currentThread().getName()+"):"+list.size());
-					list.add(pc);
-					return;
+
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+			while (!waiter.admitted) {
+				if (timeout > 0) {
+					if (nanos <= 0L) break;
+					try {
+						nanos = waiter.condition.awaitNanos(nanos);
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						break;
+					}
+				}
+				else {
+					try {
+						waiter.condition.await();
+					}
+					catch (InterruptedException ie) {
+						Thread.currentThread().interrupt();
+						break;
+					}
 				}
 			}
-			if (timeout > 0) SystemUtil.wait(token, timeout);
-			else SystemUtil.wait(token);
+			if (!waiter.admitted) {
+				high.remove(waiter);
+				normal.remove(waiter);
+			}
+			else admitted.add(pc);
+		}
+		finally {
+			lock.unlock();
+		}
 
-			if (timeout > 0 && (System.currentTimeMillis() - start) >= timeout) throw new IOException("Concurrent request timeout (" + (System.currentTimeMillis() - start) + ") ["
-					+ timeout + " ms] has occurred, server is too busy handling other requests. This timeout setting can be changed in the server administrator.");
+		long time = System.currentTimeMillis() - start;
+		if (waiter.admitted) {
+			record(time);
+			return;
 		}
+		timeouts.incrementAndGet();
+		if (Thread.currentThread().isInterrupted()) throw new IOException("Interrupted while waiting for a free slot in the concurrent request queue");
+		throw new IOException("Concurrent request timeout (" + time + ") [" + timeout
+				+ " ms] has occurred, server is too busy handling other requests. This timeout setting can be changed in the server administrator.");
 	}
 
 	@Override
 	public void exit(PageContext pc) {
-		// print.e("exist("+Thread.currentThread().getName()+")");
-		synchronized (token) {
-			list.remove(pc);
-			token.notify();
+		// exit can be called more than once for the same request (for example when the request gets
+		// terminated)
+		if (!admitted.remove(pc)) return;
+		lock.lock();
+		try {
+			active--;
+			dispatch((ConfigPro) pc.getConfig());
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * hands free slots to the waiting requests, must be called while holding the lock
+	 */
+	private void dispatch(ConfigPro ci) {
+		int max = ci == null ? Integer.MAX_VALUE : ci.getQueueMax();
+		Waiter w;
+		while (active < max) {
+			w = high.pollFirst();
+			if (w == null) w = normal.pollFirst();
+			if (w == null) break;
+			w.admitted = true;
+			active++;
+			w.condition.signal();
 		}
 	}
 
 	@Override
 	public int size() {
-		return waiting;
+		lock.lock();
+		try {
+			return high.size() + normal.size();
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 
 	@Override
 	public void clear() {
-		list.clear();
-		token.notifyAll();
+		lock.lock();
+		try {
+			admitted.clear();
+			active = 0;
+			// let all waiting requests in, the queue max is not known here
+			dispatch(null);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of requests currently holding a slot
+	 */
+	public int getActiveCount() {
+		lock.lock();
+		try {
+			return active;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of requests that gave up waiting for a slot
+	 */
+	public long getTimeoutCount() {
+		return timeouts.get();
+	}
+
+	/**
+	 * @return number of requests admitted without a slot (bypass paths)
+	 */
+	public long getBypassCount() {
+		return bypassed.get();
+	}
+
+	/**
+	 * @return upper bounds in milliseconds of the buckets returned by {@link #getWaitTimeHistogram()}
+	 */
+	public long[] getWaitTimeBuckets() {
+		return BUCKETS.clone();
+	}
+
+	/**
+	 * returns the number of admitted requests per wait time bucket, the last element contains the
+	 * requests that have waited longer than the last bucket bound
+	 * 
+	 * @return histogram
+	 */
+	public long[] getWaitTimeHistogram() {
+		long[] arr = new long[histogram.length()];
+		for (int i = 0; i < arr.length; i++) {
+			arr[i] = histogram.get(i);
+		}
+		return arr;
+	}
+
+	private void record(long time) {
+		int i = 0;
+		while (i < BUCKETS.length && time > BUCKETS[i]) {
+			i++;
+		}
+		histogram.incrementAndGet(i);
+	}
+
+	private int getPriority(PageContext pc) {
+		if (bypassPaths.length == 0 && priorityPaths.length == 0) return PRIORITY_NORMAL;
+		HttpServletRequest req = pc.getHttpServletRequest();
+		String path = req == null ? null : req.getServletPath();
+		if (path == null) return PRIORITY_NORMAL;
+		if (startsWith(path, bypassPaths)) return PRIORITY_BYPASS;
+		if (startsWith(path, priorityPaths)) return PRIORITY_HIGH;
+		return PRIORITY_NORMAL;
+	}
+
+	private static boolean startsWith(String path, String[] prefixes) {
+		for (int i = 0; i < prefixes.length; i++) {
+			if (StringUtil.startsWithIgnoreCase(path, prefixes[i])) return true;
+		}
+		return false;
+	}
+
+	private static String[] toPaths(String list) {
+		if (StringUtil.isEmpty(list, true)) return new String[0];
+		return ListUtil.trimItems(ListUtil.listToStringArray(list, ','));
+	}
+
+	private static final class Waiter {
+		private final Condition condition;
+		private boolean admitted;
+
+		private Waiter(Condition condition) {
+			this.condition = condition;
+		}
 	}
-}
\ No newline at end of file
+}
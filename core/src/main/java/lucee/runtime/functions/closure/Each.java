@@ -29,11 +29,11 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import lucee.runtime.PageContext;
 import lucee.runtime.concurrency.Data;
+import lucee.runtime.concurrency.ParallelExecutor;
 import lucee.runtime.concurrency.UDFCaller2;
 import lucee.runtime.exp.FunctionException;
 import lucee.runtime.exp.PageException;
@@ -70,7 +70,7 @@ public final class Each extends BIF implements ClosureFunc {
 		ExecutorService execute = null;
 		List<Future<Data<Object>>> futures = null;
 		if (parallel) {
-			execute = Executors.newFixedThreadPool(maxThreads);
+			execute = ParallelExecutor.newExecutor(pc, maxThreads);
 			futures = new ArrayList<Future<Data<Object>>>();
 		}
 
@@ -22,10 +22,10 @@ import java.util.Iterator;
 
 import lucee.commons.lang.StringUtil;
 import lucee.runtime.PageContext;
+import lucee.runtime.converter.JSONParser;
 import lucee.runtime.exp.FunctionException;
 import lucee.runtime.exp.PageException;
 import lucee.runtime.ext.function.Function;
-import lucee.runtime.interpreter.JSONExpressionInterpreter;
 import lucee.runtime.op.Caster;
 import lucee.runtime.type.Array;
 import lucee.runtime.type.ArrayImpl;
@@ -51,7 +51,7 @@ public final class DeserializeJSON implements Function {
 
 	public static Object call(PageContext pc, String JSONVar, boolean strictMapping) throws PageException {
 		if (StringUtil.isEmpty(JSONVar, true)) throw new FunctionException(pc, "DeserializeJSON", 1,"JSONVar" , "input value cannot be empty string.", "Must be the valid JSON string");
-		Object result = new JSONExpressionInterpreter().interpret(pc, JSONVar);
+		Object result = JSONParser.parse(pc, JSONVar);
 		if (!strictMapping) return toQuery(result);
 		return result;
 	}
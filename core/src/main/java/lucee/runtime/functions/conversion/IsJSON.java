@@ -20,8 +20,8 @@ package lucee.runtime.functions.conversion;
 
 import lucee.commons.lang.StringUtil;
 import lucee.runtime.PageContext;
+import lucee.runtime.converter.JSONParser;
 import lucee.runtime.exp.PageException;
-import lucee.runtime.interpreter.JSONExpressionInterpreter;
 import lucee.runtime.op.Caster;
 
 public class IsJSON {
@@ -29,7 +29,7 @@ public class IsJSON {
 		String str = Caster.toString(obj, null);
 		if (StringUtil.isEmpty(str, true)) return false;
 		try {
-			new JSONExpressionInterpreter().interpret(pc, str);
+			JSONParser.parse(pc, str);
 			return true;
 		}
 		catch (PageException e) {
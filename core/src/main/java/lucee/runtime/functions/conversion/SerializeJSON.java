@@ -18,6 +18,8 @@
  **/
 package lucee.runtime.functions.conversion;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.nio.charset.Charset;
 
 import lucee.commons.io.CharsetUtil;
@@ -79,10 +81,19 @@ public final class SerializeJSON implements Function {
 			}
 
 			// TODO get secure prefix from application.cfc
-			return useSecureJSONPrefix ? "// " + json.serialize(pc, var, qf) : json.serialize(pc, var, qf);
+			if (!useSecureJSONPrefix) return json.serialize(pc, var, qf);
+
+			// write the prefix and the data into the same buffer
+			StringWriter sw = new StringWriter(256);
+			sw.write("// ");
+			json.serialize(pc, var, qf, sw);
+			return sw.toString();
 		}
 		catch (ConverterException e) {
 			throw Caster.toPageException(e);
 		}
+		catch (IOException e) {
+			throw Caster.toPageException(e);
+		}
 	}
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.functions.system;
+
+import lucee.commons.io.CharsetUtil;
+import lucee.commons.lang.StringUtil;
+import lucee.commons.lang.ExceptionUtil;
+import lucee.runtime.PageContext;
+import lucee.runtime.config.ConfigWebUtil;
+import lucee.runtime.converter.ConverterException;
+import lucee.runtime.converter.JSONConverter;
+import lucee.runtime.converter.JSONDateFormat;
+import lucee.runtime.debug.SamplingProfiler;
+import lucee.runtime.engine.CFMLEngineImpl;
+import lucee.runtime.exp.FunctionException;
+import lucee.runtime.exp.PageException;
+import lucee.runtime.exp.SecurityException;
+import lucee.runtime.ext.function.Function;
+import lucee.runtime.listener.SerializationSettings;
+import lucee.runtime.op.Caster;
+import lucee.runtime.type.Struct;
+
+public final class GetProfilerData implements Function {
+
+	private static final long serialVersionUID = 2783476150239786071L;
+
+	public static Object call(PageContext pc) throws PageException {
+		return call(pc, null, false);
+	}
+
+	public static Object call(PageContext pc, String format) throws PageException {
+		return call(pc, format, false);
+	}
+
+	public static Object call(PageContext pc, String format, boolean reset) throws PageException {
+		checkAccess(pc);
+		return getData(pc, SamplingProfiler.getInstance(), format, reset);
+	}
+
+	public static Object call(PageContext pc, String format, boolean reset, boolean running) throws PageException {
+		checkAccess(pc);
+		SamplingProfiler profiler = SamplingProfiler.getInstance();
+		if (running) profiler.start(CFMLEngineImpl.toCFMLEngineImpl(ConfigWebUtil.getEngine(pc.getConfig())));
+		else profiler.stop();
+		return getData(pc, profiler, format, reset);
+	}
+
+	private static Object getData(PageContext pc, SamplingProfiler profiler, String format, boolean reset) throws PageException {
+		Object result;
+		format = StringUtil.isEmpty(format, true) ? "struct" : format.trim().toLowerCase();
+		if ("struct".equals(format)) result = profiler.toStruct();
+		else if ("collapsed".equals(format)) result = profiler.toCollapsed();
+		else if ("json".equals(format)) {
+			Struct sct = profiler.toStruct();
+			try {
+				result = new JSONConverter(true, CharsetUtil.UTF8, JSONDateFormat.PATTERN_CF, true).serialize(pc, sct, SerializationSettings.SERIALIZE_AS_ROW);
+			}
+			catch (ConverterException e) {
+				throw Caster.toPageException(e);
+			}
+		}
+		else throw new FunctionException(pc, "GetProfilerData", 1, "format", "invalid value [" + format + "], valid values are [struct,json,collapsed]");
+
+		if (reset) profiler.reset();
+		return result;
+	}
+
+	/**
+	 * the collected stacks expose the templates and the load of all web contexts, so the data is only
+	 * available to the Lucee administrator (web and server context)
+	 */
+	private static void checkAccess(PageContext pc) throws SecurityException {
+		String virtual = null;
+		try {
+			virtual = pc.getBasePageSource().getMapping().getVirtualLowerCase();
+		}
+		catch (Throwable t) {
+			ExceptionUtil.rethrowIfNecessary(t);
+		}
+		if (!"/lucee".equals(virtual) && !"/lucee-server".equals(virtual))
+			throw new SecurityException("access is prohibited", "the function getProfilerData can only be used within the Lucee administrator");
+	}
+}
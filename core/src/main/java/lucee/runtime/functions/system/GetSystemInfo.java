@@ -20,6 +20,7 @@ package lucee.runtime.functions.system;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
+import java.util.Map;
 
 import javax.management.Attribute;
 import javax.management.AttributeList;
@@ -28,10 +29,18 @@ import javax.management.ObjectName;
 
 import lucee.runtime.CFMLFactoryImpl;
 import lucee.runtime.PageContext;
+import lucee.runtime.component.ComponentStats;
+import lucee.runtime.concurrency.AsyncExecutor;
 import lucee.runtime.config.ConfigWebPro;
 import lucee.runtime.config.DatasourceConnPool;
+import lucee.runtime.db.HSQLDBHandler;
+import lucee.runtime.db.QoQPlanCache;
+import lucee.runtime.engine.ThreadQueueImpl;
 import lucee.runtime.exp.PageException;
 import lucee.runtime.ext.function.Function;
+import lucee.runtime.net.smtp.SMTPConnectionPool;
+import lucee.runtime.net.smtp.SMTPConnectionPool.ServerStats;
+import lucee.runtime.regex.PatternCache;
 import lucee.runtime.type.Struct;
 import lucee.runtime.type.StructImpl;
 import lucee.runtime.type.scope.ScopeContext;
@@ -51,6 +60,20 @@ public final class GetSystemInfo implements Function {
 		sct.put("activeRequests", factory.getActiveRequests());
 		sct.put("activeThreads", factory.getActiveThreads());
 		sct.put("queueRequests", config.getThreadQueue().size());
+		if (config.getThreadQueue() instanceof ThreadQueueImpl) {
+			ThreadQueueImpl tq = (ThreadQueueImpl) config.getThreadQueue();
+			sct.put("queueActive", tq.getActiveCount());
+			sct.put("queueTimeouts", tq.getTimeoutCount());
+			sct.put("queueBypassed", tq.getBypassCount());
+			// number of admitted requests by wait time in ms (upper bound of the bucket)
+			long[] bounds = tq.getWaitTimeBuckets();
+			long[] counts = tq.getWaitTimeHistogram();
+			Struct hist = new StructImpl(Struct.TYPE_LINKED);
+			for (int i = 0; i < counts.length; i++) {
+				hist.setEL(i < bounds.length ? Long.toString(bounds[i]) : "more", counts[i]);
+			}
+			sct.put("queueWaitTime", hist);
+		}
 
 		// Datasource connections
 		{
@@ -70,6 +93,67 @@ public final class GetSystemInfo implements Function {
 		sct.put("tasksOpen", config.getSpoolerEngine().getOpenTaskCount());
 		sct.put("tasksClosed", config.getSpoolerEngine().getClosedTaskCount());
 
+		// async (runAsync)
+		{
+			AsyncExecutor ae = AsyncExecutor.getInstance();
+			sct.put("asyncActive", ae.getActiveCount());
+			sct.put("asyncQueued", ae.getQueueSize());
+			sct.put("asyncCompleted", ae.getCompletedCount());
+			sct.put("asyncRejected", ae.getRejectedCount());
+			sct.put("asyncNested", ae.getNestedCount());
+		}
+
+		// mail
+		{
+			sct.put("mailConnectionsIdle", SMTPConnectionPool.getIdleCount());
+			sct.put("mailConnectionsCreated", SMTPConnectionPool.getCreatedCount());
+			sct.put("mailConnectionsReused", SMTPConnectionPool.getReusedCount());
+			sct.put("mailConnectionsDropped", SMTPConnectionPool.getDroppedCount());
+			Struct servers = new StructImpl();
+			Struct server;
+			for (Map.Entry<String, ServerStats> e: SMTPConnectionPool.getServerStats().entrySet()) {
+				server = new StructImpl();
+				server.setEL("sent", e.getValue().getSentCount());
+				server.setEL("failed", e.getValue().getFailedCount());
+				server.setEL("consecutiveFailures", e.getValue().getConsecutiveFailures());
+				server.setEL("averageTime", e.getValue().getAverageTime() / 1000000L);
+				server.setEL("maxTime", e.getValue().getMaxTime() / 1000000L);
+				servers.setEL(e.getKey(), server);
+			}
+			sct.put("mailServers", servers);
+		}
+
+		// query of queries
+		{
+			QoQPlanCache qpc = HSQLDBHandler.getPlanCache();
+			sct.put("qoqPlanCacheSize", qpc.size());
+			sct.put("qoqPlanCacheHits", qpc.getHitCount());
+			sct.put("qoqPlanCacheMisses", qpc.getMissCount());
+			sct.put("qoqParseCacheHits", qpc.getParseHitCount());
+			sct.put("qoqParseCacheMisses", qpc.getParseMissCount());
+		}
+
+		// regex
+		{
+			PatternCache rpc = PatternCache.getInstance();
+			sct.put("regexCacheSize", rpc.size());
+			sct.put("regexCachePinned", rpc.getPinnedCount());
+			sct.put("regexCacheHits", rpc.getHitCount());
+			sct.put("regexCacheMisses", rpc.getMissCount());
+			sct.put("regexCacheEvictions", rpc.getEvictionCount());
+		}
+
+		// components
+		{
+			long created = ComponentStats.getCreatedCount();
+			sct.put("componentsCreated", created);
+			sct.put("componentsExtended", ComponentStats.getExtendedCount());
+			// average time in microseconds to create a component instance
+			sct.put("componentsCreateTime", created == 0 ? 0 : ComponentStats.getCreatedTime() / created / 1000L);
+			sct.put("componentUDFsShared", ComponentStats.getUDFsShared());
+			sct.put("componentUDFsCopied", ComponentStats.getUDFsCopied());
+		}
+
 		// scopes
 		sct.put("sessionCount", sc.getSessionCount());
 		sct.put("clientCount", sc.getClientCount());
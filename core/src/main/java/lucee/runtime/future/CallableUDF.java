@@ -49,8 +49,9 @@ public class CallableUDF implements Callable<Object> {
 
 	@Override
 	public Object call() throws Exception {
-		PageContext pc = null;
-		ThreadLocalPageContext.register(pc);
+		// a nested task can be executed by a thread that is already executing a task (caller runs)
+		PageContext previous = ThreadLocalPageContext.get();
+		PageContext pc;
 
 		DevNullOutputStream os = DevNullOutputStream.DEV_NULL_OUTPUT_STREAM;
 		pc = ThreadUtil.createPageContext(cw, os, serverName, requestURI, queryString, SerializableCookie.toCookies(cookies), headers, null, parameters, attributes, true, -1);
@@ -60,7 +61,9 @@ public class CallableUDF implements Callable<Object> {
 			return udf.call(pc, arg == Future.ARG_NULL ? new Object[] {} : new Object[] { arg }, true);
 		}
 		finally {
+			// also removes the PageContext from the thread
 			pc.getConfig().getFactory().releasePageContext(pc);
+			if (previous != null) ThreadLocalPageContext.register(previous);
 		}
 
 	}
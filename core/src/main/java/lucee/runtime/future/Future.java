@@ -1,10 +1,9 @@
 package lucee.runtime.future;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import lucee.runtime.PageContext;
+import lucee.runtime.concurrency.AsyncExecutor;
 import lucee.runtime.dump.DumpData;
 import lucee.runtime.dump.DumpProperties;
 import lucee.runtime.dump.DumpTable;
@@ -53,16 +52,14 @@ public class Future implements Objects {
 	}
 
 	public static Future _then(PageContext pc, UDF udf, long timeout) throws PageException {
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		return new Future(executor.submit(new CallableUDF(pc, udf, ARG_NULL)), timeout);
+		return new Future(AsyncExecutor.getInstance().submit(new CallableUDF(pc, udf, ARG_NULL)), timeout);
 	}
 
 	public Future then(PageContext pc, UDF udf, long timeout) throws PageException {
 		if (this.hasError) return this;
 		try {
 			Object arg = get(pc, -1);
-			ExecutorService executor = Executors.newSingleThreadExecutor();
-			return new Future(executor.submit(new CallableUDF(pc, udf, arg)), timeout);
+			return new Future(AsyncExecutor.getInstance().submit(new CallableUDF(pc, udf, arg)), timeout);
 		}
 		catch (Exception e) {
 			return handleExecutionError(pc, e);
@@ -106,8 +103,12 @@ public class Future implements Objects {
 	}
 
 	private Future executeErrorHandler(PageContext pc, UDF udf, long timeout, Exception e) {
-		ExecutorService executor = Executors.newSingleThreadExecutor();
-		return new Future(executor.submit(new CallableUDF(pc, udf, new CatchBlockImpl(Caster.toPageException(e)))), timeout);
+		try {
+			return new Future(AsyncExecutor.getInstance().submit(new CallableUDF(pc, udf, new CatchBlockImpl(Caster.toPageException(e)))), timeout);
+		}
+		catch (PageException pe) {
+			throw new PageRuntimeException(pe);
+		}
 	}
 
 	public boolean cancel() {
@@ -58,13 +58,13 @@ import lucee.commons.net.URLDecoder;
 import lucee.commons.net.URLEncoder;
 import lucee.runtime.PageContext;
 import lucee.runtime.config.Config;
+import lucee.runtime.converter.JSONParser;
 import lucee.runtime.converter.JavaConverter;
 import lucee.runtime.converter.WDDXConverter;
 import lucee.runtime.engine.ThreadLocalPageContext;
 import lucee.runtime.exp.PageException;
 import lucee.runtime.functions.decision.IsLocalHost;
 import lucee.runtime.interpreter.CFMLExpressionInterpreter;
-import lucee.runtime.interpreter.JSONExpressionInterpreter;
 import lucee.runtime.listener.ApplicationContext;
 import lucee.runtime.op.Caster;
 import lucee.runtime.security.ScriptProtect;
@@ -557,7 +557,7 @@ public final class ReqRspUtil {
 		switch (format) {
 		case UDF.RETURN_FORMAT_JSON:
 			try {
-				return new JSONExpressionInterpreter().interpret(pc, toString(data, charset));
+				return JSONParser.parse(pc, data, charset);
 			}
 			catch (PageException pe) {
 			}
@@ -473,7 +473,7 @@ public final class SMTPClient implements Serializable {
 			props.remove("password");
 		}
 
-		SessionAndTransport sat = newConnection ? new SessionAndTransport(hash(props), props, auth, lifeTimesan, idleTimespan)
+		SessionAndTransport sat = newConnection && !SMTPConnectionPool.isBatch() ? new SessionAndTransport(hash(props), props, auth, lifeTimesan, idleTimespan)
 				: SMTPConnectionPool.getSessionAndTransport(props, hash(props), auth, lifeTimesan, idleTimespan);
 		
 		if (debug) sat.session.setDebug(true); // enable logging mail debug output to console
@@ -769,6 +769,23 @@ public final class SMTPClient implements Serializable {
 		throw new ApplicationException("cannot convert [" + Caster.toTypeName(listener) + "] to a listener");
 	}
 
+	/**
+	 * returns a key for the server this mail is sent with first, mails with the same key can be sent
+	 * over the same connection, returns null when the mail should not be part of a batch
+	 * 
+	 * @param servers servers defined in the configuration
+	 * @return key or null
+	 */
+	public String getBatchKey(Server[] servers) {
+		if (proxyData != null) return null;
+		if (host != null && host.length > 0) {
+			return host[0] + ":" + (port > 0 ? port : Server.DEFAULT_PORT) + ":" + (StringUtil.isEmpty(username) ? "" : username) + ":" + ssl + ":" + tls;
+		}
+		if (ArrayUtil.isEmpty(servers)) return null;
+		Server server = servers[0];
+		return server.getHostName() + ":" + server.getPort() + ":" + (server.hasAuthentication() ? server.getUsername() : "") + ":" + ssl + ":" + tls;
+	}
+
 	public void _send(lucee.runtime.config.ConfigWeb config, Server[] servers) throws MailException {
 		long start = System.nanoTime();
 		long _timeout = getTimeout(config);
@@ -846,8 +863,13 @@ public final class SMTPClient implements Serializable {
 					try {
 						SerializableObject lock = new SerializableObject();
 						SMTPSender sender = new SMTPSender(lock, msgSess, server.getHostName(), server.getPort(), _username, _password, recyleConnection);
-						sender.start();
-						SystemUtil.wait(lock, _timeout);
+						// a batch is executed by a spooler worker, there is no need for a extra thread, the socket timeouts
+						// of the session apply
+						if (SMTPConnectionPool.isBatch()) sender.run();
+						else {
+							sender.start();
+							SystemUtil.wait(lock, _timeout);
+						}
 
 						if (!sender.isSent()) {
 							Throwable t = sender.getThrowable();
@@ -896,6 +918,7 @@ public final class SMTPClient implements Serializable {
 	}
 
 	private void listener(ConfigWeb config, Server server, Log log, Exception e, long exe) {
+		SMTPConnectionPool.record(server.getHostName(), server.getPort(), e == null, exe);
 		if (e == null) log.info("mail", "mail sent (subject:" + subject + "; server:" + server.getHostName() + "; port:" + server.getPort() + "; from:" + toString(from) + "; to:"
 				+ toString(tos) + "; cc:" + toString(ccs) + "; bcc:" + toString(bccs) + "; ft:" + toString(fts) + "; rt:" + toString(rts) + ")");
 		else log.log(Log.LEVEL_ERROR, "mail", e);
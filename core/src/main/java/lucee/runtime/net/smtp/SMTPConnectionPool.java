@@ -19,12 +19,16 @@
 package lucee.runtime.net.smtp;
 
 import java.util.Date;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.mail.Authenticator;
 import javax.mail.MessagingException;
@@ -32,28 +36,62 @@ import javax.mail.NoSuchProviderException;
 import javax.mail.Session;
 import javax.mail.Transport;
 
+import lucee.commons.io.SystemUtil;
 import lucee.commons.lang.ExceptionUtil;
+import lucee.runtime.op.Caster;
 
+/**
+ * pool of SMTP connections, the connections are pooled by the connection properties (server,
+ * credentials ...).
+ *
+ * The pool can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.mail.pool.maxidle: max number of idle connections kept per server (default 16)</li>
+ * <li>lucee.mail.pool.validate: idle time in milliseconds after which a connection is checked
+ * (NOOP) before it is used again (default 10000)</li>
+ * </ul>
+ *
+ * A thread can start a batch ({@link #startBatch()}), until the batch ends all mails sent by that
+ * thread to the same server use the same connection.
+ */
 public class SMTPConnectionPool {
 
-	private static Map<String, Stack<SessionAndTransport>> sessions = new HashMap<String, Stack<SessionAndTransport>>();
+	private static final int MAX_IDLE;
+	private static final long VALIDATE_AFTER;
+	static {
+		int maxIdle = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.mail.pool.maxidle", null), 0);
+		MAX_IDLE = maxIdle > 0 ? maxIdle : 16;
+		long validate = Caster.toLongValue(SystemUtil.getSystemPropOrEnvVar("lucee.mail.pool.validate", null), -1L);
+		VALIDATE_AFTER = validate >= 0 ? validate : 10000L;
+	}
 
-	public static SessionAndTransport getSessionAndTransport(Properties props, String key, Authenticator auth, long lifeTimespan, long idleTimespan) throws MessagingException {
+	private static final Map<String, Deque<SessionAndTransport>> sessions = new ConcurrentHashMap<String, Deque<SessionAndTransport>>();
+	private static final Map<String, ServerStats> stats = new ConcurrentHashMap<String, ServerStats>();
+	private static final ThreadLocal<Map<String, SessionAndTransport>> batch = new ThreadLocal<Map<String, SessionAndTransport>>();
 
-		// Session
-		SessionAndTransport sat = null;
-		Stack<SessionAndTransport> satStack = getSATStack(key);
-		sat = pop(satStack);
+	private static final AtomicLong created = new AtomicLong();
+	private static final AtomicLong reused = new AtomicLong();
+	private static final AtomicLong dropped = new AtomicLong();
 
-		// when sat still valid return it
-		if (sat != null) {
-			if (isValid(sat, lifeTimespan, idleTimespan)) {
-				return sat.touch();
+	public static SessionAndTransport getSessionAndTransport(Properties props, String key, Authenticator auth, long lifeTimespan, long idleTimespan) throws MessagingException {
+		// connection already used by the current batch
+		Map<String, SessionAndTransport> b = batch.get();
+		SessionAndTransport sat = b == null ? null : b.get(key);
+		if (sat != null) return sat.touch();
+
+		Deque<SessionAndTransport> deque = getDeque(key);
+		// most recently used first, so the connections at the end of the deque can expire
+		while ((sat = deque.pollFirst()) != null) {
+			if (isValid(sat, lifeTimespan, idleTimespan) && isHealthy(sat)) {
+				reused.incrementAndGet();
+				sat.touch();
+				break;
 			}
-			disconnect(sat.transport);
+			drop(sat);
 		}
-
-		return new SessionAndTransport(key, props, auth, lifeTimespan, idleTimespan);
+		if (sat == null) sat = new SessionAndTransport(key, props, auth, lifeTimespan, idleTimespan);
+		if (b != null) b.put(key, sat);
+		return sat;
 	}
 
 	private static boolean isValid(SessionAndTransport sat, long lifeTimespan, long idleTimespan) {
@@ -61,57 +99,126 @@ public class SMTPConnectionPool {
 		return (idleTimespan <= 0 || sat.lastAccess + idleTimespan > System.currentTimeMillis()) && (lifeTimespan <= 0 || sat.created + lifeTimespan > System.currentTimeMillis());
 	}
 
+	/**
+	 * a connection that was idle for a while is checked before it is used, for SMTP isConnected()
+	 * sends a NOOP and closes the connection when the server does not answer
+	 */
+	private static boolean isHealthy(SessionAndTransport sat) {
+		if (sat.lastAccess + VALIDATE_AFTER > System.currentTimeMillis()) return true;
+		try {
+			return sat.transport.isConnected();
+		}
+		catch (Throwable t) {
+			ExceptionUtil.rethrowIfNecessary(t);
+			return false;
+		}
+	}
+
 	public static void releaseSessionAndTransport(SessionAndTransport sat) {
-		getSATStack(sat.key).add(sat.touch());
+		// the batch keeps the connection until it ends
+		Map<String, SessionAndTransport> b = batch.get();
+		if (b != null && b.get(sat.key) == sat) return;
+
+		Deque<SessionAndTransport> deque = getDeque(sat.key);
+		if (deque.size() >= MAX_IDLE) {
+			drop(sat);
+			return;
+		}
+		deque.offerFirst(sat.touch());
+	}
+
+	/**
+	 * starts a batch for the current thread, all mails sent by the current thread use the same
+	 * connection per server until {@link #endBatch()} is called
+	 */
+	public static void startBatch() {
+		if (batch.get() == null) batch.set(new HashMap<String, SessionAndTransport>());
+	}
+
+	/**
+	 * ends the batch of the current thread and returns the connections used to the pool
+	 */
+	public static void endBatch() {
+		Map<String, SessionAndTransport> b = batch.get();
+		if (b == null) return;
+		batch.remove();
+		for (SessionAndTransport sat: b.values()) {
+			if (sat.recycle) releaseSessionAndTransport(sat);
+			else drop(sat);
+		}
+	}
+
+	public static boolean isBatch() {
+		return batch.get() != null;
+	}
+
+	/**
+	 * called after a mail was sent as part of a batch
+	 * 
+	 * @param sat connection used
+	 * @param recycle can the connection be returned to the pool when the batch ends
+	 * @param broken the connection failed and should not be used anymore
+	 */
+	static void keep(SessionAndTransport sat, boolean recycle, boolean broken) {
+		Map<String, SessionAndTransport> b = batch.get();
+		if (b == null) return;
+		if (broken) {
+			if (b.get(sat.key) == sat) b.remove(sat.key);
+			drop(sat);
+			return;
+		}
+		sat.recycle = recycle;
+		b.put(sat.key, sat);
 	}
 
 	public static String listSessions() {
-		Iterator<Entry<String, Stack<SessionAndTransport>>> it = sessions.entrySet().iterator();
-		Entry<String, Stack<SessionAndTransport>> entry;
-		Stack<SessionAndTransport> stack;
+		Iterator<Entry<String, Deque<SessionAndTransport>>> it = sessions.entrySet().iterator();
+		Entry<String, Deque<SessionAndTransport>> entry;
+		Deque<SessionAndTransport> deque;
 		StringBuilder sb = new StringBuilder();
 		while (it.hasNext()) {
 			entry = it.next();
 			sb.append(entry.getKey()).append('\n');
-			stack = entry.getValue();
-			if (stack.isEmpty()) continue;
-			listSessions(sb, stack);
+			deque = entry.getValue();
+			if (deque.isEmpty()) continue;
+			listSessions(sb, deque);
 		}
 		return sb.toString();
 	}
 
-	private static void listSessions(StringBuilder sb, Stack<SessionAndTransport> stack) {
-		Iterator<SessionAndTransport> it = stack.iterator();
+	private static void listSessions(StringBuilder sb, Deque<SessionAndTransport> deque) {
+		Iterator<SessionAndTransport> it = deque.iterator();
 		while (it.hasNext()) {
 			SessionAndTransport sat = it.next();
 			sb.append("- " + sat.key + ":" + new Date(sat.lastAccess)).append('\n');
 		}
 	}
 
+	/**
+	 * closes the idle connections that are expired or no longer healthy
+	 */
 	public static void closeSessions() {
-		Iterator<Entry<String, Stack<SessionAndTransport>>> it = sessions.entrySet().iterator();
-		Entry<String, Stack<SessionAndTransport>> entry;
-		Stack<SessionAndTransport> oldStack;
-		Stack<SessionAndTransport> newStack;
+		Iterator<Deque<SessionAndTransport>> it = sessions.values().iterator();
+		Deque<SessionAndTransport> deque;
+		SessionAndTransport sat;
+		int size;
 		while (it.hasNext()) {
-			entry = it.next();
-			oldStack = entry.getValue();
-			if (oldStack.isEmpty()) continue;
-			newStack = new Stack<SMTPConnectionPool.SessionAndTransport>();
-			entry.setValue(newStack);
-			closeSessions(oldStack, newStack);
+			deque = it.next();
+			// every connection that is idle right now is checked once, connections released in the meantime
+			// are added at the head and not touched
+			size = deque.size();
+			for (int i = 0; i < size; i++) {
+				sat = deque.pollLast();
+				if (sat == null) break;
+				if (isValid(sat, sat.lifeTimespan, sat.idleTimespan) && isHealthy(sat)) deque.offerLast(sat);
+				else drop(sat);
+			}
 		}
 	}
 
-	private static void closeSessions(Stack<SessionAndTransport> oldStack, Stack<SessionAndTransport> newStack) {
-		SessionAndTransport sat;
-		while ((sat = pop(oldStack)) != null) {
-			if (!isValid(sat, sat.lifeTimespan, sat.idleTimespan)) {
-
-				disconnect(sat.transport);
-			}
-			else newStack.add(sat);
-		}
+	private static void drop(SessionAndTransport sat) {
+		dropped.incrementAndGet();
+		disconnect(sat.transport);
 	}
 
 	static void disconnect(Transport transport) {
@@ -124,16 +231,14 @@ public class SMTPConnectionPool {
 		}
 	}
 
-	private static Stack<SessionAndTransport> getSATStack(String key) {
-		Stack<SessionAndTransport> stack;
-		synchronized (sessions) {
-			stack = sessions.get(key);
-			if (stack == null) {
-				stack = new Stack<SessionAndTransport>();
-				sessions.put(key, stack);
-			}
+	private static Deque<SessionAndTransport> getDeque(String key) {
+		Deque<SessionAndTransport> deque = sessions.get(key);
+		if (deque == null) {
+			deque = new ConcurrentLinkedDeque<SessionAndTransport>();
+			Deque<SessionAndTransport> existing = sessions.putIfAbsent(key, deque);
+			if (existing != null) deque = existing;
 		}
-		return stack;
+		return deque;
 	}
 
 	private static Session createSession(String key, Properties props, Authenticator auth) {
@@ -141,14 +246,62 @@ public class SMTPConnectionPool {
 		return Session.getInstance(props);
 	}
 
-	private static SessionAndTransport pop(Stack<SessionAndTransport> satStack) {
-		try {
-			return satStack.pop();
+	/**
+	 * @return number of idle connections in the pool
+	 */
+	public static int getIdleCount() {
+		int count = 0;
+		for (Deque<SessionAndTransport> deque: sessions.values()) {
+			count += deque.size();
 		}
-		catch (Throwable t) {
-			ExceptionUtil.rethrowIfNecessary(t);
+		return count;
+	}
+
+	/**
+	 * @return number of connections created since the start of the engine
+	 */
+	public static long getCreatedCount() {
+		return created.get();
+	}
+
+	/**
+	 * @return number of times a idle connection was taken from the pool
+	 */
+	public static long getReusedCount() {
+		return reused.get();
+	}
+
+	/**
+	 * @return number of connections closed because they were expired, broken or exceeded the max idle
+	 */
+	public static long getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * records the outcome of sending a mail to the given server
+	 * 
+	 * @param host server
+	 * @param port port of the server
+	 * @param success was the mail sent
+	 * @param nanos time needed in nanoseconds
+	 */
+	public static void record(String host, int port, boolean success, long nanos) {
+		String key = host + ":" + port;
+		ServerStats s = stats.get(key);
+		if (s == null) {
+			s = new ServerStats();
+			ServerStats existing = stats.putIfAbsent(key, s);
+			if (existing != null) s = existing;
 		}
-		return null;
+		s.record(success, nanos);
+	}
+
+	/**
+	 * @return statistics per server ("host:port")
+	 */
+	public static Map<String, ServerStats> getServerStats() {
+		return new HashMap<String, ServerStats>(stats);
 	}
 
 	public static class SessionAndTransport {
@@ -159,6 +312,7 @@ public class SMTPConnectionPool {
 		public final long created;
 		public final long lifeTimespan;
 		public final long idleTimespan;
+		private boolean recycle = true;
 
 		SessionAndTransport(String key, Properties props, Authenticator auth, long lifeTimespan, long idleTimespan) throws NoSuchProviderException {
 			this.key = key;
@@ -167,6 +321,7 @@ public class SMTPConnectionPool {
 			this.created = System.currentTimeMillis();
 			this.lifeTimespan = lifeTimespan;
 			this.idleTimespan = idleTimespan;
+			SMTPConnectionPool.created.incrementAndGet();
 			touch();
 		}
 
@@ -176,4 +331,62 @@ public class SMTPConnectionPool {
 		}
 	}
 
-}
\ No newline at end of file
+	public static class ServerStats {
+		private final AtomicLong sent = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong totalNanos = new AtomicLong();
+		private final AtomicLong maxNanos = new AtomicLong();
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+		private volatile long lastFailure;
+
+		private void record(boolean success, long nanos) {
+			if (success) {
+				sent.incrementAndGet();
+				consecutiveFailures.set(0);
+			}
+			else {
+				failed.incrementAndGet();
+				consecutiveFailures.incrementAndGet();
+				lastFailure = System.currentTimeMillis();
+			}
+			totalNanos.addAndGet(nanos);
+			long max;
+			while ((max = maxNanos.get()) < nanos && !maxNanos.compareAndSet(max, nanos)) {
+			}
+		}
+
+		public long getSentCount() {
+			return sent.get();
+		}
+
+		public long getFailedCount() {
+			return failed.get();
+		}
+
+		/**
+		 * @return average time in nanoseconds needed to send a mail (successful or not)
+		 */
+		public long getAverageTime() {
+			long count = sent.get() + failed.get();
+			return count == 0 ? 0 : totalNanos.get() / count;
+		}
+
+		/**
+		 * @return max time in nanoseconds needed to send a mail
+		 */
+		public long getMaxTime() {
+			return maxNanos.get();
+		}
+
+		public int getConsecutiveFailures() {
+			return consecutiveFailures.get();
+		}
+
+		/**
+		 * @return time of the last failure or 0
+		 */
+		public long getLastFailure() {
+			return lastFailure;
+		}
+	}
+}
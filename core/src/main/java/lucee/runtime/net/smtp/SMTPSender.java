@@ -75,7 +75,10 @@ public final class SMTPSender extends Thread {
 		}
 		finally {
 			try {
-				if (recyleConnection) SMTPConnectionPool.releaseSessionAndTransport(mmas.session);
+				// within a batch the connection is kept for the next mail, unless it is broken
+				if (SMTPConnectionPool.isBatch())
+					SMTPConnectionPool.keep(mmas.session, recyleConnection, throwable != null && !(throwable instanceof SendFailedException));
+				else if (recyleConnection) SMTPConnectionPool.releaseSessionAndTransport(mmas.session);
 				else SMTPConnectionPool.disconnect(mmas.session.transport);
 
 			}
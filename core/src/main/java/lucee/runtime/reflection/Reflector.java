@@ -64,6 +64,7 @@ import lucee.runtime.op.Duplicator;
 import lucee.runtime.op.OpUtil;
 import lucee.runtime.reflection.pairs.ConstructorInstance;
 import lucee.runtime.reflection.pairs.MethodInstance;
+import lucee.runtime.reflection.storage.CallSiteStorage;
 import lucee.runtime.reflection.storage.SoftMethodStorage;
 import lucee.runtime.reflection.storage.WeakConstructorStorage;
 import lucee.runtime.reflection.storage.WeakFieldStorage;
@@ -95,6 +96,7 @@ public final class Reflector {
 	private static WeakConstructorStorage cStorage = new WeakConstructorStorage();
 	private static WeakFieldStorage fStorage = new WeakFieldStorage();
 	private static SoftMethodStorage mStorage = new SoftMethodStorage();
+	private static CallSiteStorage csStorage = new CallSiteStorage();
 
 	/**
 	 * check if Class is instanceof another Class
@@ -700,10 +702,15 @@ public final class Reflector {
 	public static MethodInstance getMethodInstanceEL(Object objMaybeNull, Class clazz, final Collection.Key methodName, Object[] args) {
 		checkAccessibility(objMaybeNull, clazz, methodName);
 		args = cleanArgs(args);
+
+		// fast path, the same method was called with the same argument types before
+		Class[] clazzArgs = getClasses(args);
+		CallSiteStorage.Target target = csStorage.get(clazz, methodName, clazzArgs);
+		if (target != null) return new MethodInstance(target.getMethod(), target.getHandle(), args);
+
 		Method[] methods = mStorage.getMethods(clazz, methodName, args.length);// getDeclaredMethods(clazz);
 
 		if (methods != null) {
-			Class[] clazzArgs = getClasses(args);
 			// exact comparsion
 			// print.e("exact:" + methodName);
 			outer: for (int i = 0; i < methods.length; i++) {
@@ -712,7 +719,8 @@ public final class Reflector {
 					for (int y = 0; y < parameterTypes.length; y++) {
 						if (toReferenceClass(parameterTypes[y]) != clazzArgs[y]) continue outer;
 					}
-					return new MethodInstance(methods[i], args);
+					target = csStorage.put(clazz, methodName, clazzArgs, methods[i]);
+					return new MethodInstance(methods[i], target.getHandle(), args);
 				}
 			}
 			// like comparsion
@@ -724,7 +732,8 @@ public final class Reflector {
 					for (int y = 0; y < parameterTypes.length; y++) {
 						if (!like(clazzArgs[y], toReferenceClass(parameterTypes[y]))) continue outer;
 					}
-					return new MethodInstance(methods[i], args);
+					target = csStorage.put(clazz, methodName, clazzArgs, methods[i]);
+					return new MethodInstance(methods[i], target.getHandle(), args);
 				}
 			}
 
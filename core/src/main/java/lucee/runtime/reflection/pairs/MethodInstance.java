@@ -18,6 +18,7 @@
  **/
 package lucee.runtime.reflection.pairs;
 
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
@@ -28,6 +29,7 @@ public final class MethodInstance {
 
 	private Method method;
 	private Object[] args;
+	private MethodHandle handle;
 
 	/**
 	 * constructor of the class
@@ -41,6 +43,21 @@ public final class MethodInstance {
 		method.setAccessible(true);
 	}
 
+	/**
+	 * constructor of the class
+	 * 
+	 * @param method
+	 * @param handle handle with the signature (Object instance, Object[] args)Object used to invoke the
+	 *            method, if null reflection is used
+	 * @param args
+	 */
+	public MethodInstance(Method method, MethodHandle handle, Object[] args) {
+		this.method = method;
+		this.handle = handle;
+		this.args = args;
+		if (handle == null) method.setAccessible(true);
+	}
+
 	/**
 	 * Invokes the method
 	 * 
@@ -53,6 +70,15 @@ public final class MethodInstance {
 	 * @throws InvocationTargetException
 	 */
 	public Object invoke(Object o) throws IllegalAccessException, InvocationTargetException {
+		if (handle != null) {
+			try {
+				return handle.invokeExact(o, args);
+			}
+			catch (Throwable t) {
+				// same as reflection, everything thrown by the method is wrapped
+				throw new InvocationTargetException(t);
+			}
+		}
 		return method.invoke(o, args);
 	}
 
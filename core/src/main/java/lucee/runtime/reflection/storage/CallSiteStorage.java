@@ -0,0 +1,152 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.reflection.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lucee.runtime.type.Collection;
+
+/**
+ * remembers which method was selected for a call of a method name with a specific combination of
+ * argument types on a class, so the next call with the same argument types does not have to match
+ * the arguments against all methods with that name again.
+ *
+ * Only methods selected without converting the arguments are stored, because only then the
+ * selection depends on the argument types alone. The storage is held per class with a
+ * {@link ClassValue}, so it does not prevent classes from being unloaded.
+ */
+public final class CallSiteStorage {
+
+	// max number of call sites stored for a single class, protects against classes called with an
+	// unlimited number of argument type combinations
+	private static final int MAX_PER_CLASS = 512;
+
+	private static final MethodType GENERIC = MethodType.methodType(Object.class, Object.class, Object[].class);
+
+	private final ClassValue<Map<CallSite, Target>> sites = new ClassValue<Map<CallSite, Target>>() {
+		@Override
+		protected Map<CallSite, Target> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<CallSite, Target>();
+		}
+	};
+
+	/**
+	 * returns the method target stored for the given call or null if there is none
+	 *
+	 * @param clazz class the method is called on
+	 * @param methodName name of the method
+	 * @param argTypes types of the arguments
+	 * @return stored target or null
+	 */
+	public Target get(Class clazz, Collection.Key methodName, Class[] argTypes) {
+		return sites.get(clazz).get(new CallSite(methodName, argTypes));
+	}
+
+	/**
+	 * stores the method selected for the given call
+	 *
+	 * @param clazz class the method is called on
+	 * @param methodName name of the method
+	 * @param argTypes types of the arguments
+	 * @param method selected method
+	 * @return the target stored
+	 */
+	public Target put(Class clazz, Collection.Key methodName, Class[] argTypes, Method method) {
+		Target target = new Target(method);
+		Map<CallSite, Target> map = sites.get(clazz);
+		if (map.size() < MAX_PER_CLASS) map.put(new CallSite(methodName, argTypes), target);
+		return target;
+	}
+
+	private static final class CallSite {
+		private final Collection.Key methodName;
+		private final Class[] argTypes;
+		private final int hash;
+
+		private CallSite(Collection.Key methodName, Class[] argTypes) {
+			this.methodName = methodName;
+			this.argTypes = argTypes;
+			this.hash = methodName.hashCode() * 31 + Arrays.hashCode(argTypes);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) return true;
+			if (!(obj instanceof CallSite)) return false;
+			CallSite other = (CallSite) obj;
+			if (hash != other.hash || argTypes.length != other.argTypes.length) return false;
+			for (int i = 0; i < argTypes.length; i++) {
+				if (argTypes[i] != other.argTypes[i]) return false;
+			}
+			return methodName.equals(other.methodName);
+		}
+	}
+
+	/**
+	 * a selected method together with a MethodHandle to invoke it
+	 */
+	public static final class Target {
+		private final Method method;
+		private volatile MethodHandle handle;
+		private volatile boolean noHandle;
+
+		private Target(Method method) {
+			this.method = method;
+		}
+
+		public Method getMethod() {
+			return method;
+		}
+
+		/**
+		 * returns a handle with the signature (Object instance, Object[] args)Object invoking the method,
+		 * or null if no handle can be created for the method (in that case reflection has to be used)
+		 *
+		 * @return handle or null
+		 */
+		public MethodHandle getHandle() {
+			MethodHandle mh = handle;
+			if (mh != null || noHandle) return mh;
+			try {
+				method.setAccessible(true);
+				mh = MethodHandles.lookup().unreflect(method).asFixedArity();
+				// static methods get a dummy instance argument, so all handles have the same signature
+				if (Modifier.isStatic(method.getModifiers())) mh = MethodHandles.dropArguments(mh, 0, Object.class);
+				mh = mh.asSpreader(Object[].class, method.getParameterTypes().length).asType(GENERIC);
+				handle = mh;
+			}
+			catch (Exception e) {
+				noHandle = true;
+			}
+			return mh;
+		}
+	}
+}
@@ -22,7 +22,7 @@ class JavaRegex implements Regex {
 	@Override
 	public boolean matches(String strPattern, String strInput) throws PageException {
 		try {
-			return strInput.matches(strPattern);
+			return toPattern(strPattern, true, false).matcher(strInput).matches();
 		}
 		catch (Exception e) {
 			throw Caster.toPageException(e);
@@ -32,7 +32,7 @@ class JavaRegex implements Regex {
 	@Override
 	public boolean matches(String strPattern, String strInput, boolean defaultValue) {
 		try {
-			return strInput.matches(strPattern);
+			return toPattern(strPattern, true, false).matcher(strInput).matches();
 		}
 		catch (Exception e) {
 			return defaultValue;
@@ -204,7 +204,15 @@ class JavaRegex implements Regex {
 		int flags = 0;
 		if (!caseSensitive) flags += Pattern.CASE_INSENSITIVE;
 		if (multiLine) flags += Pattern.MULTILINE;
-		return Pattern.compile(strPattern, flags);
+
+		PatternCache cache = PatternCache.getInstance();
+		String key = PatternCache.key(PatternCache.ENGINE_JAVA, flags, strPattern);
+		Pattern pattern = (Pattern) cache.get(key);
+		if (pattern == null) {
+			pattern = Pattern.compile(strPattern, flags);
+			cache.put(key, pattern);
+		}
+		return pattern;
 	}
 
 	@Override
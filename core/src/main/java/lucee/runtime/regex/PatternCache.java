@@ -0,0 +1,194 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ **/
+package lucee.runtime.regex;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import lucee.commons.io.SystemUtil;
+import lucee.runtime.op.Caster;
+
+/**
+ * engine wide, bounded (LRU) cache of compiled regular expressions, shared by all regex engines
+ * (perl and java). The key contains the engine, the compile flags and the pattern itself.
+ *
+ * Patterns used very often (see "lucee.regex.cache.pinhits") are moved to a second map that is read
+ * without locking and is never evicted, so they are compiled only once for the life time of the
+ * engine.
+ *
+ * The cache can be configured with the following system properties/environment variables:
+ * <ul>
+ * <li>lucee.regex.cache.size: max number of patterns kept in the LRU cache, 0 disables the
+ * cache</li>
+ * <li>lucee.regex.cache.pinhits: number of hits after which a pattern is pinned, 0 disables
+ * pinning</li>
+ * <li>lucee.regex.cache.pinmax: max number of pinned patterns</li>
+ * </ul>
+ */
+public final class PatternCache {
+
+	static final char ENGINE_PERL = 'p';
+	static final char ENGINE_JAVA = 'j';
+
+	private static volatile PatternCache instance;
+
+	private final int maxSize;
+	private final int pinHits;
+	private final int pinMax;
+	private final Map<String, Entry> lru;
+	private final Map<String, Object> pinned = new ConcurrentHashMap<String, Object>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maxSize max number of patterns in the LRU cache, 0 disables the cache
+	 * @param pinHits number of hits after which a pattern is pinned, 0 disables pinning
+	 * @param pinMax max number of pinned patterns
+	 */
+	public PatternCache(int maxSize, int pinHits, int pinMax) {
+		this.maxSize = maxSize < 0 ? 0 : maxSize;
+		this.pinHits = pinHits < 0 ? 0 : pinHits;
+		this.pinMax = pinMax < 0 ? 0 : pinMax;
+		this.lru = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 6018327307513209406L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				if (size() > PatternCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public static PatternCache getInstance() {
+		if (instance == null) {
+			synchronized (PatternCache.class) {
+				if (instance == null) {
+					instance = new PatternCache(Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.regex.cache.size", null), 5000),
+							Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.regex.cache.pinhits", null), 100),
+							Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.regex.cache.pinmax", null), 500));
+				}
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * creates the key for a pattern
+	 *
+	 * @param engine engine the pattern is compiled for
+	 * @param flags compile flags
+	 * @param pattern the pattern as string
+	 * @return key
+	 */
+	static String key(char engine, int flags, String pattern) {
+		return new StringBuilder(pattern.length() + 8).append(engine).append(flags).append(':').append(pattern).toString();
+	}
+
+	/**
+	 * returns the compiled pattern for the given key or null if the pattern is not in the cache
+	 *
+	 * @param key key created with {@link #key(char, int, String)}
+	 * @return compiled pattern or null
+	 */
+	public Object get(String key) {
+		if (maxSize == 0) return null;
+
+		// pinned patterns are read without locking
+		Object pattern = pinned.get(key);
+		if (pattern != null) {
+			hits.incrementAndGet();
+			return pattern;
+		}
+
+		Entry e;
+		synchronized (lru) {
+			e = lru.get(key);
+			if (e == null) {
+				misses.incrementAndGet();
+				return null;
+			}
+			if (pinHits > 0 && ++e.hits >= pinHits && pinned.size() < pinMax) {
+				lru.remove(key);
+				pinned.put(key, e.pattern);
+			}
+		}
+		hits.incrementAndGet();
+		return e.pattern;
+	}
+
+	public void put(String key, Object pattern) {
+		if (maxSize == 0) return;
+		synchronized (lru) {
+			lru.put(key, new Entry(pattern));
+		}
+	}
+
+	public void clear() {
+		synchronized (lru) {
+			lru.clear();
+		}
+		pinned.clear();
+	}
+
+	/**
+	 * @return number of patterns in the cache, including the pinned ones
+	 */
+	public int size() {
+		synchronized (lru) {
+			return lru.size() + pinned.size();
+		}
+	}
+
+	public int getPinnedCount() {
+		return pinned.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	private static final class Entry {
+		private final Object pattern;
+		private int hits;
+
+		private Entry(Object pattern) {
+			this.pattern = pattern;
+		}
+	}
+}
@@ -18,8 +18,6 @@
  **/
 package lucee.runtime.regex;
 
-import java.util.Map;
-
 import org.apache.oro.text.regex.MalformedPatternException;
 import org.apache.oro.text.regex.MatchResult;
 import org.apache.oro.text.regex.Pattern;
@@ -29,7 +27,6 @@ import org.apache.oro.text.regex.Perl5Matcher;
 import org.apache.oro.text.regex.Perl5Substitution;
 import org.apache.oro.text.regex.Util;
 
-import lucee.commons.collection.MapFactory;
 import lucee.runtime.exp.ExpressionException;
 import lucee.runtime.exp.PageException;
 import lucee.runtime.op.Constants;
@@ -43,8 +40,6 @@ import lucee.runtime.type.StructImpl;
  */
 final class Perl5Util {
 
-	private static Map<String, Pattern> patterns = MapFactory.<String, Pattern>getConcurrentMap();
-
 	/**
 	 * return index of the first occurence of the pattern in input text
 	 * 
@@ -200,7 +195,7 @@ final class Perl5Util {
 	}
 
 	private static boolean _matches(String strPattern, String strInput) throws MalformedPatternException {
-		Pattern pattern = new Perl5Compiler().compile(strPattern, Perl5Compiler.DEFAULT_MASK);
+		Pattern pattern = getPattern(strPattern, Perl5Compiler.DEFAULT_MASK);
 		PatternMatcherInput input = new PatternMatcherInput(strInput);
 		return new Perl5Matcher().matches(input, pattern);
 	}
@@ -225,10 +220,12 @@ final class Perl5Util {
 	}
 
 	private static Pattern getPattern(String strPattern, int type) throws MalformedPatternException {
-		Object o = patterns.get(strPattern + type);
+		PatternCache cache = PatternCache.getInstance();
+		String key = PatternCache.key(PatternCache.ENGINE_PERL, type, strPattern);
+		Object o = cache.get(key);
 		if (o == null) {
 			Pattern pattern = new Perl5Compiler().compile(strPattern, type);
-			patterns.put(strPattern + type, pattern);
+			cache.put(key, pattern);
 			return pattern;
 		}
 		return (Pattern) o;
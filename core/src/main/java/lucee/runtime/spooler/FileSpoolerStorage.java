@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.spooler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import lucee.commons.io.IOUtil;
+import lucee.commons.io.log.LogUtil;
+import lucee.commons.io.res.Resource;
+import lucee.commons.io.res.filter.ResourceNameFilter;
+import lucee.commons.io.res.util.ResourceUtil;
+import lucee.commons.lang.StringUtil;
+import lucee.runtime.engine.ThreadLocalPageContext;
+import lucee.runtime.type.util.ArrayUtil;
+
+/**
+ * stores every task as a serialized object in its own file, open tasks in the folder "open", closed
+ * tasks in the folder "closed"
+ */
+final class FileSpoolerStorage implements SpoolerStorage {
+
+	private static final TaskFileFilter FILTER = new TaskFileFilter();
+
+	private final Resource openDirectory;
+	private final Resource closedDirectory;
+	private long count = 0;
+
+	FileSpoolerStorage(Resource persisDirectory) {
+		closedDirectory = persisDirectory.getRealResource("closed");
+		openDirectory = persisDirectory.getRealResource("open");
+	}
+
+	@Override
+	public synchronized String createId() {
+		closedDirectory.mkdirs();
+		openDirectory.mkdirs();
+
+		String id = null;
+		do {
+			id = StringUtil.addZeros(++count, 8);
+		}
+		while (openDirectory.getRealResource(id + ".tsk").exists() || closedDirectory.getRealResource(id + ".tsk").exists());
+		return id;
+	}
+
+	@Override
+	public void store(SpoolerTask task) {
+		// a task that gets closed moves from "open" to "closed"
+		getFile(!task.closed(), task.getId()).delete();
+
+		ObjectOutputStream oos = null;
+		Resource persis = getFile(task.closed(), task.getId());
+		if (persis.exists()) persis.delete();
+		try {
+			oos = new ObjectOutputStream(persis.getOutputStream());
+			oos.writeObject(task);
+		}
+		catch (IOException e) {
+			LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
+		}
+		finally {
+			try {
+				IOUtil.close(oos);
+			}
+			catch (IOException e) {
+				LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
+			}
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		Resource res = getFile(false, id);
+		if (res.exists()) res.delete();
+		res = getFile(true, id);
+		if (res.exists()) res.delete();
+	}
+
+	@Override
+	public SpoolerTask get(String id) {
+		Resource res = getFile(false, id);
+		if (!res.exists()) res = getFile(true, id);
+		if (!res.exists()) return null;
+		return getTask(res, null);
+	}
+
+	@Override
+	public String[] getOpenIds() {
+		String[] names = openDirectory.list(FILTER);
+		if (names == null) return new String[0];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = names[i].substring(0, names[i].length() - 4);
+		}
+		return names;
+	}
+
+	@Override
+	public long getNextExecution(String id) {
+		// we have to load the task to know
+		return UNKNOWN;
+	}
+
+	@Override
+	public List<SpoolerTask> list(boolean closed, int startrow, int maxrow) {
+		List<SpoolerTask> list = new ArrayList<SpoolerTask>();
+		Resource dir = closed ? closedDirectory : openDirectory;
+		String[] children = dir.list(FILTER);
+		if (ArrayUtil.isEmpty(children)) return list;
+		if (children.length < maxrow) maxrow = children.length;
+		SpoolerTask task;
+
+		if (startrow < 1) startrow = 1;
+		int to = startrow - 1 + maxrow;
+		if (to > children.length) to = children.length;
+
+		for (int i = startrow - 1; i < to; i++) {
+			task = getTask(dir.getRealResource(children[i]), null);
+			if (task != null) list.add(task);
+		}
+		return list;
+	}
+
+	@Override
+	public int count(boolean closed) {
+		return ResourceUtil.directrySize(closed ? closedDirectory : openDirectory, FILTER);
+	}
+
+	@Override
+	public void clear() {
+		ResourceUtil.removeChildrenEL(openDirectory);
+		ResourceUtil.removeChildrenEL(closedDirectory);
+	}
+
+	@Override
+	public void close() {}
+
+	private Resource getFile(boolean closed, String id) {
+		Resource dir = closed ? closedDirectory : openDirectory;
+		dir.mkdirs();
+		return dir.getRealResource(id + ".tsk");
+	}
+
+	private SpoolerTask getTask(Resource res, SpoolerTask defaultValue) {
+		InputStream is = null;
+		ObjectInputStream ois = null;
+
+		SpoolerTask task = defaultValue;
+		try {
+			is = res.getInputStream();
+			ois = new ObjectInputStream(is);
+			task = (SpoolerTask) ois.readObject();
+		}
+		catch (Exception e) {
+			LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
+			IOUtil.closeEL(is);
+			IOUtil.closeEL(ois);
+			res.delete();
+		}
+		IOUtil.closeEL(is);
+		IOUtil.closeEL(ois);
+		return task;
+	}
+}
+
+class TaskFileFilter implements ResourceNameFilter {
+
+	@Override
+	public boolean accept(Resource parent, String name) {
+		return name != null && name.endsWith(".tsk");
+	}
+
+}
@@ -0,0 +1,731 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.spooler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import lucee.commons.io.IOUtil;
+import lucee.commons.io.SystemUtil;
+import lucee.commons.io.log.Log;
+import lucee.commons.lang.ExceptionUtil;
+import lucee.commons.lang.StringUtil;
+import lucee.runtime.op.Caster;
+
+/**
+ * stores the tasks in a append only journal instead of one file per task. The journal is split in
+ * segments (folder "journal", files "&lt;number&gt;.jnl"), every change of a task appends a record
+ * containing the serialized task to the current segment, removing a task appends a tombstone.
+ *
+ * A index in memory points to the latest record of every task and also holds the state (open/closed)
+ * and the next execution of the task, so counting, listing and scheduling tasks never touches the
+ * disk, only tasks that get executed or displayed are read and deserialized. On startup the index is
+ * rebuilt by replaying all segments, every record is read to verify its checksum, a torn record at
+ * the end of a segment (crash while writing) is cut off.
+ *
+ * Appended records are synced to disk in batches by a background thread, every
+ * "lucee.spooler.journal.sync" milliseconds (default 200, 0 syncs every record). When more than half
+ * of the journal is occupied by outdated records (updated or removed tasks), the live records are
+ * copied to a new segment and the old segments are deleted. The copy contains no tombstones, so it
+ * is first renamed to "&lt;number&gt;.cpt", which marks it as complete, then the old segments are
+ * deleted and only then it becomes a regular segment. A copy left over by a crash in between is
+ * completed on startup.
+ */
+final class JournalSpoolerStorage implements SpoolerStorage {
+
+	private static final String EXTENSION = ".jnl";
+	// a completed copy of compacted segments, replaces all segments up to its number
+	private static final String COMPACTED = ".cpt";
+	private static final String TMP = "compact.tmp";
+	private static final byte OP_PUT = 1;
+	private static final byte OP_REMOVE = 2;
+	// length of the payload and crc of the payload
+	private static final int HEADER = 8;
+	private static final FilenameFilter FILTER = new FilenameFilter() {
+		@Override
+		public boolean accept(File dir, String name) {
+			return name.endsWith(EXTENSION) && toNumber(name) > 0;
+		}
+	};
+
+	private final File directory;
+	private final Log log;
+	private final long segmentSize;
+	private final long syncInterval;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Map<String, Entry> open = new LinkedHashMap<String, Entry>();
+	private final Map<String, Entry> closed = new LinkedHashMap<String, Entry>();
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	private Segment active;
+	private long counter;
+	private long liveBytes;
+	private long totalBytes;
+	private boolean dirty;
+	private int generation;
+	// set by close, a spooler thread can still hold a reference to this storage
+	private boolean shutdown;
+	private final Syncer syncer;
+
+	JournalSpoolerStorage(File persisDirectory, Log log) throws IOException {
+		this.directory = new File(persisDirectory, "journal");
+		this.log = log;
+		long size = Caster.toLongValue(SystemUtil.getSystemPropOrEnvVar("lucee.spooler.journal.segmentsize", null), 0L);
+		this.segmentSize = size > 0 ? size : 32L * 1024L * 1024L;
+		this.syncInterval = Caster.toLongValue(SystemUtil.getSystemPropOrEnvVar("lucee.spooler.journal.sync", null), 200L);
+
+		directory.mkdirs();
+		recover();
+		syncer = new Syncer();
+		syncer.start();
+	}
+
+	@Override
+	public String createId() {
+		lock.lock();
+		try {
+			return StringUtil.addZeros(++counter, 8);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void store(SpoolerTask task) {
+		try {
+			// serialize outside the lock
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeByte(OP_PUT);
+			out.writeUTF(task.getId());
+			out.writeBoolean(task.closed());
+			out.writeLong(task.nextExecution());
+			ObjectOutputStream oos = new ObjectOutputStream(out);
+			oos.writeObject(task);
+			oos.flush();
+			byte[] payload = baos.toByteArray();
+
+			lock.lock();
+			try {
+				if (shutdown) {
+					log.log(Log.LEVEL_WARN, "spooler", "the journal is closed, task [" + task.getId() + "] is not stored");
+					return;
+				}
+				long offset = append(payload);
+				index(new Entry(task.getId(), task.closed(), task.nextExecution(), active, offset, HEADER + payload.length));
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to store task [" + task.getId() + "] in the journal", ioe);
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		lock.lock();
+		try {
+			if (shutdown || (!open.containsKey(id) && !closed.containsKey(id))) return;
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeByte(OP_REMOVE);
+			out.writeUTF(id);
+			out.flush();
+			append(baos.toByteArray());
+			unindex(id);
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to remove task [" + id + "] from the journal", ioe);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public SpoolerTask get(String id) {
+		byte[] payload;
+		lock.lock();
+		try {
+			if (shutdown) return null;
+			Entry e = open.get(id);
+			if (e == null) e = closed.get(id);
+			if (e == null) return null;
+			payload = read(e);
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to read task [" + id + "] from the journal", ioe);
+			return null;
+		}
+		finally {
+			lock.unlock();
+		}
+		return toTask(id, payload);
+	}
+
+	@Override
+	public String[] getOpenIds() {
+		lock.lock();
+		try {
+			return open.keySet().toArray(new String[open.size()]);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long getNextExecution(String id) {
+		lock.lock();
+		try {
+			Entry e = open.get(id);
+			return e == null ? UNKNOWN : e.nextExecution;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public List<SpoolerTask> list(boolean closed, int startrow, int maxrow) {
+		if (startrow < 1) startrow = 1;
+		List<String> ids = new ArrayList<String>();
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		lock.lock();
+		try {
+			Iterator<Entry> it = (closed ? this.closed : open).values().iterator();
+			int row = 0;
+			Entry e;
+			while (it.hasNext() && payloads.size() < maxrow) {
+				e = it.next();
+				if (++row < startrow) continue;
+				ids.add(e.id);
+				payloads.add(read(e));
+			}
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to read tasks from the journal", ioe);
+		}
+		finally {
+			lock.unlock();
+		}
+
+		List<SpoolerTask> list = new ArrayList<SpoolerTask>(payloads.size());
+		SpoolerTask task;
+		for (int i = 0; i < payloads.size(); i++) {
+			task = toTask(ids.get(i), payloads.get(i));
+			if (task != null) list.add(task);
+		}
+		return list;
+	}
+
+	@Override
+	public int count(boolean closed) {
+		lock.lock();
+		try {
+			return closed ? this.closed.size() : open.size();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			if (shutdown) return;
+			int next = active.number + 1;
+			for (Segment s: segments.values()) {
+				s.close();
+				s.file.delete();
+			}
+			segments.clear();
+			open.clear();
+			closed.clear();
+			liveBytes = 0;
+			totalBytes = 0;
+			dirty = false;
+			generation++;
+			active = createSegment(next);
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to clear the journal", ioe);
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void close() {
+		syncer.interrupt();
+		lock.lock();
+		try {
+			if (shutdown) return;
+			shutdown = true;
+			// a running compaction is discarded
+			generation++;
+			if (dirty) active.channel.force(false);
+			dirty = false;
+		}
+		catch (IOException ioe) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to sync the journal", ioe);
+		}
+		finally {
+			for (Segment s: segments.values()) {
+				s.close();
+			}
+			open.clear();
+			closed.clear();
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * rebuilds the index from the existing segments and starts a new segment
+	 */
+	private void recover() throws IOException {
+		completeCompaction();
+		File[] files = directory.listFiles(FILTER);
+		int last = 0;
+		if (files != null) {
+			TreeMap<Integer, File> sorted = new TreeMap<Integer, File>();
+			for (File f: files) {
+				sorted.put(toNumber(f.getName()), f);
+			}
+			Segment s;
+			for (Map.Entry<Integer, File> e: sorted.entrySet()) {
+				last = e.getKey();
+				s = new Segment(e.getKey(), e.getValue());
+				replay(s);
+				if (s.size == 0) {
+					s.close();
+					s.file.delete();
+					continue;
+				}
+				segments.put(s.number, s);
+				totalBytes += s.size;
+			}
+		}
+		active = createSegment(last + 1);
+		if (open.size() > 0 || closed.size() > 0) log.log(Log.LEVEL_INFO, "spooler",
+				"recovered [" + open.size() + "] open and [" + closed.size() + "] closed tasks from [" + segments.size() + "] journal segments");
+	}
+
+	/**
+	 * finishes a compaction interrupted by a crash, a complete copy replaces all segments up to its
+	 * number, an incomplete copy is discarded
+	 */
+	private void completeCompaction() throws IOException {
+		new File(directory, TMP).delete();
+		String[] names = directory.list();
+		if (names == null) return;
+		// only the newest copy counts, it also replaces older copies
+		int upTo = 0;
+		for (String name: names) {
+			if (name.endsWith(COMPACTED)) upTo = Math.max(upTo, toNumber(name, COMPACTED));
+		}
+		if (upTo == 0) return;
+		File copy = new File(directory, upTo + COMPACTED);
+		if (!deleteUpTo(upTo, copy)) throw new IOException("failed to delete the compacted journal segments up to [" + upTo + "]");
+		Files.move(copy.toPath(), new File(directory, upTo + EXTENSION).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		log.log(Log.LEVEL_INFO, "spooler", "completed the compaction of the journal segments up to [" + upTo + "]");
+	}
+
+	/**
+	 * deletes all segments and copies up to (including) the given number, except the given copy
+	 * 
+	 * @return false if a file could not be deleted
+	 */
+	private boolean deleteUpTo(int upTo, File keep) {
+		String[] names = directory.list();
+		if (names == null) return true;
+		boolean deleted = true;
+		File f;
+		int nbr;
+		for (String name: names) {
+			if (name.endsWith(EXTENSION)) nbr = toNumber(name);
+			else if (name.endsWith(COMPACTED)) nbr = toNumber(name, COMPACTED);
+			else continue;
+			if (nbr <= 0 || nbr > upTo) continue;
+			f = new File(directory, name);
+			if (f.equals(keep)) continue;
+			if (!f.delete() && f.exists()) deleted = false;
+		}
+		return deleted;
+	}
+
+	private void replay(Segment s) throws IOException {
+		long size = s.channel.size();
+		long pos = 0;
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		int len, crc;
+		byte[] payload;
+		DataInputStream in;
+		byte op;
+		String id;
+		while (pos + HEADER <= size) {
+			header.clear();
+			readFully(s.channel, header, pos);
+			header.flip();
+			len = header.getInt();
+			crc = header.getInt();
+			if (len <= 0 || pos + HEADER + len > size) break;
+			payload = new byte[len];
+			readFully(s.channel, ByteBuffer.wrap(payload), pos + HEADER);
+			if (crc(payload) != crc) break;
+
+			in = new DataInputStream(new ByteArrayInputStream(payload));
+			op = in.readByte();
+			id = in.readUTF();
+			if (op == OP_PUT) {
+				boolean c = in.readBoolean();
+				index(new Entry(id, c, in.readLong(), s, pos, HEADER + len));
+			}
+			else if (op == OP_REMOVE) unindex(id);
+			long nbr = Caster.toLongValue(id, 0L);
+			if (nbr > counter) counter = nbr;
+			pos += HEADER + len;
+		}
+		if (pos < size) {
+			log.log(Log.LEVEL_WARN, "spooler", "journal segment [" + s.file + "] is damaged after position [" + pos + "], the rest of the segment is discarded");
+			s.channel.truncate(pos);
+		}
+		s.size = pos;
+	}
+
+	/**
+	 * appends a record to the current segment, must be called while holding the lock
+	 * 
+	 * @return offset of the record within the current segment
+	 */
+	private long append(byte[] payload) throws IOException {
+		if (active.size >= segmentSize) {
+			if (dirty) active.channel.force(false);
+			dirty = false;
+			active = createSegment(active.number + 1);
+		}
+		ByteBuffer buf = ByteBuffer.allocate(HEADER + payload.length);
+		buf.putInt(payload.length);
+		buf.putInt(crc(payload));
+		buf.put(payload);
+		buf.flip();
+		long offset = active.size;
+		writeFully(active.channel, buf, offset);
+		active.size += HEADER + payload.length;
+		totalBytes += HEADER + payload.length;
+		if (syncInterval <= 0) active.channel.force(false);
+		else dirty = true;
+		return offset;
+	}
+
+	private byte[] read(Entry e) throws IOException {
+		byte[] payload = new byte[e.length - HEADER];
+		readFully(e.segment.channel, ByteBuffer.wrap(payload), e.offset + HEADER);
+		return payload;
+	}
+
+	private SpoolerTask toTask(String id, byte[] payload) {
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+			in.readByte();
+			in.readUTF();
+			in.readBoolean();
+			in.readLong();
+			ObjectInputStream ois = new ObjectInputStream(in);
+			return (SpoolerTask) ois.readObject();
+		}
+		catch (Exception e) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to deserialize task [" + id + "], the task is removed", e);
+			remove(id);
+			return null;
+		}
+	}
+
+	private void index(Entry e) {
+		// also tasks stored with an existing id (migration) must not get their id reused
+		long nbr = Caster.toLongValue(e.id, 0L);
+		if (nbr > counter) counter = nbr;
+		Map<String, Entry> target = e.closed ? closed : open;
+		Entry old = (e.closed ? open : closed).remove(e.id);
+		// an existing task keeps its position
+		if (old == null) old = target.put(e.id, e);
+		else target.put(e.id, e);
+		if (old != null) liveBytes -= old.length;
+		liveBytes += e.length;
+	}
+
+	private void unindex(String id) {
+		Entry old = open.remove(id);
+		if (old == null) old = closed.remove(id);
+		if (old != null) liveBytes -= old.length;
+	}
+
+	private void sync() {
+		FileChannel channel;
+		lock.lock();
+		try {
+			if (!dirty) return;
+			dirty = false;
+			channel = active.channel;
+		}
+		finally {
+			lock.unlock();
+		}
+		// fsync outside the lock, so appending records is not blocked
+		try {
+			channel.force(false);
+		}
+		catch (IOException ioe) {
+			// channel closed by clear or close
+		}
+	}
+
+	/**
+	 * copies the live records of all segments except the current one to a new segment and deletes the
+	 * old segments, when more than half of the journal is occupied by outdated records
+	 */
+	private void compact() throws IOException {
+		int upTo, gen;
+		List<Entry> entries = new ArrayList<Entry>();
+		lock.lock();
+		try {
+			if (shutdown) return;
+			long garbage = totalBytes - liveBytes;
+			if (garbage < segmentSize || garbage < liveBytes) return;
+			// from now on nothing gets written to the segments we compact
+			if (dirty) active.channel.force(false);
+			dirty = false;
+			active = createSegment(active.number + 1);
+			upTo = active.number - 1;
+			gen = generation;
+			for (Entry e: open.values()) {
+				if (e.segment.number <= upTo) entries.add(e);
+			}
+			for (Entry e: closed.values()) {
+				if (e.segment.number <= upTo) entries.add(e);
+			}
+		}
+		finally {
+			lock.unlock();
+		}
+
+		// copy the records, the segments are not written anymore, so we do not need the lock
+		File tmp = new File(directory, TMP);
+		long[] offsets = new long[entries.size()];
+		long size = 0;
+		FileChannel out = new RandomAccessFile(tmp, "rw").getChannel();
+		try {
+			out.truncate(0);
+			ByteBuffer buf;
+			Entry e;
+			for (int i = 0; i < offsets.length; i++) {
+				e = entries.get(i);
+				buf = ByteBuffer.allocate(e.length);
+				readFully(e.segment.channel, buf, e.offset);
+				buf.flip();
+				writeFully(out, buf, size);
+				offsets[i] = size;
+				size += e.length;
+			}
+			out.force(true);
+		}
+		catch (IOException ioe) {
+			IOUtil.closeEL(out);
+			tmp.delete();
+			// the journal was cleared in the meantime
+			if (gen != generation) return;
+			throw ioe;
+		}
+		finally {
+			IOUtil.closeEL(out);
+		}
+
+		lock.lock();
+		try {
+			if (gen != generation) {
+				tmp.delete();
+				return;
+			}
+			// the copy has no tombstones, so it must never be replayed together with the segments it
+			// replaces, otherwise tasks removed in them come back. The rename marks the copy as complete,
+			// recovery finishes the compaction when we crash before the copy has its final name
+			File done = new File(directory, upTo + COMPACTED);
+			Files.move(tmp.toPath(), done.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			Segment s;
+			Iterator<Segment> it = segments.headMap(upTo, true).values().iterator();
+			while (it.hasNext()) {
+				s = it.next();
+				s.close();
+				totalBytes -= s.size;
+				it.remove();
+			}
+			File target = done;
+			// otherwise the copy keeps its marker and the compaction is completed on the next start
+			if (deleteUpTo(upTo, done)) {
+				target = new File(directory, upTo + EXTENSION);
+				Files.move(done.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			}
+			else log.log(Log.LEVEL_WARN, "spooler", "failed to delete compacted journal segments, they are deleted on the next start");
+			Segment compacted = new Segment(upTo, target);
+			compacted.size = size;
+			segments.put(upTo, compacted);
+			totalBytes += size;
+
+			Entry e, curr;
+			for (int i = 0; i < offsets.length; i++) {
+				e = entries.get(i);
+				curr = e.closed ? closed.get(e.id) : open.get(e.id);
+				// only if the task was not changed in the meantime
+				if (curr == e) {
+					e.segment = compacted;
+					e.offset = offsets[i];
+				}
+			}
+			log.log(Log.LEVEL_INFO, "spooler", "compacted journal to [" + totalBytes + "] bytes, [" + liveBytes + "] bytes used by [" + (open.size() + closed.size()) + "] tasks");
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private Segment createSegment(int number) throws IOException {
+		Segment s = new Segment(number, new File(directory, number + EXTENSION));
+		s.channel.truncate(0);
+		segments.put(number, s);
+		return s;
+	}
+
+	private static int toNumber(String name) {
+		return toNumber(name, EXTENSION);
+	}
+
+	private static int toNumber(String name, String extension) {
+		return Caster.toIntValue(name.substring(0, name.length() - extension.length()), 0);
+	}
+
+	private static int crc(byte[] data) {
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, data.length);
+		return (int) crc.getValue();
+	}
+
+	private static void readFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+		int len;
+		while (buf.hasRemaining()) {
+			len = channel.read(buf, pos);
+			if (len < 0) throw new EOFException();
+			pos += len;
+		}
+	}
+
+	private static void writeFully(FileChannel channel, ByteBuffer buf, long pos) throws IOException {
+		while (buf.hasRemaining()) {
+			pos += channel.write(buf, pos);
+		}
+	}
+
+	private static final class Segment {
+		private final int number;
+		private final File file;
+		private final FileChannel channel;
+		private long size;
+
+		private Segment(int number, File file) throws IOException {
+			this.number = number;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+		}
+
+		private void close() {
+			IOUtil.closeEL(channel);
+		}
+	}
+
+	private static final class Entry {
+		private final String id;
+		private final boolean closed;
+		private final long nextExecution;
+		private final int length;
+		private Segment segment;
+		private long offset;
+
+		private Entry(String id, boolean closed, long nextExecution, Segment segment, long offset, int length) {
+			this.id = id;
+			this.closed = closed;
+			this.nextExecution = nextExecution;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+	private final class Syncer extends Thread {
+
+		private Syncer() {
+			super("lucee-spooler-journal");
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+			while (!isInterrupted()) {
+				try {
+					Thread.sleep(syncInterval > 0 ? syncInterval : 1000L);
+				}
+				catch (InterruptedException ie) {
+					break;
+				}
+				sync();
+				try {
+					compact();
+				}
+				catch (Throwable t) {
+					ExceptionUtil.rethrowIfNecessary(t);
+					log.log(Log.LEVEL_ERROR, "spooler", "failed to compact the journal", t);
+				}
+			}
+		}
+	}
+}
@@ -18,26 +18,27 @@
  */
 package lucee.runtime.spooler;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import lucee.commons.io.IOUtil;
 import lucee.commons.io.SystemUtil;
 import lucee.commons.io.log.Log;
-import lucee.commons.io.log.LogUtil;
 import lucee.commons.io.res.Resource;
-import lucee.commons.io.res.filter.ResourceNameFilter;
-import lucee.commons.io.res.util.ResourceUtil;
 import lucee.commons.lang.ExceptionUtil;
 import lucee.commons.lang.SerializableObject;
-import lucee.commons.lang.StringUtil;
 import lucee.runtime.config.Config;
 import lucee.runtime.config.ConfigWeb;
 import lucee.runtime.config.ConfigWebUtil;
@@ -45,8 +46,10 @@ import lucee.runtime.engine.ThreadLocalConfig;
 import lucee.runtime.engine.ThreadLocalPageContext;
 import lucee.runtime.exp.DatabaseException;
 import lucee.runtime.exp.PageException;
+import lucee.runtime.net.smtp.SMTPConnectionPool;
 import lucee.runtime.op.Caster;
 import lucee.runtime.op.Duplicator;
+import lucee.runtime.spooler.mail.MailSpoolerTask;
 import lucee.runtime.type.Array;
 import lucee.runtime.type.Collection;
 import lucee.runtime.type.KeyImpl;
@@ -54,14 +57,25 @@ import lucee.runtime.type.Query;
 import lucee.runtime.type.QueryImpl;
 import lucee.runtime.type.Struct;
 import lucee.runtime.type.dt.DateTimeImpl;
-import lucee.runtime.type.util.ArrayUtil;
 import lucee.runtime.type.util.CollectionUtil;
 import lucee.runtime.type.util.KeyConstants;
 
+/**
+ * executes the tasks added with a execution plan and persists them until they are closed or removed.
+ * The storage of the tasks is selected with the system property/environment variable
+ * "lucee.spooler.storage":
+ * <ul>
+ * <li>file (default): one file per task in the folders "open" and "closed"</li>
+ * <li>journal: append only journal with a index in memory ({@link JournalSpoolerStorage}), only
+ * supported with a local persistence directory. Existing task files are moved to the journal.</li>
+ * </ul>
+ * By default every due task is executed by its own thread, with "lucee.spooler.workers" set to a
+ * number greater than 0 the due tasks are executed by a pool of that many worker threads instead. In
+ * that mode mails to the same server are grouped in batches (max "lucee.spooler.mail.batchsize",
+ * default 100) and every batch is sent over one connection.
+ */
 public class SpoolerEngineImpl implements SpoolerEngine {
 
-	private static final TaskFileFilter FILTER = new TaskFileFilter();
-
 	private static final Collection.Key LAST_EXECUTION = KeyImpl.getInstance("lastExecution");
 	private static final Collection.Key NEXT_EXECUTION = KeyImpl.getInstance("nextExecution");
 
@@ -69,18 +83,19 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	private static final Collection.Key TRIES = KeyConstants._tries;
 	private static final Collection.Key TRIES_MAX = KeyImpl.getInstance("triesmax");
 
+	private static final int WORKERS = Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.spooler.workers", null), 0);
+	private static final int BATCH_SIZE = Math.max(1, Caster.toIntValue(SystemUtil.getSystemPropOrEnvVar("lucee.spooler.mail.batchsize", null), 100));
+
 	private String label;
 
 	private SimpleThread simpleThread;
 	private final SerializableObject token = new SerializableObject();
 	private SpoolerThread thread;
 	private Resource _persisDirectory;
-	private long count = 0;
+	private volatile SpoolerStorage storage;
 	private Log log;
 	private int add = 0;
-
-	private Resource closedDirectory;
-	private Resource openDirectory;
+	private volatile ExecutorService workers;
 
 	private int maxThreads;
 
@@ -88,8 +103,6 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 	public SpoolerEngineImpl(Resource persisDirectory, String label, Log log, int maxThreads) {
 		this._persisDirectory = persisDirectory;
-		closedDirectory = persisDirectory.getRealResource("closed");
-		openDirectory = persisDirectory.getRealResource("open");
 		this.maxThreads = maxThreads;
 		this.label = label;
 		this.log = log;
@@ -101,6 +114,28 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		init = true;
 	}
 
+	private ExecutorService getWorkers() {
+		if (workers == null) {
+			synchronized (token) {
+				if (workers == null) {
+					ThreadPoolExecutor tpe = new ThreadPoolExecutor(WORKERS, WORKERS, 60000L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger counter = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "lucee-spooler-worker-" + counter.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+					tpe.allowCoreThreadTimeOut(true);
+					workers = tpe;
+				}
+			}
+		}
+		return workers;
+	}
+
 	public void setMaxThreads(int maxThreads) {
 		this.maxThreads = maxThreads;
 	}
@@ -112,10 +147,6 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		return maxThreads;
 	}
 
-	private int calculateSize(Resource res) {
-		return ResourceUtil.directrySize(res, FILTER);
-	}
-
 	@Override
 
 	public synchronized void add(SpoolerTask task) {
@@ -136,7 +167,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		// openTasks.add(task);
 		add++;
 		if (task.nextExecution() == 0) task.setNextExecution(System.currentTimeMillis());
-		task.setId(createId(config, task));
+		task.setId(getStorage(config).createId());
 		store(config, task);
 		start(config);
 	}
@@ -178,60 +209,12 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		return label;
 	}
 
-	private SpoolerTask getTaskById(Resource dir, String id) {
-		return getTask(dir.getRealResource(id + ".tsk"), null);
-	}
-
-	private SpoolerTask getTaskByName(Resource dir, String name) {
-		return getTask(dir.getRealResource(name), null);
-	}
-
-	private SpoolerTask getTask(Resource res, SpoolerTask defaultValue) {
-		InputStream is = null;
-		ObjectInputStream ois = null;
-
-		SpoolerTask task = defaultValue;
-		try {
-			is = res.getInputStream();
-			ois = new ObjectInputStream(is);
-			task = (SpoolerTask) ois.readObject();
-		}
-		catch (Exception e) {
-			LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
-			IOUtil.closeEL(is);
-			IOUtil.closeEL(ois);
-			res.delete();
-		}
-		IOUtil.closeEL(is);
-		IOUtil.closeEL(ois);
-		return task;
-	}
-
 	private void store(ConfigWeb config, SpoolerTask task) {
-		ObjectOutputStream oos = null;
-		Resource persis = getFile(config, task);
-		if (persis.exists()) persis.delete();
-		try {
-			oos = new ObjectOutputStream(persis.getOutputStream());
-			oos.writeObject(task);
-		}
-		catch (IOException e) {
-			LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
-		}
-		finally {
-			try {
-				IOUtil.close(oos);
-			}
-			catch (IOException e) {
-				LogUtil.log(ThreadLocalPageContext.get(), SpoolerEngineImpl.class.getName(), e);
-			}
-		}
+		getStorage(config).store(task);
 	}
 
 	private void unstore(ConfigWeb config, SpoolerTask task) {
-		Resource persis = getFile(config, task);
-		boolean exists = persis.exists();
-		if (exists) persis.delete();
+		getStorage(config).remove(task.getId());
 	}
 
 	private void log(ConfigWeb config, SpoolerTask task, Exception e, boolean before) {
@@ -244,24 +227,46 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		else log.log(Log.LEVEL_ERROR, "remote-client", "failed to execute: " + task.subject(), e);
 	}
 
-	private Resource getFile(ConfigWeb config, SpoolerTask task) {
-		Resource dir = getPersisDirectory(config).getRealResource(task.closed() ? "closed" : "open");
-		dir.mkdirs();
-		return dir.getRealResource(task.getId() + ".tsk");
+	private SpoolerStorage getStorage(ConfigWeb config) {
+		SpoolerStorage s = storage;
+		if (s == null) {
+			synchronized (token) {
+				if (storage == null) storage = createStorage(getPersisDirectory(config));
+				s = storage;
+			}
+		}
+		return s;
 	}
 
-	private String createId(ConfigWeb config, SpoolerTask task) {
-		Resource dirClosed = getPersisDirectory(config).getRealResource("closed");
-		Resource dirOpen = getPersisDirectory(config).getRealResource("open");
-		if (task.closed()) dirClosed.mkdirs();
-		else dirOpen.mkdirs();
+	private SpoolerStorage createStorage(Resource dir) {
+		SpoolerStorage fs = new FileSpoolerStorage(dir);
+		if (!"journal".equalsIgnoreCase(SystemUtil.getSystemPropOrEnvVar("lucee.spooler.storage", null))) return fs;
+		if (!(dir instanceof File)) {
+			log.log(Log.LEVEL_WARN, "spooler", "the spooler journal needs a local directory, [" + dir + "] is not local, falling back to one file per task");
+			return fs;
+		}
+		JournalSpoolerStorage js;
+		try {
+			js = new JournalSpoolerStorage((File) dir, log);
+		}
+		catch (Exception e) {
+			log.log(Log.LEVEL_ERROR, "spooler", "failed to open the spooler journal, falling back to one file per task", e);
+			return fs;
+		}
 
-		String id = null;
-		do {
-			id = StringUtil.addZeros(++count, 8);
+		// move the tasks stored by the file storage to the journal
+		int open = fs.count(false), closed = fs.count(true);
+		if (open > 0 || closed > 0) {
+			for (SpoolerTask task: fs.list(false, 1, open)) {
+				js.store(task);
+			}
+			for (SpoolerTask task: fs.list(true, 1, closed)) {
+				js.store(task);
+			}
+			fs.clear();
+			log.log(Log.LEVEL_INFO, "spooler", "moved [" + open + "] open and [" + closed + "] closed tasks to the spooler journal");
 		}
-		while (dirOpen.getRealResource(id + ".tsk").exists() || dirClosed.getRealResource(id + ".tsk").exists());
-		return id;
+		return js;
 	}
 
 	public long calculateNextExecution(SpoolerTask task) {
@@ -282,12 +287,12 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 	@Override
 	public Query getOpenTasksAsQuery(int startrow, int maxrow) throws PageException {
-		return getTasksAsQuery(createQuery(), openDirectory, startrow, maxrow);
+		return getTasksAsQuery(createQuery(), false, startrow, maxrow);
 	}
 
 	@Override
 	public Query getClosedTasksAsQuery(int startrow, int maxrow) throws PageException {
-		return getTasksAsQuery(createQuery(), closedDirectory, startrow, maxrow);
+		return getTasksAsQuery(createQuery(), true, startrow, maxrow);
 	}
 
 	@Override
@@ -296,7 +301,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 		Query query = createQuery();
 		// print.o(startrow+":"+maxrow);
-		getTasksAsQuery(query, openDirectory, startrow, maxrow);
+		getTasksAsQuery(query, false, startrow, maxrow);
 		int records = query.getRecordcount();
 		// no open tasks
 		if (records == 0) {
@@ -307,35 +312,24 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 			startrow = 1;
 			maxrow -= records;
 		}
-		if (maxrow > 0) getTasksAsQuery(query, closedDirectory, startrow, maxrow);
+		if (maxrow > 0) getTasksAsQuery(query, true, startrow, maxrow);
 		return query;
 	}
 
 	@Override
 	public int getOpenTaskCount() {
-		return calculateSize(openDirectory);
+		return getStorage(null).count(false);
 	}
 
 	@Override
 	public int getClosedTaskCount() {
-		return calculateSize(closedDirectory);
+		return getStorage(null).count(true);
 	}
 
-	private Query getTasksAsQuery(Query qry, Resource dir, int startrow, int maxrow) {
-		String[] children = dir.list(FILTER);
-		if (ArrayUtil.isEmpty(children)) return qry;
-		if (children.length < maxrow) maxrow = children.length;
-		SpoolerTask task;
-
-		int to = startrow + maxrow;
-		if (to > children.length) to = children.length;
-		if (startrow < 1) startrow = 1;
-
-		for (int i = startrow - 1; i < to; i++) {
-			task = getTaskByName(dir, children[i]);
-			if (task != null) addQueryRow(qry, task);
+	private Query getTasksAsQuery(Query qry, boolean closed, int startrow, int maxrow) {
+		for (SpoolerTask task: getStorage(null).list(closed, startrow, maxrow)) {
+			addQueryRow(qry, task);
 		}
-
 		return qry;
 	}
 
@@ -437,23 +431,36 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 		@Override
 		public void run() {
-			String[] taskNames;
+			String[] ids;
 			// SpoolerTask[] tasks;
 			SpoolerTask task = null;
-			long nextExection;
+			SpoolerStorage storage = getStorage(config);
+			long nextExection, ne;
 			ThreadLocalConfig.register(config);
+			if (WORKERS > 0) {
+				runWorkers(storage);
+				return;
+			}
 			// ThreadLocalPageContext.register(engine.);
 			List<TaskThread> runningTasks = new ArrayList<TaskThread>();
 			TaskThread tt;
 			int adds;
 
 			while (getOpenTaskCount() > 0) {
+				// the storage is replaced when the persistent directory changes
+				storage = getStorage(config);
 				adds = engine.adds();
-				taskNames = openDirectory.list(FILTER);
+				ids = storage.getOpenIds();
 				// tasks=engine.getOpenTasks();
 				nextExection = Long.MAX_VALUE;
-				for (int i = 0; i < taskNames.length; i++) {
-					task = getTaskByName(openDirectory, taskNames[i]);
+				for (int i = 0; i < ids.length; i++) {
+					// no need to load tasks that are not due yet, when the storage knows the next execution
+					ne = storage.getNextExecution(ids[i]);
+					if (ne != SpoolerStorage.UNKNOWN && ne > System.currentTimeMillis()) {
+						if (ne < nextExection) nextExection = ne;
+						continue;
+					}
+					task = storage.get(ids[i]);
 					if (task == null) continue;
 
 					if (task.nextExecution() <= System.currentTimeMillis()) {
@@ -479,6 +486,90 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 			// print.o("end:"+getOpenTaskCount());
 		}
 
+		/**
+		 * executes the due tasks with the worker pool, mails to the same server are grouped in batches
+		 */
+		private void runWorkers(SpoolerStorage storage) {
+			ExecutorService executor = engine.getWorkers();
+			// max number of tasks loaded per round, so not all due tasks are held in memory at once
+			int max = WORKERS * BATCH_SIZE * 2;
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			List<SpoolerTask> executed = new ArrayList<SpoolerTask>();
+			Map<String, List<SpoolerTask>> batches = new LinkedHashMap<String, List<SpoolerTask>>();
+			String[] ids;
+			SpoolerTask task;
+			List<SpoolerTask> batch;
+			String key;
+			long nextExection, ne, now;
+			int adds;
+			boolean more;
+
+			while (getOpenTaskCount() > 0) {
+				// the storage is replaced when the persistent directory changes
+				storage = getStorage(config);
+				adds = engine.adds();
+				ids = storage.getOpenIds();
+				nextExection = Long.MAX_VALUE;
+				more = false;
+				now = System.currentTimeMillis();
+				for (int i = 0; i < ids.length; i++) {
+					ne = storage.getNextExecution(ids[i]);
+					if (ne != SpoolerStorage.UNKNOWN && ne > now) {
+						if (ne < nextExection) nextExection = ne;
+						continue;
+					}
+					if (executed.size() >= max) {
+						more = true;
+						break;
+					}
+					task = storage.get(ids[i]);
+					if (task == null) continue;
+					if (task.nextExecution() > now) {
+						if (task.nextExecution() < nextExection) nextExection = task.nextExecution();
+						continue;
+					}
+					executed.add(task);
+
+					key = task instanceof MailSpoolerTask ? ((MailSpoolerTask) task).getBatchKey() : null;
+					if (key == null) {
+						futures.add(executor.submit(new Worker(config, engine, Collections.singletonList(task), false)));
+						continue;
+					}
+					batch = batches.get(key);
+					if (batch == null) batches.put(key, batch = new ArrayList<SpoolerTask>());
+					batch.add(task);
+					if (batch.size() >= BATCH_SIZE) {
+						futures.add(executor.submit(new Worker(config, engine, batch, true)));
+						batches.remove(key);
+					}
+				}
+				for (List<SpoolerTask> b: batches.values()) {
+					futures.add(executor.submit(new Worker(config, engine, b, true)));
+				}
+				batches.clear();
+
+				// wait until all tasks of this round are executed
+				for (Future<?> f: futures) {
+					try {
+						f.get();
+					}
+					catch (Exception e) {
+						log.log(Log.LEVEL_ERROR, "spooler", e);
+					}
+				}
+				futures.clear();
+				for (SpoolerTask t: executed) {
+					if (t.nextExecution() != -1 && t.nextExecution() < nextExection && !t.closed()) nextExection = t.nextExecution();
+				}
+				executed.clear();
+
+				if (more || adds != engine.adds()) continue;
+				if (nextExection == Long.MAX_VALUE) break;
+				long sleep = nextExection - System.currentTimeMillis();
+				if (sleep > 0) doWait(sleep);
+			}
+		}
+
 		private long joinTasks(List<TaskThread> runningTasks, int maxThreads, long nextExection) {
 			if (runningTasks.size() >= maxThreads) {
 				Iterator<TaskThread> it = runningTasks.iterator();
@@ -516,6 +607,46 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 	}
 
+	/**
+	 * executes a list of tasks with a thread of the worker pool, when "batch" is true all mails are sent
+	 * over the same connection
+	 */
+	class Worker implements Runnable {
+
+		private final ConfigWeb config;
+		private final SpoolerEngineImpl engine;
+		private final List<SpoolerTask> tasks;
+		private final boolean batch;
+
+		public Worker(ConfigWeb config, SpoolerEngineImpl engine, List<SpoolerTask> tasks, boolean batch) {
+			this.config = config;
+			this.engine = engine;
+			this.tasks = tasks;
+			this.batch = batch;
+		}
+
+		@Override
+		public void run() {
+			ThreadLocalConfig.register(config);
+			if (batch) SMTPConnectionPool.startBatch();
+			try {
+				for (SpoolerTask task: tasks) {
+					try {
+						engine.execute(config, task);
+					}
+					catch (Throwable t) {
+						ExceptionUtil.rethrowIfNecessary(t);
+						log.log(Log.LEVEL_ERROR, "spooler", t);
+					}
+				}
+			}
+			finally {
+				if (batch) SMTPConnectionPool.endBatch();
+				ThreadLocalConfig.release();
+			}
+		}
+	}
+
 	class TaskThread extends Thread {
 
 		private SpoolerEngineImpl engine;
@@ -558,11 +689,10 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	}
 
 	public void removeAll() {
-		ResourceUtil.removeChildrenEL(openDirectory);
-		ResourceUtil.removeChildrenEL(closedDirectory);
+		SpoolerStorage storage = getStorage(null);
+		storage.clear();
 		SystemUtil.wait(this, 100);
-		ResourceUtil.removeChildrenEL(openDirectory);
-		ResourceUtil.removeChildrenEL(closedDirectory);
+		storage.clear();
 	}
 
 	public int adds() {
@@ -572,9 +702,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 
 	@Override
 	public void remove(String id) {
-		SpoolerTask task = getTaskById(openDirectory, id);
-		if (task == null) task = getTaskById(closedDirectory, id);
-		if (task != null) remove(task);
+		getStorage(null).remove(id);
 	}
 
 	/**
@@ -584,8 +712,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	 */
 	@Override
 	public PageException execute(String id) {
-		SpoolerTask task = getTaskById(openDirectory, id);
-		if (task == null) task = getTaskById(closedDirectory, id);
+		SpoolerTask task = getStorage(null).get(id);
 		if (task != null) {
 			return execute(task);
 		}
@@ -637,11 +764,19 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	}
 
 	public void setPersisDirectory(Resource persisDirectory) {
-		this._persisDirectory = persisDirectory;
+		synchronized (token) {
+			if (persisDirectory != null && persisDirectory.equals(_persisDirectory)) return;
+			this._persisDirectory = persisDirectory;
+			if (storage != null) {
+				storage.close();
+				storage = null;
+			}
+		}
 	}
 
 	public Resource getPersisDirectory(ConfigWeb config) {
 		if (_persisDirectory == null) {
+			if (config == null) config = ConfigWebUtil.toConfigWeb(ThreadLocalPageContext.getConfig());
 			_persisDirectory = config.getRemoteClientDirectory();
 		}
 		return _persisDirectory;
@@ -652,12 +787,3 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	}
 
 }
-
-class TaskFileFilter implements ResourceNameFilter {
-
-	@Override
-	public boolean accept(Resource parent, String name) {
-		return name != null && name.endsWith(".tsk");
-	}
-
-}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.spooler;
+
+import java.util.List;
+
+/**
+ * persistence of the spooler tasks with a execution plan
+ */
+interface SpoolerStorage {
+
+	/**
+	 * returned by {@link #getNextExecution(String)} when the storage cannot tell the next execution
+	 * without loading the task
+	 */
+	public static final long UNKNOWN = Long.MIN_VALUE;
+
+	/**
+	 * creates a new unique id for a task
+	 */
+	public String createId();
+
+	/**
+	 * stores the task, replaces a existing version of the same task (open or closed)
+	 */
+	public void store(SpoolerTask task);
+
+	/**
+	 * removes the task with the given id
+	 */
+	public void remove(String id);
+
+	/**
+	 * returns the task with the given id (open or closed) or null if there is no such task
+	 */
+	public SpoolerTask get(String id);
+
+	/**
+	 * returns the ids of all open tasks in the order they got added
+	 */
+	public String[] getOpenIds();
+
+	/**
+	 * returns the next execution of the open task with the given id or {@link #UNKNOWN}
+	 */
+	public long getNextExecution(String id);
+
+	/**
+	 * returns a page of the open or closed tasks
+	 * 
+	 * @param closed closed or open tasks
+	 * @param startrow first task to return (1 based)
+	 * @param maxrow max number of tasks to return
+	 */
+	public List<SpoolerTask> list(boolean closed, int startrow, int maxrow);
+
+	public int count(boolean closed);
+
+	/**
+	 * removes all tasks
+	 */
+	public void clear();
+
+	/**
+	 * releases all resources held by the storage
+	 */
+	public void close();
+}
@@ -133,6 +133,14 @@ public class MailSpoolerTask extends SpoolerTaskSupport {
 		return per + " (" + addr + ")";
 	}
 
+	/**
+	 * @return key of the server the mail is sent with, mails with the same key can be sent over the
+	 *         same connection, null if the mail cannot be batched
+	 */
+	public String getBatchKey() {
+		return client.getBatchKey(servers);
+	}
+
 	@Override
 	public Object execute(Config config) throws PageException {
 		try {
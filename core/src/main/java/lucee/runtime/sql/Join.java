@@ -0,0 +1,75 @@
+/**
+ *
+ * Copyright (c) 2014, the Railo Company Ltd. All rights reserved.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ **/
+package lucee.runtime.sql;
+
+
+import lucee.runtime.sql.exp.Column;
+import lucee.runtime.sql.exp.op.Operation;
+
+/**
+ * a table joined with "[inner] join" or "left [outer] join" to the tables before it
+ */
+public class Join {
+
+	public static final int TYPE_INNER = 1;
+	public static final int TYPE_LEFT = 2;
+
+	private final int type;
+	private final Column table;
+	private final Operation on;
+
+	public Join(int type, Column table, Operation on) {
+		this.type = type;
+		this.table = table;
+		this.on = on;
+	}
+
+	/**
+	 * @return the join type (TYPE_INNER or TYPE_LEFT)
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return the joined table
+	 */
+	public Column getTable() {
+		return table;
+	}
+
+	/**
+	 * @return the join condition
+	 */
+	public Operation getOn() {
+		return on;
+	}
+
+	/**
+	 * @return a deep copy of this join
+	 */
+	public Join copy() {
+		return new Join(type, table.copy(), on.copy());
+	}
+
+	@Override
+	public String toString() {
+		return (type == TYPE_LEFT ? "left join " : "inner join ") + table.toString(false) + " on " + on.toString(true);
+	}
+}
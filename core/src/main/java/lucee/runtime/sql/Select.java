@@ -37,6 +37,7 @@ public class Select {
 	private List selects = new ArrayList();
 	private Set<String> additionalColumns = new HashSet();
 	private List froms = new ArrayList();
+	private List joins = new ArrayList();
 	private Operation where;
 	private List groupbys = new ArrayList();
 	private Operation having;
@@ -57,16 +58,26 @@ public class Select {
 	}
 
 	public void expandAsterisks(Query source) {
+		List<Expression> columns = new ArrayList<Expression>();
+		Iterator<Key> it = source.keyIterator();
+		while (it.hasNext()) {
+			columns.add(new ColumnExpression(it.next().getString(), 0));
+		}
+		expandAsterisks(columns);
+	}
+
+	/**
+	 * replaces "*" in the select list with the given columns
+	 *
+	 * @param columns columns selected by "*"
+	 */
+	public void expandAsterisks(List<Expression> columns) {
 		Expression[] selectCols = getSelects();
 		this.selects.clear();
-		Iterator<Key> it;
-		Key k;
 		for (Expression col: selectCols) {
 			if (col.getAlias().equals("*")) {
-				it = source.keyIterator();
-				while (it.hasNext()) {
-					k = it.next();
-					addSelectExpression(new ColumnExpression(k.getString(), 0));
+				for (Expression c: columns) {
+					addSelectExpression(c);
 				}
 			}
 			else {
@@ -79,9 +90,16 @@ public class Select {
 
 	public void addFromExpression(Column exp) {
 		froms.add(exp);
+		joins.add(null);
 		exp.setIndex(froms.size());
 	}
 
+	public void addJoin(Join join) {
+		froms.add(join.getTable());
+		joins.add(join);
+		join.getTable().setIndex(froms.size());
+	}
+
 	public void setWhereExpression(Operation where) {
 		this.where = where;
 	}
@@ -118,6 +136,20 @@ public class Select {
 		return (Column[]) froms.toArray(new Column[froms.size()]);
 	}
 
+	/**
+	 * @return the joins, same length as the froms, null for tables listed with a comma
+	 */
+	public Join[] getJoins() {
+		return (Join[]) joins.toArray(new Join[joins.size()]);
+	}
+
+	/**
+	 * @return true if this select reads from more than one table
+	 */
+	public boolean hasJoins() {
+		return froms.size() > 1;
+	}
+
 	/**
 	 * @return the groupbys
 	 */
@@ -194,4 +226,40 @@ public class Select {
 		return top;
 	}
 
+	/**
+	 * creates a deep copy of this select, the copy can be executed independently of this select
+	 *
+	 * @return the copy
+	 */
+	public Select copy() {
+		Select copy = new Select();
+		for (Expression exp: getSelects()) {
+			copy.selects.add(exp.copy());
+		}
+		copy.additionalColumns = new HashSet<String>(additionalColumns);
+		Column[] arrFroms = getFroms();
+		Join[] arrJoins = getJoins();
+		for (int i = 0; i < arrFroms.length; i++) {
+			if (arrJoins[i] == null) {
+				copy.froms.add(arrFroms[i].copy());
+				copy.joins.add(null);
+			}
+			// the table of a join is also listed in the froms
+			else {
+				Join join = arrJoins[i].copy();
+				copy.froms.add(join.getTable());
+				copy.joins.add(join);
+			}
+		}
+		copy.where = where == null ? null : where.copy();
+		for (Expression exp: getGroupbys()) {
+			copy.groupbys.add(exp.copy());
+		}
+		copy.having = having == null ? null : having.copy();
+		copy.top = top == null ? null : top.copy();
+		copy.distinct = distinct;
+		copy.unionDistinct = unionDistinct;
+		return copy;
+	}
+
 }
\ No newline at end of file
@@ -222,43 +222,79 @@ public class SelectParser {
 	}
 
 	private void tableList(ParserString raw, Select select) throws SQLParserException {
-		Column column = null;
-		Expression exp = null;
 		do {
 			raw.removeSpace();
+			select.addFromExpression(table(raw));
+			raw.removeSpace();
+			joins(raw, select);
+		}
+		while (raw.forwardIfCurrent(','));
+
+	}
+
+	// { [INNER] JOIN | LEFT [OUTER] JOIN } tableName [AS] label ON Expression
+	private void joins(ParserString raw, Select select) throws SQLParserException {
+		int type;
+		while (true) {
+			if (raw.forwardIfCurrentAndNoWordNumberAfter("inner")) {
+				raw.removeSpace();
+				if (!raw.forwardIfCurrentAndNoWordNumberAfter("join")) throw new SQLParserException("missing join after inner (stop at:" + raw.getCurrent() + ")");
+				type = Join.TYPE_INNER;
+			}
+			else if (raw.forwardIfCurrentAndNoWordNumberAfter("left")) {
+				raw.removeSpace();
+				if (raw.forwardIfCurrentAndNoWordNumberAfter("outer")) raw.removeSpace();
+				if (!raw.forwardIfCurrentAndNoWordNumberAfter("join")) throw new SQLParserException("missing join after left (stop at:" + raw.getCurrent() + ")");
+				type = Join.TYPE_LEFT;
+			}
+			else if (raw.forwardIfCurrentAndNoWordNumberAfter("join")) {
+				type = Join.TYPE_INNER;
+			}
+			else return;
 
-			exp = column(raw);
-			if (!(exp instanceof Column)) throw new SQLParserException("invalid table definition");
-			column = (Column) exp;
 			raw.removeSpace();
-			if (raw.forwardIfCurrent("as ")) {
-				String alias = identifier(raw, new RefBooleanImpl(false));
-				if (alias == null) throw new SQLParserException("missing alias in select part");
-				column.setAlias(alias);
+			Column table = table(raw);
+			raw.removeSpace();
+			if (!raw.forwardIfCurrentAndNoWordNumberAfter("on")) throw new SQLParserException("missing on clause for join with [" + table.getFullName() + "]");
+			raw.removeSpace();
+			Expression exp = expression(raw);
+			if (!(exp instanceof Operation)) throw new SQLParserException("invalid on expression for join with [" + table.getFullName() + "]");
+			select.addJoin(new Join(type, table, (Operation) exp));
+			raw.removeSpace();
+		}
+	}
+
+	private Column table(ParserString raw) throws SQLParserException {
+		Expression exp = column(raw);
+		if (!(exp instanceof Column)) throw new SQLParserException("invalid table definition");
+		Column column = (Column) exp;
+		raw.removeSpace();
+		if (raw.forwardIfCurrent("as ")) {
+			String alias = identifier(raw, new RefBooleanImpl(false));
+			if (alias == null) throw new SQLParserException("missing alias in select part");
+			column.setAlias(alias);
+		}
+		else {
+			int start = raw.getPos();
+			RefBoolean hasBracked = new RefBooleanImpl(false);
+			String alias = identifier(raw, hasBracked);// TODO having usw
+			if (!hasBracked.toBooleanValue()) {
+				if (alias != null && isTableListKeyword(alias)) raw.setPos(start);
+				else if (alias != null) column.setAlias(alias);
 			}
 			else {
-				int start = raw.getPos();
-				RefBoolean hasBracked = new RefBooleanImpl(false);
-				String alias = identifier(raw, hasBracked);// TODO having usw
-				if (!hasBracked.toBooleanValue()) {
-					if ("where".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if ("group".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if ("having".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if ("union".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if ("order".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if ("limit".equalsIgnoreCase(alias)) raw.setPos(start);
-					else if (alias != null) column.setAlias(alias);
-				}
-				else {
-					if (alias != null) column.setAlias(alias);
-				}
-
+				if (alias != null) column.setAlias(alias);
 			}
-			select.addFromExpression(column);
-			raw.removeSpace();
+
 		}
-		while (raw.forwardIfCurrent(','));
+		return column;
+	}
 
+	private static boolean isTableListKeyword(String str) {
+		str = str.toLowerCase();
+		return "where".equals(str) || "group".equals(str) || "having".equals(str) || "union".equals(str) || "order".equals(str) || "limit".equals(str)
+				|| "join".equals(str) || "inner".equals(str) || "left".equals(str) || "right".equals(str) || "full".equals(str) || "cross".equals(str)
+				|| "natural".equals(str) || "on".equals(str);
 	}
 
 	// { (selectStatement) [AS] label | tableName [AS] label}
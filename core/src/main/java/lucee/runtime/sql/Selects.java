@@ -96,6 +96,24 @@ public class Selects {
 		return selects.toArray(new Select[selects.size()]);
 	}
 
+	/**
+	 * creates a deep copy of this statement. The execution modifies the statement (asterisks are
+	 * expanded, columns are bound to the source query ...), so a parsed statement that is reused has
+	 * to be copied before every execution.
+	 *
+	 * @return the copy
+	 */
+	public Selects copy() {
+		Selects copy = new Selects();
+		for (Expression exp: getOrderbys()) {
+			copy.orderbys.add(exp.copy());
+		}
+		for (Select select: getSelects()) {
+			copy.selects.add(select.copy());
+		}
+		return copy;
+	}
+
 	@Override
 
 	public String toString() {
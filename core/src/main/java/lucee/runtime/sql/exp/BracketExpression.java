@@ -39,4 +39,9 @@ public class BracketExpression extends ExpressionSupport {
 		return exp;
 	}
 
+	@Override
+	public BracketExpression copy() {
+		return copyTo(new BracketExpression(copyOf(exp)));
+	}
+
 }
\ No newline at end of file
@@ -44,4 +44,7 @@ public interface Column extends Expression {
 
 	public Object getValue(PageContext pc, Query qry, int row, Object defaultValue);
 
+	@Override
+	public Column copy();
+
 }
\ No newline at end of file
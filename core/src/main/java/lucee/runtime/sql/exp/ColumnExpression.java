@@ -65,6 +65,20 @@ public class ColumnExpression extends ExpressionSupport implements Column {
 		else column = (column + "." + sub);
 	}
 
+	/**
+	 * binds this expression to a other column, the table part is removed. Used to point columns of
+	 * joined tables to the columns of the query the join was materialized to.
+	 *
+	 * @param column new column name
+	 */
+	public void setColumnName(String column) {
+		this.table = null;
+		this.column = column;
+		this.columnKey = null;
+		this.columnAliasKey = null;
+		this.col = null;
+	}
+
 	@Override
 	public String toString(boolean noAlias) {
 		if (hasAlias() && !noAlias) return getFullName() + " as " + getAlias();
@@ -185,4 +199,13 @@ public class ColumnExpression extends ExpressionSupport implements Column {
 		col = null;
 	}
 
+	@Override
+	public ColumnExpression copy() {
+		ColumnExpression copy = copyTo(new ColumnExpression(column, columnIndex, cacheColumn));
+		copy.table = table;
+		copy.hasBracked = hasBracked;
+		copy.isParam = isParam;
+		return copy;
+	}
+
 }
\ No newline at end of file
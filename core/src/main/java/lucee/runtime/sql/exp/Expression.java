@@ -42,4 +42,7 @@ public interface Expression {
 	public void setCacheColumn(boolean cacheColumn);
 
 	public boolean isDirectionBackward();
+
+	// Recursively copies the expression and any of its composed expressions, without any cached data
+	public Expression copy();
 }
\ No newline at end of file
@@ -75,4 +75,25 @@ public abstract class ExpressionSupport implements Expression {
 	@Override
 	public void setCacheColumn(boolean cacheColumn) {
 	}
+
+	/**
+	 * copies the index, alias and direction of this expression to the given copy
+	 *
+	 * @param copy copy of this expression
+	 * @return the given copy
+	 */
+	protected <T extends ExpressionSupport> T copyTo(T copy) {
+		ExpressionSupport es = copy;
+		es.index = index;
+		es.alias = alias;
+		es.directionBackward = directionBackward;
+		return copy;
+	}
+
+	/**
+	 * copies the given expression, null safe
+	 */
+	protected static Expression copyOf(Expression exp) {
+		return exp == null ? null : exp.copy();
+	}
 }
\ No newline at end of file
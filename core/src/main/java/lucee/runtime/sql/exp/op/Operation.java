@@ -54,4 +54,7 @@ public interface Operation extends Expression {
 
 	public boolean hasAggregate();
 
+	@Override
+	public Operation copy();
+
 }
\ No newline at end of file
@@ -70,6 +70,11 @@ public class Operation1 extends ExpressionSupport implements Operation {
 		}
 	}
 
+	@Override
+	public Operation1 copy() {
+		return copyTo(new Operation1(copyOf(exp), operator));
+	}
+
 	@Override
 	public boolean hasAggregate() {
 		if (exp instanceof OperationAggregate) {
@@ -135,6 +135,11 @@ public class Operation2 extends ExpressionSupport implements Operation {
 		}
 	}
 
+	@Override
+	public Operation2 copy() {
+		return copyTo(new Operation2(copyOf(left), copyOf(right), operator));
+	}
+
 	@Override
 	public boolean hasAggregate() {
 		if (left instanceof OperationAggregate) {
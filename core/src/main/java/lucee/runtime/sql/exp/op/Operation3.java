@@ -105,6 +105,11 @@ public class Operation3 extends ExpressionSupport implements Operation {
 		}
 	}
 
+	@Override
+	public Operation3 copy() {
+		return copyTo(new Operation3(copyOf(exp), copyOf(left), copyOf(right), operator));
+	}
+
 	@Override
 	public boolean hasAggregate() {
 		if (left instanceof OperationAggregate) {
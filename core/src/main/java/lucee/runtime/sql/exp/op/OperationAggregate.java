@@ -26,4 +26,9 @@ public class OperationAggregate extends OperationN {
 		super(operator, operants);
 	}
 
+	@Override
+	public OperationAggregate copy() {
+		return copyTo(new OperationAggregate(getOperator(), copyOperants()));
+	}
+
 }
\ No newline at end of file
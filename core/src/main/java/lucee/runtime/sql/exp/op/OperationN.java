@@ -18,6 +18,7 @@
  **/
 package lucee.runtime.sql.exp.op;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 
@@ -87,6 +88,20 @@ public class OperationN extends ExpressionSupport implements Operation {
 		}
 	}
 
+	@Override
+	public OperationN copy() {
+		return copyTo(new OperationN(operator, copyOperants()));
+	}
+
+	protected List copyOperants() {
+		List copy = new ArrayList(operants.size());
+		Iterator it = operants.iterator();
+		while (it.hasNext()) {
+			copy.add(((Expression) it.next()).copy());
+		}
+		return copy;
+	}
+
 	@Override
 	public boolean hasAggregate() {
 		Iterator it = operants.iterator();
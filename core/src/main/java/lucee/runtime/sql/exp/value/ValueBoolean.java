@@ -35,6 +35,11 @@ public class ValueBoolean extends ValueSupport implements Literal {
 		return getString() + " as " + getAlias();
 	}
 
+	@Override
+	public ValueBoolean copy() {
+		return copyTo(new ValueBoolean(value));
+	}
+
 	@Override
 	public Object getValue() {
 		return value ? Boolean.TRUE : Boolean.FALSE;
@@ -32,6 +32,11 @@ public class ValueDate extends ValueSupport implements Literal {
 		this.value = value;
 	}
 
+	private ValueDate(DateTime value, String strValue) {
+		super(strValue);
+		this.value = value;
+	}
+
 	public ValueDate(String strValue) throws PageException {
 		super(strValue);
 		this.value = Caster.toDate(strValue, false, null);
@@ -43,6 +48,11 @@ public class ValueDate extends ValueSupport implements Literal {
 		return getString() + " as " + getAlias();
 	}
 
+	@Override
+	public ValueDate copy() {
+		return copyTo(new ValueDate(value, getString()));
+	}
+
 	@Override
 	public Object getValue() {
 		return value;
@@ -32,6 +32,11 @@ public class ValueNull extends ValueSupport implements Literal {
 		return getString() + " as " + getAlias();
 	}
 
+	@Override
+	public ValueNull copy() {
+		return copyTo(new ValueNull());
+	}
+
 	@Override
 	public Object getValue() {
 		return null;
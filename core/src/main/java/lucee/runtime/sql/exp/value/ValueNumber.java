@@ -46,6 +46,11 @@ public class ValueNumber extends ValueSupport implements Literal {
 		return getString() + " as " + getAlias();
 	}
 
+	@Override
+	public ValueNumber copy() {
+		return copyTo(new ValueNumber(value, getString()));
+	}
+
 	@Override
 	public Object getValue() {
 		return Caster.toDouble(value);
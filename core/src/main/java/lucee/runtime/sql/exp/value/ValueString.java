@@ -37,6 +37,11 @@ public class ValueString extends ValueSupport implements Literal {
 		return toString(true) + " as " + getAlias();
 	}
 
+	@Override
+	public ValueString copy() {
+		return copyTo(new ValueString(getString()));
+	}
+
 	@Override
 	public Object getValue() {
 		return getString();
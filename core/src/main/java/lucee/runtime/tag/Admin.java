@@ -3136,6 +3136,7 @@ public final class Admin extends TagImpl implements DynamicAttributes {
 		String str = "once";
 		if (it == ConfigPro.INSPECT_ALWAYS) str = "always";
 		else if (it == ConfigPro.INSPECT_NEVER) str = "never";
+		else if (it == ConfigPro.INSPECT_WATCH) str = "watch";
 		sct.set("inspectTemplate", str);
 		sct.set("typeChecking", config.getTypeChecking());
 
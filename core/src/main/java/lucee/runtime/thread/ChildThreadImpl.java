@@ -31,6 +31,7 @@ import lucee.commons.io.DevNullOutputStream;
 import lucee.commons.io.log.Log;
 import lucee.commons.lang.ExceptionUtil;
 import lucee.commons.lang.Pair;
+import lucee.commons.management.ThreadUsage;
 import lucee.runtime.Page;
 import lucee.runtime.PageContext;
 import lucee.runtime.PageContextImpl;
@@ -69,6 +70,9 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 
 	private int threadIndex;
 	private PageContextImpl pc = null;
+	// request that started the thread
+	private PageContextImpl root;
+	private int rootRequestId;
 	// PageContextImpl pc =null;
 	private final String tagName;
 	private long start;
@@ -123,6 +127,8 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 				catch (ConcurrentModificationException e) {// MUST search for:hhlhgiug
 					this.pc = ThreadUtil.clonePageContext(parent, output, false, false, true);
 				}
+				root = (PageContextImpl) this.pc.getRootPageContext();
+				if (root != null) rootRequestId = root.getRequestId();
 				// tag names
 				this.pc.setTagName(tagName);
 				this.pc.addParentTag(parent.getTagName());
@@ -154,6 +160,7 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		PageContextImpl pc = null;
 		DebugEntryTemplate debugEntry = null;
 		long time = System.nanoTime();
+		ThreadUsage usage = ThreadUsage.start();
 		try {
 			// daemon
 			if (this.pc != null) {
@@ -245,6 +252,12 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		finally {
 			if (debugEntry != null) debugEntry.updateExeTime(System.nanoTime() - time);
 			pc.setEndTimeNS(System.nanoTime());
+			// the usage of the thread is added to the request that started the thread, as long as that request is
+			// still running
+			if (usage != null) {
+				usage.end();
+				if (root != null && root.getRequestId() == rootRequestId) root.addUsage(usage.getCpuTime(), usage.getAllocatedBytes());
+			}
 			endTime = System.currentTimeMillis();
 			pc.getConfig().getFactory().releaseLuceePageContext(pc, true);
 			pc = null;
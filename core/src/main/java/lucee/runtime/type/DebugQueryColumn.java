@@ -23,6 +23,7 @@ import java.util.List;
 
 import lucee.runtime.exp.DatabaseException;
 import lucee.runtime.exp.DeprecatedException;
+import lucee.runtime.type.query.QueryColumnData;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -39,7 +40,7 @@ public final class DebugQueryColumn extends QueryColumnImpl implements QueryColu
 		return used;
 	}
 
-	public DebugQueryColumn(Object[] data, Key key, QueryImpl query, AtomicInteger size, int type, boolean typeChecked) {
+	public DebugQueryColumn(QueryColumnData data, Key key, QueryImpl query, AtomicInteger size, int type, boolean typeChecked) {
 		this.data = data;
 		this.key = key;
 		this.query = query;
@@ -39,7 +39,6 @@ import lucee.runtime.exp.ExpressionException;
 import lucee.runtime.exp.PageException;
 import lucee.runtime.exp.PageRuntimeException;
 import lucee.runtime.op.Caster;
-import lucee.runtime.op.Duplicator;
 import lucee.runtime.op.ThreadLocalDuplication;
 import lucee.runtime.op.date.DateCaster;
 import lucee.runtime.reflection.Reflector;
@@ -48,6 +47,8 @@ import lucee.runtime.type.dt.DateTime;
 import lucee.runtime.type.it.EntryIterator;
 import lucee.runtime.type.it.KeyIterator;
 import lucee.runtime.type.it.StringIterator;
+import lucee.runtime.type.query.ObjectColumnData;
+import lucee.runtime.type.query.QueryColumnData;
 import lucee.runtime.type.scope.Undefined;
 import lucee.runtime.type.util.CollectionUtil;
 import lucee.runtime.type.util.QueryUtil;
@@ -65,7 +66,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 
 	protected int type;
 	protected AtomicInteger size = new AtomicInteger( 0 );
-	protected Object[] data;
+	protected QueryColumnData data;
 
 	protected boolean typeChecked = false;
 	protected QueryImpl query;
@@ -80,7 +81,24 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	 * @param type
 	 */
 	public QueryColumnImpl(QueryImpl query, Collection.Key key, int type) {
-		this.data = new Object[CAPACITY];
+		this.data = new ObjectColumnData(CAPACITY);
+		this.type = type;
+		this.key = key;
+		this.query = query;
+	}
+
+	/**
+	 * constructor with type, used when filling a query from a datasource. With "typedStorage" the
+	 * values are stored in a primitive array matching the type (when such a storage exists for the
+	 * type) and boxed when read.
+	 *
+	 * @param query
+	 * @param key
+	 * @param type type as (java.sql.Types.XYZ) int
+	 * @param typedStorage
+	 */
+	public QueryColumnImpl(QueryImpl query, Collection.Key key, int type, boolean typedStorage) {
+		this.data = typedStorage ? QueryColumnData.getInstance(type, CAPACITY) : new ObjectColumnData(CAPACITY);
 		this.type = type;
 		this.key = key;
 		this.query = query;
@@ -94,20 +112,33 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	 * @param type
 	 */
 	public QueryColumnImpl(QueryImpl query, Collection.Key key, Array array, int type) {
-		data = array.toArray();
+		data = new ObjectColumnData(array.toArray());
 		size = new AtomicInteger( array.size() );
 		this.type = type;
 		this.query = query;
 		this.key = key;
 	}
 
+	/**
+	 * @param query
+	 * @param values values of the column, used as storage of the column without copying
+	 * @param type type as (java.sql.Types.XYZ) int
+	 */
+	public QueryColumnImpl(QueryImpl query, Collection.Key key, Object[] values, int type) {
+		data = new ObjectColumnData(values);
+		size = new AtomicInteger(values.length);
+		this.type = type;
+		this.query = query;
+		this.key = key;
+	}
+
 	/**
 	 * @param query
 	 * @param type type as (java.sql.Types.XYZ) int
 	 * @param size
 	 */
 	public QueryColumnImpl(QueryImpl query, Collection.Key key, int type, int size) {
-		this.data = new Object[size];
+		this.data = new ObjectColumnData(size);
 		this.type = type;
 		this.size = new AtomicInteger( size );
 		this.query = query;
@@ -181,7 +212,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 		query.disableIndex();
 		synchronized (sync) {
 			resetType();
-			data = new Object[CAPACITY];
+			data = new ObjectColumnData(CAPACITY);
 			size.set( 0 );
 		}
 	}
@@ -260,7 +291,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	 */
 	public Object touch(int row) {
 		if (row < 1 || row > size()) return NullSupportHelper.full() ? null : "";
-		Object o = data[row - 1];
+		Object o = data.get(row - 1);
 		if (o != null) return o;
 		return setEL(row, new StructImpl());
 	}
@@ -304,7 +335,8 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	@Override
 	public Object get(int row, Object emptyValue) {
 		if (row < 1 || row > size()) return emptyValue;
-		return data[row - 1] == null ? emptyValue : data[row - 1];
+		Object o = data.get(row - 1);
+		return o == null ? emptyValue : o;
 	}
 
 	@Override
@@ -339,7 +371,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 		}
 		if (!trustType) value = reDefineType(value);
 		synchronized (sync) {
-			data[row - 1] = value;
+			data = data.set(row - 1, value);
 		}
 		return value;
 	}
@@ -365,7 +397,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 		if (row < 1 || row > size()) return value;
 		synchronized (sync) {
 			value = reDefineType(value);
-			data[row - 1] = value;
+			data = data.set(row - 1, value);
 		}
 		return value;
 	}
@@ -374,7 +406,12 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	public void add(Object value) {
 		query.disableIndex();
 		growTo(size()+1);
-		data[size.incrementAndGet()-1] = value;
+		int index = size.incrementAndGet() - 1;
+		// like setEL, a concurrent set could convert the storage while we write to the old one
+		synchronized (sync) {
+			// the storage is replaced when it was not able to hold the value and was converted
+			data = data.set(index, value);
+		}
 	}
 
 	@Override
@@ -399,10 +436,8 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 		// query.disconnectCache();
 		if (row < 1 || row > size()) throw new DatabaseException("invalid row number [" + row + "]", "valid rows goes from 1 to " + size(), null, null);
 		synchronized (sync) {
-			Object o = data[row - 1];
-			for (int i = row; i < size(); i++) {
-				data[i - 1] = data[i];
-			}
+			Object o = data.get(row - 1);
+			data.remove(row - 1, size());
 			size.decrementAndGet();
 			if (NullSupportHelper.full()) return o;
 			return o == null ? "" : o;
@@ -428,27 +463,23 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	private void growTo(int row) {
 		// Require an extra buffer in case another thread is also adding a row to the query.
 		// We don't want to single thread the check, but we do want to syncronize if actually growing
-		if( data.length >= row+CAPACITY ) {
+		if( data.capacity() >= row+CAPACITY ) {
 			return;
 		}
 
 		synchronized (sync) {
 			// Double check inside the lock in case the column already grew since we last checked
-			if( data.length >= row+CAPACITY ) {
+			if( data.capacity() >= row+CAPACITY ) {
 				return;
 			}
 			// Double the current size regardless of how big we were asked to grow
-			int newSize = (data.length + 1) * 2;
+			int newSize = (data.capacity() + 1) * 2;
 			// Keep doubling if neccessary until we're over what was asked
 			while (newSize <= row) {
 				newSize *= 2;
 			}
-			// Copy data over to new array
-			Object[] newData = new Object[newSize];
-			for (int i = 0; i < data.length; i++) {
-				newData[i] = data[i];
-			}
-			data = newData;
+			// Copy data over to new storage
+			data = data.grow(newSize);
 		}
 	}
 
@@ -627,14 +658,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 			trg.key = this.key;
 			if (trg.query != null) trg.query.disableIndex();
 
-			// we first get data local, because length of the object cannot be changed, the safes us
-			// from
-			// modifications from outside
-			Object[] data = this.data;
-			trg.data = new Object[data.length];
-			for (int i = 0; i < data.length; i++) {
-				trg.data[i] = deepCopy ? Duplicator.duplicate(data[i], true) : data[i];
-			}
+			trg.data = this.data.duplicate(deepCopy);
 		}
 		finally {
 			if (!inside) ThreadLocalDuplication.reset();
@@ -683,7 +707,8 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 
 	@Override
 	public Iterator<Object> valueIterator() {
-		return new ArrayIterator(data, 0, size());
+		int size = size();
+		return new ArrayIterator(data.values(size), 0, size);
 	}
 
 	@Override
@@ -760,7 +785,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	public int indexOf(Object o) {
 		for (int i = 0; i < size(); i++) {
 			try {
-				if (lucee.runtime.op.OpUtil.compare(ThreadLocalPageContext.get(), o, data[i]) == 0) return i;
+				if (lucee.runtime.op.OpUtil.compare(ThreadLocalPageContext.get(), o, data.get(i)) == 0) return i;
 			}
 			catch (PageException e) {
 			}
@@ -771,7 +796,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	public int lastIndexOf(Object o) {
 		for (int i = size() - 1; i >= 0; i--) {
 			try {
-				if (lucee.runtime.op.OpUtil.compare(ThreadLocalPageContext.get(), o, data[i]) == 0) return i;
+				if (lucee.runtime.op.OpUtil.compare(ThreadLocalPageContext.get(), o, data.get(i)) == 0) return i;
 			}
 			catch (PageException e) {
 			}
@@ -796,7 +821,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	public List<Object> subList(int fromIndex, int toIndex) {
 		ArrayList<Object> list = new ArrayList<Object>();
 		for (int i = fromIndex; i < toIndex; i++) {
-			list.add(data[i]);
+			list.add(data.get(i));
 		}
 		return list;
 	}
@@ -807,7 +832,8 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 	}
 
 	public Object[] toArray(Object[] trg) {
-		System.arraycopy(data, 0, trg, 0, data.length > trg.length ? trg.length : data.length);
+		int len = data.capacity() > trg.length ? trg.length : data.capacity();
+		System.arraycopy(data.values(len), 0, trg, 0, len);
 		return trg;
 	}
 
@@ -892,11 +918,7 @@ public class QueryColumnImpl implements QueryColumnPro, Objects {
 
 	protected void sort(int[] rows) throws PageException {
 		query.disableIndex();
-		Object[] tmp = new Object[data.length];
-		for (int i = 0; i < size(); i++) {
-			tmp[i] = data[rows[i] - 1];
-		}
-		data = tmp;
+		data = data.sort(rows, size());
 	}
 
 	@Override
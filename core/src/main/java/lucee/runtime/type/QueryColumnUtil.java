@@ -226,26 +226,26 @@ public final class QueryColumnUtil implements Serializable {
 		if ((column.type == Types.OTHER) && !column.typeChecked) {
 			column.typeChecked = true;
 			if (column.size() > 0) {
-				checkOther(column, column.data[0]);
+				checkOther(column, column.data.get(0));
 
 				// get Type
 				for (int i = 1; i < column.size(); i++) {
 					switch (column.type) {
 					case Types.NULL:
-						checkOther(column, column.data[i]);
+						checkOther(column, column.data.get(i));
 						break;
 					case Types.TIMESTAMP:
-						checkDate(column, column.data[i]);
+						checkDate(column, column.data.get(i));
 						break;
 					// case Types.DATE:checkDate(column.data[i]);break;
 					case Types.BOOLEAN:
-						checkBoolean(column, column.data[i]);
+						checkBoolean(column, column.data.get(i));
 						break;
 					case Types.DOUBLE:
-						checkDouble(column, column.data[i]);
+						checkDouble(column, column.data.get(i));
 						break;
 					case Types.VARCHAR:
-						checkBasic(column, column.data[i]);
+						checkBasic(column, column.data.get(i));
 						break;
 					default:
 						break;
@@ -663,7 +663,7 @@ public class QueryImpl implements Query, Objects, QueryResult {
 			for (int i = 0; i < usedColumns.length; i++) {
 				columnNames[i] = tmpColumnNames[usedColumns[i]];
 				type = meta.getColumnType(usedColumns[i] + 1);
-				if (qry != null) columns[i] = new QueryColumnImpl(qry, columnNames[i], type);
+				if (qry != null) columns[i] = new QueryColumnImpl(qry, columnNames[i], type, true);
 				casts[i] = QueryUtil.toCast(result, type);
 			}
 
@@ -1487,6 +1487,33 @@ public class QueryImpl implements Query, Objects, QueryResult {
 		return true;
 	}
 
+	/**
+	 * adds a new column, the given array is used as storage of the column (no copy is made), so it
+	 * must not be used by the caller afterwards.
+	 *
+	 * @param columnName name of the new column
+	 * @param values values of the column, length must match the recordcount
+	 * @param type type as (java.sql.Types.XYZ) int
+	 * @return true
+	 * @throws DatabaseException
+	 */
+	public synchronized boolean addColumn(Collection.Key columnName, Object[] values, int type) throws DatabaseException {
+		if (getIndexFromKey(columnName) != -1) throw new DatabaseException("Column name [" + columnName.getString() + "] already exists", null, sql, null);
+		if (values.length != getRecordcount()) throw new DatabaseException("invalid column for query, the column must have the same size as the query",
+				"column:" + values.length + "<>recordcount:" + getRecordcount(), sql, null);
+
+		QueryColumnImpl[] newColumns = new QueryColumnImpl[columns.length + 1];
+		Collection.Key[] newColumnNames = new Collection.Key[columns.length + 1];
+		System.arraycopy(columns, 0, newColumns, 0, columns.length);
+		System.arraycopy(columnNames, 0, newColumnNames, 0, columns.length);
+		newColumns[columns.length] = new QueryColumnImpl(this, columnName, values, type);
+		newColumnNames[columns.length] = columnName;
+		columns = newColumns;
+		columnNames = newColumnNames;
+		columncount++;
+		return true;
+	}
+
 	/*
 	 * * if this query is still connected with cache (same query also in cache) it will disconnetd from
 	 * cache (clone object and add clone to cache)
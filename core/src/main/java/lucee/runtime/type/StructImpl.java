@@ -92,6 +92,8 @@ public class StructImpl extends StructSupport {
 		else if (type == TYPE_SOFT) map = Collections.synchronizedMap(new ReferenceMap<Collection.Key, Object>(HARD, SOFT, initialCapacity, 0.75f));
 		else if (type == TYPE_LINKED) map = Collections.synchronizedMap(new LinkedHashMap<Collection.Key, Object>(initialCapacity));
 		else if (type == TYPE_LINKED_NOT_SYNC) map = new LinkedHashMap<Collection.Key, Object>(initialCapacity);
+		// most structs only contain a few keys, so we start with a compact map that grows if necessary
+		else if (initialCapacity <= DEFAULT_INITIAL_CAPACITY) map = MapFactory.getCompactConcurrentMap(initialCapacity);
 		else map = MapFactory.getConcurrentMap(initialCapacity);
 		this.type = type;
 	}
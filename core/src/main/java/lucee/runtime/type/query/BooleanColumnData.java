@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import java.util.BitSet;
+
+/**
+ * storage for a column only containing Boolean values, the values are stored in a bit set
+ */
+public final class BooleanColumnData extends PrimitiveColumnData {
+
+	private static final long serialVersionUID = 8353405969307930409L;
+
+	private BitSet data;
+	private final int capacity;
+
+	public BooleanColumnData(int capacity) {
+		super(capacity);
+		this.data = new BitSet(capacity);
+		this.capacity = capacity;
+	}
+
+	@Override
+	protected boolean accept(Object value) {
+		return value.getClass() == Boolean.class;
+	}
+
+	@Override
+	protected void store(int index, Object value) {
+		data.set(index, ((Boolean) value).booleanValue());
+	}
+
+	@Override
+	protected Object box(int index) {
+		return data.get(index) ? Boolean.TRUE : Boolean.FALSE;
+	}
+
+	@Override
+	protected PrimitiveColumnData newInstance(int capacity) {
+		return new BooleanColumnData(capacity);
+	}
+
+	@Override
+	protected void copy(int from, PrimitiveColumnData trg, int to, int len) {
+		BitSet t = ((BooleanColumnData) trg).data;
+		// ascending order, so moving values down within the same set is safe
+		for (int i = 0; i < len; i++) {
+			t.set(to + i, data.get(from + i));
+		}
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import lucee.runtime.type.dt.DateTimeImpl;
+
+/**
+ * storage for a column only containing date/time values, the values are stored as milliseconds.
+ * The date objects are created on the first read of a cell and reused for further reads.
+ */
+public final class DateTimeColumnData extends PrimitiveColumnData {
+
+	private static final long serialVersionUID = -1290787014929165226L;
+
+	private long[] data;
+	private transient DateTimeImpl[] boxed;
+
+	public DateTimeColumnData(int capacity) {
+		super(capacity);
+		this.data = new long[capacity];
+	}
+
+	@Override
+	protected boolean accept(Object value) {
+		return value.getClass() == DateTimeImpl.class;
+	}
+
+	@Override
+	protected void store(int index, Object value) {
+		data[index] = ((DateTimeImpl) value).getTime();
+	}
+
+	@Override
+	protected Object box(int index) {
+		DateTimeImpl[] b = boxed;
+		if (b == null) boxed = b = new DateTimeImpl[data.length];
+		DateTimeImpl dt = b[index];
+		// the cell was changed, moved or the returned object was modified in the meantime
+		if (dt == null || dt.getTime() != data[index]) b[index] = dt = new DateTimeImpl(data[index], false);
+		return dt;
+	}
+
+	@Override
+	protected PrimitiveColumnData newInstance(int capacity) {
+		return new DateTimeColumnData(capacity);
+	}
+
+	@Override
+	protected void copy(int from, PrimitiveColumnData trg, int to, int len) {
+		System.arraycopy(data, from, ((DateTimeColumnData) trg).data, to, len);
+	}
+
+	@Override
+	public int capacity() {
+		return data.length;
+	}
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+/**
+ * storage for a column only containing Double values
+ */
+public final class DoubleColumnData extends PrimitiveColumnData {
+
+	private static final long serialVersionUID = -5010637964377458484L;
+
+	private double[] data;
+
+	public DoubleColumnData(int capacity) {
+		super(capacity);
+		this.data = new double[capacity];
+	}
+
+	@Override
+	protected boolean accept(Object value) {
+		return value.getClass() == Double.class;
+	}
+
+	@Override
+	protected void store(int index, Object value) {
+		data[index] = ((Double) value).doubleValue();
+	}
+
+	@Override
+	protected Object box(int index) {
+		return Double.valueOf(data[index]);
+	}
+
+	@Override
+	protected PrimitiveColumnData newInstance(int capacity) {
+		return new DoubleColumnData(capacity);
+	}
+
+	@Override
+	protected void copy(int from, PrimitiveColumnData trg, int to, int len) {
+		System.arraycopy(data, from, ((DoubleColumnData) trg).data, to, len);
+	}
+
+	@Override
+	public int capacity() {
+		return data.length;
+	}
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import lucee.runtime.op.Duplicator;
+
+/**
+ * storage for values of any type
+ */
+public final class ObjectColumnData extends QueryColumnData {
+
+	private static final long serialVersionUID = 6367094129466853052L;
+
+	private Object[] data;
+
+	public ObjectColumnData(int capacity) {
+		this.data = new Object[capacity];
+	}
+
+	public ObjectColumnData(Object[] data) {
+		this.data = data;
+	}
+
+	@Override
+	public Object get(int index) {
+		return data[index];
+	}
+
+	@Override
+	public QueryColumnData set(int index, Object value) {
+		data[index] = value;
+		return this;
+	}
+
+	@Override
+	public int capacity() {
+		return data.length;
+	}
+
+	@Override
+	public QueryColumnData grow(int capacity) {
+		Object[] newData = new Object[capacity];
+		System.arraycopy(data, 0, newData, 0, data.length);
+		return new ObjectColumnData(newData);
+	}
+
+	@Override
+	public QueryColumnData duplicate(boolean deepCopy) {
+		// we first get data local, because length of the object cannot be changed, the safes us from
+		// modifications from outside
+		Object[] data = this.data;
+		Object[] newData = new Object[data.length];
+		for (int i = 0; i < data.length; i++) {
+			newData[i] = deepCopy ? Duplicator.duplicate(data[i], true) : data[i];
+		}
+		return new ObjectColumnData(newData);
+	}
+
+	@Override
+	public void remove(int index, int size) {
+		for (int i = index + 1; i < size; i++) {
+			data[i - 1] = data[i];
+		}
+	}
+
+	@Override
+	public QueryColumnData sort(int[] rows, int size) {
+		Object[] tmp = new Object[data.length];
+		for (int i = 0; i < size; i++) {
+			tmp[i] = data[rows[i] - 1];
+		}
+		return new ObjectColumnData(tmp);
+	}
+
+	@Override
+	public Object[] values(int size) {
+		return data;
+	}
+}
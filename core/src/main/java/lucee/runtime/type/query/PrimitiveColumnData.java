@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import java.util.BitSet;
+
+/**
+ * base class for storages that hold the values in a primitive array, a bit set keeps track of the
+ * cells containing a value.
+ */
+public abstract class PrimitiveColumnData extends QueryColumnData {
+
+	private static final long serialVersionUID = 2855420366669620807L;
+
+	protected BitSet exists;
+
+	protected PrimitiveColumnData(int capacity) {
+		this.exists = new BitSet(capacity);
+	}
+
+	/**
+	 * @param value value not null
+	 * @return true if the value can be stored without loosing any information
+	 */
+	protected abstract boolean accept(Object value);
+
+	/**
+	 * stores a value accepted by {@link #accept(Object)}
+	 */
+	protected abstract void store(int index, Object value);
+
+	/**
+	 * returns the boxed value of a existing cell
+	 */
+	protected abstract Object box(int index);
+
+	/**
+	 * creates a empty storage of the same kind
+	 */
+	protected abstract PrimitiveColumnData newInstance(int capacity);
+
+	/**
+	 * copies the values (not the existence) of the given range to the target storage of the same kind
+	 */
+	protected abstract void copy(int from, PrimitiveColumnData trg, int to, int len);
+
+	@Override
+	public final Object get(int index) {
+		if (!exists.get(index)) return null;
+		return box(index);
+	}
+
+	@Override
+	public final QueryColumnData set(int index, Object value) {
+		if (value == null) {
+			exists.clear(index);
+			return this;
+		}
+		if (!accept(value)) return toObjectColumnData().set(index, value);
+		store(index, value);
+		exists.set(index);
+		return this;
+	}
+
+	@Override
+	public QueryColumnData grow(int capacity) {
+		PrimitiveColumnData trg = newInstance(capacity);
+		copy(0, trg, 0, capacity());
+		trg.exists = (BitSet) exists.clone();
+		return trg;
+	}
+
+	@Override
+	public QueryColumnData duplicate(boolean deepCopy) {
+		// values are always boxed into new objects, so there is no difference for a deep copy
+		return grow(capacity());
+	}
+
+	@Override
+	public void remove(int index, int size) {
+		copy(index + 1, this, index, size - index - 1);
+		for (int i = index + 1; i < size; i++) {
+			exists.set(i - 1, exists.get(i));
+		}
+		exists.clear(size - 1);
+	}
+
+	@Override
+	public QueryColumnData sort(int[] rows, int size) {
+		PrimitiveColumnData trg = newInstance(capacity());
+		int src;
+		for (int i = 0; i < size; i++) {
+			src = rows[i] - 1;
+			if (exists.get(src)) {
+				copy(src, trg, i, 1);
+				trg.exists.set(i);
+			}
+		}
+		return trg;
+	}
+
+	private ObjectColumnData toObjectColumnData() {
+		ObjectColumnData data = new ObjectColumnData(capacity());
+		for (int i = exists.nextSetBit(0); i >= 0; i = exists.nextSetBit(i + 1)) {
+			data.set(i, box(i));
+		}
+		return data;
+	}
+}
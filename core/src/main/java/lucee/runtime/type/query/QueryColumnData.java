@@ -0,0 +1,131 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import java.io.Serializable;
+import java.sql.Types;
+
+/**
+ * storage of the values of a query column. Empty cells are returned as null. Beside the generic
+ * {@link ObjectColumnData} there are implementations storing the values of typed columns coming
+ * from a datasource in primitive arrays, these values are only boxed when read. When such a column
+ * gets a value it cannot store, it converts itself to a {@link ObjectColumnData}.
+ */
+public abstract class QueryColumnData implements Serializable {
+
+	private static final long serialVersionUID = -4000412512578519396L;
+
+	/**
+	 * returns the value at the given index
+	 * 
+	 * @param index index (starting with 0)
+	 * @return value or null if the cell is empty
+	 */
+	public abstract Object get(int index);
+
+	/**
+	 * set a value at the given index
+	 * 
+	 * @param index index (starting with 0)
+	 * @param value value to set, can be null
+	 * @return the storage containing the value, this is not the same instance in case this storage
+	 *         cannot hold the given value
+	 */
+	public abstract QueryColumnData set(int index, Object value);
+
+	/**
+	 * @return number of cells this storage can hold
+	 */
+	public abstract int capacity();
+
+	/**
+	 * returns a new storage of the same kind with the given capacity containing the values of this
+	 * storage
+	 * 
+	 * @param capacity new capacity, cannot be smaller than the current capacity
+	 * @return new storage
+	 */
+	public abstract QueryColumnData grow(int capacity);
+
+	public abstract QueryColumnData duplicate(boolean deepCopy);
+
+	/**
+	 * removes the value at the given index and moves all following values one index down
+	 * 
+	 * @param index index to remove
+	 * @param size number of cells used
+	 */
+	public abstract void remove(int index, int size);
+
+	/**
+	 * returns a new storage with the values in the given order
+	 * 
+	 * @param rows row numbers (starting with 1) in the new order
+	 * @param size number of cells used
+	 * @return new storage
+	 */
+	public abstract QueryColumnData sort(int[] rows, int size);
+
+	/**
+	 * returns the values as array, the returned array can be backed by the storage and can be larger
+	 * than the given size, so it should not be modified.
+	 * 
+	 * @param size number of values needed
+	 * @return values
+	 */
+	public Object[] values(int size) {
+		Object[] arr = new Object[size];
+		for (int i = 0; i < size; i++) {
+			arr[i] = get(i);
+		}
+		return arr;
+	}
+
+	/**
+	 * returns a storage fitting the given sql type
+	 * 
+	 * @param sqlType type as (java.sql.Types.XYZ) int
+	 * @param capacity initial capacity
+	 * @return storage
+	 */
+	public static QueryColumnData getInstance(int sqlType, int capacity) {
+		switch (sqlType) {
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.BIT:
+			return new DoubleColumnData(capacity);
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return new IntColumnData(capacity);
+		case Types.BOOLEAN:
+			return new BooleanColumnData(capacity);
+		case Types.DATE:
+		case Types.TIMESTAMP:
+			return new DateTimeColumnData(capacity);
+		case Types.CHAR:
+		case Types.VARCHAR:
+		case Types.NCHAR:
+		case Types.NVARCHAR:
+			return new StringColumnData(capacity);
+		}
+		// also BIGINT, it is read as Double or as String (more than 9 digits)
+		return new ObjectColumnData(capacity);
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2014, the Railo Company Ltd.
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either 
+ * version 2.1 of the License, or (at your option) any later version.
+ * 
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package lucee.runtime.type.query;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * storage for a column only containing strings with a limited number of distinct values, every
+ * distinct string is only stored once (dictionary encoding). When the column exceeds the max number
+ * of distinct values it converts itself to a {@link ObjectColumnData}.
+ */
+public final class StringColumnData extends PrimitiveColumnData {
+
+	private static final long serialVersionUID = 1867061389436133911L;
+
+	private static final int MAX_DISTINCT = 4096;
+
+	private char[] data;
+	private Dictionary dictionary;
+
+	public StringColumnData(int capacity) {
+		this(capacity, new Dictionary());
+	}
+
+	private StringColumnData(int capacity, Dictionary dictionary) {
+		super(capacity);
+		this.data = new char[capacity];
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	protected boolean accept(Object value) {
+		if (value.getClass() != String.class) return false;
+		return dictionary.indexOf((String) value) != -1;
+	}
+
+	@Override
+	protected void store(int index, Object value) {
+		data[index] = (char) dictionary.indexOf((String) value);
+	}
+
+	@Override
+	protected Object box(int index) {
+		return dictionary.values[data[index]];
+	}
+
+	@Override
+	protected PrimitiveColumnData newInstance(int capacity) {
+		// storages created from this one (grow, sort, duplicate) share the dictionary, it is append only
+		return new StringColumnData(capacity, dictionary);
+	}
+
+	@Override
+	protected void copy(int from, PrimitiveColumnData trg, int to, int len) {
+		System.arraycopy(data, from, ((StringColumnData) trg).data, to, len);
+	}
+
+	@Override
+	public int capacity() {
+		return data.length;
+	}
+
+	private static final class Dictionary implements java.io.Serializable {
+
+		private static final long serialVersionUID = -2263124402282286434L;
+
+		private final Map<String, Integer> indexes = new ConcurrentHashMap<String, Integer>();
+		private volatile String[] values = new String[16];
+		private int size;
+
+		/**
+		 * returns the index of the string, adds the string if necessary
+		 * 
+		 * @return index or -1 if the dictionary is full
+		 */
+		int indexOf(String str) {
+			// most values are already known, they are looked up without locking
+			Integer index = indexes.get(str);
+			if (index != null) return index.intValue();
+			return add(str);
+		}
+
+		private synchronized int add(String str) {
+			Integer index = indexes.get(str);
+			if (index != null) return index.intValue();
+			if (size >= MAX_DISTINCT) return -1;
+			if (size == values.length) {
+				String[] tmp = new String[values.length * 2];
+				System.arraycopy(values, 0, tmp, 0, values.length);
+				values = tmp;
+			}
+			// the value is written before the index is published
+			values[size] = str;
+			indexes.put(str, Integer.valueOf(size));
+			return size++;
+		}
+	}
+}
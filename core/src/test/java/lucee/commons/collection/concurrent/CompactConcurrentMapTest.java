@@ -0,0 +1,200 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.commons.collection.concurrent;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+public class CompactConcurrentMapTest {
+
+	@Test
+	public void compactAndPromoted() {
+		CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+		for (int i = 0; i < CompactConcurrentMap.MAX_COMPACT_SIZE; i++) {
+			assertNull(map.put("k" + i, i));
+			assertFalse(map.isPromoted());
+		}
+		// replacing a value does not promote
+		assertEquals(Integer.valueOf(0), map.put("k0", 100));
+		assertFalse(map.isPromoted());
+		assertEquals(CompactConcurrentMap.MAX_COMPACT_SIZE, map.size());
+
+		map.put("k" + CompactConcurrentMap.MAX_COMPACT_SIZE, -1);
+		assertTrue(map.isPromoted());
+		assertEquals(CompactConcurrentMap.MAX_COMPACT_SIZE + 1, map.size());
+		assertEquals(Integer.valueOf(100), map.get("k0"));
+		for (int i = 1; i < CompactConcurrentMap.MAX_COMPACT_SIZE; i++) {
+			assertEquals(Integer.valueOf(i), map.get("k" + i));
+		}
+		// a promoted map stays promoted
+		map.clear();
+		assertTrue(map.isEmpty());
+		assertTrue(map.isPromoted());
+	}
+
+	@Test
+	public void insertionOrderWhileCompact() {
+		CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+		map.put("c", 1);
+		map.put("a", 2);
+		map.put("b", 3);
+		map.put("a", 4);
+		assertEquals(Arrays.asList("c", "a", "b"), new ArrayList<String>(map.keySet()));
+		assertEquals(Arrays.asList(1, 4, 3), new ArrayList<Integer>(map.values()));
+		map.remove("c");
+		map.put("c", 5);
+		assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(map.keySet()));
+	}
+
+	@Test
+	public void removal() {
+		CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+		for (int i = 0; i < 5; i++) {
+			map.put("k" + i, i);
+		}
+		assertEquals(Integer.valueOf(2), map.remove("k2"));
+		assertNull(map.remove("k2"));
+		assertNull(map.remove("missing"));
+		assertFalse(map.containsKey("k2"));
+		assertEquals(4, map.size());
+
+		// with the iterator
+		Iterator<Map.Entry<String, Integer>> it = map.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, Integer> e = it.next();
+			if (e.getValue() % 2 == 0) it.remove();
+			else e.setValue(e.getValue() * 10);
+		}
+		assertEquals(2, map.size());
+		assertEquals(Integer.valueOf(10), map.get("k1"));
+		assertEquals(Integer.valueOf(30), map.get("k3"));
+		assertThrows(IllegalStateException.class, () -> {
+			Iterator<String> i = map.keySet().iterator();
+			i.next();
+			i.remove();
+			i.remove();
+		});
+		assertTrue(map.keySet().remove("k3"));
+		assertFalse(map.keySet().remove("k3"));
+		map.remove("k1");
+		assertTrue(map.isEmpty());
+		// the map can be filled again
+		map.put("k", 1);
+		assertEquals(Integer.valueOf(1), map.get("k"));
+	}
+
+	@Test
+	public void nullKeysAndValues() {
+		CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+		map.put(null, 1);
+		map.put("null", null);
+		assertEquals(Integer.valueOf(1), map.get(null));
+		assertTrue(map.containsKey("null"));
+		assertNull(map.get("null"));
+		assertEquals(Integer.valueOf(-1), map.getOrDefault("missing", -1));
+		assertNull(map.getOrDefault("null", -1));
+		assertTrue(map.containsValue(null));
+		assertNull(map.putIfAbsent("null", 2));
+		assertNull(map.get("null"));
+		assertEquals(Integer.valueOf(1), map.putIfAbsent(null, 2));
+		assertNull(map.putIfAbsent("new", 3));
+		assertEquals(Integer.valueOf(3), map.get("new"));
+	}
+
+	@Test
+	public void sameResultsAsHashMap() {
+		Random random = new Random(1);
+		for (int round = 0; round < 500; round++) {
+			CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+			Map<String, Integer> expected = new HashMap<String, Integer>();
+			for (int i = 0; i < 50; i++) {
+				String key = "k" + random.nextInt(12);
+				int op = random.nextInt(4);
+				if (op < 2) assertEquals(expected.put(key, i), map.put(key, i));
+				else if (op == 2) assertEquals(expected.remove(key), map.remove(key));
+				else assertEquals(expected.get(key), map.get(key));
+				assertEquals(expected, map);
+				assertEquals(expected.size(), map.size());
+				assertEquals(expected.keySet(), map.keySet());
+			}
+		}
+	}
+
+	@Test
+	public void concurrentAccess() throws Exception {
+		// stays compact
+		CompactConcurrentMap<String, Integer> map = concurrentAccess(2, 3);
+		assertEquals(6, map.size());
+		assertFalse(map.isPromoted());
+		// gets promoted while used
+		map = concurrentAccess(8, 3);
+		assertEquals(24, map.size());
+		assertTrue(map.isPromoted());
+	}
+
+	private static CompactConcurrentMap<String, Integer> concurrentAccess(int threadCount, final int keys) throws Exception {
+		final CompactConcurrentMap<String, Integer> map = new CompactConcurrentMap<String, Integer>();
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < threadCount; t++) {
+			final String prefix = "t" + t + "_";
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 5000; i++) {
+							String key = prefix + (i % keys);
+							map.put(key, i);
+							// only this thread writes the key
+							if (map.get(key).intValue() != i) throw new IllegalStateException("lost update of " + key);
+							if (i % 7 == 0) {
+								map.remove(key);
+								if (map.containsKey(key)) throw new IllegalStateException("not removed " + key);
+								map.put(key, i);
+							}
+							for (Map.Entry<String, Integer> e: map.entrySet()) {
+								if (e.getKey() == null || e.getValue() == null) throw new IllegalStateException("incomplete entry");
+							}
+						}
+					}
+					catch (Throwable t) {
+						error.compareAndSet(null, t);
+					}
+				}
+			}));
+		}
+		for (Thread t: threads) {
+			t.start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		assertNull(error.get(), String.valueOf(error.get()));
+		return map;
+	}
+}
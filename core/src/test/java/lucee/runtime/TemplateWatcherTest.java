@@ -0,0 +1,95 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lucee.commons.io.res.Resource;
+import lucee.commons.io.res.ResourcesImpl;
+
+public class TemplateWatcherTest {
+
+	private File dir;
+	private Resource res;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("watcher").toFile();
+		res = ResourcesImpl.getFileResourceProvider().getResource(dir.getAbsolutePath());
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		try (Stream<Path> paths = Files.walk(dir.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+
+	@Test
+	public void listingDetectsNewAndDeletedTemplates() throws Exception {
+		File index = new File(dir, "index.cfm");
+		Files.write(index.toPath(), "a".getBytes("UTF-8"));
+		long initial = TemplateWatcher.listing(res);
+		assertEquals(initial, TemplateWatcher.listing(res));
+
+		// a modified template is detected by comparing the loaded page, not by the listing
+		Files.write(index.toPath(), "b".getBytes("UTF-8"));
+		assertEquals(initial, TemplateWatcher.listing(res));
+
+		// new component in a sub directory
+		File sub = new File(dir, "sub");
+		sub.mkdir();
+		long withDir = TemplateWatcher.listing(res);
+		assertNotEquals(initial, withDir);
+		File cfc = new File(sub, "Test.cfc");
+		Files.write(cfc.toPath(), "component {}".getBytes("UTF-8"));
+		long withCFC = TemplateWatcher.listing(res);
+		assertNotEquals(withDir, withCFC);
+
+		// renamed custom tag
+		File tag = new File(dir, "tag.cfm");
+		Files.write(tag.toPath(), "x".getBytes("UTF-8"));
+		long withTag = TemplateWatcher.listing(res);
+		assertNotEquals(withCFC, withTag);
+		assertTrue(tag.renameTo(new File(dir, "tag2.cfm")));
+		assertNotEquals(withTag, TemplateWatcher.listing(res));
+
+		// deleted templates
+		assertTrue(new File(dir, "tag2.cfm").delete());
+		assertEquals(withCFC, TemplateWatcher.listing(res));
+		assertTrue(cfc.delete());
+		assertTrue(sub.delete());
+		assertEquals(initial, TemplateWatcher.listing(res));
+	}
+
+	@Test
+	public void listingOfMissingDirectory() {
+		Resource missing = res.getRealResource("missing");
+		assertEquals(TemplateWatcher.listing(missing), TemplateWatcher.listing(missing));
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.jupiter.api.Test;
+
+import lucee.runtime.cache.ram.ref.Ref;
+
+public class BoundedPolicyTest {
+
+	private final Map<String, Ref<RamCacheEntry>> map = new ConcurrentHashMap<String, Ref<RamCacheEntry>>();
+
+	@Test
+	public void sizeLimit() {
+		BoundedPolicy policy = new BoundedPolicy(map, 10, 0);
+		for (int i = 0; i < 100; i++) {
+			add(policy, "k" + i, 1, 0);
+		}
+		assertEquals(10, map.size());
+		assertEquals(10, policy.size());
+		assertEquals(90, policy.evictionCount());
+		assertConsistent(policy);
+	}
+
+	@Test
+	public void frequentlyUsedEntriesSurviveAScan() {
+		BoundedPolicy policy = new BoundedPolicy(map, 100, 0);
+		BoundedNode[] hot = new BoundedNode[50];
+		for (int i = 0; i < hot.length; i++) {
+			hot[i] = add(policy, "hot" + i, 1, 0);
+		}
+		for (int round = 0; round < 3; round++) {
+			for (BoundedNode node: hot) {
+				policy.onRead(node);
+			}
+			policy.cleanUp(System.currentTimeMillis());
+		}
+		// entries only used once do not replace the frequently used ones
+		for (int i = 0; i < 1000; i++) {
+			add(policy, "scan" + i, 1, 0);
+		}
+		for (int i = 0; i < hot.length; i++) {
+			assertSame(hot[i], map.get("hot" + i), "hot" + i);
+		}
+		assertEquals(100, map.size());
+		assertConsistent(policy);
+	}
+
+	@Test
+	public void weightLimit() {
+		BoundedPolicy policy = new BoundedPolicy(map, 0, 1000);
+		for (int i = 0; i < 20; i++) {
+			add(policy, "k" + i, 100, 0);
+		}
+		assertTrue(policy.weightedSize() <= 1000, "weight: " + policy.weightedSize());
+		assertConsistent(policy);
+
+		// heavier than the whole cache
+		add(policy, "heavy", 2000, 0);
+		assertNull(map.get("heavy"));
+		assertTrue(policy.weightedSize() <= 1000, "weight: " + policy.weightedSize());
+
+		// a heavier value evicts other entries
+		BoundedNode node = (BoundedNode) map.values().iterator().next();
+		policy.onUpdate(node, 800);
+		assertTrue(policy.weightedSize() <= 1000, "weight: " + policy.weightedSize());
+		assertConsistent(policy);
+	}
+
+	@Test
+	public void heapWeightLimit() {
+		BoundedPolicy policy = new BoundedPolicy(map, 0, 10000, 300, null);
+		for (int i = 0; i < 10; i++) {
+			add(policy, "heap" + i, 0, 0).heapWeight = 0;
+		}
+		BoundedNode node;
+		for (int i = 0; i < 10; i++) {
+			node = new BoundedNode(new RamCacheEntry("heap" + i, "v", 0, 0), 0);
+			node.heapWeight = 100;
+			policy.onAdd(node, map.put("heap" + i, node));
+		}
+		assertTrue(policy.heapWeightedSize() <= 300, "heap weight: " + policy.heapWeightedSize());
+		assertEquals(3, map.size());
+		assertConsistent(policy);
+	}
+
+	@Test
+	public void expiration() {
+		BoundedPolicy policy = new BoundedPolicy(map, 100, 0);
+		for (int i = 0; i < 10; i++) {
+			add(policy, "short" + i, 1, 50);
+			add(policy, "long" + i, 1, 60 * 60 * 1000L);
+			add(policy, "eternal" + i, 1, 0);
+		}
+		long now = System.currentTimeMillis();
+		policy.cleanUp(now + 10 * 1000L);
+		assertEquals(20, map.size());
+		assertEquals(10, policy.expiredCount());
+		for (int i = 0; i < 10; i++) {
+			assertNull(map.get("short" + i));
+			assertNotNull(map.get("long" + i));
+		}
+		policy.cleanUp(now + 2 * 60 * 60 * 1000L);
+		assertEquals(10, map.size());
+		assertEquals(20, policy.expiredCount());
+		assertConsistent(policy);
+	}
+
+	@Test
+	public void removeReplaceAndClear() {
+		BoundedPolicy policy = new BoundedPolicy(map, 100, 0);
+		BoundedNode a = add(policy, "a", 1, 0);
+		add(policy, "b", 1, 0);
+		policy.onRemove(map.remove("b"));
+		assertEquals(1, policy.size());
+
+		// replaced
+		BoundedNode a2 = add(policy, "a", 1, 0);
+		assertTrue(a.retired);
+		assertFalse(a2.retired);
+		assertEquals(1, policy.size());
+
+		policy.clear();
+		assertEquals(0, policy.size());
+		assertTrue(map.isEmpty());
+		assertTrue(a2.retired);
+
+		// put into the map before the clear, but added to the policy after it
+		BoundedNode c = new BoundedNode(new RamCacheEntry("c", "c", 0, 0), 1);
+		Ref<RamCacheEntry> prior = map.put("c", c);
+		policy.clear();
+		policy.onAdd(c, prior);
+		assertTrue(c.retired);
+		assertEquals(0, policy.size());
+		assertTrue(map.isEmpty());
+	}
+
+	private BoundedNode add(BoundedPolicy policy, String key, long weight, long until) {
+		BoundedNode node = new BoundedNode(new RamCacheEntry(key, key, 0, until), weight);
+		policy.onAdd(node, map.put(key, node));
+		return node;
+	}
+
+	// every node of the map is tracked by the policy and the other way around
+	private void assertConsistent(BoundedPolicy policy) {
+		long weight = 0;
+		for (Ref<RamCacheEntry> ref: map.values()) {
+			BoundedNode node = (BoundedNode) ref;
+			assertFalse(node.retired, node.getKey());
+			assertNotEquals(BoundedNode.NONE, node.queue, node.getKey());
+			weight += node.weight;
+		}
+		assertEquals(map.size(), policy.size());
+		if (policy.isWeighted()) assertEquals(weight, policy.weightedSize());
+	}
+}
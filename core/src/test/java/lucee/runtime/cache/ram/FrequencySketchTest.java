@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+public class FrequencySketchTest {
+
+	@Test
+	public void countsAccesses() {
+		FrequencySketch sketch = new FrequencySketch();
+		// not initialized
+		sketch.increment(1);
+		assertEquals(0, sketch.frequency(1));
+
+		sketch.ensureCapacity(512);
+		for (int i = 0; i < 10; i++) {
+			sketch.increment("a".hashCode());
+		}
+		sketch.increment("b".hashCode());
+		assertEquals(10, sketch.frequency("a".hashCode()));
+		assertEquals(1, sketch.frequency("b".hashCode()));
+		assertEquals(0, sketch.frequency("c".hashCode()));
+
+		// 4 bit counters
+		for (int i = 0; i < 10; i++) {
+			sketch.increment("a".hashCode());
+		}
+		assertEquals(15, sketch.frequency("a".hashCode()));
+
+		sketch.clear();
+		assertEquals(0, sketch.frequency("a".hashCode()));
+	}
+
+	@Test
+	public void frequencyAges() {
+		FrequencySketch sketch = new FrequencySketch();
+		sketch.ensureCapacity(16);
+		for (int i = 0; i < 15; i++) {
+			sketch.increment(42);
+		}
+		assertEquals(15, sketch.frequency(42));
+		// more than the sample size (10 times the capacity) halves all counters
+		for (int i = 0; i < 200; i++) {
+			sketch.increment(1000 + i);
+		}
+		assertTrue(sketch.frequency(42) <= 8, "frequency: " + sketch.frequency(42));
+	}
+
+	@Test
+	public void estimateIsNeverTooLow() {
+		FrequencySketch sketch = new FrequencySketch();
+		sketch.ensureCapacity(1024);
+		for (int i = 0; i < 1000; i++) {
+			for (int y = 0; y <= i % 5; y++) {
+				sketch.increment(i * 31);
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(sketch.frequency(i * 31) >= i % 5 + 1, "key " + i);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+public class OffHeapStoreTest {
+
+	@Test
+	public void storeReadAndFree() throws Exception {
+		OffHeapStore store = new OffHeapStore(64 * 1024, 1024);
+		assertEquals(64 * 1024, store.capacity());
+
+		byte[] data = OffHeapStore.serialize(text(3000));
+		OffHeapStore.Value value = store.store(data);
+		assertNotNull(value);
+		assertEquals(data.length, value.length());
+		assertEquals(1, store.size());
+		// 3 blocks
+		assertEquals(3 * 1024, store.used());
+		assertEquals(store.used(), store.weight(data.length));
+		assertEquals(text(3000), store.read(value));
+
+		store.free(value);
+		assertNull(store.read(value));
+		assertEquals(0, store.used());
+		assertEquals(0, store.size());
+		// freeing twice does not change the accounting
+		store.free(value);
+		assertEquals(0, store.used());
+	}
+
+	@Test
+	public void capacity() throws Exception {
+		OffHeapStore store = new OffHeapStore(8 * 1024, 1024);
+		byte[] data = new byte[3000];
+		OffHeapStore.Value v1 = store.store(data);
+		OffHeapStore.Value v2 = store.store(data);
+		assertNotNull(v1);
+		assertNotNull(v2);
+		// 6 of 8 blocks used
+		assertNull(store.store(data));
+		assertEquals(6 * 1024, store.used());
+
+		// the blocks freed are reused
+		store.free(v1);
+		OffHeapStore.Value v3 = store.store(OffHeapStore.serialize(text(2000)));
+		assertNotNull(v3);
+		assertEquals(text(2000), store.read(v3));
+		// 3 + 2 blocks
+		assertEquals(5 * 1024, store.used());
+	}
+
+	@Test
+	public void slabs() throws Exception {
+		// values spread over more than one slab
+		OffHeapStore store = new OffHeapStore(1024L * 1024L, 1024);
+		OffHeapStore.Value[] values = new OffHeapStore.Value[100];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = store.store(OffHeapStore.serialize(text(5000 + i)));
+		}
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(text(5000 + i), store.read(values[i]));
+		}
+	}
+
+	@Test
+	public void notSerializable() {
+		assertNull(OffHeapStore.serialize(new Object()));
+		assertNull(OffHeapStore.serialize(null));
+	}
+
+	private static String text(int length) {
+		char[] arr = new char[length];
+		Arrays.fill(arr, 'a');
+		arr[length - 1] = 'z';
+		return new String(arr);
+	}
+}
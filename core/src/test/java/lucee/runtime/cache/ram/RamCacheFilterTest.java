@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import lucee.commons.io.cache.CacheEntry;
+import lucee.runtime.cache.util.WildCardFilter;
+
+public class RamCacheFilterTest {
+
+	@Test
+	public void keysEntriesAndValues() throws Exception {
+		// with and without the key index the result is the same
+		for (RamCache cache: new RamCache[] { new RamCache().indexKeys(), new RamCache() }) {
+			fill(cache);
+			WildCardFilter filter = new WildCardFilter("user_1_*", true);
+
+			assertEquals(list("USER_1_b", "user_1_a", "user_1_c"), sorted(cache.keys(filter)));
+
+			List<String> keys = new ArrayList<String>();
+			for (CacheEntry entry: cache.entries(filter)) {
+				keys.add(entry.getKey());
+			}
+			assertEquals(list("USER_1_b", "user_1_a", "user_1_c"), sorted(keys));
+
+			assertEquals(list("1b", "a1", "c1"), sorted(cache.values(filter)));
+
+			// prefix and wildcards in the middle
+			assertEquals(list("user_1_a", "user_2_a"), sorted(cache.keys(new WildCardFilter("user_?_a", true))));
+			assertEquals(list(), sorted(cache.keys(new WildCardFilter("missing*", true))));
+		}
+	}
+
+	@Test
+	public void expiredEntriesAreIgnored() throws Exception {
+		for (RamCache cache: new RamCache[] { new RamCache().indexKeys(), new RamCache() }) {
+			fill(cache);
+			cache.put("user_1_old", "old", null, Long.valueOf(1));
+			Thread.sleep(10);
+			WildCardFilter filter = new WildCardFilter("user_1_*", true);
+			assertEquals(list("USER_1_b", "user_1_a", "user_1_c"), sorted(cache.keys(filter)));
+			assertEquals(3, cache.entries(filter).size());
+			assertEquals(3, cache.values(filter).size());
+		}
+	}
+
+	@Test
+	public void removeCountsRemovedEntries() throws Exception {
+		for (RamCache cache: new RamCache[] { new RamCache().indexKeys(), new RamCache() }) {
+			fill(cache);
+			// an expired entry is removed, but not counted
+			cache.put("user_1_old", "old", null, Long.valueOf(1));
+			Thread.sleep(10);
+
+			assertEquals(3, cache.remove(new WildCardFilter("user_1_*", true)));
+			assertEquals(list(), sorted(cache.keys(new WildCardFilter("user_1_*", true))));
+			assertNull(cache.getQuiet("user_1_old", null));
+			assertEquals(0, cache.remove(new WildCardFilter("user_1_*", true)));
+
+			// other keys are untouched
+			assertEquals(list("other", "user_2_a"), sorted(cache.keys()));
+		}
+	}
+
+	private static void fill(RamCache cache) {
+		cache.put("user_1_a", "a1", null, null);
+		cache.put("USER_1_b", "1b", null, null);
+		cache.put("user_1_c", "c1", null, null);
+		cache.put("user_2_a", "a2", null, null);
+		cache.put("other", "o", null, null);
+	}
+
+	private static List<String> list(String... values) {
+		List<String> list = new ArrayList<String>();
+		Collections.addAll(list, values);
+		return list;
+	}
+
+	private static List<String> sorted(List<?> values) {
+		List<String> list = new ArrayList<String>();
+		for (Object v: values) {
+			list.add((String) v);
+		}
+		Collections.sort(list);
+		return list;
+	}
+}
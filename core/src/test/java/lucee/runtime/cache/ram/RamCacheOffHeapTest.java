@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import lucee.commons.io.cache.CacheEntry;
+
+public class RamCacheOffHeapTest {
+
+	@Test
+	public void valuesAreStoredOffHeap() throws Exception {
+		RamCache cache = new RamCache().offHeap(1024 * 1024, 0);
+		String large = text(5000, 'a');
+		cache.put("large", large, null, null);
+		cache.put("small", "small", null, null);
+		Object notSerializable = new Object();
+		cache.put("object", notSerializable, null, null);
+
+		// a copy is returned for values stored off heap
+		CacheEntry entry = cache.getCacheEntry("large", null);
+		assertEquals(large, entry.getValue());
+		assertNotSame(large, entry.getValue());
+		assertEquals(large, cache.getQuiet("large", null).getValue());
+		// values kept on the heap
+		assertSame(notSerializable, cache.getCacheEntry("object", null).getValue());
+		assertEquals("small", cache.getCacheEntry("small", null).getValue());
+
+		// update and remove
+		cache.put("large", text(6000, 'b'), null, null);
+		assertEquals(text(6000, 'b'), cache.getCacheEntry("large", null).getValue());
+		cache.put("large", "now small", null, null);
+		assertEquals("now small", cache.getCacheEntry("large", null).getValue());
+		assertTrue(cache.remove("large"));
+		assertNull(cache.getCacheEntry("large", null));
+		cache.clear();
+		assertNull(cache.getCacheEntry("small", null));
+	}
+
+	@Test
+	public void heapValuesDoNotUseTheOffHeapCapacity() throws Exception {
+		// 16 blocks of 1 KB
+		RamCache cache = new RamCache().offHeap(16 * 1024, 0);
+		for (int i = 0; i < 100; i++) {
+			cache.put("heap" + i, "v" + i, null, null);
+		}
+		// 2 blocks each, not all of them fit
+		for (int i = 0; i < 20; i++) {
+			cache.put("offheap" + i, text(1500 + i, 'c'), null, null);
+		}
+		for (int i = 0; i < 100; i++) {
+			assertEquals("v" + i, cache.getCacheEntry("heap" + i, null).getValue(), "heap" + i);
+		}
+		int offHeap = 0;
+		for (int i = 0; i < 20; i++) {
+			CacheEntry entry = cache.getCacheEntry("offheap" + i, null);
+			if (entry != null) {
+				assertEquals(text(1500 + i, 'c'), entry.getValue());
+				offHeap++;
+			}
+		}
+		assertTrue(offHeap > 0 && offHeap <= 8, "entries off heap: " + offHeap);
+	}
+
+	@Test
+	public void heapValuesHaveTheirOwnLimit() throws Exception {
+		RamCache cache = new RamCache().offHeap(1024 * 1024, 1);
+		for (int i = 0; i < 10; i++) {
+			cache.put("offheap" + i, text(2000 + i, 'd'), null, null);
+		}
+		for (int i = 0; i < 10; i++) {
+			cache.put("heap" + i, "v" + i, null, null);
+		}
+		int heap = 0;
+		for (int i = 0; i < 10; i++) {
+			if (cache.getCacheEntry("heap" + i, null) != null) heap++;
+		}
+		assertTrue(heap <= 1, "entries on heap: " + heap);
+		// the values stored off heap are not evicted for the heap limit
+		for (int i = 0; i < 10; i++) {
+			assertEquals(text(2000 + i, 'd'), cache.getCacheEntry("offheap" + i, null).getValue());
+		}
+	}
+
+	@Test
+	public void concurrentUpdatesAndReads() throws Exception {
+		final RamCache cache = new RamCache().offHeap(64 * 1024, 0);
+		final List<Object> allowed = Arrays.asList(text(3000, 'e'), text(4000, 'f'), "small");
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		cache.put("key", allowed.get(0), null, null);
+
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int nbr = t;
+			threads.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						for (int i = 0; i < 2000; i++) {
+							if (nbr % 2 == 0) cache.put("key", allowed.get(i % allowed.size()), null, null);
+							else {
+								CacheEntry entry = nbr == 1 ? cache.getCacheEntry("key", null) : cache.getQuiet("key", null);
+								// null if the value was replaced while reading
+								if (entry != null && !allowed.contains(entry.getValue())) throw new IllegalStateException("invalid value");
+							}
+						}
+					}
+					catch (Throwable t) {
+						error.compareAndSet(null, t);
+					}
+				}
+			}));
+		}
+		for (Thread t: threads) {
+			t.start();
+		}
+		for (Thread t: threads) {
+			t.join();
+		}
+		assertNull(error.get(), String.valueOf(error.get()));
+		assertTrue(allowed.contains(cache.getCacheEntry("key", null).getValue()));
+	}
+
+	private static String text(int length, char c) {
+		char[] arr = new char[length];
+		Arrays.fill(arr, c);
+		return new String(arr);
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.cache.ram;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+	private final List<BoundedNode> expired = new ArrayList<BoundedNode>();
+	private final TimerWheel.Expirer expirer = new TimerWheel.Expirer() {
+		@Override
+		public void expire(BoundedNode node, long now) {
+			assertTrue(node.deadline <= now, node.getKey() + " expired too early");
+			expired.add(node);
+		}
+	};
+
+	@Test
+	public void expiresWhenDue() {
+		long start = 1000000000L;
+		TimerWheel wheel = new TimerWheel(start);
+		// deadlines on every level of the wheel
+		long[] offsets = { 100, 2000, 100000, 10000000, 200000000, 1L << 33 };
+		BoundedNode[] nodes = new BoundedNode[offsets.length];
+		for (int i = 0; i < offsets.length; i++) {
+			nodes[i] = node("n" + i, start + offsets[i]);
+			wheel.schedule(nodes[i]);
+		}
+		for (int i = 0; i < offsets.length; i++) {
+			// just before the deadline nothing is expired
+			wheel.advance(start + offsets[i] - 1, expirer);
+			assertEquals(i, expired.size(), "before n" + i);
+			// the node is expired at latest with the next bucket
+			wheel.advance(start + offsets[i] + (1L << 10), expirer);
+			assertEquals(i + 1, expired.size(), "after n" + i);
+			assertSame(nodes[i], expired.get(i));
+		}
+	}
+
+	@Test
+	public void expiresWithSmallSteps() {
+		long start = 5000L;
+		TimerWheel wheel = new TimerWheel(start);
+		for (int i = 0; i < 200; i++) {
+			wheel.schedule(node("n" + i, start + i * 997L));
+		}
+		long now = start;
+		while (expired.size() < 200) {
+			now += 250;
+			int before = expired.size();
+			wheel.advance(now, expirer);
+			for (int i = before; i < expired.size(); i++) {
+				// not more than a bucket too late
+				assertTrue(expired.get(i).deadline > now - 250 - (1L << 10), expired.get(i).getKey());
+			}
+			assertTrue(now < start + 300 * 1000L, "not all nodes expired");
+		}
+	}
+
+	@Test
+	public void rescheduleAndDeschedule() {
+		long start = 0;
+		TimerWheel wheel = new TimerWheel(start);
+		BoundedNode moved = node("moved", 1000);
+		BoundedNode removed = node("removed", 1000);
+		BoundedNode none = node("none", 0);
+		wheel.schedule(moved);
+		wheel.schedule(removed);
+		wheel.schedule(none);
+		assertEquals(-1, none.timerLevel);
+
+		moved.deadline = 100000;
+		wheel.schedule(moved);
+		wheel.deschedule(removed);
+		assertEquals(-1, removed.timerLevel);
+
+		wheel.advance(10000, expirer);
+		assertTrue(expired.isEmpty());
+		wheel.advance(200000, expirer);
+		assertEquals(1, expired.size());
+		assertSame(moved, expired.get(0));
+
+		// already due
+		BoundedNode due = node("due", 1);
+		wheel.schedule(due);
+		wheel.advance(200000 + (1L << 10), expirer);
+		assertSame(due, expired.get(1));
+
+		wheel.schedule(node("cleared", 300000));
+		wheel.clear();
+		wheel.advance(1L << 30, expirer);
+		assertEquals(2, expired.size());
+	}
+
+	private static BoundedNode node(String key, long deadline) {
+		BoundedNode node = new BoundedNode(new RamCacheEntry(key, key, 0, 0), 1);
+		node.deadline = deadline;
+		return node;
+	}
+}
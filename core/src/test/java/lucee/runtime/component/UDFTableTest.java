@@ -0,0 +1,233 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.component;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+
+import lucee.runtime.type.Collection.Key;
+import lucee.runtime.type.KeyImpl;
+import lucee.runtime.type.UDF;
+
+public class UDFTableTest {
+
+	private static final Key A = KeyImpl.init("a");
+	private static final Key B = KeyImpl.init("b");
+	private static final Key C = KeyImpl.init("c");
+	private static final Key D = KeyImpl.init("d");
+
+	@Test
+	public void overrideInheritedFunction() {
+		UDFTable base = new UDFTable();
+		UDF baseA = udf("base.a");
+		base.put(A, baseA);
+		base.put(B, udf("base.b"));
+
+		UDFTable child = new UDFTable(base);
+		UDF childA = udf("child.a");
+		assertSame(baseA, child.put(A, childA));
+		assertSame(childA, child.get(A));
+		assertEquals(2, child.size());
+		// the base is not affected
+		assertSame(baseA, base.get(A));
+
+		// later changes of the base are not visible in the child
+		base.put(C, udf("base.c"));
+		assertFalse(child.containsKey(C));
+		assertEquals(3, base.size());
+	}
+
+	@Test
+	public void removeInheritedFunction() {
+		UDFTable base = new UDFTable();
+		UDF baseA = udf("base.a");
+		base.put(A, baseA);
+		base.put(B, udf("base.b"));
+
+		UDFTable child = new UDFTable(base);
+		child.put(C, udf("child.c"));
+		assertSame(baseA, child.remove(A));
+		assertNull(child.get(A));
+		assertFalse(child.containsKey(A));
+		assertEquals(2, child.size());
+		assertEquals(keys(B, C), child.keySet());
+		assertSame(baseA, base.get(A));
+		assertNull(child.remove(D));
+
+		// an overwritten inherited function
+		UDFTable other = new UDFTable(base);
+		other.put(A, udf("other.a"));
+		other.remove(A);
+		assertNull(other.get(A));
+		assertEquals(1, other.size());
+	}
+
+	@Test
+	public void sizeAndIterationWithOverlappingLayers() {
+		UDFTable base = new UDFTable();
+		base.put(A, udf("base.a"));
+		base.put(B, udf("base.b"));
+		base.put(C, udf("base.c"));
+
+		UDFTable child = new UDFTable(base);
+		child.put(B, udf("child.b"));
+		child.put(D, udf("child.d"));
+
+		assertEquals(4, child.size());
+		assertEquals(4, child.entrySet().size());
+		assertFalse(child.isEmpty());
+		Map<Key, String> names = new HashMap<Key, String>();
+		for (Entry<Key, UDF> e: child.entrySet()) {
+			assertNull(names.put(e.getKey(), e.getValue().toString()), "duplicate key " + e.getKey());
+		}
+		assertEquals("base.a", names.get(A));
+		assertEquals("child.b", names.get(B));
+		assertEquals("base.c", names.get(C));
+		assertEquals("child.d", names.get(D));
+		assertEquals(child, new HashMap<Key, UDF>(child));
+
+		child.clear();
+		assertTrue(child.isEmpty());
+		assertEquals(0, child.size());
+		assertEquals(3, base.size());
+	}
+
+	@Test
+	public void duplicateThreeLevels() {
+		// like ComponentImpl._duplicate, every level gets a new table inheriting from the duplicated base
+		// and the functions owned by the level itself
+		UDFTable top = new UDFTable();
+		top.put(A, udf("top.a"));
+		top.put(B, udf("top.b"));
+		UDFTable middle = new UDFTable(top);
+		middle.put(B, udf("middle.b"));
+		middle.put(C, udf("middle.c"));
+		UDFTable bottom = new UDFTable(middle);
+		bottom.put(C, udf("bottom.c"));
+		bottom.put(D, udf("bottom.d"));
+
+		UDFTable topDup = duplicate(top, new UDFTable(), "top.");
+		UDFTable middleDup = duplicate(middle, new UDFTable(topDup), "middle.");
+		UDFTable bottomDup = duplicate(bottom, new UDFTable(middleDup), "bottom.");
+
+		assertEquals(names(bottom), names(bottomDup));
+		assertEquals(names(middle), names(middleDup));
+		assertEquals(names(top), names(topDup));
+		assertEquals("top.a", bottomDup.get(A).toString());
+		assertEquals("middle.b", bottomDup.get(B).toString());
+		assertEquals("bottom.c", bottomDup.get(C).toString());
+		// copies, not the same functions
+		assertNotSame(bottom.get(D), bottomDup.get(D));
+
+		// the duplicate is independent of the original
+		bottomDup.put(A, udf("changed.a"));
+		bottomDup.remove(B);
+		assertEquals("top.a", bottom.get(A).toString());
+		assertEquals("middle.b", bottom.get(B).toString());
+		assertEquals("middle.b", middleDup.get(B).toString());
+	}
+
+	@Test
+	public void readWhileCreatingChildren() throws Exception {
+		final int count = 100;
+		UDFTable grand = new UDFTable();
+		for (int i = 0; i < count / 2; i++) {
+			grand.put(KeyImpl.init("f" + i), udf("f" + i));
+		}
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		for (int round = 0; round < 50; round++) {
+			// own and shared functions, creating a child moves all of them to the shared layer
+			final UDFTable base = new UDFTable(grand);
+			for (int i = count / 4; i < count; i++) {
+				base.put(KeyImpl.init("f" + i), udf("f" + i));
+			}
+			Thread[] readers = new Thread[4];
+			for (int t = 0; t < readers.length; t++) {
+				readers[t] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							for (int y = 0; y < 20; y++) {
+								for (int i = 0; i < count; i++) {
+									assertNotNull(base.get(KeyImpl.init("f" + i)), "f" + i);
+								}
+								assertEquals(count, base.size());
+							}
+						}
+						catch (Throwable e) {
+							error.set(e);
+						}
+					}
+				});
+				readers[t].start();
+			}
+			assertEquals(count, new UDFTable(base).size());
+			for (Thread t: readers) {
+				t.join();
+			}
+			assertNull(error.get(), String.valueOf(error.get()));
+		}
+	}
+
+	private static UDFTable duplicate(UDFTable src, UDFTable trg, String owner) {
+		for (Entry<Key, UDF> e: src.entrySet()) {
+			if (e.getValue().toString().startsWith(owner)) trg.put(e.getKey(), udf(e.getValue().toString()));
+		}
+		return trg;
+	}
+
+	private static Map<Key, String> names(Map<Key, UDF> table) {
+		Map<Key, String> names = new HashMap<Key, String>();
+		for (Entry<Key, UDF> e: table.entrySet()) {
+			names.put(e.getKey(), e.getValue().toString());
+		}
+		return names;
+	}
+
+	private static Set<Key> keys(Key... keys) {
+		Set<Key> set = new HashSet<Key>();
+		for (Key k: keys) {
+			set.add(k);
+		}
+		return set;
+	}
+
+	// only the identity and the name of the function are used by the table
+	private static UDF udf(final String name) {
+		return (UDF) Proxy.newProxyInstance(UDF.class.getClassLoader(), new Class[] { UDF.class }, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if ("toString".equals(method.getName())) return name;
+				if ("hashCode".equals(method.getName())) return System.identityHashCode(proxy);
+				if ("equals".equals(method.getName())) return proxy == args[0];
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+}
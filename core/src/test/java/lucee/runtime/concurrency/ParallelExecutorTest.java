@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lucee.runtime.concurrency.ParallelExecutor.BoundedExecutor;
+
+public class ParallelExecutorTest {
+
+	private ThreadPoolExecutor pool;
+
+	@BeforeEach
+	public void setUp() {
+		pool = new ThreadPoolExecutor(0, 32, 1, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ParallelExecutor.NamedThreadFactory("test-parallel"),
+				new ThreadPoolExecutor.CallerRunsPolicy());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+
+	@Test
+	public void limitPerCall() throws Exception {
+		ExecutorService call = new BoundedExecutor(pool, 3, false);
+		Counter counter = new Counter();
+		runAll(call, counter, 20);
+		assertEquals(20, counter.done.get());
+		assertTrue(counter.max.get() <= 3, "max concurrency: " + counter.max.get());
+		call.shutdown();
+		assertTrue(call.awaitTermination(1, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void limitPerRequest() throws Exception {
+		// two calls of the same request, every call would allow 4 threads
+		ExecutorService request = new BoundedExecutor(pool, 5, true);
+		final ExecutorService call1 = new BoundedExecutor(request, 4, false);
+		final ExecutorService call2 = new BoundedExecutor(request, 4, false);
+		final Counter counter = new Counter();
+
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					runAll(call1, counter, 20);
+				}
+				catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		t.start();
+		runAll(call2, counter, 20);
+		t.join();
+
+		assertEquals(40, counter.done.get());
+		assertTrue(counter.max.get() <= 5, "max concurrency: " + counter.max.get());
+	}
+
+	@Test
+	public void nestedCallsDoNotBlock() throws Exception {
+		// all request threads are used by the outer tasks, the inner tasks are executed by them
+		final ExecutorService request = new BoundedExecutor(pool, 2, true);
+		ExecutorService outer = new BoundedExecutor(request, 2, false);
+		final AtomicInteger inner = new AtomicInteger();
+		List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+		for (int i = 0; i < 4; i++) {
+			futures.add(outer.submit(new Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					ExecutorService nested = new BoundedExecutor(request, 2, false);
+					List<Future<?>> list = new ArrayList<Future<?>>();
+					for (int y = 0; y < 3; y++) {
+						list.add(nested.submit(new Runnable() {
+							@Override
+							public void run() {
+								inner.incrementAndGet();
+							}
+						}));
+					}
+					for (Future<?> f: list) {
+						f.get(5, TimeUnit.SECONDS);
+					}
+					return list.size();
+				}
+			}));
+		}
+		for (Future<Integer> f: futures) {
+			assertEquals(Integer.valueOf(3), f.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(12, inner.get());
+	}
+
+	@Test
+	public void shutdownDoesNotAffectSharedPool() throws Exception {
+		ExecutorService call = new BoundedExecutor(pool, 2, false);
+		call.shutdown();
+		assertTrue(call.isShutdown());
+		assertThrows(java.util.concurrent.RejectedExecutionException.class, () -> call.execute(() -> {}));
+		assertFalse(pool.isShutdown());
+		assertEquals(Integer.valueOf(1), new BoundedExecutor(pool, 2, false).submit(() -> 1).get(5, TimeUnit.SECONDS));
+	}
+
+	private static void runAll(ExecutorService es, final Counter counter, int count) throws Exception {
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < count; i++) {
+			futures.add(es.submit(new Runnable() {
+				@Override
+				public void run() {
+					counter.enter();
+					try {
+						Thread.sleep(5);
+					}
+					catch (InterruptedException e) {}
+					finally {
+						counter.exit();
+					}
+				}
+			}));
+		}
+		for (Future<?> f: futures) {
+			f.get(10, TimeUnit.SECONDS);
+		}
+	}
+
+	private static final class Counter {
+		private final AtomicInteger current = new AtomicInteger();
+		private final AtomicInteger max = new AtomicInteger();
+		private final AtomicInteger done = new AtomicInteger();
+
+		private void enter() {
+			int c = current.incrementAndGet();
+			int m;
+			while ((m = max.get()) < c && !max.compareAndSet(m, c)) {}
+		}
+
+		private void exit() {
+			current.decrementAndGet();
+			done.incrementAndGet();
+		}
+	}
+}
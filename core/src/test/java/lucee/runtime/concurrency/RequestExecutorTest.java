@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.concurrency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+public class RequestExecutorTest {
+
+	@Test
+	public void notLimitedByDefault() throws Exception {
+		RequestExecutor re = new RequestExecutor(0, 0, false);
+		assertEquals(-1, re.getMaxThreads());
+
+		// more requests than any default limit, all of them run at the same time
+		int count = 200;
+		CountDownLatch started = new CountDownLatch(count);
+		CountDownLatch release = new CountDownLatch(1);
+		for (int i = 0; i < count; i++) {
+			assertTrue(re.execute(block(started, release)));
+		}
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		assertEquals(0, re.getQueueSize());
+		assertEquals(0, re.getRejectedCount());
+		release.countDown();
+	}
+
+	@Test
+	public void limited() throws Exception {
+		RequestExecutor re = new RequestExecutor(2, 3, false);
+		assertEquals(2, re.getMaxThreads());
+
+		CountDownLatch started = new CountDownLatch(2);
+		CountDownLatch release = new CountDownLatch(1);
+		assertTrue(re.execute(block(started, release)));
+		assertTrue(re.execute(block(started, release)));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+
+		// queued
+		CountDownLatch queued = new CountDownLatch(3);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(re.execute(block(queued, release)));
+		}
+		assertEquals(3, re.getQueueSize());
+		assertEquals(2, re.getActiveCount());
+
+		// threads and queue are full
+		assertFalse(re.execute(block(queued, release)));
+		assertEquals(1, re.getRejectedCount());
+
+		release.countDown();
+		assertTrue(queued.await(10, TimeUnit.SECONDS));
+	}
+
+	private static Runnable block(final CountDownLatch started, final CountDownLatch release) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				started.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				}
+				catch (InterruptedException e) {}
+			}
+		};
+	}
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.debug;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.jupiter.api.Test;
+
+public class SamplingProfilerTest {
+
+	@Test
+	public void onlyTemplateFramesAreRecorded() {
+		SamplingProfiler profiler = new SamplingProfiler(50, 100, false);
+		profiler.add(new StackTraceElement[] { // innermost first
+				new StackTraceElement("lucee.runtime.type.util.ArrayUtil", "toArray", "ArrayUtil.java", 20),
+				new StackTraceElement("Script1", "run", "Script1.groovy", 7), new StackTraceElement("test.UtilKt", "call", "Util.kt", 12),
+				new StackTraceElement("inc_cfm$cf", "call", "inc.cfm", 3), new StackTraceElement("test_cfc$cf$1", "udfCall", "test.cfc", 5),
+				new StackTraceElement("index_cfm$cf", "call", "index.cfm", 10), new StackTraceElement("index_cfm$cf", "call", "index.cfm", 10),
+				new StackTraceElement("lucee.runtime.PageContextImpl", "doInclude", "PageContextImpl.java", 900) });
+		assertEquals("index.cfm:10;test.cfc:5;inc.cfm:3 1\n", profiler.toCollapsed());
+
+		profiler.reset();
+		assertEquals("", profiler.toCollapsed());
+	}
+
+	@Test
+	public void templateClasses() {
+		assertTrue(SamplingProfiler.isTemplate("index_cfm$cf"));
+		assertTrue(SamplingProfiler.isTemplate("org.test.index_lucee$lu"));
+		assertTrue(SamplingProfiler.isTemplate("test_cfc$cf$1"));
+		assertTrue(SamplingProfiler.isTemplate("test_cfc$sub$cf"));
+		assertFalse(SamplingProfiler.isTemplate("test.UtilKt"));
+		assertFalse(SamplingProfiler.isTemplate("Script1"));
+		assertFalse(SamplingProfiler.isTemplate("test.Config$cfg"));
+		assertFalse(SamplingProfiler.isTemplate(null));
+	}
+
+	@Test
+	public void samplesRunningThreads() throws Exception {
+		SamplingProfiler profiler = new SamplingProfiler(50, 100, false);
+		final CountDownLatch started = new CountDownLatch(1);
+		final Busy busy = new Busy();
+		Thread running = new Thread(() -> test_cfm$cf.spin(busy, started));
+		Thread waiting = new Thread(() -> test_cfm$cf.sleep());
+		running.start();
+		waiting.start();
+		try {
+			started.await();
+			for (int i = 0; i < 5; i++) {
+				profiler.sample(Arrays.asList(running, waiting));
+			}
+		}
+		finally {
+			busy.run = false;
+			waiting.interrupt();
+			running.join();
+			waiting.join();
+		}
+		// the waiting thread is not sampled without wall clock
+		String collapsed = profiler.toCollapsed();
+		assertTrue(collapsed.matches("SamplingProfilerTest\\.java:[0-9]+ 5\n"), collapsed);
+
+		// a thread that has ended is ignored
+		profiler.sample(Arrays.asList(running));
+		assertTrue(profiler.toCollapsed().endsWith(" 5\n"));
+	}
+
+	private static final class Busy {
+		private volatile boolean run = true;
+	}
+
+	/**
+	 * named like a class compiled from a template
+	 */
+	private static final class test_cfm$cf {
+
+		private static void spin(Busy busy, CountDownLatch started) {
+			started.countDown();
+			long l = 0;
+			while (busy.run) {
+				l++;
+			}
+			if (l == -1) System.out.println(l);
+		}
+
+		private static void sleep() {
+			try {
+				Thread.sleep(10000);
+			}
+			catch (InterruptedException e) {}
+		}
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.engine;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import lucee.runtime.PageContextImpl;
+
+public class RequestTest {
+
+	@Test
+	public void terminateAfterRequestIsDone() throws Exception {
+		PageContextImpl pc = Mockito.mock(PageContextImpl.class);
+		final AtomicInteger released = new AtomicInteger();
+		Request r = new Request(pc, Request.TYPE_CFML, new Runnable() {
+			@Override
+			public void run() {
+				released.incrementAndGet();
+			}
+		});
+		// the mock fails the request, the PageContext is released anyway
+		r.run();
+		assertTrue(r.isDone());
+		assertTrue(r.await(0));
+		assertEquals(1, released.get());
+
+		// the PageContext can already be used by another request, so it must not be touched
+		Mockito.clearInvocations(pc);
+		assertFalse(r.terminate());
+		Mockito.verifyNoInteractions(pc);
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.spooler;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import lucee.commons.io.log.LogBuffer;
+import lucee.runtime.spooler.test.TestTask;
+
+public class JournalSpoolerStorageTest {
+
+	private File dir;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		dir = Files.createTempDirectory("spooler").toFile();
+	}
+
+	@AfterEach
+	public void tearDown() throws Exception {
+		delete(dir);
+	}
+
+	@Test
+	public void migratedTaskIdIsNotReused() throws Exception {
+		JournalSpoolerStorage js = new JournalSpoolerStorage(dir, new LogBuffer());
+		try {
+			// task moved from the file storage, it keeps its id
+			js.store(task("00000001", "migrated"));
+
+			String id = js.createId();
+			assertNotEquals("00000001", id);
+			js.store(task(id, "added"));
+
+			assertEquals(2, js.count(false));
+			assertEquals("migrated", js.get("00000001").subject());
+			assertEquals("added", js.get(id).subject());
+		}
+		finally {
+			js.close();
+		}
+	}
+
+	@Test
+	public void interruptedCompactionDoesNotRestoreRemovedTasks() throws Exception {
+		// segment 1: both tasks
+		JournalSpoolerStorage js = new JournalSpoolerStorage(dir, new LogBuffer());
+		js.store(task("00000001", "removed"));
+		js.store(task("00000002", "kept"));
+		js.close();
+		// segment 2: tombstone of the first task
+		js = new JournalSpoolerStorage(dir, new LogBuffer());
+		js.remove("00000001");
+		js.close();
+
+		// crash after the copy of segment 1 and 2 (only the live task, no tombstone) was completed, but
+		// before the old segments were deleted
+		File other = Files.createTempDirectory("spooler").toFile();
+		try {
+			js = new JournalSpoolerStorage(other, new LogBuffer());
+			js.store(task("00000002", "kept"));
+			js.close();
+			File journal = new File(dir, "journal");
+			Files.copy(new File(other, "journal/1.jnl").toPath(), new File(journal, "2.cpt").toPath());
+			// an incomplete copy of a later compaction
+			Files.write(new File(journal, "compact.tmp").toPath(), new byte[] { 1, 2, 3 });
+		}
+		finally {
+			delete(other);
+		}
+
+		js = new JournalSpoolerStorage(dir, new LogBuffer());
+		try {
+			assertEquals(1, js.count(false));
+			assertNull(js.get("00000001"));
+			assertEquals("kept", js.get("00000002").subject());
+			String[] names = new File(dir, "journal").list();
+			for (String name: names) {
+				assertTrue(name.endsWith(".jnl"), name);
+				assertNotEquals("1.jnl", name);
+			}
+		}
+		finally {
+			js.close();
+		}
+	}
+
+	@Test
+	public void closedStorageIsNotUsedAnymore() throws Exception {
+		JournalSpoolerStorage js = new JournalSpoolerStorage(dir, new LogBuffer());
+		js.store(task("00000001", "task"));
+		js.close();
+
+		// a spooler thread can still hold the storage after the persistent directory was changed
+		assertNull(js.get("00000001"));
+		assertEquals(0, js.getOpenIds().length);
+		js.store(task("00000002", "late"));
+		js.remove("00000001");
+		js.close();
+
+		js = new JournalSpoolerStorage(dir, new LogBuffer());
+		try {
+			assertEquals(1, js.count(false));
+			assertEquals("task", js.get("00000001").subject());
+		}
+		finally {
+			js.close();
+		}
+	}
+
+	private static TestTask task(String id, String label) {
+		TestTask task = new TestTask(new ExecutionPlan[] { new ExecutionPlanImpl(1, 1) }, label, 0);
+		task.setId(id);
+		return task;
+	}
+
+	private static void delete(File file) throws Exception {
+		if (!file.exists()) return;
+		try (Stream<Path> paths = Files.walk(file.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		}
+	}
+}
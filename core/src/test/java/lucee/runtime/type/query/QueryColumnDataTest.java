@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2015, Lucee Assosication Switzerland
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+package lucee.runtime.type.query;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.Types;
+
+import org.junit.jupiter.api.Test;
+
+import lucee.runtime.type.dt.DateTimeImpl;
+
+public class QueryColumnDataTest {
+
+	@Test
+	public void instanceBySqlType() {
+		assertEquals(DoubleColumnData.class, QueryColumnData.getInstance(Types.DOUBLE, 4).getClass());
+		assertEquals(IntColumnData.class, QueryColumnData.getInstance(Types.INTEGER, 4).getClass());
+		assertEquals(BooleanColumnData.class, QueryColumnData.getInstance(Types.BOOLEAN, 4).getClass());
+		assertEquals(DateTimeColumnData.class, QueryColumnData.getInstance(Types.TIMESTAMP, 4).getClass());
+		assertEquals(StringColumnData.class, QueryColumnData.getInstance(Types.VARCHAR, 4).getClass());
+		// read as Double or String
+		assertEquals(ObjectColumnData.class, QueryColumnData.getInstance(Types.BIGINT, 4).getClass());
+		assertEquals(ObjectColumnData.class, QueryColumnData.getInstance(Types.BLOB, 4).getClass());
+	}
+
+	@Test
+	public void setGetAndNulls() {
+		QueryColumnData data = new IntColumnData(4);
+		assertSame(data, data.set(0, Integer.valueOf(1)));
+		assertSame(data, data.set(2, Integer.valueOf(-3)));
+		assertEquals(Integer.valueOf(1), data.get(0));
+		assertNull(data.get(1));
+		assertEquals(Integer.valueOf(-3), data.get(2));
+		assertNull(data.get(3));
+
+		// overwrite and clear a cell
+		data.set(0, Integer.valueOf(7));
+		assertEquals(Integer.valueOf(7), data.get(0));
+		data.set(2, null);
+		assertNull(data.get(2));
+		// a cell set to 0 is not empty
+		data.set(3, Integer.valueOf(0));
+		assertEquals(Integer.valueOf(0), data.get(3));
+
+		data = new DoubleColumnData(2);
+		data.set(1, Double.valueOf(1.5));
+		assertNull(data.get(0));
+		assertEquals(Double.valueOf(1.5), data.get(1));
+
+		data = new BooleanColumnData(2);
+		data.set(0, Boolean.FALSE);
+		assertEquals(Boolean.FALSE, data.get(0));
+		assertNull(data.get(1));
+	}
+
+	@Test
+	public void conversionToObject() {
+		QueryColumnData data = new DoubleColumnData(4);
+		data.set(0, Double.valueOf(1));
+		data.set(2, Double.valueOf(3));
+		// a value that cannot be stored without loosing information
+		QueryColumnData converted = data.set(1, "12345678901234567890");
+		assertEquals(ObjectColumnData.class, converted.getClass());
+		assertEquals(Double.valueOf(1), converted.get(0));
+		assertEquals("12345678901234567890", converted.get(1));
+		assertEquals(Double.valueOf(3), converted.get(2));
+		assertNull(converted.get(3));
+		assertEquals(4, converted.capacity());
+
+		// Integer is not stored in a Double column, the type would change
+		assertEquals(ObjectColumnData.class, new DoubleColumnData(1).set(0, Integer.valueOf(1)).getClass());
+		assertEquals(ObjectColumnData.class, new IntColumnData(1).set(0, Double.valueOf(1)).getClass());
+	}
+
+	@Test
+	public void growRemoveAndSort() {
+		QueryColumnData data = new IntColumnData(2);
+		data.set(0, Integer.valueOf(10));
+		data = data.grow(4);
+		assertEquals(4, data.capacity());
+		data.set(2, Integer.valueOf(30));
+		data.set(3, Integer.valueOf(40));
+		assertEquals(Integer.valueOf(10), data.get(0));
+		assertNull(data.get(1));
+
+		// rows 4, 2(null), 1
+		QueryColumnData sorted = data.sort(new int[] { 4, 2, 1 }, 3);
+		assertEquals(Integer.valueOf(40), sorted.get(0));
+		assertNull(sorted.get(1));
+		assertEquals(Integer.valueOf(10), sorted.get(2));
+
+		data.remove(1, 4);
+		assertEquals(Integer.valueOf(10), data.get(0));
+		assertEquals(Integer.valueOf(30), data.get(1));
+		assertEquals(Integer.valueOf(40), data.get(2));
+		assertNull(data.get(3));
+
+		QueryColumnData copy = data.duplicate(true);
+		copy.set(0, Integer.valueOf(11));
+		assertEquals(Integer.valueOf(10), data.get(0));
+		assertEquals(Integer.valueOf(11), copy.get(0));
+	}
+
+	@Test
+	public void strings() {
+		QueryColumnData data = new StringColumnData(8);
+		data.set(0, "a");
+		data.set(1, "b");
+		data.set(2, "a");
+		data.set(3, "");
+		assertEquals("a", data.get(0));
+		assertEquals("b", data.get(1));
+		assertEquals("a", data.get(2));
+		assertEquals("", data.get(3));
+		assertNull(data.get(4));
+
+		// storages created from this one share the dictionary
+		QueryColumnData grown = data.grow(16);
+		grown.set(8, "c");
+		assertEquals("c", grown.get(8));
+		assertEquals("b", grown.get(1));
+		assertNull(data.get(5));
+
+		assertEquals(ObjectColumnData.class, data.set(5, Integer.valueOf(1)).getClass());
+	}
+
+	@Test
+	public void stringDictionaryLimit() {
+		int size = 5000;
+		QueryColumnData data = new StringColumnData(size);
+		for (int i = 0; i < size; i++) {
+			data = data.set(i, "v" + i);
+		}
+		// too many distinct values for the dictionary
+		assertEquals(ObjectColumnData.class, data.getClass());
+		for (int i = 0; i < size; i++) {
+			assertEquals("v" + i, data.get(i));
+		}
+	}
+
+	@Test
+	public void dates() {
+		QueryColumnData data = new DateTimeColumnData(2);
+		long now = System.currentTimeMillis();
+		data.set(0, new DateTimeImpl(now, false));
+		Object dt = data.get(0);
+		assertEquals(DateTimeImpl.class, dt.getClass());
+		assertEquals(now, ((DateTimeImpl) dt).getTime());
+		// the object is reused for further reads
+		assertSame(dt, data.get(0));
+		assertNull(data.get(1));
+
+		// a changed cell gets a new object
+		data.set(0, new DateTimeImpl(now + 1, false));
+		assertEquals(now + 1, ((DateTimeImpl) data.get(0)).getTime());
+
+		// moved cells
+		data.set(1, new DateTimeImpl(now + 2, false));
+		data.remove(0, 2);
+		assertEquals(now + 2, ((DateTimeImpl) data.get(0)).getTime());
+		assertNull(data.get(1));
+
+		// a java.util.Date is not a DateTimeImpl
+		assertEquals(ObjectColumnData.class, data.set(1, new java.util.Date(now)).getClass());
+	}
+}
@@ -35,7 +35,9 @@ public class CLI {
 	 * 
 	 * webroot - webroot directory servlet-name - name of the servlet (default:CFMLServlet) server-name
 	 * - server name (default:localhost) uri - host/scriptname/query cookie - cookies (same pattern as
-	 * query string) form - form (same pattern as query string)
+	 * query string) form - form (same pattern as query string) benchmark - execute the uri (or
+	 * component/method) repeatedly and report throughput and latency, see
+	 * lucee.runtime.engine.RequestBenchmark for the supported arguments
 	 */
 
 	public static void main(final String[] args) throws ServletException, IOException, JspException {